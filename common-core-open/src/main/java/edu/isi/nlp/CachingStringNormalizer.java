@@ -0,0 +1,89 @@
+package edu.isi.nlp;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * A {@link StringNormalizer} which remembers the output of another normalizer for frequent inputs.
+ * Get one from {@link StringNormalizers#cached(StringNormalizer, int)}.
+ *
+ * <p>Token frequencies are very skewed, so a small cache of normalized forms answers most requests.
+ * However, if every input were cached, the long tail of rare tokens would constantly push frequent
+ * ones out. Once the cache is full, a new input is therefore only admitted if it has been seen
+ * repeatedly in the recent past, as estimated by a fixed-size frequency sketch. Only misses are
+ * counted in the sketch, so that hits stay as cheap as a plain cache lookup; a frequent input which
+ * is evicted may therefore have to miss again before it is readmitted. The wrapped normalizer must
+ * be deterministic.
+ *
+ * <p>This may be shared freely between threads.
+ */
+@Beta
+public final class CachingStringNormalizer implements StringNormalizer {
+
+  // how many recent sightings an input needs to be worth displacing something from a full cache
+  private static final int ADMISSION_FREQUENCY = 2;
+
+  private final StringNormalizer wrapped;
+  private final int maxEntries;
+  private final Cache<String, String> cache;
+  private final FrequencySketch recentFrequencies;
+
+  private CachingStringNormalizer(StringNormalizer wrapped, int maxEntries) {
+    checkArgument(maxEntries > 0, "Cache size must be positive but got %s", maxEntries);
+    this.wrapped = checkNotNull(wrapped);
+    this.maxEntries = maxEntries;
+    this.cache = CacheBuilder.newBuilder().maximumSize(maxEntries).recordStats().build();
+    this.recentFrequencies = new FrequencySketch(maxEntries);
+  }
+
+  static CachingStringNormalizer of(StringNormalizer wrapped, int maxEntries) {
+    return new CachingStringNormalizer(wrapped, maxEntries);
+  }
+
+  @Override
+  public String normalize(final String input) {
+    final String cached = cache.getIfPresent(input);
+    if (cached != null) {
+      return cached;
+    }
+    final String ret = wrapped.normalize(input);
+    // while there is room, everything is admitted
+    if (cache.size() < maxEntries || recentFrequencies.increment(input) >= ADMISSION_FREQUENCY) {
+      cache.put(input, ret);
+    }
+    return ret;
+  }
+
+  /** The normalizer whose results are cached. */
+  public StringNormalizer wrapped() {
+    return wrapped;
+  }
+
+  /** Number of inputs whose normalized form was found in the cache. */
+  public long hitCount() {
+    return cache.stats().hitCount();
+  }
+
+  /** Number of inputs which had to be passed to the wrapped normalizer. */
+  public long missCount() {
+    return cache.stats().missCount();
+  }
+
+  /**
+   * Full statistics for the underlying cache. Since entries are added directly rather than loaded,
+   * only the hit, miss and eviction counts are meaningful.
+   */
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  @Override
+  public String toString() {
+    return "cached(" + wrapped + ", " + maxEntries + ")";
+  }
+}
@@ -0,0 +1,20 @@
+package edu.isi.nlp;
+
+/**
+ * A {@link StringNormalizer} which maps each code point of its input to at most one output code
+ * point, looking only at that code point and the one before it. Consecutive normalizers of this
+ * sort can be applied together in a single pass over a string (see {@link
+ * StringNormalizers#compose(Iterable)}).
+ */
+interface CodepointMappingNormalizer extends StringNormalizer {
+
+  /** Returned by {@link #mapCodepoint(int, int)} to drop a code point from the output. */
+  int NO_CODEPOINT = -1;
+
+  /**
+   * The code point to output for {@code codepoint}, or {@link #NO_CODEPOINT} to drop it. {@code
+   * previousCodepoint} is the code point which was passed to this normalizer before {@code
+   * codepoint}, or {@link #NO_CODEPOINT} at the start of a string.
+   */
+  int mapCodepoint(int codepoint, int previousCodepoint);
+}
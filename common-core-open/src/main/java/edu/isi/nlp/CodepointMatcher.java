@@ -17,8 +17,8 @@ import javax.annotation.Nullable;
 
 /**
  * Like Guava's {@link com.google.common.base.CharMatcher}, but handles codepoints outside the BMP.
- * Right now this is implemented rather inefficiently, but we can do fancy things with lookup
- * tables, etc. to speed things up in the future.
+ * Matchers built by combining others are evaluated as a tree of calls for each code point; for
+ * matchers used on large amounts of text, {@link #precomputed()} flattens them into a lookup table.
  *
  * <p>This class is heavily indebted to Guava's {@code CharMatcher} for its design and part of its
  * implementation.
@@ -178,6 +178,20 @@ public abstract class CodepointMatcher implements Predicate<Integer> {
 
   public abstract boolean matches(int codepoint);
 
+  /**
+   * Returns a matcher equivalent to this one which answers each query with a single table lookup,
+   * however complex this matcher is. Code points in the BMP are looked up in a bit set and those
+   * outside it in a table of matching ranges.
+   *
+   * <p>Like Guava's {@link CharMatcher#precomputed()}, this evaluates this matcher on every code
+   * point, so it takes some milliseconds and should be done once for matchers which will be used
+   * many times (e.g. stored in a static field), not for every string processed. It assumes the
+   * result of {@link #matches(int)} depends only on the code point.
+   */
+  public CodepointMatcher precomputed() {
+    return Precomputed.of(this);
+  }
+
   public final boolean matchesNoneOf(String s) {
     return offsetIn(s) == NO_MATCH_OFFSET;
   }
@@ -754,6 +768,112 @@ public abstract class CodepointMatcher implements Predicate<Integer> {
     }
   }
 
+  private static final class Precomputed extends CodepointMatcher {
+
+    private static final int BMP_SIZE = Character.MAX_VALUE + 1;
+
+    @JsonProperty("source")
+    private final CodepointMatcher source;
+    // bit i is set iff BMP code point i matches
+    private final long[] bmpTable;
+    // sorted, disjoint, inclusive ranges of matching code points outside the BMP
+    private final int[] astralRangeStarts;
+    private final int[] astralRangeEnds;
+
+    private Precomputed(
+        final CodepointMatcher source,
+        final long[] bmpTable,
+        final int[] astralRangeStarts,
+        final int[] astralRangeEnds) {
+      this.source = checkNotNull(source);
+      this.bmpTable = bmpTable;
+      this.astralRangeStarts = astralRangeStarts;
+      this.astralRangeEnds = astralRangeEnds;
+    }
+
+    @JsonCreator
+    static Precomputed of(@JsonProperty("source") final CodepointMatcher source) {
+      if (source instanceof Precomputed) {
+        return (Precomputed) source;
+      }
+
+      final long[] bmpTable = new long[BMP_SIZE / Long.SIZE];
+      for (int codepoint = 0; codepoint < BMP_SIZE; ++codepoint) {
+        if (source.matches(codepoint)) {
+          bmpTable[codepoint >>> 6] |= 1L << codepoint;
+        }
+      }
+
+      // astral code points are mostly unassigned and matchers typically match long runs of them,
+      // so a range table is far smaller than a bit set
+      final List<Integer> rangeStarts = new ArrayList<>();
+      final List<Integer> rangeEnds = new ArrayList<>();
+      int rangeStart = -1;
+      for (int codepoint = BMP_SIZE; codepoint <= Character.MAX_CODE_POINT; ++codepoint) {
+        if (source.matches(codepoint)) {
+          if (rangeStart < 0) {
+            rangeStart = codepoint;
+          }
+        } else if (rangeStart >= 0) {
+          rangeStarts.add(rangeStart);
+          rangeEnds.add(codepoint - 1);
+          rangeStart = -1;
+        }
+      }
+      if (rangeStart >= 0) {
+        rangeStarts.add(rangeStart);
+        rangeEnds.add(Character.MAX_CODE_POINT);
+      }
+
+      return new Precomputed(source, bmpTable, Ints.toArray(rangeStarts), Ints.toArray(rangeEnds));
+    }
+
+    @Override
+    public boolean matches(final int codepoint) {
+      if (codepoint >>> 16 == 0) {
+        return (bmpTable[codepoint >>> 6] & (1L << codepoint)) != 0;
+      } else if (codepoint > 0 && codepoint <= Character.MAX_CODE_POINT) {
+        final int idx = Arrays.binarySearch(astralRangeStarts, codepoint);
+        if (idx >= 0) {
+          return true;
+        }
+        // the index of the last range starting before codepoint
+        final int precedingRangeIdx = -idx - 2;
+        return precedingRangeIdx >= 0 && codepoint <= astralRangeEnds[precedingRangeIdx];
+      } else {
+        // not a valid code point, so not in the tables
+        return source.matches(codepoint);
+      }
+    }
+
+    @Override
+    public CodepointMatcher precomputed() {
+      return this;
+    }
+
+    @Override
+    public String toString() {
+      return source + ".precomputed()";
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(source);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      final Precomputed other = (Precomputed) obj;
+      return Objects.equals(this.source, other.source);
+    }
+  }
+
   private static final class Is extends CodepointMatcher {
 
     private final String s;
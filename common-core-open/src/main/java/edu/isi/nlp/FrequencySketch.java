@@ -0,0 +1,68 @@
+package edu.isi.nlp;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Approximately counts how often objects have been seen recently, using a count-min sketch of fixed
+ * size. Estimates may be too high (because of hash collisions) but never too low, apart from the
+ * effect of aging: after every so many increments all counts are halved, so the sketch tracks
+ * recent frequency rather than all-time frequency.
+ *
+ * <p>This is safe to use from multiple threads. Concurrent updates may occasionally be lost during
+ * aging, which is harmless for the heuristic uses this is intended for, such as cache admission.
+ */
+final class FrequencySketch {
+
+  private static final int DEPTH = 4;
+  // odd multipliers used to derive an independent-enough index for each row from one hash code
+  private static final int[] ROW_SEEDS = {0x9E3779B1, 0x85EBCA77, 0xC2B2AE3D, 0x27D4EB2F};
+
+  private final AtomicIntegerArray counts;
+  private final int rowMask;
+  private final int sampleSize;
+  private final AtomicInteger incrementsSinceAging = new AtomicInteger();
+
+  /**
+   * Creates a sketch suitable for tracking the frequencies of about {@code expectedDistinct}
+   * frequently-seen objects. Counts are halved every {@code 10 * expectedDistinct} increments.
+   */
+  FrequencySketch(int expectedDistinct) {
+    checkArgument(expectedDistinct > 0, "Sketch must track at least one item");
+    final int width = Integer.highestOneBit(Math.max(16, expectedDistinct - 1) << 1);
+    this.counts = new AtomicIntegerArray(width * DEPTH);
+    this.rowMask = width - 1;
+    this.sampleSize = 10 * expectedDistinct;
+  }
+
+  /** Records one sighting of {@code o} and returns its updated estimated frequency. */
+  int increment(Object o) {
+    final int hash = o.hashCode();
+    int min = Integer.MAX_VALUE;
+    for (int row = 0; row < DEPTH; ++row) {
+      min = Math.min(min, counts.incrementAndGet(index(hash, row)));
+    }
+    if (incrementsSinceAging.incrementAndGet() >= sampleSize) {
+      age();
+    }
+    return min;
+  }
+
+  private int index(int hash, int row) {
+    int h = hash * ROW_SEEDS[row];
+    h ^= h >>> 16;
+    return row * (rowMask + 1) + (h & rowMask);
+  }
+
+  private void age() {
+    // only the thread which wins the reset does the aging pass
+    final int seen = incrementsSinceAging.get();
+    if (seen >= sampleSize && incrementsSinceAging.compareAndSet(seen, 0)) {
+      for (int i = 0; i < counts.length(); ++i) {
+        counts.set(i, counts.get(i) >>> 1);
+      }
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package edu.isi.nlp;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.collect.ImmutableList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Applies a sequence of {@link CodepointMappingNormalizer}s in a single pass over a string, with
+ * the output of each normalizer for a code point fed to the next. Nothing is allocated for inputs
+ * the normalizers leave unchanged; these are returned as is.
+ */
+final class FusedCodepointNormalizer implements StringNormalizer {
+
+  // output buffers larger than this are not kept for reuse, to avoid pinning memory after a single
+  // unusually long input
+  private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+  private static final ThreadLocal<StringBuilder> BUFFER =
+      new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+          return new StringBuilder();
+        }
+      };
+
+  private final CodepointMappingNormalizer[] stages;
+
+  private FusedCodepointNormalizer(List<CodepointMappingNormalizer> stages) {
+    checkArgument(!stages.isEmpty(), "Cannot fuse an empty sequence of normalizers");
+    this.stages = stages.toArray(new CodepointMappingNormalizer[0]);
+  }
+
+  /**
+   * Adds a normalizer equivalent to {@code run} to {@code builder} and clears {@code run}. Adds
+   * nothing if {@code run} is empty and just its only element if it has one.
+   */
+  static void addFused(
+      List<CodepointMappingNormalizer> run, ImmutableList.Builder<StringNormalizer> builder) {
+    if (run.size() == 1) {
+      builder.add(run.get(0));
+    } else if (run.size() > 1) {
+      builder.add(new FusedCodepointNormalizer(run));
+    }
+    run.clear();
+  }
+
+  @Override
+  public String normalize(final String input) {
+    return normalize(input, stages);
+  }
+
+  static String normalize(final String input, final CodepointMappingNormalizer... stages) {
+    final int[] previousCodepoints = new int[stages.length];
+    Arrays.fill(previousCodepoints, CodepointMappingNormalizer.NO_CODEPOINT);
+    // stays null until we reach the first code point which changes
+    StringBuilder out = null;
+
+    for (int offset = 0; offset < input.length(); ) {
+      final int inputCodepoint = input.codePointAt(offset);
+      int codepoint = inputCodepoint;
+      for (int i = 0;
+          i < stages.length && codepoint != CodepointMappingNormalizer.NO_CODEPOINT;
+          ++i) {
+        final int mapped = stages[i].mapCodepoint(codepoint, previousCodepoints[i]);
+        previousCodepoints[i] = codepoint;
+        codepoint = mapped;
+      }
+
+      if (out == null && codepoint != inputCodepoint) {
+        out = BUFFER.get();
+        out.setLength(0);
+        out.append(input, 0, offset);
+      }
+      if (out != null && codepoint != CodepointMappingNormalizer.NO_CODEPOINT) {
+        out.appendCodePoint(codepoint);
+      }
+      offset += Character.charCount(inputCodepoint);
+    }
+
+    if (out == null) {
+      return input;
+    }
+    final String ret = out.toString();
+    if (out.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+      BUFFER.remove();
+    }
+    return ret;
+  }
+
+  @Override
+  public String toString() {
+    return "Fused" + Arrays.toString(stages);
+  }
+}
@@ -12,6 +12,7 @@ import com.google.inject.grapher.graphviz.GraphvizGrapher;
 import com.google.inject.grapher.graphviz.GraphvizModule;
 import edu.isi.nlp.parameters.Parameters;
 import edu.isi.nlp.parameters.ParametersModule;
+import edu.isi.nlp.symbols.SymbolVocabularySnapshots;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -54,6 +55,13 @@ public final class IsiNlpEntryPoints {
    *       a {@code dot} file for the Guice dependencies will be written to the specified file. If
    *       {@code com.bbn.bue.common.debug.skipExecution} is specified and true, the normal
    *       execution of the program will be skipped.
+   *   <li>{@code com.bbn.bue.common.symbols.preloadVocabulary}: (default absent) If specified, a
+   *       snapshot of {@link edu.isi.nlp.symbols.Symbol}s to intern before the program starts. See
+   *       {@link SymbolVocabularySnapshots}.
+   *   <li>{@code com.bbn.bue.common.symbols.dumpVocabularyTo}: (default absent) If specified, a
+   *       snapshot of all {@link edu.isi.nlp.symbols.Symbol}s live at the end of the program will
+   *       be written to this file. This is suitable for use with the previous parameter on later
+   *       runs.
    * </ul>
    */
   public static void runEntryPoint(
@@ -143,6 +151,8 @@ public final class IsiNlpEntryPoints {
       configModule = ModuleUtils.classNameToModule(params, entryPointClass);
     }
 
+    maybePreloadSymbolVocabulary(params);
+
     final Injector injector =
         Guice.createInjector(ParametersModule.createAndDump(params), configModule);
 
@@ -152,6 +162,7 @@ public final class IsiNlpEntryPoints {
     // actually run the program, unless requested to skip this
     if (!params.getOptionalBoolean(SKIP_EXECUTION_PARAM).or(false)) {
       injector.getInstance(entryPointClass).run();
+      maybeDumpSymbolVocabulary(params);
     } else {
       // why would you want to skip execution? Currently, the only reason is to graph Guice
       // dependencies without executing, so for safety we check for that parameter.
@@ -167,6 +178,31 @@ public final class IsiNlpEntryPoints {
     }
   }
 
+  private static final String PRELOAD_SYMBOL_VOCABULARY_PARAM =
+      "com.bbn.bue.common.symbols.preloadVocabulary";
+  private static final String DUMP_SYMBOL_VOCABULARY_PARAM =
+      "com.bbn.bue.common.symbols.dumpVocabularyTo";
+
+  private static void maybePreloadSymbolVocabulary(final Parameters params) throws IOException {
+    final Optional<File> vocabularyFile =
+        params.getOptionalExistingFile(PRELOAD_SYMBOL_VOCABULARY_PARAM);
+    if (vocabularyFile.isPresent()) {
+      final int numSymbols =
+          SymbolVocabularySnapshots.preload(Files.asByteSource(vocabularyFile.get()));
+      log.info("Preloaded {} symbols from {}", numSymbols, vocabularyFile.get());
+    }
+  }
+
+  private static void maybeDumpSymbolVocabulary(final Parameters params) throws IOException {
+    final Optional<File> vocabularyFile =
+        params.getOptionalCreatableFile(DUMP_SYMBOL_VOCABULARY_PARAM);
+    if (vocabularyFile.isPresent()) {
+      final int numSymbols =
+          SymbolVocabularySnapshots.writeLiveVocabulary(Files.asByteSink(vocabularyFile.get()));
+      log.info("Wrote snapshot of {} symbols to {}", numSymbols, vocabularyFile.get());
+    }
+  }
+
   private static final String GRAPH_DEPENDENCIES_PARAM =
       "com.bbn.bue.common.debug.graphGuiceDependenciesTo";
 
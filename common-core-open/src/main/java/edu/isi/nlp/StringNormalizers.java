@@ -2,6 +2,7 @@ package edu.isi.nlp;
 
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.google.common.annotations.Beta;
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
@@ -95,6 +96,13 @@ public final class StringNormalizers {
    * A {@link StringNormalizer} which composes a sequence of {@link StringNormalizer}s. The first
    * {@code StringNormalizer} in the provided sequence it applied first, then the second is applied
    * to its output, and so on.
+   *
+   * <p>Consecutive normalizers which work code point by code point ({@link
+   * #translate(CodepointMatcher, char)} and {@link #collapseConsecutive(CodepointMatcher)}) are
+   * fused into a single pass over the string, so no intermediate strings are built between them.
+   * The normalizers provided here return their input unchanged, without copying it, if there is
+   * nothing to do, so a composed normalizer returns the very same {@code String} for inputs which
+   * are already normalized.
    */
   public static StringNormalizer compose(Iterable<? extends StringNormalizer> stringNormalizers) {
     return CompositeStringNormalizer.of(stringNormalizers);
@@ -108,6 +116,17 @@ public final class StringNormalizers {
     return CompositeStringNormalizer.of(asList);
   }
 
+  /**
+   * Wraps {@code normalizer} so that the normalized forms of up to {@code maxEntries} frequently
+   * seen inputs are remembered rather than recomputed. Rare inputs are not allowed to displace
+   * frequent ones. {@code normalizer} must always give the same output for the same input. The
+   * result is safe to share across threads and reports its hit and miss counts.
+   */
+  @Beta
+  public static CachingStringNormalizer cached(StringNormalizer normalizer, int maxEntries) {
+    return CachingStringNormalizer.of(normalizer, maxEntries);
+  }
+
   public static Function<String, String> asFunction(StringNormalizer normalizer) {
     return NormalizerAsFunction.of(normalizer);
   }
@@ -132,7 +151,7 @@ enum IdentityNormalizer implements StringNormalizer {
 @Value.Immutable
 @JsonSerialize
 @JsonDeserialize
-abstract class CodepointTranslatorStringNormalizer implements StringNormalizer {
+abstract class CodepointTranslatorStringNormalizer implements CodepointMappingNormalizer {
 
   @Value.Parameter
   public abstract CodepointMatcher codepointMatcher();
@@ -142,7 +161,12 @@ abstract class CodepointTranslatorStringNormalizer implements StringNormalizer {
 
   @Override
   public String normalize(final String input) {
-    return codepointMatcher().replaceAll(input, replacementCharacter());
+    return FusedCodepointNormalizer.normalize(input, this);
+  }
+
+  @Override
+  public int mapCodepoint(final int codepoint, final int previousCodepoint) {
+    return codepointMatcher().matches(codepoint) ? replacementCharacter() : codepoint;
   }
 
   public static CodepointTranslatorStringNormalizer of(
@@ -156,26 +180,22 @@ abstract class CodepointTranslatorStringNormalizer implements StringNormalizer {
 @Value.Immutable
 @JsonSerialize
 @JsonDeserialize
-abstract class CollapseConsecutiveCharacters implements StringNormalizer {
+abstract class CollapseConsecutiveCharacters implements CodepointMappingNormalizer {
 
   @Value.Parameter
   public abstract CodepointMatcher toCollapseMatcher();
 
   @Override
   public String normalize(final String input) {
-    final StringBuilder ret = new StringBuilder();
-    // -1 is out-of-range for Unicode
-    int lastCodePoint = -1;
-    for (int offset = 0; offset < input.length(); ) {
-      final int curCodePoint = input.codePointAt(offset);
-      final boolean curCashpointIsCollapsible = toCollapseMatcher().matches(curCodePoint);
-      if (!curCashpointIsCollapsible || curCodePoint != lastCodePoint) {
-        ret.append(Character.toChars(curCodePoint));
-      }
-      lastCodePoint = curCodePoint;
-      offset += Character.charCount(curCodePoint);
+    return FusedCodepointNormalizer.normalize(input, this);
+  }
+
+  @Override
+  public int mapCodepoint(final int codepoint, final int previousCodepoint) {
+    if (codepoint == previousCodepoint && toCollapseMatcher().matches(codepoint)) {
+      return NO_CODEPOINT;
     }
-    return ret.toString();
+    return codepoint;
   }
 
   public static CollapseConsecutiveCharacters of(CodepointMatcher matcher) {
@@ -218,10 +238,30 @@ abstract class CompositeStringNormalizer implements StringNormalizer {
   @Value.Parameter
   public abstract ImmutableList<StringNormalizer> wordShapers();
 
+  /**
+   * {@link #wordShapers()} with each run of consecutive {@link CodepointMappingNormalizer}s
+   * replaced by a single normalizer which applies them all in one pass.
+   */
+  @Value.Lazy
+  ImmutableList<StringNormalizer> fusedStages() {
+    final ImmutableList.Builder<StringNormalizer> ret = ImmutableList.builder();
+    final List<CodepointMappingNormalizer> run = new ArrayList<>();
+    for (final StringNormalizer shaper : wordShapers()) {
+      if (shaper instanceof CodepointMappingNormalizer) {
+        run.add((CodepointMappingNormalizer) shaper);
+      } else {
+        FusedCodepointNormalizer.addFused(run, ret);
+        ret.add(shaper);
+      }
+    }
+    FusedCodepointNormalizer.addFused(run, ret);
+    return ret.build();
+  }
+
   @Override
   public String normalize(final String input) {
     String cur = input;
-    for (final StringNormalizer shaper : wordShapers()) {
+    for (final StringNormalizer shaper : fusedStages()) {
       cur = shaper.normalize(cur);
     }
     return cur;
@@ -243,7 +283,10 @@ abstract class ToLowerCase implements StringNormalizer {
 
   @Override
   public String normalize(final String input) {
-    return UCharacter.toLowerCase(locale().asIcuLocale(), input);
+    final String ret = UCharacter.toLowerCase(locale().asIcuLocale(), input);
+    // ICU always builds a new string, but callers may rely on getting the input back if it is
+    // unchanged
+    return ret.equals(input) ? input : ret;
   }
 
   public static ToLowerCase forLocale(NlpLocale locale) {
@@ -262,7 +305,10 @@ abstract class ToUpperCase implements StringNormalizer {
 
   @Override
   public String normalize(final String input) {
-    return UCharacter.toUpperCase(locale().asIcuLocale(), input);
+    final String ret = UCharacter.toUpperCase(locale().asIcuLocale(), input);
+    // ICU always builds a new string, but callers may rely on getting the input back if it is
+    // unchanged
+    return ret.equals(input) ? input : ret;
   }
 
   public static ToUpperCase forLocale(NlpLocale locale) {
@@ -278,6 +324,10 @@ enum NfkcNormalizer implements StringNormalizer {
 
   @Override
   public String normalize(final String input) {
+    // most text is already normalized, which can be verified much faster than normalizing it
+    if (icuNormalizer.spanQuickCheckYes(input) == input.length()) {
+      return input;
+    }
     return icuNormalizer.normalize(input);
   }
 
@@ -295,6 +345,10 @@ enum NfcNormalizer implements StringNormalizer {
 
   @Override
   public String normalize(final String input) {
+    // most text is already normalized, which can be verified much faster than normalizing it
+    if (icuNormalizer.spanQuickCheckYes(input) == input.length()) {
+      return input;
+    }
     return icuNormalizer.normalize(input);
   }
 
@@ -1,8 +1,6 @@
 package edu.isi.nlp;
 
 import com.google.common.base.Optional;
-import edu.isi.nlp.strings.LocatedString;
-import edu.isi.nlp.strings.LocatedString.CharacterRegion;
 import edu.isi.nlp.strings.offsets.CharOffset;
 import edu.isi.nlp.strings.offsets.OffsetRange;
 import edu.isi.nlp.strings.offsets.UTF16Offset;
@@ -15,9 +13,10 @@ import org.immutables.value.Value;
  * character. {@link UnicodeFriendlyString}s should always be created via {@link
  * StringUtils#unicodeFriendly(String)}.
  *
- * <p>See the interface Javadoc for details. Currently this uses simple but slow implementations for
- * most of its method, but much faster versions a can be added when needed by using a structure
- * similar to {@link LocatedString}'s {@link CharacterRegion}.
+ * <p>See the interface Javadoc for details. Translation between codepoint and UTF-16 code unit
+ * offsets uses a lazily-computed index of the codepoint positions of all non-BMP characters in the
+ * string, so it takes time logarithmic in the number of non-BMP characters rather than linear in
+ * the length of the string.
  */
 @IsiNlpImmutable
 @Value.Immutable
@@ -35,18 +34,78 @@ abstract class StringWithNonBmp extends AbstractUnicodeFriendlyString
 
   @Override
   public boolean hasNonBmpCharacter(OffsetRange<CharOffset> characterRange) {
-    // slow placeholder implementation
-    for (int i = codeUnitOffsetFor(characterRange.startInclusive()).asInt();
-        i <= codeUnitOffsetFor(characterRange.endInclusive()).asInt(); ) {
-      final int codePoint = utf16CodeUnits().codePointAt(i);
+    if (characterRange.startInclusive().asInt() < 0
+        || characterRange.endInclusive().asInt() >= lengthInCodePoints()) {
+      throw new IndexOutOfBoundsException(
+          "Valid codepoint offsets for string are 0 to "
+              + (lengthInCodePoints() - 1)
+              + " but got "
+              + characterRange);
+    }
+    final int[] nonBmpCodepointIndices = nonBmpCodepointIndices();
+    final int firstNonBmpAtOrAfterStart =
+        numNonBmpBeforeCodepoint(characterRange.startInclusive().asInt());
+    return firstNonBmpAtOrAfterStart < nonBmpCodepointIndices.length
+        && nonBmpCodepointIndices[firstNonBmpAtOrAfterStart]
+            <= characterRange.endInclusive().asInt();
+  }
+
+  /**
+   * The codepoint indices of all non-BMP characters in this string, in increasing order. This is
+   * our index for translating between codepoint and code unit offsets: the non-BMP character at
+   * position {@code i} of this array starts at code unit offset {@code nonBmpCodepointIndices()[i]
+   * + i}.
+   */
+  @Value.Lazy
+  int[] nonBmpCodepointIndices() {
+    final String codeUnits = utf16CodeUnits();
+    final int numNonBmp = codeUnits.length() - lengthInCodePoints();
+    final int[] ret = new int[numNonBmp];
+    int nextNonBmp = 0;
+    for (int codeUnitOffset = 0, codePointOffset = 0; nextNonBmp < numNonBmp; ++codePointOffset) {
+      final int codePoint = codeUnits.codePointAt(codeUnitOffset);
       final int charsForCodePoint = Character.charCount(codePoint);
       if (charsForCodePoint > 1) {
-        return true;
+        ret[nextNonBmp++] = codePointOffset;
+      }
+      codeUnitOffset += charsForCodePoint;
+    }
+    return ret;
+  }
+
+  /** The number of non-BMP characters whose codepoint index is strictly less than the given one. */
+  private int numNonBmpBeforeCodepoint(int codepointIndex) {
+    final int[] nonBmpCodepointIndices = nonBmpCodepointIndices();
+    // binary search for the first non-BMP character at or after codepointIndex
+    int low = 0;
+    int high = nonBmpCodepointIndices.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (nonBmpCodepointIndices[mid] < codepointIndex) {
+        low = mid + 1;
       } else {
-        i += charsForCodePoint;
+        high = mid;
       }
     }
-    return false;
+    return low;
+  }
+
+  /** The number of non-BMP characters which start strictly before the given code unit offset. */
+  private int numNonBmpBeforeCodeUnit(int codeUnitOffset) {
+    final int[] nonBmpCodepointIndices = nonBmpCodepointIndices();
+    // the i-th non-BMP character starts at code unit nonBmpCodepointIndices[i] + i, which is
+    // increasing in i, so we can binary search on it
+    int low = 0;
+    int high = nonBmpCodepointIndices.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (nonBmpCodepointIndices[mid] + mid < codeUnitOffset) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
   }
 
   @Value.Derived
@@ -79,40 +138,37 @@ abstract class StringWithNonBmp extends AbstractUnicodeFriendlyString
   @Override
   public final UnicodeFriendlyString substringByCodePoints(
       CharOffset startCodepointInclusive, CharOffset endCodepointExclusive) {
-    // this is a slow, simple, temporary implementation
-    final UTF16Offset startCodeUnitInclusive = codeUnitOffsetFor(startCodepointInclusive);
-    final UTF16Offset endCodeUnitExclusive = codeUnitOffsetFor(endCodepointExclusive);
-
-    // we need this because in the current implementation we can't tell if our substring
-    // includes no non-BMP characters and should therefore use the other implementation
-    return StringUtils.unicodeFriendly(
-        utf16CodeUnits().substring(startCodeUnitInclusive.asInt(), endCodeUnitExclusive.asInt()));
+    final int startCodeUnitInclusive = codeUnitOffsetFor(startCodepointInclusive).asInt();
+    final int endCodeUnitExclusive = codeUnitOffsetFor(endCodepointExclusive).asInt();
+    final String substring =
+        utf16CodeUnits().substring(startCodeUnitInclusive, endCodeUnitExclusive);
+
+    // the substring has a non-BMP character exactly when it is longer in code units than in
+    // codepoints
+    if (endCodeUnitExclusive - startCodeUnitInclusive
+        == endCodepointExclusive.asInt() - startCodepointInclusive.asInt()) {
+      return StringWithoutNonBmp.of(substring);
+    } else {
+      return StringWithNonBmp.of(substring);
+    }
   }
 
-  // this is a slow temporary implementation. If performance becomes important, we can store
-  // something like LocatedString's like CharacterRegions
   private UTF16Offset codeUnitOffsetFor(final CharOffset codePointOffset) {
-    int charOffset = 0;
-    int codePointsConsumed = 0;
-
-    for (;
-        charOffset < utf16CodeUnits().length() && codePointsConsumed < codePointOffset.asInt();
-        ++codePointsConsumed) {
-      final int codePoint = utf16CodeUnits().codePointAt(charOffset);
-      charOffset += Character.charCount(codePoint);
-    }
-    if (codePointsConsumed == codePointOffset.asInt()) {
-      return UTF16Offset.of(charOffset);
-    } else {
-      // this will happen if codePointOffset is negative or equal to or greater than the
-      // total number of codepoints in the string
-      throw new IndexOutOfBoundsException();
+    final int codePointIdx = codePointOffset.asInt();
+    if (codePointIdx < 0 || codePointIdx > lengthInCodePoints()) {
+      // the offset one past the end is allowed so it can be used as an exclusive end
+      throw new IndexOutOfBoundsException(
+          "Valid codepoint offsets for string are 0 to "
+              + lengthInCodePoints()
+              + " but got "
+              + codePointIdx);
     }
+    // each preceding non-BMP character occupies one extra code unit
+    return UTF16Offset.of(codePointIdx + numNonBmpBeforeCodepoint(codePointIdx));
   }
 
   @Override
   public CharOffset codepointIndex(UTF16Offset offset) {
-    // slow placeholder implementation
     if (offset.asInt() < 0 || offset.asInt() >= utf16CodeUnits().length()) {
       throw new IndexOutOfBoundsException(
           "Valid UTF-16 code unit indices for string are 0 to "
@@ -120,24 +176,10 @@ abstract class StringWithNonBmp extends AbstractUnicodeFriendlyString
               + " but got "
               + offset.asInt());
     }
-
-    int charOffset = 0;
-    int nextCodeUnit = 0;
-
-    if (offset.asInt() == 0) {
-      return CharOffset.asCharOffset(0);
-    }
-
-    while (nextCodeUnit <= offset.asInt()) {
-      nextCodeUnit += Character.charCount(utf16CodeUnits().codePointAt(nextCodeUnit));
-      // catch when we "hop" over the code unit due to a multi-codeunit character
-      if (nextCodeUnit > offset.asInt()) {
-        return CharOffset.asCharOffset(charOffset);
-      }
-      ++charOffset;
-    }
-
-    throw new IllegalStateException("Should be impossible");
+    // each non-BMP character starting before the offset occupies one extra code unit. If the
+    // offset falls on the second half of a surrogate pair, that pair is counted too, which maps
+    // the offset to the codepoint containing it.
+    return CharOffset.asCharOffset(offset.asInt() - numNonBmpBeforeCodeUnit(offset.asInt()));
   }
 
   @Override
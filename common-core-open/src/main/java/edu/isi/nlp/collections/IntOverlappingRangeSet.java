@@ -0,0 +1,299 @@
+package edu.isi.nlp.collections;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.Beta;
+import edu.isi.nlp.strings.offsets.CharOffset;
+import edu.isi.nlp.strings.offsets.OffsetRange;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A set of possibly overlapping closed integer ranges supporting the same queries as {@link
+ * OverlappingRangeSet}, specialized to avoid boxing. This is intended for character offsets, so
+ * ranges are closed at both ends, like {@link OffsetRange}s.
+ *
+ * <p>Rather than returning ranges, queries return the <i>ids</i> of matching ranges: the position
+ * of each range in the sequence the set was built from. {@link #start(int)} and {@link #end(int)}
+ * give the bounds of a range by id, so callers can keep parallel arrays or lists of whatever the
+ * ranges belong to. Unlike {@link OverlappingRangeSet} implementations, duplicate ranges are kept,
+ * since they have different ids. Ids in results are ordered by the start of the range and then by
+ * id.
+ *
+ * <p>Queries take {@code O(log(n) + k)} time, where {@code k} is the number of ranges overlapping
+ * the query, using the same augmented sorted-array interval tree as {@link
+ * IntervalTreeOverlappingRangeSet}. {@link #rangesContainingEach(int[])} answers many point queries
+ * in one sweep.
+ */
+@Beta
+public final class IntOverlappingRangeSet {
+
+  private static final int[] NO_IDS = new int[0];
+
+  // indexed by id
+  private final int[] starts;
+  private final int[] ends;
+  // the ranges sorted by start, then id
+  private final int[] sortedStarts;
+  private final int[] sortedEnds;
+  private final int[] sortedIds;
+  // the greatest end of any range in the subtree rooted at each sorted position
+  private final int[] subtreeMaxEnds;
+
+  private IntOverlappingRangeSet(int[] starts, int[] ends) {
+    checkArgument(
+        starts.length == ends.length,
+        "Must have the same number of starts and ends, but got %s and %s",
+        starts.length,
+        ends.length);
+    this.starts = starts;
+    this.ends = ends;
+    final int n = starts.length;
+
+    // sort ids by start without boxing by packing the start above the (non-negative) id
+    final long[] startsAndIds = new long[n];
+    for (int id = 0; id < n; ++id) {
+      checkArgument(
+          starts[id] <= ends[id],
+          "Range start %s may not exceed its end %s for range %s",
+          starts[id],
+          ends[id],
+          id);
+      startsAndIds[id] = ((long) starts[id] << 32) | id;
+    }
+    Arrays.sort(startsAndIds);
+
+    this.sortedStarts = new int[n];
+    this.sortedEnds = new int[n];
+    this.sortedIds = new int[n];
+    for (int i = 0; i < n; ++i) {
+      final int id = (int) startsAndIds[i];
+      sortedIds[i] = id;
+      sortedStarts[i] = starts[id];
+      sortedEnds[i] = ends[id];
+    }
+    this.subtreeMaxEnds = new int[n];
+    if (n > 0) {
+      computeSubtreeMaxEnds(0, n);
+    }
+  }
+
+  /**
+   * Creates a set of the closed ranges {@code [starts[i], ends[i]]}. Range {@code i} gets id {@code
+   * i}. The arrays are copied.
+   */
+  public static IntOverlappingRangeSet fromClosedRanges(int[] starts, int[] ends) {
+    return new IntOverlappingRangeSet(starts.clone(), ends.clone());
+  }
+
+  /**
+   * Creates a set of the provided character offset ranges. Ranges get ids in the order they are
+   * iterated over.
+   */
+  public static IntOverlappingRangeSet fromCharOffsetRanges(
+      Iterable<OffsetRange<CharOffset>> ranges) {
+    final int expectedSize = ranges instanceof Collection ? ((Collection<?>) ranges).size() : 16;
+    final IntList starts = new IntList(expectedSize);
+    final IntList ends = new IntList(expectedSize);
+    for (final OffsetRange<CharOffset> range : ranges) {
+      starts.add(range.startInclusive().asInt());
+      ends.add(range.endInclusive().asInt());
+    }
+    return new IntOverlappingRangeSet(starts.toArray(), ends.toArray());
+  }
+
+  /** The number of ranges in this set, which is one more than the highest id. */
+  public int size() {
+    return starts.length;
+  }
+
+  public boolean isEmpty() {
+    return starts.length == 0;
+  }
+
+  /** The (inclusive) start of the range with the given id. */
+  public int start(int id) {
+    return starts[id];
+  }
+
+  /** The (inclusive) end of the range with the given id. */
+  public int end(int id) {
+    return ends[id];
+  }
+
+  /** The range with the given id as character offsets. */
+  public OffsetRange<CharOffset> asCharOffsetRange(int id) {
+    return OffsetRange.charOffsetRange(starts[id], ends[id]);
+  }
+
+  /** The ids of all ranges containing {@code point}. */
+  public int[] rangesContaining(int point) {
+    return collect(Query.OVERLAPPING, point, point);
+  }
+
+  /** The ids of all ranges which contain all of {@code [start, end]}. */
+  public int[] rangesContaining(int start, int end) {
+    checkRange(start, end);
+    return collect(Query.CONTAINING, start, end);
+  }
+
+  /** The ids of all ranges which lie entirely within {@code [start, end]}. */
+  public int[] rangesContainedBy(int start, int end) {
+    checkRange(start, end);
+    return collect(Query.CONTAINED_BY, start, end);
+  }
+
+  /** The ids of all ranges which share at least one position with {@code [start, end]}. */
+  public int[] rangesOverlapping(int start, int end) {
+    checkRange(start, end);
+    return collect(Query.OVERLAPPING, start, end);
+  }
+
+  /**
+   * For each of {@code sortedPoints}, which must be in non-decreasing order, the ids of all ranges
+   * containing it. This sweeps through the points and ranges together, so it takes {@code O(n + m +
+   * k)} time for {@code m} points with {@code k} results in total, which is much faster than
+   * separate queries for e.g. all token offsets of a document.
+   */
+  public int[][] rangesContainingEach(int[] sortedPoints) {
+    final int[][] ret = new int[sortedPoints.length][];
+    // positions in sorted order of the ranges which have started, some of which may have ended
+    final IntList active = new IntList(16);
+    int nextToStart = 0;
+    for (int p = 0; p < sortedPoints.length; ++p) {
+      final int point = sortedPoints[p];
+      checkArgument(
+          p == 0 || sortedPoints[p - 1] <= point,
+          "Points must be sorted, but %s follows %s",
+          point,
+          p > 0 ? sortedPoints[p - 1] : point);
+      while (nextToStart < sortedStarts.length && sortedStarts[nextToStart] <= point) {
+        active.add(nextToStart++);
+      }
+      // drop ranges which ended before this point. Since points only increase, they can never
+      // contain a later point either
+      active.removeIf(sortedEnds, point);
+      if (active.size() == 0) {
+        ret[p] = NO_IDS;
+      } else {
+        final int[] ids = new int[active.size()];
+        for (int i = 0; i < ids.length; ++i) {
+          ids[i] = sortedIds[active.get(i)];
+        }
+        ret[p] = ids;
+      }
+    }
+    return ret;
+  }
+
+  private enum Query {
+    OVERLAPPING,
+    CONTAINING,
+    CONTAINED_BY
+  }
+
+  private int[] collect(Query query, int start, int end) {
+    if (isEmpty()) {
+      return NO_IDS;
+    }
+    final IntList ret = new IntList(8);
+    collect(0, sortedStarts.length, query, start, end, ret);
+    return ret.size() == 0 ? NO_IDS : ret.toArray();
+  }
+
+  private void collect(int lo, int hi, Query query, int start, int end, IntList ret) {
+    if (lo >= hi) {
+      return;
+    }
+    final int mid = (lo + hi) >>> 1;
+    // every range we want must end at or after the start of the query, or, for ranges containing
+    // the query, at or after its end
+    final int minEnd = query == Query.CONTAINING ? end : start;
+    if (subtreeMaxEnds[mid] < minEnd) {
+      return;
+    }
+    collect(lo, mid, query, start, end, ret);
+    // every range we want must start at or before the end of the query, or, for ranges containing
+    // the query, at or before its start. Since ranges are sorted by start, we can stop otherwise
+    final int maxStart = query == Query.CONTAINING ? start : end;
+    if (sortedStarts[mid] > maxStart) {
+      return;
+    }
+    final boolean matches;
+    switch (query) {
+      case OVERLAPPING:
+        matches = sortedEnds[mid] >= start;
+        break;
+      case CONTAINING:
+        matches = sortedEnds[mid] >= end;
+        break;
+      case CONTAINED_BY:
+        matches = sortedStarts[mid] >= start && sortedEnds[mid] <= end;
+        break;
+      default:
+        throw new IllegalStateException("Unknown query type " + query);
+    }
+    if (matches) {
+      ret.add(sortedIds[mid]);
+    }
+    collect(mid + 1, hi, query, start, end, ret);
+  }
+
+  private int computeSubtreeMaxEnds(int lo, int hi) {
+    final int mid = (lo + hi) >>> 1;
+    int max = sortedEnds[mid];
+    if (lo < mid) {
+      max = Math.max(max, computeSubtreeMaxEnds(lo, mid));
+    }
+    if (mid + 1 < hi) {
+      max = Math.max(max, computeSubtreeMaxEnds(mid + 1, hi));
+    }
+    subtreeMaxEnds[mid] = max;
+    return max;
+  }
+
+  private static void checkRange(int start, int end) {
+    checkArgument(start <= end, "Query start %s may not exceed its end %s", start, end);
+  }
+
+  /** A minimal growable list of ints. */
+  private static final class IntList {
+
+    private int[] values;
+    private int size = 0;
+
+    IntList(int initialCapacity) {
+      values = new int[Math.max(1, initialCapacity)];
+    }
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, 2 * size);
+      }
+      values[size++] = value;
+    }
+
+    int get(int idx) {
+      return values[idx];
+    }
+
+    int size() {
+      return size;
+    }
+
+    /** Removes, preserving order, every value {@code v} for which {@code ends[v] < point}. */
+    void removeIf(int[] ends, int point) {
+      int kept = 0;
+      for (int i = 0; i < size; ++i) {
+        if (ends[values[i]] >= point) {
+          values[kept++] = values[i];
+        }
+      }
+      size = kept;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+}
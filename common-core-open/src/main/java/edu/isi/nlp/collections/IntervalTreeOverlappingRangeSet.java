@@ -0,0 +1,193 @@
+package edu.isi.nlp.collections;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Range;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * An {@link OverlappingRangeSet} which answers queries in {@code O(log(n) + k)} time, where {@code
+ * k} is the number of stored ranges overlapping the query. Construction is {@code O(n log(n))}.
+ * Results are identical to those of {@link ImmutableOverlappingRangeSet}, including that
+ * multiplicity is not preserved, so prefer {@link OverlappingRangeSets#copyOf(Iterable)}, which
+ * picks between the two based on size.
+ *
+ * <p>The ranges are stored sorted by lower endpoint and treated as an implicit balanced binary
+ * search tree, in which each node records the greatest upper endpoint in its subtree. A query can
+ * then skip every subtree which ends before it and everything which starts after it. All stored
+ * ranges must be bounded; query ranges need not be.
+ */
+public final class IntervalTreeOverlappingRangeSet<T extends Comparable<T>>
+    implements OverlappingRangeSet<T> {
+
+  private final ImmutableList<Range<T>> ranges;
+  // the greatest upper endpoint of any range in the subtree rooted at each index
+  private final ImmutableList<T> subtreeMaxUpperEndpoints;
+
+  private IntervalTreeOverlappingRangeSet(final Iterable<Range<T>> ranges) {
+    this.ranges =
+        IntervalTreeOverlappingRangeSet.<T>rangeOrdering()
+            .immutableSortedCopy(ImmutableSet.copyOf(ranges));
+    for (final Range<T> range : this.ranges) {
+      checkArgument(
+          range.hasLowerBound() && range.hasUpperBound(),
+          "Ranges in an OverlappingRangeSet must be bounded, but got %s",
+          range);
+    }
+    final List<T> maxUpperEndpoints = new ArrayList<>(this.ranges.size());
+    for (int i = 0; i < this.ranges.size(); ++i) {
+      maxUpperEndpoints.add(null);
+    }
+    if (!this.ranges.isEmpty()) {
+      computeSubtreeMaxUpperEndpoints(0, this.ranges.size(), maxUpperEndpoints);
+    }
+    this.subtreeMaxUpperEndpoints = ImmutableList.copyOf(maxUpperEndpoints);
+  }
+
+  public static <T extends Comparable<T>> IntervalTreeOverlappingRangeSet<T> create(
+      final Iterable<Range<T>> ranges) {
+    return new IntervalTreeOverlappingRangeSet<>(ranges);
+  }
+
+  /**
+   * Returns all ranges for which {@link Range#contains(Comparable)} item is true, without
+   * preserving multiplicity.
+   */
+  @Override
+  public Collection<Range<T>> rangesContaining(final T item) {
+    return collect(
+        item,
+        item,
+        new Predicate<Range<T>>() {
+          @Override
+          public boolean apply(final Range<T> range) {
+            return range.contains(item);
+          }
+        });
+  }
+
+  /**
+   * Finds every range in this object for which {@code range}.{@link Range#encloses(Range)} {@code
+   * queryRange}, without preserving multiplicity.
+   */
+  @Override
+  public Collection<Range<T>> rangesContaining(final Range<T> queryRange) {
+    return collect(
+        queryRange,
+        new Predicate<Range<T>>() {
+          @Override
+          public boolean apply(final Range<T> range) {
+            return range.encloses(queryRange);
+          }
+        });
+  }
+
+  /**
+   * Finds every range in this object for which {@code queryRange}.{@link Range#encloses(Range)},
+   * without preserving multiplicity.
+   */
+  @Override
+  public Collection<Range<T>> rangesContainedBy(final Range<T> queryRange) {
+    return collect(
+        queryRange,
+        new Predicate<Range<T>>() {
+          @Override
+          public boolean apply(final Range<T> range) {
+            return queryRange.encloses(range);
+          }
+        });
+  }
+
+  /**
+   * Returns all {@link Range}s {@link Range#isConnected(Range)} to the {@code queryRange} for which
+   * {@link Range#isEmpty()} is false. Does not preserve multiplicity of {@link Range}s
+   */
+  @Override
+  public Collection<Range<T>> rangesOverlapping(final Range<T> queryRange) {
+    return collect(
+        queryRange,
+        new Predicate<Range<T>>() {
+          @Override
+          public boolean apply(final Range<T> range) {
+            return range.isConnected(queryRange) && !range.intersection(queryRange).isEmpty();
+          }
+        });
+  }
+
+  private Collection<Range<T>> collect(
+      final Range<T> queryRange, final Predicate<Range<T>> predicate) {
+    // every range which could satisfy any of our queries must at least touch the query range
+    return collect(
+        queryRange.hasLowerBound() ? queryRange.lowerEndpoint() : null,
+        queryRange.hasUpperBound() ? queryRange.upperEndpoint() : null,
+        predicate);
+  }
+
+  /**
+   * Returns, in sorted order, all ranges satisfying {@code predicate}, which must only accept
+   * ranges which touch the (possibly unbounded) interval from {@code lowerLimit} to {@code
+   * upperLimit} inclusive.
+   */
+  private Collection<Range<T>> collect(
+      @Nullable final T lowerLimit,
+      @Nullable final T upperLimit,
+      final Predicate<Range<T>> predicate) {
+    final ImmutableSet.Builder<Range<T>> ret = ImmutableSet.builder();
+    collect(0, ranges.size(), lowerLimit, upperLimit, predicate, ret);
+    return ret.build();
+  }
+
+  private void collect(
+      final int lo,
+      final int hi,
+      @Nullable final T lowerLimit,
+      @Nullable final T upperLimit,
+      final Predicate<Range<T>> predicate,
+      final ImmutableSet.Builder<Range<T>> ret) {
+    if (lo >= hi) {
+      return;
+    }
+    final int mid = (lo + hi) >>> 1;
+    // bound types are ignored when pruning, so we prune only when no range could possibly match
+    if (lowerLimit != null && subtreeMaxUpperEndpoints.get(mid).compareTo(lowerLimit) < 0) {
+      return;
+    }
+    collect(lo, mid, lowerLimit, upperLimit, predicate, ret);
+    final Range<T> range = ranges.get(mid);
+    // ranges are sorted by lower endpoint, so nothing from here on can start early enough
+    if (upperLimit != null && range.lowerEndpoint().compareTo(upperLimit) > 0) {
+      return;
+    }
+    if (predicate.apply(range)) {
+      ret.add(range);
+    }
+    collect(mid + 1, hi, lowerLimit, upperLimit, predicate, ret);
+  }
+
+  private T computeSubtreeMaxUpperEndpoints(final int lo, final int hi, final List<T> maxima) {
+    final int mid = (lo + hi) >>> 1;
+    T max = ranges.get(mid).upperEndpoint();
+    if (lo < mid) {
+      max = Ordering.natural().max(max, computeSubtreeMaxUpperEndpoints(lo, mid, maxima));
+    }
+    if (mid + 1 < hi) {
+      max = Ordering.natural().max(max, computeSubtreeMaxUpperEndpoints(mid + 1, hi, maxima));
+    }
+    maxima.set(mid, max);
+    return max;
+  }
+
+  private static <T extends Comparable<T>> Ordering<Range<T>> rangeOrdering() {
+    return Ordering.natural()
+        .onResultOf(RangeUtils.<T>lowerEndPointFunction())
+        .compound(Ordering.natural().onResultOf(RangeUtils.<T>upperEndPointFunction()))
+        .compound(Ordering.usingToString());
+  }
+}
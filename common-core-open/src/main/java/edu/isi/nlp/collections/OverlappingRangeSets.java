@@ -0,0 +1,31 @@
+package edu.isi.nlp.collections;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Range;
+
+/** Utilities for working with {@link OverlappingRangeSet}s. */
+public final class OverlappingRangeSets {
+
+  private OverlappingRangeSets() {
+    throw new UnsupportedOperationException();
+  }
+
+  /** Below this many ranges, a linear scan is cheaper than the bookkeeping of an interval tree. */
+  static final int INTERVAL_TREE_THRESHOLD = 32;
+
+  /**
+   * Creates an {@link OverlappingRangeSet} of the provided bounded ranges. Queries give the same
+   * results regardless of the implementation chosen, but for more than a handful of ranges an
+   * {@link IntervalTreeOverlappingRangeSet} is used so queries take time logarithmic, rather than
+   * linear, in the number of ranges.
+   */
+  public static <T extends Comparable<T>> OverlappingRangeSet<T> copyOf(
+      final Iterable<Range<T>> ranges) {
+    final ImmutableList<Range<T>> rangeList = ImmutableList.copyOf(ranges);
+    if (rangeList.size() < INTERVAL_TREE_THRESHOLD) {
+      return ImmutableOverlappingRangeSet.create(rangeList);
+    } else {
+      return IntervalTreeOverlappingRangeSet.create(rangeList);
+    }
+  }
+}
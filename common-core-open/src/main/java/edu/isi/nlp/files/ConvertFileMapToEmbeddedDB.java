@@ -1,19 +1,41 @@
 package edu.isi.nlp.files;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.io.ByteSource;
 import edu.isi.nlp.parameters.Parameters;
 import edu.isi.nlp.symbols.Symbol;
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Converts a a key-to-file map to a PalDB-backed database.
  *
+ * <p>Parameters:
+ *
+ * <ul>
+ *   <li>{@code inputMap}: the key-to-file map.
+ *   <li>{@code outputFile}: the database to write, if there is only one shard.
+ *   <li>{@code outputDirectory}: the directory to write a sharded database to, if there is more
+ *       than one shard. This can be read with {@link KeyValueSources#fromShardedPalDB(File)}.
+ *   <li>{@code useCompression} (optional, default true): whether to compress values.
+ *   <li>{@code numShards} (optional, default 1): the number of databases to partition the keys
+ *       across.
+ *   <li>{@code numThreads} (optional, default 1): how many files to read at once. With more than
+ *       one shard, this is also how many threads write and close the shards.
+ * </ul>
+ *
  * @author Constantine Lignos
  */
 public final class ConvertFileMapToEmbeddedDB {
@@ -30,51 +52,101 @@ public final class ConvertFileMapToEmbeddedDB {
     }
   }
 
-  private static void trueMain(String[] args) throws IOException {
+  private static void trueMain(String[] args) throws IOException, InterruptedException {
     if (args.length != 1) {
       System.out.println("No parameter file specified");
       System.exit(1);
     }
     final Parameters params = Parameters.loadSerifStyle(new File(args[0]));
     final File inputMap = params.getExistingFile("inputMap");
-    final File outputFile = params.getCreatableFile("outputFile");
     final boolean useCompression = params.getOptionalBoolean("useCompression").or(true);
+    final int numShards = params.getOptionalPositiveInteger("numShards").or(1);
+    final int numThreads = params.getOptionalPositiveInteger("numThreads").or(1);
+    final File output =
+        numShards > 1
+            ? params.getCreatableDirectory("outputDirectory")
+            : params.getCreatableFile("outputFile");
 
-    // Set up timing
-    long readTime = 0;
-    long writeTime = 0;
+    // Set up timing. With several threads, read and write times are summed over threads.
+    final AtomicLong readTime = new AtomicLong();
+    final AtomicLong writeTime = new AtomicLong();
 
     log.info("Loading files from {}", inputMap);
     final Stopwatch stopwatch = Stopwatch.createStarted();
     final ImmutableMap<Symbol, File> fileMap = FileUtils.loadSymbolToFileMap(inputMap);
     final ImmutableKeyValueSource<Symbol, ByteSource> source = KeyValueSources.fromFileMap(fileMap);
-    readTime += stopwatch.elapsed(TimeUnit.MILLISECONDS);
+    readTime.addAndGet(stopwatch.elapsed(TimeUnit.MILLISECONDS));
 
     // To allow us to time the open/close operations, we don't use try-with-resources
     stopwatch.reset().start();
-    final KeyValueSink<Symbol, byte[]> sink = KeyValueSinks.forPalDB(outputFile, useCompression);
-    writeTime += stopwatch.elapsed(TimeUnit.MILLISECONDS);
+    final KeyValueSink<Symbol, byte[]> sink =
+        numShards > 1
+            ? KeyValueSinks.forShardedPalDB(output, numShards, useCompression, numThreads)
+            : KeyValueSinks.forPalDB(output, useCompression);
+    writeTime.addAndGet(stopwatch.elapsed(TimeUnit.MILLISECONDS));
 
-    // Process files
-    for (final Symbol key : source.keys()) {
-      // Read
-      stopwatch.reset().start();
-      byte[] value = source.getRequired(key).read();
-      readTime += stopwatch.elapsed(TimeUnit.MILLISECONDS);
+    // Process files. Each thread takes every numThreads-th key.
+    final ImmutableList<Symbol> keys = ImmutableList.copyOf(source.keys());
+    final ImmutableList.Builder<Callable<Void>> jobs = ImmutableList.builder();
+    for (int thread = 0; thread < numThreads; ++thread) {
+      final int firstKey = thread;
+      jobs.add(
+          new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+              final Stopwatch stopwatch = Stopwatch.createUnstarted();
+              for (int i = firstKey; i < keys.size(); i += numThreads) {
+                final Symbol key = keys.get(i);
+                // Read
+                stopwatch.reset().start();
+                final byte[] value = source.getRequired(key).read();
+                readTime.addAndGet(stopwatch.elapsed(TimeUnit.MILLISECONDS));
 
-      // Write
-      stopwatch.reset().start();
-      sink.put(key, value);
-      writeTime += stopwatch.elapsed(TimeUnit.MILLISECONDS);
+                // Write
+                stopwatch.reset().start();
+                put(sink, key, value, numShards > 1);
+                writeTime.addAndGet(stopwatch.elapsed(TimeUnit.MILLISECONDS));
+              }
+              return null;
+            }
+          });
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      final List<Future<Void>> results = executor.invokeAll(jobs.build());
+      for (final Future<Void> result : results) {
+        try {
+          result.get();
+        } catch (ExecutionException e) {
+          throw new IOException("Failed to convert documents", e.getCause());
+        }
+      }
+    } finally {
+      executor.shutdownNow();
     }
 
     // Time closing
     stopwatch.reset().start();
     sink.close();
-    writeTime += stopwatch.elapsed(TimeUnit.MILLISECONDS);
+    writeTime.addAndGet(stopwatch.elapsed(TimeUnit.MILLISECONDS));
 
-    log.info("Wrote {} documents to {}", fileMap.size(), outputFile);
-    log.info("Read time: {}", readTime);
-    log.info("Write time: {}", writeTime);
+    log.info("Wrote {} documents to {} in {} shard(s)", fileMap.size(), output, numShards);
+    log.info("Read time: {}", readTime.get());
+    log.info("Write time: {}", writeTime.get());
+  }
+
+  private static void put(
+      final KeyValueSink<Symbol, byte[]> sink,
+      final Symbol key,
+      final byte[] value,
+      final boolean sinkIsThreadSafe)
+      throws IOException {
+    if (sinkIsThreadSafe) {
+      sink.put(key, value);
+    } else {
+      synchronized (sink) {
+        sink.put(key, value);
+      }
+    }
   }
 }
@@ -2,14 +2,20 @@ package edu.isi.nlp.files;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.common.base.Functions;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Ordering;
 import com.google.common.io.ByteSource;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.ListenableFuture;
 import edu.isi.nlp.symbols.Symbol;
 import java.io.File;
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import javax.annotation.Nonnull;
 
 /**
@@ -44,6 +50,33 @@ final class FileMapKeyToByteSource extends AbstractImmutableKeyValueSource<Symbo
     }
   }
 
+  /**
+   * Values are returned in order of their paths, which keeps files in the same directory together.
+   */
+  @Nonnull
+  @Override
+  public ImmutableMap<Symbol, ByteSource> getAll(final Iterable<Symbol> keys) {
+    final ImmutableList.Builder<Symbol> present = ImmutableList.builder();
+    for (final Symbol key : ImmutableSet.copyOf(keys)) {
+      if (fileMap.containsKey(key)) {
+        present.add(key);
+      }
+    }
+    final ImmutableMap.Builder<Symbol, ByteSource> ret = ImmutableMap.builder();
+    for (final Symbol key :
+        Ordering.natural().onResultOf(Functions.forMap(fileMap)).sortedCopy(present.build())) {
+      ret.put(key, Files.asByteSource(fileMap.get(key)));
+    }
+    return ret.build();
+  }
+
+  @Nonnull
+  @Override
+  public ListenableFuture<ImmutableMap<Symbol, ByteSource>> getAllAsync(
+      final Iterable<Symbol> keys, final ExecutorService executor) {
+    return KeyValueSources.readAllAsync(this, keys, executor);
+  }
+
   @Override
   public void close() {
     // No resources to close
@@ -7,6 +7,7 @@ import static com.google.common.collect.Iterables.skip;
 import static com.google.common.collect.Iterables.transform;
 import static java.nio.file.Files.walkFileTree;
 
+import com.google.common.annotations.Beta;
 import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
@@ -218,7 +219,17 @@ public final class FileUtils {
 
   public static ImmutableMap<Symbol, File> loadSymbolToFileMap(final CharSource source)
       throws IOException {
-    return loadMap(source, SymbolUtils.symbolizeFunction(), FileFunction.INSTANCE);
+    // we load with string keys and then intern all keys in bulk, which is cheaper than interning
+    // them one at a time for large maps
+    final ImmutableMap<String, File> stringToFileMap =
+        loadMap(source, Functions.<String>identity(), FileFunction.INSTANCE);
+    final ImmutableList<Symbol> keys = Symbol.fromAll(stringToFileMap.keySet());
+    final ImmutableMap.Builder<Symbol, File> ret = ImmutableMap.builder();
+    int i = 0;
+    for (final File file : stringToFileMap.values()) {
+      ret.put(keys.get(i++), file);
+    }
+    return ret.build();
   }
 
   public static ImmutableListMultimap<Symbol, File> loadSymbolToFileListMultimap(
@@ -573,7 +584,7 @@ public final class FileUtils {
    * comments.
    */
   public static ImmutableList<Symbol> loadSymbolList(final CharSource source) throws IOException {
-    return SymbolUtils.listFrom(loadStringList(source));
+    return Symbol.fromAll(loadStringList(source));
   }
 
   public static Function<File, String> toNameFunction() {
@@ -808,6 +819,15 @@ public final class FileUtils {
     return GZIPByteSink.gzipCompress(Files.asByteSink(f));
   }
 
+  /**
+   * Like {@link #asCompressedByteSink(File)}, but compresses using {@code numThreads} threads. See
+   * {@link GZIPByteSink#parallelGzipCompress(ByteSink, int)}.
+   */
+  @Beta
+  public static ByteSink asCompressedByteSink(File f, int numThreads) throws IOException {
+    return GZIPByteSink.parallelGzipCompress(Files.asByteSink(f), numThreads);
+  }
+
   /**
    * Just like {@link Files#asCharSource(java.io.File, java.nio.charset.Charset)}, but decompresses
    * the incoming data using GZIP.
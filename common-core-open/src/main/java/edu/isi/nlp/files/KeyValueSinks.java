@@ -1,5 +1,6 @@
 package edu.isi.nlp.files;
 
+import com.google.common.annotations.Beta;
 import com.google.common.base.Function;
 import edu.isi.nlp.symbols.Symbol;
 import edu.isi.nlp.symbols.SymbolUtils;
@@ -34,6 +35,83 @@ public final class KeyValueSinks {
     return PalDBKeyValueSink.forFile(dbFile, compressValues);
   }
 
+  /**
+   * Creates a new key-value sink which writes a store that can be memory-mapped by {@link
+   * KeyValueSources#fromMapped(File)}. This needs no dependencies beyond the JDK and supports
+   * stores over 2 GB. Values are not compressed. The keys are held in memory until the sink is
+   * closed, at which point the key directory is written.
+   *
+   * @param storeDir the directory to write the store to, which is created if needed. Any store
+   *     already in it is overwritten.
+   * @return a key-value sink
+   * @throws IOException if the store could not be opened for writing
+   */
+  @Beta
+  @Nonnull
+  public static KeyValueSink<Symbol, byte[]> forMapped(final File storeDir) throws IOException {
+    return MappedKeyValueSink.forDirectory(storeDir);
+  }
+
+  /**
+   * Creates a new key-value sink which partitions keys by hash across {@code numShards} embedded
+   * databases in {@code shardDir}, which can be read with {@link
+   * KeyValueSources#fromShardedPalDB(File)}. Unlike the other sinks, this may be written to from
+   * multiple threads, and threads writing to different shards don't block each other. Closing the
+   * sink closes the shards on {@code numThreads} threads, but PalDB can only build one index at a
+   * time, so the shards' indices are built one after another.
+   *
+   * @param shardDir the directory to write the shards to, which is created if needed
+   * @param numShards the number of shards
+   * @param compressValues whether to compress values
+   * @param numThreads the number of shards to close at once
+   * @return a key-value sink
+   * @throws IOException if any shard could not be opened for writing
+   */
+  @Beta
+  @Nonnull
+  public static KeyValueSink<Symbol, byte[]> forShardedPalDB(
+      final File shardDir, final int numShards, final boolean compressValues, final int numThreads)
+      throws IOException {
+    return ShardedKeyValueSink.forDirectory(
+        shardDir,
+        numShards,
+        numThreads,
+        new ShardedKeyValueSink.ShardSinkFactory() {
+          @Override
+          public KeyValueSink<Symbol, byte[]> create(final File shardFile) throws IOException {
+            return forPalDB(shardFile, compressValues);
+          }
+        });
+  }
+
+  /**
+   * Creates a new key-value sink which partitions keys by hash across {@code numShards} stores in
+   * the format of {@link #forMapped(File)} in {@code shardDir}, which can be read with {@link
+   * KeyValueSources#fromShardedMapped(File)}. This may be written to from multiple threads, as for
+   * {@link #forShardedPalDB(File, int, boolean, int)}.
+   *
+   * @param shardDir the directory to write the shards to, which is created if needed
+   * @param numShards the number of shards
+   * @param numThreads the number of shards to close at once
+   * @return a key-value sink
+   * @throws IOException if any shard could not be opened for writing
+   */
+  @Beta
+  @Nonnull
+  public static KeyValueSink<Symbol, byte[]> forShardedMapped(
+      final File shardDir, final int numShards, final int numThreads) throws IOException {
+    return ShardedKeyValueSink.forDirectory(
+        shardDir,
+        numShards,
+        numThreads,
+        new ShardedKeyValueSink.ShardSinkFactory() {
+          @Override
+          public KeyValueSink<Symbol, byte[]> create(final File shardFile) throws IOException {
+            return forMapped(shardFile);
+          }
+        });
+  }
+
   /**
    * Creates a new key-value sink backed by a zip file using the default (identity) mapping between
    * keys and the entry inside the zip used for storing their value. The caller must ensure that the
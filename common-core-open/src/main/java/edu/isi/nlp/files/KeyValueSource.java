@@ -1,8 +1,15 @@
 package edu.isi.nlp.files;
 
+import com.google.common.annotations.Beta;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.io.IOException;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import javax.annotation.Nonnull;
 
 /**
@@ -55,6 +62,56 @@ public interface KeyValueSource<K, V> extends AutoCloseable {
   @Nonnull
   V getRequired(K key) throws IOException;
 
+  /**
+   * Returns the values of those of {@code keys} which are present, in a single batch. Keys which
+   * are not present are omitted. Repeated keys are looked up once.
+   *
+   * <p>The returned map iterates in the order the values are stored in where the backing source
+   * exposes it, and otherwise in the order of {@code keys}. For sources whose values are lazy views
+   * of stored data, reading the values in iteration order minimizes random reads.
+   *
+   * <p>The default implementation looks up each key with {@link #get(Object)}, in the order of
+   * {@code keys}. Implementations should override this if the backing source can do better.
+   *
+   * @see #getAllAsync(Iterable, ExecutorService)
+   */
+  @Beta
+  @Nonnull
+  default ImmutableMap<K, V> getAll(Iterable<K> keys) throws IOException {
+    final ImmutableMap.Builder<K, V> ret = ImmutableMap.builder();
+    for (final K key : ImmutableSet.copyOf(keys)) {
+      final Optional<V> value = get(key);
+      if (value.isPresent()) {
+        ret.put(key, value.get());
+      }
+    }
+    return ret.build();
+  }
+
+  /**
+   * Performs {@link #getAll(Iterable)} on {@code executor}. Sources whose values are lazy views of
+   * stored data, such as {@link com.google.common.io.ByteSource}s over files, also load the values
+   * into memory on the executor, so that reading them afterwards does not block on I/O. The caller
+   * remains responsible for shutting down the executor.
+   *
+   * <p>The default implementation runs {@link #getAll(Iterable)} on {@code executor}.
+   */
+  @Beta
+  @Nonnull
+  default ListenableFuture<ImmutableMap<K, V>> getAllAsync(
+      Iterable<K> keys, ExecutorService executor) {
+    // copy now in case the caller changes keys before the lookup runs
+    final ImmutableSet<K> keysToGet = ImmutableSet.copyOf(keys);
+    return MoreExecutors.listeningDecorator(executor)
+        .submit(
+            new Callable<ImmutableMap<K, V>>() {
+              @Override
+              public ImmutableMap<K, V> call() throws IOException {
+                return getAll(keysToGet);
+              }
+            });
+  }
+
   // This override is necessary to change the exception signature from Exception
   @Override
   void close() throws IOException;
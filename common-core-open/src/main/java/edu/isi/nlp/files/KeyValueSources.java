@@ -2,11 +2,15 @@ package edu.isi.nlp.files;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.common.annotations.Beta;
 import com.google.common.base.Function;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import edu.isi.nlp.symbols.Symbol;
 import edu.isi.nlp.symbols.SymbolUtils;
 import java.io.File;
@@ -15,6 +19,8 @@ import java.nio.charset.StandardCharsets;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import javax.annotation.Nonnull;
@@ -50,6 +56,72 @@ public final class KeyValueSources {
     return PalDBKeyValueSource.fromFile(dbFile);
   }
 
+  /**
+   * Creates a new key-value source which memory-maps a store written by {@link
+   * KeyValueSinks#forMapped(File)}. Opening the store takes constant time, lookups are binary
+   * searches over the mapped keys, and values are views of the mapped data which are not copied
+   * until they are read. The store must not be modified while the source is in use.
+   *
+   * @param storeDir a directory written by {@link KeyValueSinks#forMapped(File)}
+   * @return a key-value source
+   * @throws IOException if the store could not be opened for reading
+   */
+  @Beta
+  @Nonnull
+  public static ImmutableKeyValueSource<Symbol, ByteSource> fromMapped(final File storeDir)
+      throws IOException {
+    return MappedKeyValueSource.fromDirectory(storeDir);
+  }
+
+  /**
+   * Creates a new key-value source over the sharded embedded databases written by {@link
+   * KeyValueSinks#forShardedPalDB(File, int, boolean, int)}. Each shard is opened the first time it
+   * is needed.
+   *
+   * @param shardDir a directory written by {@link KeyValueSinks#forShardedPalDB(File, int, boolean,
+   *     int)}
+   * @return a key-value source
+   * @throws IOException if the directory does not contain a complete sharded store
+   */
+  @Beta
+  @Nonnull
+  public static ImmutableKeyValueSource<Symbol, ByteSource> fromShardedPalDB(final File shardDir)
+      throws IOException {
+    return ShardedKeyValueSource.fromDirectory(
+        shardDir,
+        new ShardedKeyValueSource.ShardSourceFactory() {
+          @Override
+          public ImmutableKeyValueSource<Symbol, ByteSource> open(final File shardFile)
+              throws IOException {
+            return fromPalDB(shardFile);
+          }
+        });
+  }
+
+  /**
+   * Creates a new key-value source over the sharded memory-mapped stores written by {@link
+   * KeyValueSinks#forShardedMapped(File, int, int)}. Each shard is mapped the first time it is
+   * needed.
+   *
+   * @param shardDir a directory written by {@link KeyValueSinks#forShardedMapped(File, int, int)}
+   * @return a key-value source
+   * @throws IOException if the directory does not contain a complete sharded store
+   */
+  @Beta
+  @Nonnull
+  public static ImmutableKeyValueSource<Symbol, ByteSource> fromShardedMapped(final File shardDir)
+      throws IOException {
+    return ShardedKeyValueSource.fromDirectory(
+        shardDir,
+        new ShardedKeyValueSource.ShardSourceFactory() {
+          @Override
+          public ImmutableKeyValueSource<Symbol, ByteSource> open(final File shardFile)
+              throws IOException {
+            return fromMapped(shardFile);
+          }
+        });
+  }
+
   /**
    * Creates a new source using a zip file where each value is located at an entry with the same
    * name as the key. The caller must ensure that the zip file is not closed or modified, otherwise
@@ -126,4 +198,29 @@ public final class KeyValueSources {
 
     return new ZipKeyValueSource(zipFile, keyToZipEntryName);
   }
+
+  /**
+   * Implements {@link KeyValueSource#getAllAsync(Iterable, ExecutorService)} for sources whose
+   * values are lazy views of stored data by reading each value into memory on the executor, in the
+   * order returned by {@link KeyValueSource#getAll(Iterable)}.
+   */
+  static ListenableFuture<ImmutableMap<Symbol, ByteSource>> readAllAsync(
+      final KeyValueSource<Symbol, ByteSource> source,
+      final Iterable<Symbol> keys,
+      final ExecutorService executor) {
+    // copy now in case the caller changes keys before the lookup runs
+    final ImmutableSet<Symbol> keysToRead = ImmutableSet.copyOf(keys);
+    return MoreExecutors.listeningDecorator(executor)
+        .submit(
+            new Callable<ImmutableMap<Symbol, ByteSource>>() {
+              @Override
+              public ImmutableMap<Symbol, ByteSource> call() throws IOException {
+                final ImmutableMap.Builder<Symbol, ByteSource> ret = ImmutableMap.builder();
+                for (final Map.Entry<Symbol, ByteSource> e : source.getAll(keysToRead).entrySet()) {
+                  ret.put(e.getKey(), ByteSource.wrap(e.getValue().read()));
+                }
+                return ret.build();
+              }
+            });
+  }
 }
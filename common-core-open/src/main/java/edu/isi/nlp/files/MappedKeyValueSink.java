@@ -0,0 +1,106 @@
+package edu.isi.nlp.files;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.collect.Sets;
+import com.google.common.io.Closeables;
+import edu.isi.nlp.io.SortedKeyDirectory;
+import edu.isi.nlp.symbols.Symbol;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link KeyValueSink} which writes a store directory which can be memory-mapped by {@link
+ * MappedKeyValueSource}. Values are streamed to the values file as they are put, while the keys and
+ * value locations are held in memory and written, sorted, to the key directory when this is closed.
+ * The key directory is moved into place only once it is complete, so the store can't be read until
+ * this has been closed successfully.
+ */
+final class MappedKeyValueSink implements KeyValueSink<Symbol, byte[]> {
+
+  private final File storeDir;
+  private final OutputStream values;
+  private final SortedKeyDirectory.Writer directory = new SortedKeyDirectory.Writer();
+  private final Set<Symbol> keysWritten = Sets.newHashSet();
+  private long valuesSize = 0;
+  private boolean closed = false;
+
+  private MappedKeyValueSink(final File storeDir, final OutputStream values) {
+    this.storeDir = checkNotNull(storeDir);
+    this.values = checkNotNull(values);
+  }
+
+  @Nonnull
+  static KeyValueSink<Symbol, byte[]> forDirectory(final File storeDir) throws IOException {
+    if (!storeDir.isDirectory() && !storeDir.mkdirs()) {
+      throw new IOException("Could not create store directory " + storeDir);
+    }
+    // remove any key directory from an earlier store, which would not match the new values
+    final File keysFile = new File(storeDir, MappedKeyValueSource.KEYS_FILE);
+    if (keysFile.exists() && !keysFile.delete()) {
+      throw new IOException("Could not delete existing " + keysFile);
+    }
+    return new MappedKeyValueSink(
+        storeDir,
+        new BufferedOutputStream(
+            new FileOutputStream(new File(storeDir, MappedKeyValueSource.VALUES_FILE))));
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws IllegalArgumentException if {@code key} has already been put
+   */
+  @Override
+  public void put(final Symbol key, final byte[] value) throws IOException {
+    checkState(!closed, "Sink is closed");
+    checkArgument(keysWritten.add(key), "Duplicate key %s", key);
+    values.write(value);
+    directory.add(key, valuesSize, value.length);
+    valuesSize += value.length;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    values.close();
+
+    // the key directory is written under a temporary name and moved into place once complete, so
+    // a store whose writing fails can't be opened
+    final File keysFile = new File(storeDir, MappedKeyValueSource.KEYS_FILE);
+    final File tmpKeysFile = new File(storeDir, MappedKeyValueSource.KEYS_FILE + ".tmp");
+    final DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpKeysFile)));
+    boolean threw = true;
+    try {
+      out.writeInt(MappedKeyValueSource.MAGIC);
+      out.writeInt(MappedKeyValueSource.VERSION);
+      out.writeInt(directory.size());
+      out.writeLong(
+          SortedKeyDirectory.keyBlockStart(MappedKeyValueSource.HEADER_BYTES, directory.size()));
+      out.writeLong(valuesSize);
+      directory.writeTo(out);
+      threw = false;
+    } finally {
+      Closeables.close(out, threw);
+    }
+    Files.move(
+        tmpKeysFile.toPath(),
+        keysFile.toPath(),
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+}
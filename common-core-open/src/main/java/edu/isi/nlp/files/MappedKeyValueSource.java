@@ -0,0 +1,245 @@
+package edu.isi.nlp.files;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.ListenableFuture;
+import edu.isi.nlp.io.MappedByteSource;
+import edu.isi.nlp.io.SortedKeyDirectory;
+import edu.isi.nlp.symbols.Symbol;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link KeyValueSource} over a store directory written by {@link MappedKeyValueSink}. Both the
+ * key directory and the values file are memory-mapped, so opening a store takes constant time
+ * regardless of how many keys it has, lookups are binary searches over the mapped key directory,
+ * and values are returned as views of the mapped values file which copy nothing until they are
+ * read.
+ *
+ * <p>The store directory contains two files. {@value #VALUES_FILE} is the values, concatenated in
+ * the order they were written. {@value #KEYS_FILE} is big-endian and consists of a header of the
+ * magic number {@code 0x4B564458}, the format version ({@code 1}), the number of entries, the file
+ * position of the key block as a long, and the size of the values file as a long, followed by a
+ * {@link SortedKeyDirectory} of the keys, whose data are the position and length of each value in
+ * the values file.
+ *
+ * <p>The values file may be larger than 2 GB, in which case it is mapped as several windows and a
+ * value which crosses a window boundary is returned as a concatenation of views of each window. The
+ * key directory must be under 2 GB.
+ *
+ * <p>Mappings remain valid after the files are closed, so this holds no file descriptors and {@link
+ * #close()} does nothing; the mappings are released when this is garbage-collected. This is safe to
+ * use from multiple threads.
+ */
+final class MappedKeyValueSource extends AbstractImmutableKeyValueSource<Symbol, ByteSource> {
+
+  static final String KEYS_FILE = "keys.idx";
+  static final String VALUES_FILE = "values.dat";
+
+  static final int MAGIC = 0x4B564458;
+  static final int VERSION = 1;
+  static final int HEADER_BYTES = 28;
+
+  // package-private so tests can use smaller windows
+  static final long DEFAULT_WINDOW_BYTES = 1L << 30;
+
+  private final File storeDir;
+  private final SortedKeyDirectory directory;
+  private final long windowBytes;
+  // only duplicates of these are positioned, so they may be shared by threads
+  private final ByteBuffer[] windows;
+
+  private MappedKeyValueSource(
+      final File storeDir,
+      final ByteBuffer keys,
+      final long windowBytes,
+      final ByteBuffer[] windows)
+      throws IOException {
+    this.storeDir = checkNotNull(storeDir);
+    this.windowBytes = windowBytes;
+    this.windows = checkNotNull(windows);
+    keys.order(ByteOrder.BIG_ENDIAN);
+    if (keys.capacity() < HEADER_BYTES || keys.getInt(0) != MAGIC) {
+      throw new IOException(storeDir + " does not contain a mapped key-value store");
+    }
+    if (keys.getInt(4) != VERSION) {
+      throw new IOException(
+          "Unsupported mapped key-value store version " + keys.getInt(4) + " in " + storeDir);
+    }
+    final int numEntries = keys.getInt(8);
+    final long keyBlockStart = keys.getLong(12);
+    final long valuesSize = keys.getLong(20);
+    long mappedValuesSize = 0;
+    for (final ByteBuffer window : windows) {
+      mappedValuesSize += window.capacity();
+    }
+    if (numEntries < 0
+        || keyBlockStart != SortedKeyDirectory.keyBlockStart(HEADER_BYTES, numEntries)
+        || keyBlockStart > keys.capacity()
+        || valuesSize != mappedValuesSize) {
+      throw new IOException("Corrupt or truncated mapped key-value store in " + storeDir);
+    }
+    this.directory = SortedKeyDirectory.fromBuffer(keys, HEADER_BYTES, numEntries);
+  }
+
+  @Nonnull
+  static ImmutableKeyValueSource<Symbol, ByteSource> fromDirectory(final File storeDir)
+      throws IOException {
+    return fromDirectory(storeDir, DEFAULT_WINDOW_BYTES);
+  }
+
+  @Nonnull
+  static ImmutableKeyValueSource<Symbol, ByteSource> fromDirectory(
+      final File storeDir, final long windowBytes) throws IOException {
+    checkArgument(windowBytes > 0 && windowBytes <= Integer.MAX_VALUE);
+    final ByteBuffer keys;
+    final RandomAccessFile keysFile = new RandomAccessFile(new File(storeDir, KEYS_FILE), "r");
+    try {
+      final FileChannel channel = keysFile.getChannel();
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Key directory of " + storeDir + " is too large to map");
+      }
+      keys = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      keysFile.close();
+    }
+    final ByteBuffer[] windows;
+    final RandomAccessFile valuesFile = new RandomAccessFile(new File(storeDir, VALUES_FILE), "r");
+    try {
+      final FileChannel channel = valuesFile.getChannel();
+      final long size = channel.size();
+      windows = new ByteBuffer[(int) ((size + windowBytes - 1) / windowBytes)];
+      for (int i = 0; i < windows.length; ++i) {
+        final long windowStart = i * windowBytes;
+        windows[i] =
+            channel.map(
+                FileChannel.MapMode.READ_ONLY,
+                windowStart,
+                Math.min(windowBytes, size - windowStart));
+      }
+    } finally {
+      valuesFile.close();
+    }
+    return new MappedKeyValueSource(storeDir, keys, windowBytes, windows);
+  }
+
+  /** Keys are returned in the order they are stored in, and are decoded as they are iterated. */
+  @Nonnull
+  @Override
+  public Iterable<Symbol> keys() {
+    return directory.keys();
+  }
+
+  @Nonnull
+  @Override
+  public Optional<ByteSource> get(final Symbol key) {
+    final int entry = directory.entryOf(key);
+    if (entry >= 0) {
+      return Optional.of(valueOf(entry));
+    } else {
+      return Optional.absent();
+    }
+  }
+
+  /** Values are returned in the order they are stored in the values file. */
+  @Nonnull
+  @Override
+  public ImmutableMap<Symbol, ByteSource> getAll(final Iterable<Symbol> keys) {
+    final List<Integer> entries = Lists.newArrayList();
+    final Map<Integer, Symbol> entryKeys = Maps.newHashMap();
+    for (final Symbol key : ImmutableSet.copyOf(keys)) {
+      final int entry = directory.entryOf(key);
+      if (entry >= 0) {
+        entries.add(entry);
+        entryKeys.put(entry, key);
+      }
+    }
+    Collections.sort(
+        entries,
+        new Comparator<Integer>() {
+          @Override
+          public int compare(final Integer left, final Integer right) {
+            return Long.compare(valueStartOf(left), valueStartOf(right));
+          }
+        });
+    final ImmutableMap.Builder<Symbol, ByteSource> ret = ImmutableMap.builder();
+    for (final int entry : entries) {
+      ret.put(entryKeys.get(entry), valueOf(entry));
+    }
+    return ret.build();
+  }
+
+  @Nonnull
+  @Override
+  public ListenableFuture<ImmutableMap<Symbol, ByteSource>> getAllAsync(
+      final Iterable<Symbol> keys, final ExecutorService executor) {
+    return KeyValueSources.readAllAsync(this, keys, executor);
+  }
+
+  @Override
+  public void close() {
+    // nothing to do; see class comment
+  }
+
+  private ByteSource valueOf(final int entry) {
+    return valueAt(valueStartOf(entry), directory.secondLongOf(entry));
+  }
+
+  private long valueStartOf(final int entry) {
+    return directory.firstLongOf(entry);
+  }
+
+  private ByteSource valueAt(final long start, final long length) {
+    final int firstWindow = (int) (start / windowBytes);
+    final int startInWindow = (int) (start - firstWindow * windowBytes);
+    if (startInWindow + length <= windowBytes) {
+      return viewOf(firstWindow, startInWindow, (int) length);
+    }
+    // the value crosses window boundaries
+    final ImmutableList.Builder<ByteSource> parts = ImmutableList.builder();
+    int window = firstWindow;
+    int position = startInWindow;
+    long remaining = length;
+    while (remaining > 0) {
+      final int partLength = (int) Math.min(remaining, windowBytes - position);
+      parts.add(viewOf(window, position, partLength));
+      remaining -= partLength;
+      ++window;
+      position = 0;
+    }
+    return ByteSource.concat(parts.build());
+  }
+
+  private ByteSource viewOf(final int window, final int position, final int length) {
+    if (length == 0) {
+      return ByteSource.empty();
+    }
+    final ByteBuffer view = windows[window].duplicate();
+    view.limit(position + length);
+    view.position(position);
+    return MappedByteSource.wrap(view);
+  }
+
+  @Override
+  public String toString() {
+    return "MappedKeyValueSource(" + storeDir + ", " + directory.size() + " keys)";
+  }
+}
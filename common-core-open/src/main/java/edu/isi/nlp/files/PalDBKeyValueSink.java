@@ -59,7 +59,10 @@ final class PalDBKeyValueSink implements KeyValueSink<Symbol, byte[]> {
   @Override
   public void close() throws IOException {
     try {
-      writer.close();
+      // closing builds the index, which hashes every key
+      synchronized (PalDBKeyValueSource.PALDB_HASH_LOCK) {
+        writer.close();
+      }
     } catch (Exception e) {
       // The writer throws all underlying IOExceptions as unchecked exceptions, so we undo this,
       // providing checked exceptions from the cause if it is an IOException.
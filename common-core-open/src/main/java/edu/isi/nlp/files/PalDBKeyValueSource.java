@@ -5,6 +5,8 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
 import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.io.ByteSource;
 import com.linkedin.paldb.api.NotFoundException;
 import com.linkedin.paldb.api.PalDB;
@@ -13,6 +15,7 @@ import edu.isi.nlp.symbols.Symbol;
 import edu.isi.nlp.symbols.SymbolUtils;
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
 import javax.annotation.Nonnull;
 
 /**
@@ -22,6 +25,13 @@ import javax.annotation.Nonnull;
  */
 final class PalDBKeyValueSource extends AbstractImmutableKeyValueSource<Symbol, ByteSource> {
 
+  // the proportion of keys which must be requested for a batch lookup to scan the whole store
+  private static final int SCAN_FRACTION = 4;
+
+  // PalDB hashes keys with a single static hasher shared by every reader and writer, so lookups
+  // and index building must not run concurrently even in different stores
+  static final Object PALDB_HASH_LOCK = new Object();
+
   private final StoreReader reader;
 
   private PalDBKeyValueSource(final StoreReader reader) {
@@ -51,18 +61,53 @@ final class PalDBKeyValueSource extends AbstractImmutableKeyValueSource<Symbol,
     return FluentIterable.from(keys).transform(SymbolUtils.symbolizeFunction());
   }
 
+  // PalDB readers reuse internal buffers across lookups, so lookups are synchronized
   @Override
   @Nonnull
-  public Optional<ByteSource> get(final Symbol key) throws IOException {
+  public synchronized Optional<ByteSource> get(final Symbol key) throws IOException {
     final byte[] value;
     try {
-      value = reader.getByteArray(key.asString());
+      synchronized (PALDB_HASH_LOCK) {
+        value = reader.getByteArray(key.asString());
+      }
     } catch (NotFoundException e) {
       return Optional.absent();
     }
     return Optional.of(ByteSource.wrap(value));
   }
 
+  /**
+   * If at least one in {@value #SCAN_FRACTION} of the keys in the store are requested, this reads
+   * the whole store sequentially rather than looking up each key, and values are returned in the
+   * order they are stored in. Otherwise values are returned in the order of {@code keys}.
+   */
+  @Override
+  @Nonnull
+  public synchronized ImmutableMap<Symbol, ByteSource> getAll(final Iterable<Symbol> keys)
+      throws IOException {
+    final ImmutableSet<Symbol> keysToGet = ImmutableSet.copyOf(keys);
+    if ((long) keysToGet.size() * SCAN_FRACTION < reader.size()) {
+      return super.getAll(keysToGet);
+    }
+    final ImmutableSet<String> keyStrings =
+        FluentIterable.from(keysToGet).transform(SymbolUtils.desymbolizeFunction()).toSet();
+    final ImmutableMap.Builder<Symbol, ByteSource> ret = ImmutableMap.builder();
+    try {
+      for (final Map.Entry<String, byte[]> entry : reader.<String, byte[]>iterable()) {
+        if (keyStrings.contains(entry.getKey())) {
+          ret.put(Symbol.from(entry.getKey()), ByteSource.wrap(entry.getValue()));
+        }
+      }
+    } catch (Exception e) {
+      // The reader throws all underlying IOExceptions as unchecked exceptions, so we undo this,
+      // providing checked exceptions from the cause if it is an IOException.
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      // Just throw as-is if it wasn't IOException
+      throw Throwables.propagate(e);
+    }
+    return ret.build();
+  }
+
   @Override
   public void close() throws IOException {
     try {
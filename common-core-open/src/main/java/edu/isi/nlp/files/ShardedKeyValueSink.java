@@ -0,0 +1,113 @@
+package edu.isi.nlp.files;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import edu.isi.nlp.symbols.Symbol;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link KeyValueSink} which partitions keys by hash across several underlying sinks, one per
+ * shard, which can be read with {@link ShardedKeyValueSource}. See {@link ShardedKeyValueSource}
+ * for the layout of a sharded store.
+ *
+ * <p>Unlike most sinks, this may be written to from multiple threads. Each shard is locked only
+ * while a value is being put to it, so threads writing to different shards don't wait on each
+ * other. Closing, which for some stores involves building their index, closes the shards
+ * concurrently.
+ */
+final class ShardedKeyValueSink implements KeyValueSink<Symbol, byte[]> {
+
+  /** Creates the sink for a single shard. */
+  interface ShardSinkFactory {
+
+    KeyValueSink<Symbol, byte[]> create(File shardFile) throws IOException;
+  }
+
+  private final ImmutableList<KeyValueSink<Symbol, byte[]>> shards;
+  private final int numThreads;
+
+  private ShardedKeyValueSink(
+      final ImmutableList<KeyValueSink<Symbol, byte[]>> shards, final int numThreads) {
+    this.shards = checkNotNull(shards);
+    this.numThreads = numThreads;
+  }
+
+  @Nonnull
+  static KeyValueSink<Symbol, byte[]> forDirectory(
+      final File shardDir,
+      final int numShards,
+      final int numThreads,
+      final ShardSinkFactory shardSinkFactory)
+      throws IOException {
+    checkArgument(numShards > 0, "Number of shards must be positive");
+    checkArgument(numThreads > 0, "Number of threads must be positive");
+    if (!shardDir.isDirectory() && !shardDir.mkdirs()) {
+      throw new IOException("Could not create shard directory " + shardDir);
+    }
+    final ImmutableList.Builder<KeyValueSink<Symbol, byte[]>> shards = ImmutableList.builder();
+    for (int shard = 0; shard < numShards; ++shard) {
+      shards.add(
+          shardSinkFactory.create(ShardedKeyValueSource.shardFile(shardDir, shard, numShards)));
+    }
+    return new ShardedKeyValueSink(shards.build(), numThreads);
+  }
+
+  @Override
+  public void put(final Symbol key, final byte[] value) throws IOException {
+    final KeyValueSink<Symbol, byte[]> shard =
+        shards.get(ShardedKeyValueSource.shardOf(key, shards.size()));
+    synchronized (shard) {
+      shard.put(key, value);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    final ImmutableList.Builder<Callable<Void>> closeShards = ImmutableList.builder();
+    for (final KeyValueSink<Symbol, byte[]> shard : shards) {
+      closeShards.add(
+          new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+              synchronized (shard) {
+                shard.close();
+              }
+              return null;
+            }
+          });
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      // this waits for every shard, so all of them are closed before any failure is reported
+      final List<Future<Void>> results = executor.invokeAll(closeShards.build());
+      IOException failure = null;
+      for (final Future<Void> result : results) {
+        try {
+          result.get();
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure = new IOException("Failed to close shard", e.getCause());
+          }
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while closing shards", e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
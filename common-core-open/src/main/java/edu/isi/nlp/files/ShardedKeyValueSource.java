@@ -0,0 +1,266 @@
+package edu.isi.nlp.files;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Ordering;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import edu.isi.nlp.symbols.Symbol;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link KeyValueSource} over a store which is partitioned by key hash into several shards, each
+ * of which is a store of its own, as written by {@link ShardedKeyValueSink}. Shards are opened the
+ * first time a key in them is looked up, so opening a sharded store is cheap and a job which only
+ * needs some keys only opens the shards which hold them.
+ *
+ * <p>A sharded store with {@code n} shards is a directory containing shards named {@code
+ * shard-00000-of-0000n} and so on, where each shard is a file or directory in the format of the
+ * underlying store. Key {@code k} is in the shard numbered by the non-negative remainder of the
+ * 32-bit Murmur3 hash (seed 0) of the UTF-8 encoding of {@code k}, divided by {@code n}.
+ *
+ * <p>Batch lookups are split by shard, and {@link #getAllAsync(Iterable, ExecutorService)} runs the
+ * lookups for each shard concurrently. This is safe to use from multiple threads if the underlying
+ * shard sources are.
+ */
+final class ShardedKeyValueSource extends AbstractImmutableKeyValueSource<Symbol, ByteSource> {
+
+  /** Opens the source for a single shard. */
+  interface ShardSourceFactory {
+
+    ImmutableKeyValueSource<Symbol, ByteSource> open(File shardFile) throws IOException;
+  }
+
+  private static final HashFunction SHARD_HASH = Hashing.murmur3_32();
+  private static final Pattern SHARD_NAME = Pattern.compile("shard-(\\d{5})-of-(\\d{5})");
+  private static final int MAX_SHARDS = 99999;
+
+  private final File shardDir;
+  private final ImmutableList<File> shardFiles;
+  private final ShardSourceFactory shardSourceFactory;
+  // null for shards which haven't been opened yet
+  private final AtomicReferenceArray<ImmutableKeyValueSource<Symbol, ByteSource>> shards;
+  // each shard is opened and closed while holding its own lock, so opening a slow shard doesn't
+  // hold up threads which need other shards
+  private final Object[] shardLocks;
+  // set before any shard is closed, so no shard can be reopened once closing starts
+  private volatile boolean closed = false;
+
+  private ShardedKeyValueSource(
+      final File shardDir,
+      final ImmutableList<File> shardFiles,
+      final ShardSourceFactory shardSourceFactory) {
+    this.shardDir = checkNotNull(shardDir);
+    this.shardFiles = checkNotNull(shardFiles);
+    this.shardSourceFactory = checkNotNull(shardSourceFactory);
+    this.shards = new AtomicReferenceArray<>(shardFiles.size());
+    this.shardLocks = new Object[shardFiles.size()];
+    for (int shard = 0; shard < shardLocks.length; ++shard) {
+      shardLocks[shard] = new Object();
+    }
+  }
+
+  /**
+   * Opens the sharded store in {@code shardDir}, whose shards must all be present. No shard is
+   * opened until it is needed.
+   */
+  @Nonnull
+  static ImmutableKeyValueSource<Symbol, ByteSource> fromDirectory(
+      final File shardDir, final ShardSourceFactory shardSourceFactory) throws IOException {
+    final String[] names = shardDir.list();
+    if (names == null) {
+      throw new IOException("Could not list shard directory " + shardDir);
+    }
+    int numShards = -1;
+    for (final String name : names) {
+      final Matcher matcher = SHARD_NAME.matcher(name);
+      if (matcher.matches()) {
+        final int shardCount = Integer.parseInt(matcher.group(2));
+        if (numShards >= 0 && shardCount != numShards) {
+          throw new IOException("Shard directory " + shardDir + " mixes shards of several stores");
+        }
+        numShards = shardCount;
+      }
+    }
+    if (numShards <= 0) {
+      throw new IOException(shardDir + " does not contain a sharded key-value store");
+    }
+    final ImmutableList.Builder<File> shardFiles = ImmutableList.builder();
+    for (int shard = 0; shard < numShards; ++shard) {
+      final File shardFile = shardFile(shardDir, shard, numShards);
+      if (!shardFile.exists()) {
+        throw new IOException("Missing shard " + shardFile);
+      }
+      shardFiles.add(shardFile);
+    }
+    return new ShardedKeyValueSource(shardDir, shardFiles.build(), shardSourceFactory);
+  }
+
+  static File shardFile(final File shardDir, final int shard, final int numShards) {
+    checkArgument(numShards <= MAX_SHARDS, "At most %s shards are supported", MAX_SHARDS);
+    return new File(shardDir, String.format("shard-%05d-of-%05d", shard, numShards));
+  }
+
+  static int shardOf(final Symbol key, final int numShards) {
+    return Math.floorMod(SHARD_HASH.hashString(key.asString(), Charsets.UTF_8).asInt(), numShards);
+  }
+
+  /** All shards are opened when this is called. Keys are returned shard by shard. */
+  @Nonnull
+  @Override
+  public Iterable<Symbol> keys() throws IOException {
+    final ImmutableList.Builder<Iterable<Symbol>> ret = ImmutableList.builder();
+    for (int shard = 0; shard < shardFiles.size(); ++shard) {
+      ret.add(shard(shard).keys());
+    }
+    return Iterables.concat(ret.build());
+  }
+
+  @Nonnull
+  @Override
+  public Optional<ByteSource> get(final Symbol key) throws IOException {
+    return shard(shardOf(key, shardFiles.size())).get(key);
+  }
+
+  /** Values are returned shard by shard, each in the order given by its shard. */
+  @Nonnull
+  @Override
+  public ImmutableMap<Symbol, ByteSource> getAll(final Iterable<Symbol> keys) throws IOException {
+    final ImmutableListMultimap<Integer, Symbol> keysByShard = keysByShard(keys);
+    final ImmutableMap.Builder<Symbol, ByteSource> ret = ImmutableMap.builder();
+    for (final int shard : keysByShard.keySet()) {
+      ret.putAll(shard(shard).getAll(keysByShard.get(shard)));
+    }
+    return ret.build();
+  }
+
+  /**
+   * Opens any shards which are needed and looks up the keys in each on {@code executor}
+   * concurrently. Values are returned as for {@link #getAll(Iterable)}.
+   */
+  @Nonnull
+  @Override
+  public ListenableFuture<ImmutableMap<Symbol, ByteSource>> getAllAsync(
+      final Iterable<Symbol> keys, final ExecutorService executor) {
+    final ImmutableListMultimap<Integer, Symbol> keysByShard = keysByShard(keys);
+    final ListeningExecutorService listeningExecutor = MoreExecutors.listeningDecorator(executor);
+    final ImmutableList.Builder<ListenableFuture<ImmutableMap<Symbol, ByteSource>>> shardResults =
+        ImmutableList.builder();
+    for (final int shard : keysByShard.keySet()) {
+      final ImmutableList<Symbol> shardKeys = keysByShard.get(shard);
+      final ListenableFuture<ImmutableKeyValueSource<Symbol, ByteSource>> shardSource =
+          listeningExecutor.submit(
+              new Callable<ImmutableKeyValueSource<Symbol, ByteSource>>() {
+                @Override
+                public ImmutableKeyValueSource<Symbol, ByteSource> call() throws IOException {
+                  return shard(shard);
+                }
+              });
+      shardResults.add(
+          Futures.transformAsync(
+              shardSource,
+              new AsyncFunction<
+                  ImmutableKeyValueSource<Symbol, ByteSource>, ImmutableMap<Symbol, ByteSource>>() {
+                @Override
+                public ListenableFuture<ImmutableMap<Symbol, ByteSource>> apply(
+                    final ImmutableKeyValueSource<Symbol, ByteSource> source) {
+                  return source.getAllAsync(shardKeys, executor);
+                }
+              }));
+    }
+    return Futures.transform(
+        Futures.allAsList(shardResults.build()),
+        new Function<List<ImmutableMap<Symbol, ByteSource>>, ImmutableMap<Symbol, ByteSource>>() {
+          @Override
+          public ImmutableMap<Symbol, ByteSource> apply(
+              final List<ImmutableMap<Symbol, ByteSource>> shardValues) {
+            final ImmutableMap.Builder<Symbol, ByteSource> ret = ImmutableMap.builder();
+            for (final Map<Symbol, ByteSource> values : shardValues) {
+              ret.putAll(values);
+            }
+            return ret.build();
+          }
+        });
+  }
+
+  /**
+   * Closes all shards which have been opened. Any later lookup throws {@link IllegalStateException}
+   * rather than reopening shards.
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    IOException failure = null;
+    for (int shard = 0; shard < shards.length(); ++shard) {
+      synchronized (shardLocks[shard]) {
+        final ImmutableKeyValueSource<Symbol, ByteSource> source = shards.getAndSet(shard, null);
+        if (source != null) {
+          try {
+            source.close();
+          } catch (IOException e) {
+            if (failure == null) {
+              failure = e;
+            }
+          }
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private ImmutableListMultimap<Integer, Symbol> keysByShard(final Iterable<Symbol> keys) {
+    final ImmutableListMultimap.Builder<Integer, Symbol> ret = ImmutableListMultimap.builder();
+    ret.orderKeysBy(Ordering.natural());
+    for (final Symbol key : ImmutableSet.copyOf(keys)) {
+      ret.put(shardOf(key, shardFiles.size()), key);
+    }
+    return ret.build();
+  }
+
+  private ImmutableKeyValueSource<Symbol, ByteSource> shard(final int shard) throws IOException {
+    final ImmutableKeyValueSource<Symbol, ByteSource> source = shards.get(shard);
+    if (source != null) {
+      return source;
+    }
+    synchronized (shardLocks[shard]) {
+      checkState(!closed, "%s has been closed", this);
+      // check again, since another thread may have opened it while we waited
+      if (shards.get(shard) == null) {
+        shards.set(shard, shardSourceFactory.open(shardFiles.get(shard)));
+      }
+      return shards.get(shard);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ShardedKeyValueSource(" + shardDir + ", " + shardFiles.size() + " shards)";
+  }
+}
@@ -2,11 +2,20 @@ package edu.isi.nlp.files;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Ordering;
 import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.ListenableFuture;
 import edu.isi.nlp.symbols.Symbol;
 import java.io.IOException;
+import java.util.Enumeration;
+import java.util.concurrent.ExecutorService;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import javax.annotation.Nonnull;
@@ -20,6 +29,22 @@ final class ZipKeyValueSource extends AbstractImmutableKeyValueSource<Symbol, By
 
   private final ZipFile zipFile;
   private final ImmutableMap<Symbol, String> keyFiles;
+  // the position of each entry in the zip's central directory, which is normally the order the
+  // entries are stored in. This is only needed for batch lookups, so it is computed on first use.
+  private final Supplier<ImmutableMap<String, Integer>> entryOrder =
+      Suppliers.memoize(
+          new Supplier<ImmutableMap<String, Integer>>() {
+            @Override
+            public ImmutableMap<String, Integer> get() {
+              final ImmutableMap.Builder<String, Integer> ret = ImmutableMap.builder();
+              final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+              int position = 0;
+              while (entries.hasMoreElements()) {
+                ret.put(entries.nextElement().getName(), position++);
+              }
+              return ret.build();
+            }
+          });
 
   ZipKeyValueSource(final ZipFile zipFile, final ImmutableMap<Symbol, String> keyFiles) {
     this.zipFile = checkNotNull(zipFile);
@@ -49,6 +74,42 @@ final class ZipKeyValueSource extends AbstractImmutableKeyValueSource<Symbol, By
     return Optional.of(source);
   }
 
+  /** Values are returned in the order of their entries in the zip file. */
+  @Nonnull
+  @Override
+  public ImmutableMap<Symbol, ByteSource> getAll(final Iterable<Symbol> keys) throws IOException {
+    final ImmutableList.Builder<Symbol> present = ImmutableList.builder();
+    for (final Symbol key : ImmutableSet.copyOf(keys)) {
+      if (keyFiles.containsKey(key)) {
+        present.add(key);
+      }
+    }
+    final ImmutableMap<String, Integer> entryOrder = this.entryOrder.get();
+    final ImmutableMap.Builder<Symbol, ByteSource> ret = ImmutableMap.builder();
+    for (final Symbol key :
+        Ordering.natural()
+            .nullsLast()
+            .onResultOf(
+                new Function<Symbol, Integer>() {
+                  @Override
+                  public Integer apply(final Symbol key) {
+                    // null for a missing entry, which get will report
+                    return entryOrder.get(keyFiles.get(key));
+                  }
+                })
+            .sortedCopy(present.build())) {
+      ret.put(key, get(key).get());
+    }
+    return ret.build();
+  }
+
+  @Nonnull
+  @Override
+  public ListenableFuture<ImmutableMap<Symbol, ByteSource>> getAllAsync(
+      final Iterable<Symbol> keys, final ExecutorService executor) {
+    return KeyValueSources.readAllAsync(this, keys, executor);
+  }
+
   @Override
   public void close() {
     // No resources to close. The zip file is managed by the caller.
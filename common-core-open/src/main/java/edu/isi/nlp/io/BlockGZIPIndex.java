@@ -0,0 +1,237 @@
+package edu.isi.nlp.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+import com.google.common.annotations.Beta;
+import com.google.common.io.ByteSink;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+import com.google.common.primitives.Longs;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * The locations of the blocks of a block-compressed gzip file, such as those written by {@link
+ * GZIPByteSink#blockGzipCompress(ByteSink)} or by the BGZF tools used for genomics data. This
+ * allows reading data from the middle of the file by decompressing only the blocks which contain
+ * it; see {@link GZIPByteSource#fromBlockCompressed(ByteSource, BlockGZIPIndex)}.
+ *
+ * <p>Every member of a block-compressed file records its compressed size in its header, so an index
+ * can be built by {@link #scan(ByteSource)}, which reads only the member headers and trailers. It
+ * can also be saved with {@link #write(ByteSink)} to avoid even that.
+ */
+@Beta
+public final class BlockGZIPIndex {
+
+  private static final int MAGIC = 0x42475A49;
+  private static final int VERSION = 1;
+  private static final int FLAG_EXTRA = 4;
+  // header bytes before the extra fields: magic, method, flags, time, extra flags, OS, extra length
+  private static final int FIXED_HEADER_BYTES = 12;
+  private static final int TRAILER_BYTES = 8;
+
+  // the compressed and uncompressed offsets of the start of each non-empty block
+  private final long[] compressedStarts;
+  private final long[] uncompressedStarts;
+  private final long uncompressedSize;
+
+  private BlockGZIPIndex(
+      final long[] compressedStarts, final long[] uncompressedStarts, final long uncompressedSize) {
+    checkArgument(compressedStarts.length == uncompressedStarts.length);
+    this.compressedStarts = compressedStarts;
+    this.uncompressedStarts = uncompressedStarts;
+    this.uncompressedSize = uncompressedSize;
+  }
+
+  /**
+   * Builds the index of a block-compressed gzip file by reading its member headers.
+   *
+   * @throws IOException if {@code compressed} can't be read or is not block-compressed.
+   */
+  public static BlockGZIPIndex scan(final ByteSource compressed) throws IOException {
+    final LongList compressedStarts = new LongList();
+    final LongList uncompressedStarts = new LongList();
+    long compressedOffset = 0;
+    long uncompressedOffset = 0;
+
+    final InputStream in = compressed.openBufferedStream();
+    try {
+      final byte[] fixedHeader = new byte[FIXED_HEADER_BYTES];
+      final byte[] isize = new byte[4];
+      while (true) {
+        final int headerBytesRead = ByteStreams.read(in, fixedHeader, 0, fixedHeader.length);
+        if (headerBytesRead == 0) {
+          break;
+        }
+        if (headerBytesRead < fixedHeader.length
+            || !GZIPByteSource.isGzipped(fixedHeader)
+            || (fixedHeader[3] & FLAG_EXTRA) == 0) {
+          throw notBlockCompressed(compressed, compressedOffset);
+        }
+        final byte[] extraFields = new byte[littleEndianShort(fixedHeader, 10)];
+        ByteStreams.readFully(in, extraFields);
+        final int memberSize = memberSizeFromExtraFields(extraFields);
+        if (memberSize < 0) {
+          throw notBlockCompressed(compressed, compressedOffset);
+        }
+        final long bytesBeforeSize =
+            memberSize - FIXED_HEADER_BYTES - extraFields.length - isize.length;
+        if (bytesBeforeSize < TRAILER_BYTES - isize.length) {
+          throw notBlockCompressed(compressed, compressedOffset);
+        }
+        ByteStreams.skipFully(in, bytesBeforeSize);
+        ByteStreams.readFully(in, isize);
+        final long uncompressedMemberSize = littleEndianInt(isize, 0) & 0xFFFFFFFFL;
+        if (uncompressedMemberSize > 0) {
+          compressedStarts.add(compressedOffset);
+          uncompressedStarts.add(uncompressedOffset);
+        }
+        compressedOffset += memberSize;
+        uncompressedOffset += uncompressedMemberSize;
+      }
+    } finally {
+      Closeables.closeQuietly(in);
+    }
+    return new BlockGZIPIndex(
+        compressedStarts.toArray(), uncompressedStarts.toArray(), uncompressedOffset);
+  }
+
+  /** Reads an index saved by {@link #write(ByteSink)}. */
+  public static BlockGZIPIndex read(final ByteSource source) throws IOException {
+    final DataInputStream in = new DataInputStream(source.openBufferedStream());
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException(source + " is not a block gzip index");
+      }
+      final int numBlocks = in.readInt();
+      final long uncompressedSize = in.readLong();
+      final long[] compressedStarts = new long[numBlocks];
+      final long[] uncompressedStarts = new long[numBlocks];
+      for (int i = 0; i < numBlocks; ++i) {
+        compressedStarts[i] = in.readLong();
+        uncompressedStarts[i] = in.readLong();
+      }
+      return new BlockGZIPIndex(compressedStarts, uncompressedStarts, uncompressedSize);
+    } finally {
+      Closeables.closeQuietly(in);
+    }
+  }
+
+  public void write(final ByteSink sink) throws IOException {
+    final DataOutputStream out = new DataOutputStream(sink.openBufferedStream());
+    boolean threw = true;
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(numBlocks());
+      out.writeLong(uncompressedSize);
+      for (int i = 0; i < numBlocks(); ++i) {
+        out.writeLong(compressedStarts[i]);
+        out.writeLong(uncompressedStarts[i]);
+      }
+      threw = false;
+    } finally {
+      Closeables.close(out, threw);
+    }
+  }
+
+  /** The total size of the uncompressed data. */
+  public long uncompressedSize() {
+    return uncompressedSize;
+  }
+
+  /** The number of non-empty blocks. */
+  public int numBlocks() {
+    return compressedStarts.length;
+  }
+
+  /** The offset in the compressed file at which {@code block} starts. */
+  public long compressedStart(final int block) {
+    checkElementIndex(block, numBlocks());
+    return compressedStarts[block];
+  }
+
+  /** The offset in the uncompressed data at which {@code block} starts. */
+  public long uncompressedStart(final int block) {
+    checkElementIndex(block, numBlocks());
+    return uncompressedStarts[block];
+  }
+
+  /** The index of the block which contains the byte at {@code uncompressedOffset}. */
+  public int blockContaining(final long uncompressedOffset) {
+    checkArgument(
+        uncompressedOffset >= 0 && uncompressedOffset < uncompressedSize,
+        "Uncompressed offset %s is not in [0, %s)",
+        uncompressedOffset,
+        uncompressedSize);
+    final int idx = Arrays.binarySearch(uncompressedStarts, uncompressedOffset);
+    // blocks are non-empty, so starts are distinct and the containing block is the last one
+    // starting at or before the offset
+    return idx >= 0 ? idx : -idx - 2;
+  }
+
+  /**
+   * The BGZF virtual file offset of the byte at {@code uncompressedOffset}: the compressed offset
+   * of the block containing it shifted left 16 bits, plus its offset within that block.
+   */
+  public long virtualOffset(final long uncompressedOffset) {
+    final int block = blockContaining(uncompressedOffset);
+    return (compressedStarts[block] << 16) | (uncompressedOffset - uncompressedStarts[block]);
+  }
+
+  /** Gets the size of a member from its BGZF extra field, or -1 if it has none. */
+  private static int memberSizeFromExtraFields(final byte[] extraFields) {
+    int idx = 0;
+    while (idx + 4 <= extraFields.length) {
+      final int fieldLength = littleEndianShort(extraFields, idx + 2);
+      if (extraFields[idx] == 'B'
+          && extraFields[idx + 1] == 'C'
+          && fieldLength == 2
+          && idx + 6 <= extraFields.length) {
+        return littleEndianShort(extraFields, idx + 4) + 1;
+      }
+      idx += 4 + fieldLength;
+    }
+    return -1;
+  }
+
+  private static IOException notBlockCompressed(final ByteSource source, final long offset) {
+    return new IOException(
+        source + " is not block gzip compressed: no valid block header at byte " + offset);
+  }
+
+  private static int littleEndianShort(final byte[] bytes, final int offset) {
+    return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8);
+  }
+
+  private static int littleEndianInt(final byte[] bytes, final int offset) {
+    return littleEndianShort(bytes, offset) | (littleEndianShort(bytes, offset + 2) << 16);
+  }
+
+  @Override
+  public String toString() {
+    return "BlockGZIPIndex(" + numBlocks() + " blocks, " + uncompressedSize + " bytes)";
+  }
+
+  private static final class LongList {
+
+    private long[] values = new long[16];
+    private int size = 0;
+
+    void add(final long value) {
+      if (size == values.length) {
+        values = Longs.ensureCapacity(values, size + 1, size);
+      }
+      values[size++] = value;
+    }
+
+    long[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+}
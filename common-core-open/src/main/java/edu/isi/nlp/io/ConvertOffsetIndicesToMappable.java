@@ -0,0 +1,73 @@
+package edu.isi.nlp.io;
+
+import com.google.common.annotations.Beta;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+import edu.isi.nlp.files.FileUtils;
+import edu.isi.nlp.parameters.Parameters;
+import java.io.File;
+import java.io.IOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts a directory tree of offset indices in the original binary format (e.g. those written by
+ * {@code IndexFlatGigaword}) to the memory-mappable format of {@link MappedOffsetIndex}.
+ *
+ * <p>Parameters:
+ *
+ * <ul>
+ *   <li>{@code inputOffsetIndexDir}: every file under this directory is converted.
+ *   <li>{@code outputOffsetIndexDir}: converted indices are written here, uncompressed, with the
+ *       same relative paths as their inputs.
+ *   <li>{@code compressedInput} (optional, default true): whether the input indices are gzipped.
+ * </ul>
+ */
+@Beta
+public final class ConvertOffsetIndicesToMappable {
+
+  private static final Logger log = LoggerFactory.getLogger(ConvertOffsetIndicesToMappable.class);
+
+  private ConvertOffsetIndicesToMappable() {
+    throw new UnsupportedOperationException();
+  }
+
+  public static void main(String[] args) {
+    // We wrap the main method in this way to ensure a non-zero return value on failure
+    try {
+      trueMain(args);
+    } catch (Exception e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static void trueMain(String[] args) throws IOException {
+    if (args.length != 1) {
+      System.out.println("No parameter file specified");
+      System.exit(1);
+    }
+    final Parameters params = Parameters.loadSerifStyle(new File(args[0]));
+    final File inputDir = params.getExistingDirectory("inputOffsetIndexDir");
+    final File outputDir = params.getCreatableDirectory("outputOffsetIndexDir");
+    final boolean compressedInput = params.getOptionalBoolean("compressedInput").or(true);
+
+    final String inputPrefix = inputDir.getAbsolutePath() + File.separator;
+    int numConverted = 0;
+    for (final File inputFile : Files.fileTreeTraverser().preOrderTraversal(inputDir)) {
+      if (!inputFile.isFile()) {
+        continue;
+      }
+      final String relativePath = inputFile.getAbsolutePath().substring(inputPrefix.length());
+      final File outputFile = new File(outputDir, relativePath);
+      Files.createParentDirs(outputFile);
+      final ByteSource input =
+          compressedInput
+              ? FileUtils.asCompressedByteSource(inputFile)
+              : Files.asByteSource(inputFile);
+      OffsetIndices.convertToMappable(input, Files.asByteSink(outputFile));
+      ++numConverted;
+    }
+    log.info("Converted {} offset indices from {} to {}", numConverted, inputDir, outputDir);
+  }
+}
@@ -1,8 +1,11 @@
 package edu.isi.nlp.io;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.common.annotations.Beta;
 import com.google.common.io.ByteSink;
+import com.google.common.io.ByteSource;
 import com.google.common.io.Files;
 import java.io.File;
 import java.io.IOException;
@@ -11,22 +14,95 @@ import java.util.zip.GZIPOutputStream;
 
 public final class GZIPByteSink extends ByteSink {
 
-  private GZIPByteSink(final ByteSink wrappedByteSink) {
+  /**
+   * The size of the uncompressed blocks used by parallel compression unless otherwise specified.
+   */
+  public static final int DEFAULT_PARALLEL_BLOCK_SIZE = 1024 * 1024;
+
+  private GZIPByteSink(
+      final ByteSink wrappedByteSink,
+      final int numThreads,
+      final int parallelBlockSize,
+      final boolean blockGzipFormat) {
+    checkArgument(numThreads > 0, "Must use at least one thread");
+    checkArgument(parallelBlockSize > 0, "Block size must be positive");
     this.wrappedByteSink = checkNotNull(wrappedByteSink);
+    this.numThreads = numThreads;
+    this.parallelBlockSize = parallelBlockSize;
+    this.blockGzipFormat = blockGzipFormat;
   }
 
   public static ByteSink gzipCompress(final ByteSink byteSink) {
-    return new GZIPByteSink(byteSink);
+    return new GZIPByteSink(byteSink, 1, DEFAULT_PARALLEL_BLOCK_SIZE, false);
   }
 
   public static ByteSink gzipCompress(final File f) {
     return gzipCompress(Files.asByteSink(f));
   }
 
+  /**
+   * Gets a sink which gzips its input using {@code numThreads} threads. The input is split into
+   * blocks of {@link #DEFAULT_PARALLEL_BLOCK_SIZE} bytes, each of which is compressed
+   * independently. The output is a valid gzip file (a series of gzip members) which any gzip reader
+   * can decompress, including {@link GZIPByteSource}. It is slightly larger than the output of
+   * {@link #gzipCompress(ByteSink)}, since blocks don't share compression history.
+   */
+  @Beta
+  public static ByteSink parallelGzipCompress(final ByteSink byteSink, final int numThreads) {
+    return parallelGzipCompress(byteSink, numThreads, DEFAULT_PARALLEL_BLOCK_SIZE);
+  }
+
+  /**
+   * Like {@link #parallelGzipCompress(ByteSink, int)}, but with blocks of {@code blockSize} bytes.
+   * Larger blocks compress slightly better; each thread holds up to two blocks of input at a time.
+   */
+  @Beta
+  public static ByteSink parallelGzipCompress(
+      final ByteSink byteSink, final int numThreads, final int blockSize) {
+    return new GZIPByteSink(byteSink, numThreads, blockSize, false);
+  }
+
+  @Beta
+  public static ByteSink parallelGzipCompress(final File f, final int numThreads) {
+    return parallelGzipCompress(Files.asByteSink(f), numThreads);
+  }
+
+  /**
+   * Gets a sink which writes block-compressed gzip in the style of BGZF: a series of gzip members,
+   * each compressing at most 64 KB of input and recording its compressed size in its header. This
+   * is readable by any gzip reader, but also allows random access to the uncompressed data using a
+   * {@link BlockGZIPIndex} (see {@link GZIPByteSource#fromBlockCompressed(ByteSource,
+   * BlockGZIPIndex)}). It compresses slightly less well than {@link #gzipCompress(ByteSink)}.
+   */
+  @Beta
+  public static ByteSink blockGzipCompress(final ByteSink byteSink) {
+    return blockGzipCompress(byteSink, 1);
+  }
+
+  /** Like {@link #blockGzipCompress(ByteSink)}, but compresses using {@code numThreads} threads. */
+  @Beta
+  public static ByteSink blockGzipCompress(final ByteSink byteSink, final int numThreads) {
+    return new GZIPByteSink(
+        byteSink, numThreads, ParallelGZIPOutputStream.MAX_BLOCK_GZIP_BLOCK_SIZE, true);
+  }
+
   @Override
   public OutputStream openStream() throws IOException {
-    return new GZIPOutputStream(wrappedByteSink.openBufferedStream());
+    if (blockGzipFormat || numThreads > 1) {
+      return new ParallelGZIPOutputStream(
+          wrappedByteSink.openBufferedStream(), parallelBlockSize, numThreads, blockGzipFormat);
+    } else {
+      return new GZIPOutputStream(wrappedByteSink.openBufferedStream());
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "GZIPByteSink(" + wrappedByteSink + ")";
   }
 
   private final ByteSink wrappedByteSink;
+  private final int numThreads;
+  private final int parallelBlockSize;
+  private final boolean blockGzipFormat;
 }
@@ -1,9 +1,14 @@
 package edu.isi.nlp.io;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.annotations.Beta;
+import com.google.common.base.Optional;
+import com.google.common.io.ByteSink;
 import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
 import com.google.common.io.Files;
 import java.io.File;
 import java.io.IOException;
@@ -13,6 +18,9 @@ import java.util.zip.GZIPInputStream;
 @Beta
 public class GZIPByteSource extends ByteSource {
 
+  private static final int GZIP_MAGIC_FIRST_BYTE = 0x1f;
+  private static final int GZIP_MAGIC_SECOND_BYTE = 0x8b;
+
   private GZIPByteSource(final ByteSource wrappedByteSource) {
     this.wrappedByteSource = checkNotNull(wrappedByteSource);
   }
@@ -25,6 +33,40 @@ public class GZIPByteSource extends ByteSource {
     return fromCompressed(Files.asByteSource(f));
   }
 
+  /**
+   * Gets a decompressed view of block-compressed gzip data (see {@link
+   * GZIPByteSink#blockGzipCompress(ByteSink)}) whose {@link ByteSource#slice(long, long)} only
+   * decompresses the blocks covering the slice. Offsets are into the uncompressed data, so, for
+   * example, an {@link OffsetIndex} of the uncompressed data can be used with {@link
+   * IndexedByteSource} on the compressed data.
+   */
+  @Beta
+  public static ByteSource fromBlockCompressed(
+      final ByteSource wrappedByteSource, final BlockGZIPIndex index) {
+    return new BlockCompressed(wrappedByteSource, index);
+  }
+
+  /**
+   * Like {@link #fromBlockCompressed(ByteSource, BlockGZIPIndex)}, but scans {@code f} to build the
+   * index.
+   */
+  @Beta
+  public static ByteSource fromBlockCompressed(final File f) throws IOException {
+    final ByteSource compressed = Files.asByteSource(f);
+    return fromBlockCompressed(compressed, BlockGZIPIndex.scan(compressed));
+  }
+
+  /**
+   * Whether {@code header}, the first bytes of some data, starts with the gzip magic number. A
+   * header which was only partly filled by a short read is fine as long as the rest is zeroed.
+   */
+  @Beta
+  public static boolean isGzipped(final byte[] header) {
+    return header.length >= 2
+        && (header[0] & 0xFF) == GZIP_MAGIC_FIRST_BYTE
+        && (header[1] & 0xFF) == GZIP_MAGIC_SECOND_BYTE;
+  }
+
   @Override
   public InputStream openStream() throws IOException {
     return new GZIPInputStream(wrappedByteSource.openBufferedStream());
@@ -36,4 +78,82 @@ public class GZIPByteSource extends ByteSource {
   }
 
   private final ByteSource wrappedByteSource;
+
+  private static final class BlockCompressed extends ByteSource {
+
+    private final ByteSource compressed;
+    private final BlockGZIPIndex index;
+
+    private BlockCompressed(final ByteSource compressed, final BlockGZIPIndex index) {
+      this.compressed = checkNotNull(compressed);
+      this.index = checkNotNull(index);
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+      return new GZIPInputStream(compressed.openBufferedStream());
+    }
+
+    @Override
+    public Optional<Long> sizeIfKnown() {
+      return Optional.of(index.uncompressedSize());
+    }
+
+    @Override
+    public long size() {
+      return index.uncompressedSize();
+    }
+
+    @Override
+    public ByteSource slice(final long offset, final long length) {
+      checkArgument(offset >= 0, "offset (%s) may not be negative", offset);
+      checkArgument(length >= 0, "length (%s) may not be negative", length);
+      final long sliceLength = Math.max(0, Math.min(length, index.uncompressedSize() - offset));
+      return new ByteSource() {
+        @Override
+        public InputStream openStream() throws IOException {
+          if (sliceLength == 0) {
+            return ByteSource.empty().openStream();
+          }
+          final int block = index.blockContaining(offset);
+          // decompression will continue into following blocks as needed
+          final InputStream in =
+              new GZIPInputStream(
+                  compressed
+                      .slice(index.compressedStart(block), Long.MAX_VALUE)
+                      .openBufferedStream());
+          boolean threw = true;
+          try {
+            ByteStreams.skipFully(in, offset - index.uncompressedStart(block));
+            threw = false;
+          } finally {
+            if (threw) {
+              Closeables.closeQuietly(in);
+            }
+          }
+          return ByteStreams.limit(in, sliceLength);
+        }
+
+        @Override
+        public Optional<Long> sizeIfKnown() {
+          return Optional.of(sliceLength);
+        }
+
+        @Override
+        public long size() {
+          return sliceLength;
+        }
+
+        @Override
+        public String toString() {
+          return BlockCompressed.this + ".slice(" + offset + ", " + length + ")";
+        }
+      };
+    }
+
+    @Override
+    public String toString() {
+      return "GZIPByteSource.fromBlockCompressed(" + compressed + ")";
+    }
+  }
 }
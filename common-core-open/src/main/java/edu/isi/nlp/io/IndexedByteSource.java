@@ -3,11 +3,10 @@ package edu.isi.nlp.io;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Range;
 import com.google.common.io.ByteSource;
 import com.google.common.io.CharSource;
 import edu.isi.nlp.files.KeyValueSource;
-import edu.isi.nlp.strings.offsets.ByteOffset;
-import edu.isi.nlp.strings.offsets.OffsetRange;
 import edu.isi.nlp.symbols.Symbol;
 import java.io.IOException;
 import java.nio.charset.Charset;
@@ -38,13 +37,13 @@ public final class IndexedByteSource implements CharacterChannelSet {
   }
 
   public Optional<ByteSource> channelAsByteSource(final Symbol key) throws IOException {
-    final Optional<OffsetRange<ByteOffset>> range = offsetIndex.byteOffsetsOf(checkNotNull(key));
+    // use 64-bit offsets so that sources over 2 GB can be indexed
+    final Optional<Range<Long>> range = offsetIndex.longByteOffsetsOf(checkNotNull(key));
     if (range.isPresent()) {
-      final ByteOffset startInclusive = range.get().startInclusive();
-      final ByteOffset endInclusive = range.get().endInclusive();
+      final long startInclusive = range.get().lowerEndpoint();
+      final long endInclusive = range.get().upperEndpoint();
 
-      return Optional.of(
-          source.slice(startInclusive.asInt(), endInclusive.asInt() - startInclusive.asInt() + 1));
+      return Optional.of(source.slice(startInclusive, endInclusive - startInclusive + 1));
     } else {
       return Optional.absent();
     }
@@ -0,0 +1,103 @@
+package edu.isi.nlp.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Optional;
+import com.google.common.io.ByteSource;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link ByteSource} view of the bytes between the position and limit of a {@link ByteBuffer},
+ * typically a memory-mapped file. Nothing is copied until the bytes are read, and slices are views
+ * of the same buffer. The buffer must not be modified while this is in use.
+ *
+ * <p>This is safe to use from multiple threads.
+ */
+@Beta
+public final class MappedByteSource extends ByteSource {
+
+  // only duplicates of this are positioned, so it may be shared by threads
+  private final ByteBuffer buffer;
+
+  private MappedByteSource(final ByteBuffer buffer) {
+    this.buffer = checkNotNull(buffer);
+  }
+
+  /**
+   * Gets a view of the bytes which are currently between the position and limit of {@code buffer}.
+   */
+  public static MappedByteSource wrap(final ByteBuffer buffer) {
+    return new MappedByteSource(buffer.slice());
+  }
+
+  @Override
+  public InputStream openStream() {
+    final ByteBuffer data = buffer.duplicate();
+    return new InputStream() {
+      @Override
+      public int read() {
+        return data.hasRemaining() ? data.get() & 0xFF : -1;
+      }
+
+      @Override
+      public int read(final byte[] bytes, final int offset, final int length) {
+        if (length == 0) {
+          return 0;
+        }
+        if (!data.hasRemaining()) {
+          return -1;
+        }
+        final int toRead = Math.min(length, data.remaining());
+        data.get(bytes, offset, toRead);
+        return toRead;
+      }
+
+      @Override
+      public long skip(final long n) {
+        final int toSkip = (int) Math.max(0, Math.min(n, data.remaining()));
+        data.position(data.position() + toSkip);
+        return toSkip;
+      }
+
+      @Override
+      public int available() {
+        return data.remaining();
+      }
+    };
+  }
+
+  @Override
+  public byte[] read() {
+    final byte[] ret = new byte[buffer.remaining()];
+    buffer.duplicate().get(ret);
+    return ret;
+  }
+
+  @Override
+  public ByteSource slice(final long offset, final long length) {
+    checkArgument(offset >= 0 && length >= 0);
+    final ByteBuffer ret = buffer.duplicate();
+    final int start = (int) Math.min(offset, buffer.limit());
+    ret.position(start);
+    ret.limit((int) Math.min(buffer.limit(), start + Math.min(length, Integer.MAX_VALUE)));
+    return new MappedByteSource(ret.slice());
+  }
+
+  @Override
+  public Optional<Long> sizeIfKnown() {
+    return Optional.of((long) buffer.remaining());
+  }
+
+  @Override
+  public long size() {
+    return buffer.remaining();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return !buffer.hasRemaining();
+  }
+}
@@ -0,0 +1,152 @@
+package edu.isi.nlp.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Optional;
+import com.google.common.collect.Range;
+import edu.isi.nlp.strings.offsets.ByteOffset;
+import edu.isi.nlp.strings.offsets.OffsetRange;
+import edu.isi.nlp.symbols.Symbol;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * An {@link OffsetIndex} which is searched in place in the version 2 binary offset index format,
+ * which is written by {@link OffsetIndices#writeMappable(OffsetIndex,
+ * com.google.common.io.ByteSink)}. Opening an index with {@link #open(File)} memory-maps the file
+ * and only checks its header, so it takes constant time regardless of the number of keys. Lookups
+ * are binary searches over the mapped data and no key is decoded or interned unless it is returned
+ * from {@link #keySet()}.
+ *
+ * <p>The format is big-endian and consists of a header of the magic number {@code 0x4F464958}, the
+ * format version ({@code 2}), the number of entries, and the file position of the key block as a
+ * long, followed by a {@link SortedKeyDirectory} of the keys, whose data are the inclusive start
+ * and end byte offsets of each key.
+ *
+ * <p>Offsets are 64-bit, so these indices may be used with files over 2 GB. For such files, {@link
+ * #longByteOffsetsOf(Symbol)} must be used to look up offsets. The index file itself must be under
+ * 2 GB.
+ *
+ * <p>This is safe to use from multiple threads.
+ */
+@Beta
+public final class MappedOffsetIndex implements OffsetIndex {
+
+  static final int MAGIC = 0x4F464958;
+  static final int VERSION = 2;
+  static final int HEADER_BYTES = 20;
+
+  private final SortedKeyDirectory directory;
+
+  private MappedOffsetIndex(final ByteBuffer buffer) {
+    final ByteBuffer data = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+    checkArgument(data.capacity() >= HEADER_BYTES, "Offset index is truncated");
+    checkArgument(data.getInt(0) == MAGIC, "Data is not in the mappable offset index format");
+    checkArgument(data.getInt(4) == VERSION, "Unsupported offset index version %s", data.getInt(4));
+    final int numEntries = data.getInt(8);
+    checkArgument(
+        numEntries >= 0
+            && data.getLong(12) == SortedKeyDirectory.keyBlockStart(HEADER_BYTES, numEntries)
+            && data.getLong(12) <= data.capacity(),
+        "Corrupt offset index header");
+    this.directory = SortedKeyDirectory.fromBuffer(data, HEADER_BYTES, numEntries);
+  }
+
+  /** Memory-maps the offset index in {@code f}, which must be in the version 2 format. */
+  public static MappedOffsetIndex open(final File f) throws IOException {
+    final RandomAccessFile file = new RandomAccessFile(f, "r");
+    try {
+      final FileChannel channel = file.getChannel();
+      checkArgument(channel.size() <= Integer.MAX_VALUE, "Offset index %s is too large to map", f);
+      // the mapping remains valid after the channel is closed
+      return new MappedOffsetIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } finally {
+      file.close();
+    }
+  }
+
+  /**
+   * Gets an offset index backed by the version 2 format data between the position and limit of
+   * {@code buffer}. This is useful for indices which are stored compressed and so can't be mapped.
+   */
+  public static MappedOffsetIndex fromBuffer(final ByteBuffer buffer) {
+    return new MappedOffsetIndex(checkNotNull(buffer));
+  }
+
+  /** The number of keys in this index. */
+  public int size() {
+    return directory.size();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws IllegalStateException if the offsets of {@code key} do not fit in an int. Use {@link
+   *     #longByteOffsetsOf(Symbol)} for such indices.
+   */
+  @Override
+  public Optional<OffsetRange<ByteOffset>> byteOffsetsOf(final Symbol key) {
+    final int entry = directory.entryOf(key);
+    if (entry >= 0) {
+      final long start = directory.firstLongOf(entry);
+      final long end = directory.secondLongOf(entry);
+      if (end > Integer.MAX_VALUE) {
+        throw new IllegalStateException(
+            "Offsets of "
+                + key
+                + " exceed the range of an int; use longByteOffsetsOf to look them up");
+      }
+      return Optional.of(OffsetRange.byteOffsetRange((int) start, (int) end));
+    } else {
+      return Optional.absent();
+    }
+  }
+
+  @Override
+  public Optional<Range<Long>> longByteOffsetsOf(final Symbol key) {
+    final int entry = directory.entryOf(key);
+    if (entry >= 0) {
+      return Optional.of(Range.closed(directory.firstLongOf(entry), directory.secondLongOf(entry)));
+    } else {
+      return Optional.absent();
+    }
+  }
+
+  /**
+   * A view of the keys of this index. Membership tests are binary searches; iteration decodes the
+   * keys in the order they are stored in.
+   */
+  @Override
+  public Set<Symbol> keySet() {
+    return new AbstractSet<Symbol>() {
+      @Override
+      public Iterator<Symbol> iterator() {
+        return directory.keys().iterator();
+      }
+
+      @Override
+      public int size() {
+        return directory.size();
+      }
+
+      @Override
+      public boolean contains(final Object o) {
+        return o instanceof Symbol && directory.entryOf((Symbol) o) >= 0;
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    return "MappedOffsetIndex(" + directory.size() + " keys)";
+  }
+}
@@ -1,6 +1,8 @@
 package edu.isi.nlp.io;
 
+import com.google.common.annotations.Beta;
 import com.google.common.base.Optional;
+import com.google.common.collect.Range;
 import edu.isi.nlp.strings.offsets.ByteOffset;
 import edu.isi.nlp.strings.offsets.OffsetRange;
 import edu.isi.nlp.symbols.Symbol;
@@ -15,4 +17,22 @@ public interface OffsetIndex {
   Optional<OffsetRange<ByteOffset>> byteOffsetsOf(Symbol key);
 
   Set<Symbol> keySet();
+
+  /**
+   * Gets the closed range of byte offsets of {@code key} as 64-bit values. Unlike {@link
+   * #byteOffsetsOf(Symbol)}, this works for indices into files of more than 2 GB. Indices which can
+   * store such offsets (e.g. {@link MappedOffsetIndex}) override this.
+   */
+  @Beta
+  default Optional<Range<Long>> longByteOffsetsOf(Symbol key) {
+    final Optional<OffsetRange<ByteOffset>> range = byteOffsetsOf(key);
+    if (range.isPresent()) {
+      return Optional.of(
+          Range.closed(
+              (long) range.get().startInclusive().asInt(),
+              (long) range.get().endInclusive().asInt()));
+    } else {
+      return Optional.absent();
+    }
+  }
 }
@@ -1,16 +1,28 @@
 package edu.isi.nlp.io;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.BoundType;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Ordering;
+import com.google.common.collect.Range;
 import com.google.common.io.ByteSink;
 import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+import com.google.common.primitives.Ints;
 import edu.isi.nlp.strings.offsets.ByteOffset;
 import edu.isi.nlp.strings.offsets.OffsetRange;
 import edu.isi.nlp.symbols.Symbol;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 public final class OffsetIndices {
@@ -19,12 +31,22 @@ public final class OffsetIndices {
     throw new UnsupportedOperationException();
   }
 
+  /**
+   * Reads an offset index written by {@link #writeBinary(OffsetIndex, ByteSink)}. Indices written
+   * by {@link #writeMappable(OffsetIndex, ByteSink)} are also accepted; these are read into memory
+   * and searched in place, which is useful if they are stored compressed. Uncompressed indices in
+   * that format are better opened with {@link #mapBinary(File)}.
+   */
   public static OffsetIndex readBinary(ByteSource source) throws IOException {
     final DataInputStream in = new DataInputStream(source.openBufferedStream());
     final ImmutableMap.Builder<Symbol, OffsetRange<ByteOffset>> builder = ImmutableMap.builder();
-    final int numEntries = in.readInt();
 
     try {
+      final int numEntries = in.readInt();
+      if (numEntries == MappedOffsetIndex.MAGIC) {
+        // no realistic index of the original format has this many entries
+        return MappedOffsetIndex.fromBuffer(ByteBuffer.wrap(source.read()));
+      }
       for (int i = 0; i < numEntries; ++i) {
         builder.put(
             Symbol.from(in.readUTF()), OffsetRange.byteOffsetRange(in.readInt(), in.readInt()));
@@ -58,6 +80,99 @@ public final class OffsetIndices {
     }
   }
 
+  /**
+   * Memory-maps an offset index written by {@link #writeMappable(OffsetIndex, ByteSink)}. This
+   * takes constant time regardless of the size of the index.
+   */
+  @Beta
+  public static MappedOffsetIndex mapBinary(File f) throws IOException {
+    return MappedOffsetIndex.open(f);
+  }
+
+  /**
+   * Opens an offset index file in either binary format. Uncompressed indices in the format of
+   * {@link MappedOffsetIndex} are memory-mapped; anything else is read with {@link
+   * #readBinary(ByteSource)}, decompressing it first if it is gzipped.
+   */
+  @Beta
+  public static OffsetIndex open(File f) throws IOException {
+    final byte[] header = new byte[4];
+    final int headerBytes;
+    final InputStream in = new FileInputStream(f);
+    try {
+      headerBytes = ByteStreams.read(in, header, 0, header.length);
+    } finally {
+      in.close();
+    }
+    if (headerBytes == header.length && Ints.fromByteArray(header) == MappedOffsetIndex.MAGIC) {
+      return mapBinary(f);
+    } else if (GZIPByteSource.isGzipped(header)) {
+      return readBinary(GZIPByteSource.fromCompressed(f));
+    } else {
+      return readBinary(Files.asByteSource(f));
+    }
+  }
+
+  /**
+   * Writes an offset index in the format of {@link MappedOffsetIndex}, which can be memory-mapped
+   * and searched in place and which supports 64-bit offsets.
+   */
+  @Beta
+  public static void writeMappable(OffsetIndex offsetIndex, ByteSink sink) throws IOException {
+    final ImmutableMap.Builder<Symbol, Range<Long>> ranges = ImmutableMap.builder();
+    for (final Symbol key : offsetIndex.keySet()) {
+      // get is safe because we are iterating over the mapping's key set
+      ranges.put(key, offsetIndex.longByteOffsetsOf(key).get());
+    }
+    writeMappable(ranges.build(), sink);
+  }
+
+  /**
+   * Writes an offset index in the format of {@link MappedOffsetIndex} from a map of keys to 64-bit
+   * byte offset ranges. Ranges must be closed and non-negative.
+   */
+  @Beta
+  public static void writeMappable(Map<Symbol, Range<Long>> byteOffsets, ByteSink sink)
+      throws IOException {
+    final SortedKeyDirectory.Writer directory = new SortedKeyDirectory.Writer();
+    for (final Map.Entry<Symbol, Range<Long>> e : byteOffsets.entrySet()) {
+      final Range<Long> range = e.getValue();
+      checkArgument(
+          range.hasLowerBound()
+              && range.lowerBoundType() == BoundType.CLOSED
+              && range.hasUpperBound()
+              && range.upperBoundType() == BoundType.CLOSED
+              && range.lowerEndpoint() >= 0,
+          "Offsets of %s must be a non-negative closed range but got %s",
+          e.getKey(),
+          range);
+      directory.add(e.getKey(), range.lowerEndpoint(), range.upperEndpoint());
+    }
+
+    final DataOutputStream out = new DataOutputStream(sink.openBufferedStream());
+    boolean threw = true;
+    try {
+      out.writeInt(MappedOffsetIndex.MAGIC);
+      out.writeInt(MappedOffsetIndex.VERSION);
+      out.writeInt(directory.size());
+      out.writeLong(
+          SortedKeyDirectory.keyBlockStart(MappedOffsetIndex.HEADER_BYTES, directory.size()));
+      directory.writeTo(out);
+      threw = false;
+    } finally {
+      Closeables.close(out, threw);
+    }
+  }
+
+  /**
+   * Converts an offset index written by {@link #writeBinary(OffsetIndex, ByteSink)} to the format
+   * written by {@link #writeMappable(OffsetIndex, ByteSink)}.
+   */
+  @Beta
+  public static void convertToMappable(ByteSource source, ByteSink sink) throws IOException {
+    writeMappable(readBinary(source), sink);
+  }
+
   public static OffsetIndex forMap(final Map<Symbol, OffsetRange<ByteOffset>> map) {
     return MapOffsetIndex.fromMap(map);
   }
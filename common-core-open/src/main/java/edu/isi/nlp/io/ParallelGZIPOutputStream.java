@@ -0,0 +1,283 @@
+package edu.isi.nlp.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses data written to it as a sequence of independent gzip members, each holding one block
+ * of input, which are compressed concurrently on a pool of threads owned by the stream. Standard
+ * gzip readers, including {@link java.util.zip.GZIPInputStream}, read concatenated members as a
+ * single stream. Because blocks don't share history, the output is slightly larger than that of a
+ * single-threaded {@link java.util.zip.GZIPOutputStream}.
+ *
+ * <p>At most twice as many blocks as there are threads are buffered at once, so memory use is
+ * bounded regardless of the amount written. Each {@link #flush()} ends the current block early.
+ *
+ * <p>In block gzip format, each member's header carries the BGZF extra field giving the member's
+ * compressed size, and the stream ends with the standard BGZF end-of-file marker, so the output can
+ * be randomly accessed using a {@link BlockGZIPIndex}. Blocks are then limited to {@link
+ * #MAX_BLOCK_GZIP_BLOCK_SIZE} bytes so that every member fits in 64 KB.
+ */
+/* package-private */ class ParallelGZIPOutputStream extends OutputStream {
+
+  private static final int GZIP_MAGIC = 0x8b1f;
+  private static final int TRAILER_BYTES = 8;
+  private static final int FLAG_EXTRA = 4;
+
+  /** The maximum uncompressed size of a block in block gzip format, as in BGZF. */
+  static final int MAX_BLOCK_GZIP_BLOCK_SIZE = 0xff00;
+  // the size of a member header with the BGZF extra field
+  static final int BLOCK_GZIP_HEADER_BYTES = 18;
+  // the BGZF end-of-file marker, which is an empty member
+  private static final byte[] BLOCK_GZIP_EOF = {
+    0x1f,
+    (byte) 0x8b,
+    8,
+    4,
+    0,
+    0,
+    0,
+    0,
+    0,
+    (byte) 0xff,
+    6,
+    0,
+    0x42,
+    0x43,
+    2,
+    0,
+    0x1b,
+    0,
+    3,
+    0,
+    0,
+    0,
+    0,
+    0,
+    0,
+    0,
+    0,
+    0
+  };
+
+  private final OutputStream out;
+  private final ExecutorService executor;
+  private final int maxPendingBlocks;
+  private final boolean blockGzipFormat;
+  private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+  private byte[] block;
+  private int blockLength = 0;
+  private boolean anyBlocksWritten = false;
+  private boolean closed = false;
+
+  ParallelGZIPOutputStream(
+      final OutputStream out,
+      final int blockSize,
+      final int numThreads,
+      final boolean blockGzipFormat) {
+    checkArgument(blockSize > 0, "Block size must be positive");
+    checkArgument(
+        !blockGzipFormat || blockSize <= MAX_BLOCK_GZIP_BLOCK_SIZE,
+        "Block gzip format blocks can't exceed %s bytes",
+        MAX_BLOCK_GZIP_BLOCK_SIZE);
+    this.blockGzipFormat = blockGzipFormat;
+    checkArgument(numThreads > 0, "Must use at least one thread");
+    this.out = checkNotNull(out);
+    this.block = new byte[blockSize];
+    this.maxPendingBlocks = 2 * numThreads;
+    this.executor =
+        Executors.newFixedThreadPool(
+            numThreads,
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("parallel-gzip-%d").build());
+  }
+
+  @Override
+  public void write(final int b) throws IOException {
+    checkOpen();
+    block[blockLength++] = (byte) b;
+    if (blockLength == block.length) {
+      submitBlock();
+    }
+  }
+
+  @Override
+  public void write(final byte[] bytes, int offset, int length) throws IOException {
+    checkOpen();
+    while (length > 0) {
+      final int toCopy = Math.min(length, block.length - blockLength);
+      System.arraycopy(bytes, offset, block, blockLength, toCopy);
+      blockLength += toCopy;
+      offset += toCopy;
+      length -= toCopy;
+      if (blockLength == block.length) {
+        submitBlock();
+      }
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    checkOpen();
+    if (blockLength > 0) {
+      submitBlock();
+    }
+    writeCompletedBlocks(0);
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    boolean threw = true;
+    try {
+      // an empty stream must still be a valid gzip file. In block gzip format, the end-of-file
+      // marker ensures this
+      if (blockLength > 0 || (!anyBlocksWritten && !blockGzipFormat)) {
+        submitBlock();
+      }
+      writeCompletedBlocks(0);
+      if (blockGzipFormat) {
+        out.write(BLOCK_GZIP_EOF);
+      }
+      threw = false;
+    } finally {
+      executor.shutdownNow();
+      if (threw) {
+        try {
+          out.close();
+        } catch (IOException e) {
+          // the original exception is more informative
+        }
+      } else {
+        out.close();
+      }
+    }
+  }
+
+  private void checkOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+  private void submitBlock() throws IOException {
+    final byte[] toCompress = block;
+    final int length = blockLength;
+    pendingBlocks.addLast(
+        executor.submit(
+            new Callable<byte[]>() {
+              @Override
+              public byte[] call() {
+                return gzipMember(toCompress, 0, length, blockGzipFormat);
+              }
+            }));
+    anyBlocksWritten = true;
+    // the old buffer now belongs to the compression task
+    block = new byte[block.length];
+    blockLength = 0;
+    writeCompletedBlocks(maxPendingBlocks);
+  }
+
+  /** Writes compressed blocks in order until no more than {@code maxRemaining} are pending. */
+  private void writeCompletedBlocks(final int maxRemaining) throws IOException {
+    while (pendingBlocks.size() > maxRemaining) {
+      try {
+        out.write(pendingBlocks.removeFirst().get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while compressing");
+      } catch (ExecutionException e) {
+        throw new IOException("Compression of a block failed", e.getCause());
+      }
+    }
+  }
+
+  /** Compresses {@code length} bytes of {@code data} as a complete gzip member. */
+  private static byte[] gzipMember(
+      final byte[] data, final int offset, final int length, final boolean blockGzipFormat) {
+    final ByteArrayOutputStream ret = new ByteArrayOutputStream(length / 2 + 64);
+    writeHeader(ret, blockGzipFormat);
+    writeDeflated(data, offset, length, ret);
+    writeTrailer(data, offset, length, ret);
+    final byte[] member = ret.toByteArray();
+    if (blockGzipFormat) {
+      // BSIZE, the total size of the member minus one, comes at the end of the header
+      checkState(member.length <= 0x10000, "Block gzip member is too large");
+      member[BLOCK_GZIP_HEADER_BYTES - 2] = (byte) (member.length - 1);
+      member[BLOCK_GZIP_HEADER_BYTES - 1] = (byte) ((member.length - 1) >>> 8);
+    }
+    return member;
+  }
+
+  private static void writeHeader(final ByteArrayOutputStream out, final boolean blockGzipFormat) {
+    // magic, deflate, flags, no modification time, no extra flags, unknown OS
+    out.write(GZIP_MAGIC);
+    out.write(GZIP_MAGIC >> 8);
+    out.write(Deflater.DEFLATED);
+    out.write(blockGzipFormat ? FLAG_EXTRA : 0);
+    out.write(new byte[] {0, 0, 0, 0, 0, (byte) 0xff}, 0, 6);
+    if (blockGzipFormat) {
+      // six bytes of extra fields, consisting of the BGZF 'BC' field with a two-byte
+      // BSIZE, which is filled in once the member has been compressed
+      out.write(new byte[] {6, 0, 'B', 'C', 2, 0, 0, 0}, 0, 8);
+    }
+  }
+
+  private static void writeDeflated(
+      final byte[] data, final int offset, final int length, final ByteArrayOutputStream out) {
+    // nowrap, since the gzip header and trailer are written separately
+    final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    try {
+      deflater.setInput(data, offset, length);
+      deflater.finish();
+      final byte[] buffer = new byte[Math.max(512, Math.min(length, 64 * 1024))];
+      while (!deflater.finished()) {
+        final int deflated = deflater.deflate(buffer);
+        out.write(buffer, 0, deflated);
+      }
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static void writeTrailer(
+      final byte[] data, final int offset, final int length, final ByteArrayOutputStream out) {
+    final CRC32 crc = new CRC32();
+    crc.update(data, offset, length);
+    final byte[] trailer = new byte[TRAILER_BYTES];
+    writeIntLittleEndian(trailer, 0, (int) crc.getValue());
+    writeIntLittleEndian(trailer, 4, length);
+    out.write(trailer, 0, trailer.length);
+  }
+
+  private static void writeIntLittleEndian(final byte[] bytes, final int offset, final int value) {
+    bytes[offset] = (byte) value;
+    bytes[offset + 1] = (byte) (value >>> 8);
+    bytes[offset + 2] = (byte) (value >>> 16);
+    bytes[offset + 3] = (byte) (value >>> 24);
+  }
+
+  @Override
+  public String toString() {
+    return "ParallelGZIPOutputStream(" + out + ", blockSize=" + block.length + ")";
+  }
+}
@@ -0,0 +1,235 @@
+package edu.isi.nlp.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Charsets;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.UnsignedBytes;
+import edu.isi.nlp.symbols.Symbol;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A directory of {@link Symbol} keys, each with two longs of data, which is searched in place in a
+ * buffer, such as a memory-mapped file. This is the shared part of the formats of {@link
+ * MappedOffsetIndex} and of memory-mapped key-value stores; each of these writes its own header in
+ * front of the directory, which is written by {@link Writer}.
+ *
+ * <p>The directory is big-endian and consists of:
+ *
+ * <ul>
+ *   <li>one fixed-width record per entry, in key order, of the position of the key relative to the
+ *       key block (long), the length of the key in bytes (int), and the two longs of data.
+ *   <li>the key block, which is the UTF-8 encodings of the keys, concatenated. Keys are sorted in
+ *       unsigned lexicographic order of their UTF-8 encodings, which is the same as code point
+ *       order.
+ * </ul>
+ *
+ * <p>Lookups are binary searches and no key is decoded unless it is requested. Only absolute gets
+ * are used on the buffer, so this is safe to use from multiple threads.
+ */
+@Beta
+public final class SortedKeyDirectory {
+
+  public static final int RECORD_BYTES = 28;
+
+  private static final int KEY_POSITION_FIELD = 0;
+  private static final int KEY_LENGTH_FIELD = 8;
+  private static final int FIRST_FIELD = 12;
+  private static final int SECOND_FIELD = 20;
+
+  private static final Comparator<byte[]> UNSIGNED_ORDER =
+      UnsignedBytes.lexicographicalComparator();
+
+  private final ByteBuffer buffer;
+  private final int headerBytes;
+  private final int numEntries;
+  private final int keyBlockStart;
+
+  private SortedKeyDirectory(final ByteBuffer buffer, final int headerBytes, final int numEntries) {
+    this.buffer = checkNotNull(buffer);
+    checkArgument(headerBytes >= 0 && numEntries >= 0);
+    final long keyBlockStart = keyBlockStart(headerBytes, numEntries);
+    checkArgument(keyBlockStart <= buffer.capacity(), "Key directory is truncated");
+    this.headerBytes = headerBytes;
+    this.numEntries = numEntries;
+    this.keyBlockStart = (int) keyBlockStart;
+  }
+
+  /**
+   * Gets the directory of {@code numEntries} keys which follows a header of {@code headerBytes} at
+   * the start of {@code buffer}, which must be big-endian. The caller is responsible for checking
+   * the header.
+   */
+  public static SortedKeyDirectory fromBuffer(
+      final ByteBuffer buffer, final int headerBytes, final int numEntries) {
+    return new SortedKeyDirectory(buffer, headerBytes, numEntries);
+  }
+
+  /**
+   * The position of the key block in a file with a header of {@code headerBytes} followed by a
+   * directory of {@code numEntries} keys.
+   */
+  public static long keyBlockStart(final int headerBytes, final int numEntries) {
+    return headerBytes + (long) numEntries * RECORD_BYTES;
+  }
+
+  /** The number of keys in this directory. */
+  public int size() {
+    return numEntries;
+  }
+
+  /** The keys in the order they are stored in, which are decoded as they are iterated. */
+  public Iterable<Symbol> keys() {
+    return new Iterable<Symbol>() {
+      @Override
+      public Iterator<Symbol> iterator() {
+        return new AbstractIterator<Symbol>() {
+          private int nextEntry = 0;
+
+          @Override
+          protected Symbol computeNext() {
+            if (nextEntry < numEntries) {
+              return keyOf(nextEntry++);
+            } else {
+              return endOfData();
+            }
+          }
+        };
+      }
+    };
+  }
+
+  /** The index of the entry for {@code key}, or -1 if it is not in the directory. */
+  public int entryOf(final Symbol key) {
+    final byte[] probe = key.asString().getBytes(Charsets.UTF_8);
+    int low = 0;
+    int high = numEntries - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      final int cmp = compareKey(mid, probe);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /** Decodes the key of {@code entry}. */
+  public Symbol keyOf(final int entry) {
+    final byte[] keyBytes = new byte[keyLengthOf(entry)];
+    final int keyStart = keyStartOf(entry);
+    for (int i = 0; i < keyBytes.length; ++i) {
+      keyBytes[i] = buffer.get(keyStart + i);
+    }
+    return Symbol.from(new String(keyBytes, Charsets.UTF_8));
+  }
+
+  /** The first long of data stored with {@code entry}. */
+  public long firstLongOf(final int entry) {
+    return buffer.getLong(recordStart(entry) + FIRST_FIELD);
+  }
+
+  /** The second long of data stored with {@code entry}. */
+  public long secondLongOf(final int entry) {
+    return buffer.getLong(recordStart(entry) + SECOND_FIELD);
+  }
+
+  /** Compares the stored key of {@code entry} to {@code probe} as unsigned bytes. */
+  private int compareKey(final int entry, final byte[] probe) {
+    final int keyStart = keyStartOf(entry);
+    final int keyLength = keyLengthOf(entry);
+    final int minLength = Math.min(keyLength, probe.length);
+    for (int i = 0; i < minLength; ++i) {
+      final int cmp = (buffer.get(keyStart + i) & 0xFF) - (probe[i] & 0xFF);
+      if (cmp != 0) {
+        return cmp;
+      }
+    }
+    return keyLength - probe.length;
+  }
+
+  private int keyLengthOf(final int entry) {
+    return buffer.getInt(recordStart(entry) + KEY_LENGTH_FIELD);
+  }
+
+  private int keyStartOf(final int entry) {
+    return (int) (keyBlockStart + buffer.getLong(recordStart(entry) + KEY_POSITION_FIELD));
+  }
+
+  private int recordStart(final int entry) {
+    return headerBytes + entry * RECORD_BYTES;
+  }
+
+  /**
+   * Collects keys and their data in any order and writes them as a {@link SortedKeyDirectory}. Keys
+   * must be distinct.
+   */
+  public static final class Writer {
+
+    private final List<Entry> entries = Lists.newArrayList();
+
+    public Writer() {}
+
+    public void add(final Symbol key, final long first, final long second) {
+      entries.add(new Entry(key.asString().getBytes(Charsets.UTF_8), first, second));
+    }
+
+    /** The number of keys added so far. */
+    public int size() {
+      return entries.size();
+    }
+
+    /**
+     * Writes the records and key block of the directory to {@code out}, which should be positioned
+     * just after a header of the size which will be given to {@link #fromBuffer(ByteBuffer, int,
+     * int)} when the directory is read.
+     */
+    public void writeTo(final DataOutput out) throws IOException {
+      Collections.sort(
+          entries,
+          new Comparator<Entry>() {
+            @Override
+            public int compare(final Entry left, final Entry right) {
+              return UNSIGNED_ORDER.compare(left.key, right.key);
+            }
+          });
+      long keyPosition = 0;
+      for (final Entry entry : entries) {
+        out.writeLong(keyPosition);
+        out.writeInt(entry.key.length);
+        out.writeLong(entry.first);
+        out.writeLong(entry.second);
+        keyPosition += entry.key.length;
+      }
+      for (final Entry entry : entries) {
+        out.write(entry.key);
+      }
+    }
+  }
+
+  private static final class Entry {
+
+    private final byte[] key;
+    private final long first;
+    private final long second;
+
+    private Entry(final byte[] key, final long first, final long second) {
+      this.key = checkNotNull(key);
+      this.first = first;
+      this.second = second;
+    }
+  }
+}
@@ -2,13 +2,13 @@ package edu.isi.nlp.strings;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.collect.Iterables.getLast;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.google.common.annotations.Beta;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterables;
 import edu.isi.nlp.IsiNlpImmutable;
 import edu.isi.nlp.StringUtils;
 import edu.isi.nlp.UnicodeFriendlyString;
@@ -20,7 +20,6 @@ import edu.isi.nlp.strings.offsets.EDTOffset;
 import edu.isi.nlp.strings.offsets.OffsetGroup;
 import edu.isi.nlp.strings.offsets.OffsetGroupRange;
 import edu.isi.nlp.strings.offsets.OffsetRange;
-import java.util.List;
 import org.immutables.value.Value;
 
 /**
@@ -74,8 +73,11 @@ import org.immutables.value.Value;
  *       character.
  * </ul>
  *
- * <p>Byte and ASR offsets are typically lost by substring and other operations on {@link
- * LocatedString} since there is usually insufficient information to determine what they should be.
+ * <p>ASR offsets are typically lost by substring and other operations on {@link LocatedString}
+ * since there is usually insufficient information to determine what they should be. Byte offsets
+ * survive these operations as long as every region carrying them maps each reference code point to
+ * the same number of bytes, which is always true of strings made by {@link
+ * #fromReferenceString(UnicodeFriendlyString, boolean, boolean)}.
  *
  * <h2>Substrings</h2>
  *
@@ -96,7 +98,9 @@ import org.immutables.value.Value;
  *
  * <ul>
  *   <li><b>substring of content, with offset mapping, by content bounds:</b> {@link
- *       #contentLocatedSubstringByContentOffsets(OffsetRange)}
+ *       #contentLocatedSubstringByContentOffsets(OffsetRange)}, or {@link
+ *       #contentLocatedSubstringViewByContentOffsets(OffsetRange)} for a much cheaper {@link
+ *       LocatedStringView} which shares this string's storage.
  *   <li><b>substring of content, with offset mapping, by reference bounds:</b> {@link
  *       #contentLocatedSubstringByReferenceOffsets(OffsetRange)}. Currently unimplemented.
  *   <li><b>substring of content, without offset mapping, by content bounds:</b> {@link
@@ -144,6 +148,10 @@ import org.immutables.value.Value;
  *       another or the reference text EDT offsets must be in one-to-one correspondence with the
  *       reference text character offsets. That is, every either region represents an area where EDT
  *       offset counting rules don't apply or an area which is skipped for EDT offset counting.
+ *   <li>If a region has both start and end byte offsets and is not an insertion or deletion, every
+ *       reference code point in it should be encoded by the same number of bytes, so byte offsets
+ *       can be interpolated. Byte offsets are not interpolated within regions where this does not
+ *       hold.
  * </ul>
  *
  * <p>The regions are required to be disjoint on the content text side and to cover it completely.
@@ -151,6 +159,11 @@ import org.immutables.value.Value;
  * "canonicalization" will occur automatically when the object is built, so users do not need to
  * concern themselves with it. However, we exploit this property in e.g. string containment checks.
  *
+ * <p>Because a document-length string can have a great many regions, they are not stored as {@link
+ * CharacterRegion} objects but column-wise in primitive arrays (see {@code
+ * PackedCharacterRegions}). {@link #characterRegions()} materializes {@link CharacterRegion}s on
+ * request for I/O code, and {@link Builder} accepts them, so this is invisible outside this class.
+ *
  * @author originally by David A. Herman, refactored by Edward Loper; translated to Java and later
  *     restructured significantly by Ryan Gabbard
  */
@@ -185,8 +198,25 @@ public abstract class LocatedString {
    *
    * <p>These regions must be in order, gap-less with respect to their content string offsets, and
    * non-overlapping with respect to their content string positions.
+   *
+   * <p>Regions are not stored as objects, so this allocates a new list and new region objects on
+   * each call, and the result is deliberately not cached, since holding it would undo the savings
+   * of packing. Callers which need the regions more than once should keep the returned list. Code
+   * internal to {@link LocatedString} should use {@link #packedRegions()} instead.
+   */
+  public final ImmutableList<CharacterRegion> characterRegions() {
+    return packedRegions().toRegions();
+  }
+
+  /**
+   * The storage behind {@link #characterRegions()}. This is serialized as the list of regions it
+   * represents so the JSON form of a {@code LocatedString} does not depend on its internal
+   * representation.
    */
-  public abstract ImmutableList<CharacterRegion> characterRegions();
+  @JsonProperty("characterRegions")
+  @JsonSerialize(converter = PackedCharacterRegions.ToRegionList.class)
+  @JsonDeserialize(converter = PackedCharacterRegions.FromRegionList.class)
+  abstract PackedCharacterRegions packedRegions();
 
   // Derived fields
 
@@ -200,9 +230,7 @@ public abstract class LocatedString {
   @Value.Derived
   public OffsetGroupRange referenceBounds() {
     // we enforce in check that regions is not empty and we do not access this method in check()
-    return OffsetGroupRange.from(
-        characterRegions().iterator().next().referenceStartOffsetInclusive(),
-        getLast(characterRegions()).referenceEndOffsetInclusive());
+    return packedRegions().referenceBounds();
   }
 
   @Override
@@ -232,26 +260,116 @@ public abstract class LocatedString {
     return new OffsetCalculator.Builder().build().calculateOffsets(text);
   }
 
+  /**
+   * As {@link #fromReferenceString(UnicodeFriendlyString)}, but optionally calculating EDT offsets
+   * by the rules described in the class Javadoc (rather than making them equal to character
+   * offsets) and recording the byte offsets of each character in the UTF-8 encoding of {@code
+   * text}. Byte offsets allow spans to be located in the raw bytes of a UTF-8 document (e.g.
+   * through an {@link edu.isi.nlp.io.IndexedByteSource}) without decoding it. All offsets are
+   * computed in a single pass over {@code text}.
+   */
+  @Beta
+  public static LocatedString fromReferenceString(
+      final UnicodeFriendlyString text,
+      final boolean calculateEDTOffsetsByACERules,
+      final boolean computeUtf8ByteOffsets) {
+    return new OffsetCalculator.Builder()
+        .calculateEDTOffsetsByACERules(calculateEDTOffsetsByACERules)
+        .computeUtf8ByteOffsets(computeUtf8ByteOffsets)
+        .build()
+        .calculateOffsets(text);
+  }
+
   /**
    * Users should not construct {@code LocatedString} directly from a builder except in test and I/O
    * code. Prefer {@link #fromReferenceString(UnicodeFriendlyString)}.
+   *
+   * <p>Regions are given as {@link CharacterRegion}s and packed when the string is built. Regions
+   * given after {@link #from(LocatedString)} replace, rather than add to, those of the copied
+   * string.
    */
-  public static class Builder extends ImmutableLocatedString.Builder {}
+  public static class Builder extends ImmutableLocatedString.Builder {
+
+    private PackedCharacterRegions.Builder regions = null;
+
+    public final Builder characterRegions(Iterable<? extends CharacterRegion> elements) {
+      regions = new PackedCharacterRegions.Builder();
+      return addAllCharacterRegions(elements);
+    }
+
+    public final Builder addCharacterRegions(CharacterRegion element) {
+      if (regions == null) {
+        regions = new PackedCharacterRegions.Builder();
+      }
+      regions.addRegion(checkNotNull(element));
+      return this;
+    }
+
+    public final Builder addCharacterRegions(CharacterRegion... elements) {
+      for (final CharacterRegion element : elements) {
+        addCharacterRegions(element);
+      }
+      return this;
+    }
+
+    public final Builder addAllCharacterRegions(Iterable<? extends CharacterRegion> elements) {
+      for (final CharacterRegion element : elements) {
+        addCharacterRegions(element);
+      }
+      return this;
+    }
+
+    @Override
+    public LocatedString build() {
+      if (regions != null) {
+        packedRegions(regions.build());
+      }
+      return super.build();
+    }
+  }
 
   // offset mapping
 
   /** Get the earliest reference string offsets corresponding to the given content string offset. */
   public OffsetGroup startReferenceOffsetsForContentOffset(CharOffset contentOffset) {
-    return characterRegions()
-        .get(regionIndexContainingContentOffset(contentOffset))
-        .startOffsetGroupForPosition(contentOffset);
+    return packedRegions()
+        .startOffsetGroupForPosition(
+            regionIndexContainingContentOffset(contentOffset), contentOffset.asInt());
   }
 
   /** Get the latest reference string offsets corresponding to the given content string offset. */
   public OffsetGroup endReferenceOffsetsForContentOffset(CharOffset contentOffset) {
-    return characterRegions()
-        .get(regionIndexContainingContentOffset(contentOffset))
-        .endOffsetGroupForPosition(contentOffset);
+    return packedRegions()
+        .endOffsetGroupForPosition(
+            regionIndexContainingContentOffset(contentOffset), contentOffset.asInt());
+  }
+
+  /**
+   * Gets the earliest reference string offsets corresponding to each of many content string
+   * offsets. This is equivalent to calling {@link
+   * #startReferenceOffsetsForContentOffset(CharOffset)} on each offset, but all offsets are mapped
+   * in a single pass over this string's internal representation, which is much faster when mapping
+   * e.g. all token offsets of a document.
+   *
+   * @param sortedContentOffsets content string code point offsets in non-decreasing order
+   * @return the reference offsets for each content offset, in the same order
+   */
+  public ImmutableList<OffsetGroup> startReferenceOffsetsForContentOffsets(
+      int[] sortedContentOffsets) {
+    return packedRegions().referenceOffsetsForContentOffsets(sortedContentOffsets, true);
+  }
+
+  /**
+   * Gets the latest reference string offsets corresponding to each of many content string offsets.
+   * This is the batch equivalent of {@link #endReferenceOffsetsForContentOffset(CharOffset)}; see
+   * {@link #startReferenceOffsetsForContentOffsets(int[])}.
+   *
+   * @param sortedContentOffsets content string code point offsets in non-decreasing order
+   * @return the reference offsets for each content offset, in the same order
+   */
+  public ImmutableList<OffsetGroup> endReferenceOffsetsForContentOffsets(
+      int[] sortedContentOffsets) {
+    return packedRegions().referenceOffsetsForContentOffsets(sortedContentOffsets, false);
   }
 
   // substrings
@@ -261,22 +379,35 @@ public abstract class LocatedString {
    * with respect to the {@code LocatedString}'s content, not its reference string. Please refer to
    * the class Javadoc for coverage of available substring options.
    *
-   * <p><b>NOTE:</b> Because it recomputes the various offsets of every character in the substring,
-   * this method is *significantly* more expensive than just fetching the String content of the
-   * substring. If you just need the String content, you should use rawSubstring() instead.
+   * <p><b>NOTE:</b> Because it copies the content and offset mapping of the substring, this method
+   * is more expensive than just fetching the String content of the substring. If you just need the
+   * String content, you should use rawSubstring() instead. If you need the offset mapping but not
+   * an independent copy, use {@link #contentLocatedSubstringViewByContentOffsets(OffsetRange)}.
    */
   public final LocatedString contentLocatedSubstringByContentOffsets(
       final OffsetRange<CharOffset> contentOffsets) {
     final UnicodeFriendlyString substringText = content().substringByCodePoints(contentOffsets);
-    final List<CharacterRegion> substringOffsets =
-        offsetsOfSubstringByContentCodepointOffsets(contentOffsets);
     return new LocatedString.Builder()
         .content(substringText)
         .referenceString(referenceString())
-        .characterRegions(substringOffsets)
+        .packedRegions(offsetsOfSubstringByContentCodepointOffsets(contentOffsets))
         .build();
   }
 
+  /**
+   * Return a view of a substring of this string with the same offset mapping as {@link
+   * #contentLocatedSubstringByContentOffsets(OffsetRange)} would produce. Creating a view takes
+   * time logarithmic in the number of regions of this string and copies neither the content nor the
+   * offset mapping, so it is suitable for e.g. extracting every mention in a document. The view
+   * keeps this string reachable; use {@link LocatedStringView#toLocatedString()} for an independent
+   * copy.
+   */
+  public final LocatedStringView contentLocatedSubstringViewByContentOffsets(
+      final OffsetRange<CharOffset> contentOffsets) {
+    return new LocatedStringView(
+        this, contentOffsets.startInclusive().asInt(), contentOffsets.endInclusive().asInt() + 1);
+  }
+
   /**
    * Return a {@code LocatedString} substring of this string containing the content offsets covering
    * the specified range of reference offsets. Please refer to the class Javadoc for coverage of
@@ -338,15 +469,38 @@ public abstract class LocatedString {
    * {@link #referenceBounds()} suffices and is much faster.
    */
   public final boolean containsExactly(LocatedString other) {
-    if (!referenceCharOffsetsSequential() && other.referenceCharOffsetsSequential()) {
+    return containsExactly(packedRegions(), content(), 0, other.packedRegions(), other.content());
+  }
+
+  /**
+   * As {@link #containsExactly(LocatedString)}, but for a view. This avoids materializing the view
+   * except for its content text.
+   */
+  public final boolean containsExactly(LocatedStringView other) {
+    return containsExactly(packedRegions(), content(), 0, other.regions(), other.content());
+  }
+
+  /**
+   * Implements {@code containsExactly} for both {@link LocatedString}s and {@link
+   * LocatedStringView}s. The content of the container is that of {@code containerContent} starting
+   * at code point {@code containerContentStart}, so that views can use their parent's content.
+   */
+  static boolean containsExactly(
+      PackedCharacterRegions containerRegions,
+      UnicodeFriendlyString containerContent,
+      int containerContentStart,
+      PackedCharacterRegions containeeRegions,
+      UnicodeFriendlyString containeeContent) {
+    if (!containerRegions.referenceCharOffsetsSequential()
+        && containeeRegions.referenceCharOffsetsSequential()) {
       throw new UnsupportedOperationException(
           "Containment for non-monotonic LocatedStrings needs" + " to be implemented");
     }
 
-    if (!referenceBounds().asCharOffsetRange().contains(other.referenceBounds().asCharOffsetRange())
-        || !referenceBounds()
-            .asEdtOffsetRange()
-            .contains(other.referenceBounds().asEdtOffsetRange())) {
+    final OffsetGroupRange containerBounds = containerRegions.referenceBounds();
+    final OffsetGroupRange containeeBounds = containeeRegions.referenceBounds();
+    if (!containerBounds.asCharOffsetRange().contains(containeeBounds.asCharOffsetRange())
+        || !containerBounds.asEdtOffsetRange().contains(containeeBounds.asEdtOffsetRange())) {
       // quick, cheap short-circuit check
       return false;
     }
@@ -354,11 +508,11 @@ public abstract class LocatedString {
     // which of our character regions contains the start character offset of the putative substring?
     final Optional<Integer> startRegionIndex =
         firstRegionIndexContainingReferenceCharOffset(
-            other.referenceBounds().startCharOffsetInclusive());
+            containerRegions, containeeBounds.startCharOffsetInclusive());
     // which of our character regions contains the end character offset of the putative substring?
     final Optional<Integer> endRegionIndex =
         firstRegionIndexContainingReferenceCharOffset(
-            other.referenceBounds().endCharOffsetInclusive());
+            containerRegions, containeeBounds.endCharOffsetInclusive());
 
     // if we don't have any region containing them, it can't be a substring
     if (!startRegionIndex.isPresent() || !endRegionIndex.isPresent()) {
@@ -369,7 +523,7 @@ public abstract class LocatedString {
         endRegionIndex.get() - startRegionIndex.get() + 1;
 
     // we know if they are a substring this must be equal because both are in canonical form
-    if (numThisRegionsPossiblyOverlappingSubstring != other.characterRegions().size()) {
+    if (numThisRegionsPossiblyOverlappingSubstring != containeeRegions.numRegions()) {
       return false;
     }
 
@@ -380,8 +534,8 @@ public abstract class LocatedString {
       // special case for when the putative substring would be contained entirely in just one
       // of our character regions
       final CharacterRegion containerOnlyMatchingRegion =
-          characterRegions().get(startRegionIndex.get());
-      final CharacterRegion containeeOnlyRegion = other.characterRegions().get(0);
+          containerRegions.region(startRegionIndex.get());
+      final CharacterRegion containeeOnlyRegion = containeeRegions.region(0);
       if (containerOnlyMatchingRegion.contains(containeeOnlyRegion)) {
         earliestPossibleMatchingContentOffset =
             containerOnlyMatchingRegion.absoluteStartingContentOffsetOfReferenceCharOffset(
@@ -396,8 +550,8 @@ public abstract class LocatedString {
       // if the putative substring covers more than one of our character regions, then
       // its first region must be a suffix of our first region...
       final CharacterRegion containerFirstMatchingRegion =
-          characterRegions().get(startRegionIndex.get());
-      final CharacterRegion containeeFirstRegion = other.characterRegions().get(0);
+          containerRegions.region(startRegionIndex.get());
+      final CharacterRegion containeeFirstRegion = containeeRegions.region(0);
       if (!containeeFirstRegion.isSuffixOf(containerFirstMatchingRegion)) {
         return false;
       }
@@ -407,8 +561,9 @@ public abstract class LocatedString {
 
       // and its last region must be a prefix of our last region
       final CharacterRegion containerLastMatchingRegion =
-          characterRegions().get(endRegionIndex.get());
-      final CharacterRegion containeeLastRegion = Iterables.getLast(other.characterRegions());
+          containerRegions.region(endRegionIndex.get());
+      final CharacterRegion containeeLastRegion =
+          containeeRegions.region(containeeRegions.numRegions() - 1);
       if (!containeeLastRegion.isPrefixOf(containerLastMatchingRegion)) {
         return false;
       }
@@ -418,19 +573,19 @@ public abstract class LocatedString {
 
       // and all intermediate regions must match exactly (because of canonical form)
       for (int i = 1; i < numThisRegionsPossiblyOverlappingSubstring - 1; ++i) {
-        final CharacterRegion thisRegion = characterRegions().get(startRegionIndex.get() + i);
-        final CharacterRegion otherRegion = other.characterRegions().get(i);
-        if (!thisRegion.equivalentUpToShiftedContentOffsets(otherRegion)) {
+        if (!containerRegions.equivalentUpToShiftedContentOffsets(
+            startRegionIndex.get() + i, containeeRegions, i)) {
           return false;
         }
       }
     }
 
-    return content()
+    return containerContent
         .substringByCodePoints(
             OffsetRange.fromInclusiveEndpoints(
-                earliestPossibleMatchingContentOffset, latestPossibleMatchingContentOffset))
-        .contains(other.content());
+                earliestPossibleMatchingContentOffset.shiftedCopy(containerContentStart),
+                latestPossibleMatchingContentOffset.shiftedCopy(containerContentStart)))
+        .contains(containeeContent);
   }
 
   // private implementation
@@ -489,10 +644,9 @@ public abstract class LocatedString {
 
     /** The size of this region on the reference side, in code points. */
     private int referenceCodePointLength() {
-      // +1 because offsets are inclusive
-      return referenceEndOffsetInclusive().charOffset().asInt()
-          - referenceStartOffsetInclusive().charOffset().asInt()
-          + 1;
+      return PackedCharacterRegions.referenceCodePointLength(
+          referenceStartOffsetInclusive().charOffset().asInt(),
+          referenceEndOffsetInclusive().charOffset().asInt());
     }
 
     /** The size of this region on the content size, in code points. */
@@ -503,12 +657,14 @@ public abstract class LocatedString {
 
     /** Whether this region represents content inserted with no corresponding reference text. */
     private boolean isInsertion() {
-      return contentCodePointLength() > 1 && referenceCodePointLength() == 1;
+      return PackedCharacterRegions.isInsertion(
+          contentCodePointLength(), referenceCodePointLength());
     }
 
     /** Whether this region represents content deleted from the reference text. */
     private boolean isDeletion() {
-      return contentCodePointLength() == 1 && referenceCodePointLength() > 1;
+      return PackedCharacterRegions.isDeletion(
+          contentCodePointLength(), referenceCodePointLength());
     }
 
     /**
@@ -533,174 +689,10 @@ public abstract class LocatedString {
 
     /** Whether this is a region where EDT offsets are not incremented. */
     private boolean isEdtSkipRegion() {
-      return referenceCodePointLength() > 0
-          && referenceStartOffsetInclusive()
-              .edtOffset()
-              .equals(referenceEndOffsetInclusive().edtOffset());
-    }
-
-    /** The beginning of the reference offsets mapped to a content string offset. */
-    private OffsetGroup startOffsetGroupForPosition(final CharOffset position) {
-      final int offset = position.asInt() - contentStartPosInclusive().asInt();
-
-      if (offset > 0) {
-        return new OffsetGroup.Builder()
-            .charOffset(startReferenceCharOffsetForRelativePosition(offset))
-            .edtOffset(startReferenceEdtOffsetForRelativePosition(offset))
-            .build();
-      } else {
-        return referenceStartOffsetInclusive();
-      }
-    }
-
-    /** The end of the reference offsets mapped to a content string offset. */
-    private OffsetGroup endOffsetGroupForPosition(final CharOffset position) {
-      final int offset = position.asInt() - contentStartPosInclusive().asInt();
-
-      if (offset > 0) {
-        return new OffsetGroup.Builder()
-            .charOffset(endReferenceCharOffsetForRelativePosition(offset))
-            .edtOffset(endReferenceEdtOffsetForRelativePosition(offset))
-            .build();
-      } else {
-        return referenceStartOffsetInclusive();
-      }
-    }
-
-    /**
-     * The first character offset mapped to a content string offset, where the offset is specified
-     * relative to the beginning of this region.
-     */
-    private CharOffset startReferenceCharOffsetForRelativePosition(int relativePosition) {
-      if (isInsertion() || isDeletion()) {
-        return referenceStartOffsetInclusive().charOffset();
-      } else {
-        return CharOffset.asCharOffset(
-            referenceStartOffsetInclusive().charOffset().asInt() + relativePosition);
-      }
-    }
-
-    /**
-     * The last character offset mapped to a content string offset, where the offset is specified
-     * relative to the beginning of this region.
-     */
-    private CharOffset endReferenceCharOffsetForRelativePosition(int relativePosition) {
-      if (isInsertion() || isDeletion()) {
-        return referenceEndOffsetInclusive().charOffset();
-      } else {
-        return CharOffset.asCharOffset(
-            referenceStartOffsetInclusive().charOffset().asInt() + relativePosition);
-      }
-    }
-
-    /**
-     * The first EDT offset mapped to a content string offset, where the offset is specified
-     * relative to the beginning of this region.
-     */
-    private EDTOffset startReferenceEdtOffsetForRelativePosition(int relativePosition) {
-      // within any region, either the EDT offsets are constant or increase in lockstep with
-      // the content offsets
-      if (isInsertion() || isDeletion() || isEdtSkipRegion()) {
-        return referenceStartOffsetInclusive().edtOffset();
-      } else {
-        return EDTOffset.asEDTOffset(
-            referenceStartOffsetInclusive().edtOffset().asInt() + relativePosition);
-      }
-    }
-
-    /**
-     * The last EDT offset mapped to a content string offset, where the offset is specified relative
-     * to the beginning of this region.
-     */
-    private EDTOffset endReferenceEdtOffsetForRelativePosition(int relativePosition) {
-      // within any region, either the EDT offsets are constant or increase in lockstep with
-      // the content offsets
-      if (isInsertion() || isDeletion() || isEdtSkipRegion()) {
-        return referenceEndOffsetInclusive().edtOffset();
-      } else {
-        return EDTOffset.asEDTOffset(
-            referenceStartOffsetInclusive().edtOffset().asInt() + relativePosition);
-      }
-    }
-
-    /**
-     * Given content offsets within this region, makes a new {@link CharacterRegion} describing the
-     * mapping for the span only.
-     */
-    private CharacterRegion fromContentOffsetStartInclusiveToEndExclusive(
-        CharOffset substringContentStartInclusive, CharOffset substringContentEndExclusive) {
-      checkArgument(
-          substringContentStartInclusive.followsOrEquals(contentStartPosInclusive())
-              && substringContentEndExclusive.precedesOrEquals(contentEndPosExclusive()));
-
-      final boolean isThisRegionExactly =
-          substringContentStartInclusive.equals(contentStartPosInclusive())
-              && substringContentEndExclusive.equals(contentEndPosExclusive());
-      if (isThisRegionExactly) {
-        return this;
-      } else {
-        return new CharacterRegion.Builder()
-            .contentNonBmp(contentNonBmp())
-            .contentStartPosInclusive(substringContentStartInclusive)
-            .contentEndPosExclusive(substringContentEndExclusive)
-            .referenceStartOffsetInclusive(
-                startOffsetGroupForPosition(substringContentStartInclusive))
-            .referenceEndOffsetInclusive(
-                endOffsetGroupForPosition(substringContentEndExclusive.shiftedCopy(-1)))
-            .build();
-      }
-    }
-
-    /**
-     * Given a content offset within this region, makes a new {@link CharacterRegion} describing the
-     * mapping for the span from that offset to the end of the region only.
-     */
-    private CharacterRegion fromContentOffsetInclusiveToEnd(
-        CharOffset substringContentStartInclusive) {
-      return fromContentOffsetStartInclusiveToEndExclusive(
-          substringContentStartInclusive, contentEndPosExclusive());
-    }
-
-    /**
-     * Given a content offset within this region, makes a new {@link CharacterRegion} describing the
-     * mapping for the span from the beginning of the region to that offset only.
-     */
-    private CharacterRegion fromStartToContentOffsetExclusive(
-        CharOffset substringContentEndExclusive) {
-      return fromContentOffsetStartInclusiveToEndExclusive(
-          contentStartPosInclusive(), substringContentEndExclusive);
-    }
-
-    /**
-     * Given an immediately following region which follows the same offset mapping rules, merges the
-     * two together into a new region. This is used when {@link LocatedString}s are put into
-     * canonical form during construction in {@link #check()}.
-     */
-    private CharacterRegion mergeFollowingRegion(final CharacterRegion followingRegion) {
-      checkArgument(
-          contentEndPosExclusive().precedesOrEquals(followingRegion.contentStartPosInclusive()));
-      checkArgument(mayMergeWithFollowing(followingRegion));
-
-      return new CharacterRegion.Builder()
-          .contentStartPosInclusive(contentStartPosInclusive())
-          .contentEndPosExclusive(followingRegion.contentEndPosExclusive())
-          .contentNonBmp(contentNonBmp()) // = followingRegion.contentNonBmp by precondition
-          .referenceStartOffsetInclusive(referenceStartOffsetInclusive())
-          .referenceEndOffsetInclusive(followingRegion.referenceEndOffsetInclusive())
-          .build();
-    }
-
-    /**
-     * Would merging this region with the following maintain offset mapping? If so and they are
-     * adjacent, they must be merged to have a {@code LocatedString} in canonical form.
-     */
-    private boolean mayMergeWithFollowing(final CharacterRegion other) {
-      return contentEndPosExclusive().equals(other.contentStartPosInclusive())
-          && referenceEndOffsetInclusive().equals(other.referenceStartOffsetInclusive())
-          && isDeletion() == other.isDeletion()
-          && isInsertion() == other.isInsertion()
-          && isEdtSkipRegion() == other.isEdtSkipRegion()
-          && contentNonBmp() == other.contentNonBmp();
+      return PackedCharacterRegions.isEdtSkipRegion(
+          referenceCodePointLength(),
+          referenceStartOffsetInclusive().edtOffset().asInt(),
+          referenceEndOffsetInclusive().edtOffset().asInt());
     }
 
     /**
@@ -741,18 +733,6 @@ public abstract class LocatedString {
               .followsOrEqualsForAllOffsetTypesInBoth(other.referenceEndOffsetInclusive());
     }
 
-    /**
-     * Makes a new {@code CharacterRegion} just like this one, but with the start and end content
-     * offsets shifted by the specified amount. Useful when making substrings.
-     */
-    private CharacterRegion shiftContentOffsets(int shiftAmount) {
-      return new CharacterRegion.Builder()
-          .from(this)
-          .contentStartPosInclusive(contentStartPosInclusive().shiftedCopy(shiftAmount))
-          .contentEndPosExclusive(contentEndPosExclusive().shiftedCopy(shiftAmount))
-          .build();
-    }
-
     public boolean equivalentUpToShiftedContentOffsets(final CharacterRegion otherRegion) {
       return contentNonBmp() == otherRegion.contentNonBmp()
           && referenceStartOffsetInclusive().equals(otherRegion.referenceStartOffsetInclusive())
@@ -800,97 +780,26 @@ public abstract class LocatedString {
     public static class Builder extends ImmutableLocatedString.CharacterRegion.Builder {}
   }
 
-  @SuppressWarnings("ReferenceEquality") // see comment in method body
   @UnicodeUnsafe
   @Value.Check
-  protected LocatedString checkValidity() {
-    checkRegionsCompletelyCoverContentString();
+  protected void checkValidity() {
+    // regions are gap-free and canonical by construction of PackedCharacterRegions
+    final PackedCharacterRegions regions = packedRegions();
+    checkArgument(!regions.isEmpty(), "LocatedString for %s lacks regions", content());
+    checkArgument(
+        regions.contentEndExclusive(regions.numRegions() - 1) == content().lengthInCodePoints());
 
     // ensure that if a reference string is provided, it is compatible with the region's reference
     // character offsets
     if (referenceString().isPresent()) {
-      for (final CharacterRegion region : characterRegions()) {
-        final CharOffset lastCodepointOffsetInReferenceString =
-            CharOffset.asCharOffset(referenceString().get().lengthInCodePoints() - 1);
-
+      final int lastCodepointOffsetInReferenceString =
+          referenceString().get().lengthInCodePoints() - 1;
+      for (int i = 0; i < regions.numRegions(); ++i) {
         checkArgument(
-            region.referenceStartOffsetInclusive().charOffset().asInt() >= 0
-                && region
-                    .referenceEndOffsetInclusive()
-                    .charOffset()
-                    .precedesOrEquals(lastCodepointOffsetInReferenceString));
+            regions.referenceCharStart(i) >= 0
+                && regions.referenceCharEnd(i) <= lastCodepointOffsetInReferenceString);
       }
     }
-
-    final ImmutableList<CharacterRegion> canonicalRegions = canonicalize(characterRegions());
-    // == is ok here because if the character regions are already canonical, canonicalize
-    // promises to return the input list itself
-    if (canonicalRegions != characterRegions()) {
-      return new LocatedString.Builder().from(this).characterRegions(canonicalRegions).build();
-    } else {
-      return this;
-    }
-  }
-
-  private void checkRegionsCompletelyCoverContentString() {
-    checkArgument(!characterRegions().isEmpty(), "LocatedString for %s lacks regions", content());
-
-    checkArgument(
-        characterRegions().iterator().next().contentStartPosInclusive().asInt() == 0,
-        "First region of a located string must have a content position of 0");
-    CharacterRegion lastRegion = null;
-    for (final CharacterRegion region : characterRegions()) {
-      if (lastRegion != null) {
-        checkArgument(
-            lastRegion.contentEndPosExclusive().equals(region.contentStartPosInclusive()),
-            "There is a gap in the content string not covered by any region: %s "
-                + "immediately precedes %s",
-            lastRegion,
-            region);
-      }
-      lastRegion = region;
-    }
-    checkArgument(
-        getLast(characterRegions()).contentEndPosExclusive().asInt()
-            == content().lengthInCodePoints());
-  }
-
-  /**
-   * Converts character regions into a canonical form where no two adjacent character regions have
-   * the same offset mapping rules (that is, there is no unnecessary multiplication of character
-   * regions). We exploit this property when computing substring containment and doing equality
-   * checks.
-   *
-   * <p>If the input is in canonical form already, the identical list object itself is returned.
-   */
-  private ImmutableList<CharacterRegion> canonicalize(ImmutableList<CharacterRegion> inputRegions) {
-    boolean mergedAnything = false;
-    final ImmutableList.Builder<CharacterRegion> canonicalizedRegions = ImmutableList.builder();
-    CharacterRegion bufferRegion = null;
-
-    for (final CharacterRegion curRegion : inputRegions) {
-      if (bufferRegion == null) {
-        bufferRegion = curRegion;
-      } else {
-        if (bufferRegion.mayMergeWithFollowing(curRegion)) {
-          mergedAnything = true;
-          bufferRegion = bufferRegion.mergeFollowingRegion(curRegion);
-        } else {
-          canonicalizedRegions.add(bufferRegion);
-          bufferRegion = curRegion;
-        }
-      }
-    }
-
-    if (bufferRegion != null) {
-      canonicalizedRegions.add(bufferRegion);
-    }
-
-    if (mergedAnything) {
-      return canonicalizedRegions.build();
-    } else {
-      return inputRegions;
-    }
   }
 
   /**
@@ -902,137 +811,50 @@ public abstract class LocatedString {
    */
   @Value.Derived
   protected boolean referenceCharOffsetsSequential() {
-    for (int i = 1; i < characterRegions().size(); ++i) {
-      if (!characterRegions()
-          .get(i - 1)
-          .referenceEndOffsetInclusive()
-          .charOffset()
-          .precedesOrEquals(
-              characterRegions().get(i).referenceStartOffsetInclusive().charOffset())) {
-        return false;
-      }
-    }
-    return true;
+    return packedRegions().referenceCharOffsetsSequential();
   }
 
-  private Optional<Integer> firstRegionIndexContainingReferenceCharOffset(
-      final CharOffset charOffset) {
-    // lazy implementation, can make faster if needed
-    for (int i = 0; i < characterRegions().size(); ++i) {
-      final CharacterRegion region = characterRegions().get(i);
-      if (region.referenceStartOffsetInclusive().charOffset().precedesOrEquals(charOffset)
-          && region.referenceEndOffsetInclusive().charOffset().followsOrEquals(charOffset)) {
-        return Optional.of(i);
-      }
+  private static Optional<Integer> firstRegionIndexContainingReferenceCharOffset(
+      final PackedCharacterRegions regions, final CharOffset charOffset) {
+    final int regionIdx = regions.firstRegionIndexContainingReferenceCharOffset(charOffset.asInt());
+    if (regionIdx != PackedCharacterRegions.NO_REGION) {
+      return Optional.of(regionIdx);
+    } else {
+      return Optional.absent();
     }
-    return Optional.absent();
   }
 
   /**
-   * Constructs {@link CharacterRegion}s for a substring. See {@link
-   * #contentLocatedSubstringByContentOffsets}
+   * Constructs the regions for a substring. See {@link #contentLocatedSubstringByContentOffsets}
    */
-  private ImmutableList<CharacterRegion> offsetsOfSubstringByContentCodepointOffsets(
+  private PackedCharacterRegions offsetsOfSubstringByContentCodepointOffsets(
       final OffsetRange<CharOffset> substringContentCodePointsRange) {
     checkArgument(substringContentCodePointsRange.startInclusive().asInt() >= 0);
     checkArgument(
         substringContentCodePointsRange.endInclusive().asInt() < content().lengthInCodePoints());
 
-    final int startEntryIdx =
-        regionIndexContainingContentOffset(substringContentCodePointsRange.startInclusive());
-    final int endEntryIdx =
-        regionIndexContainingContentOffset(substringContentCodePointsRange.endInclusive());
-
-    final ImmutableList.Builder<CharacterRegion> newRegions = ImmutableList.builder();
-
-    // the content offsets of returned substring must be shifted so return substring
-    // has offsets starting at zero
-    final int shift = -substringContentCodePointsRange.startInclusive().asInt();
-    if (startEntryIdx == endEntryIdx) {
-      newRegions.add(
-          characterRegions()
-              .get(startEntryIdx)
-              .fromContentOffsetStartInclusiveToEndExclusive(
-                  substringContentCodePointsRange.startInclusive(),
-                  substringContentCodePointsRange.endInclusive().shiftedCopy(1))
-              .shiftContentOffsets(shift));
-    } else {
-      final CharacterRegion newStartRegion =
-          characterRegions()
-              .get(startEntryIdx)
-              .fromContentOffsetInclusiveToEnd(substringContentCodePointsRange.startInclusive())
-              .shiftContentOffsets(shift);
-      final CharacterRegion newEndRegion =
-          characterRegions()
-              .get(endEntryIdx)
-              .fromStartToContentOffsetExclusive(
-                  substringContentCodePointsRange.endInclusive().shiftedCopy(1))
-              .shiftContentOffsets(shift);
-
-      newRegions.add(newStartRegion);
-      for (int i = startEntryIdx + 1; i < endEntryIdx; ++i) {
-        // internal regions are unaltered and can be used in the new LocatedString
-        newRegions.add(characterRegions().get(i).shiftContentOffsets(shift));
-      }
-      newRegions.add(newEndRegion);
-    }
-
-    return newRegions.build();
+    // the content offsets of the returned regions are shifted so they start at zero
+    return packedRegions()
+        .substring(
+            substringContentCodePointsRange.startInclusive().asInt(),
+            substringContentCodePointsRange.endInclusive().asInt() + 1);
   }
 
   private int regionIndexContainingContentOffset(CharOffset target) {
-    if (target.asInt() < 0) {
-      throw new IndexOutOfBoundsException(
-          "Not a valid character offset for LocatedString conent: " + target);
-    }
-    if (target.asInt() >= content().lengthInCodePoints()) {
-      throw new IndexOutOfBoundsException(
-          "Requested code point offset "
-              + target
-              + " exceeds LocatedString code point length "
-              + content().lengthInCodePoints());
-    }
-
-    // we know by precondition checks that characterRegions cannot be empty
-    // we know by the check above the the target lies in one of our regions
     // class-level preconditions guarantee the regions cover the content string completely
-    // without overlap
-    int startIndex = 0;
-    int endIndex = characterRegions().size() - 1;
-
-    while (startIndex <= endIndex) {
-      // if integer overflow is a problem here, we have much bigger problems...
-      final int probe = (startIndex + endIndex) / 2;
-
-      final CharacterRegion probeRegion = characterRegions().get(probe);
-      final boolean targetAfterProbeStart =
-          probeRegion.contentStartPosInclusive().precedesOrEquals(target);
-      // follows because endPos is exclusive
-      final boolean targetBeforeProbeEnd = probeRegion.contentEndPosExclusive().follows(target);
-
-      if (targetAfterProbeStart) {
-        if (targetBeforeProbeEnd) {
-          // probe is pointing to the containing region
-          return probe;
-        } else {
-          startIndex = probe + 1;
-        }
-      } else {
-        endIndex = probe - 1;
-      }
-    }
-
-    throw new IllegalStateException(
-        "Binary search for regions on LocatedStrings should not be " + "able to fail");
+    // without overlap, so bounds-checking against them is the same as against the content
+    return packedRegions().checkedRegionIndexContainingContentOffset(target.asInt());
   }
 }
 
 /**
  * Given a reference string, constructs the {@link LocatedString.CharacterRegion}s necessary for
- * building a {@link LocatedString}. At the moment, only handles character offsets and non-BMP
- * Unicode issues. Does not currently support calculating special EDT offsets or byte offsets,
- * although this would be possible. Currently the produced EDT offsets are undefined: users should
- * make no assumptions whatsoever about what the resulting EDT offsets are.
+ * building a {@link LocatedString}. Character offsets and non-BMP Unicode issues are always
+ * handled. If {@link #calculateEDTOffsetsByACERules()} is set, EDT offsets are calculated as
+ * described in the {@link LocatedString} Javadoc; otherwise they are equal to the character
+ * offsets. If {@link #computeUtf8ByteOffsets()} is set, byte offsets into the UTF-8 encoding of the
+ * reference string are recorded as well, so that spans can be found in the raw bytes of a document
+ * without decoding it. All offsets are computed in a single pass over the string.
  */
 @IsiNlpImmutable
 @Value.Immutable
@@ -1048,20 +870,13 @@ abstract class OffsetCalculator {
     return false;
   }
 
-  @Value.Check
-  protected void check() {
-    checkArgument(
-        !calculateEDTOffsetsByACERules(), "EDT offset calculation not currently supported");
-    checkArgument(
-        !computeUtf8ByteOffsets(), "Computing UTF-8 byte offsets not currently supported");
-  }
-
   public LocatedString calculateOffsets(final String s) {
     return calculateOffsets(StringUtils.unicodeFriendly(s));
   }
 
   public LocatedString calculateOffsets(UnicodeFriendlyString s) {
-    return new OffsetCalculation(s).calculateOffsets();
+    return new OffsetCalculation(s, calculateEDTOffsetsByACERules(), computeUtf8ByteOffsets())
+        .calculateOffsets();
   }
 
   public static class Builder extends ImmutableOffsetCalculator.Builder {}
@@ -1071,59 +886,93 @@ abstract class OffsetCalculator {
     private static final int ONE_BYTE = 0x007f;
     private static final int TWO_BYTE = 0x07ff;
     private static final int THREE_BYTE = 0xffff;
-    final ImmutableList.Builder<LocatedString.CharacterRegion> regions = ImmutableList.builder();
+    final PackedCharacterRegions.Builder regions = new PackedCharacterRegions.Builder();
     private final UnicodeFriendlyString s;
+    private final boolean aceEdtRules;
+    private final boolean computeBytes;
+
+    // the current region being accumulated runs from bufferStartCharOffset up to but not including
+    // curCharOffset. All its characters share the same non-BMP status, UTF-8 width and EDT
+    // counting status, so its offsets can be interpolated
     private int bufferStartCharOffset = 0;
+    private int bufferStartEdtOffset = 0;
+    private int bufferStartByteOffset = 0;
+    private boolean bufferNonBmp;
+    private int bufferUtf8Width;
+    private boolean bufferEdtCounted;
+
     private int curCharOffset = 0;
+    private int curEdtOffset = 0;
+    private int curByteOffset = 0;
+    // EDT offset of the last character added to the buffer
+    private int lastEdtOffset = 0;
 
-    OffsetCalculation(final UnicodeFriendlyString s) {
+    OffsetCalculation(
+        final UnicodeFriendlyString s, final boolean aceEdtRules, final boolean computeBytes) {
       this.s = checkNotNull(s);
+      this.aceEdtRules = aceEdtRules;
+      this.computeBytes = computeBytes;
     }
 
     void clearBuffer() {
-      regions.add(
-          new LocatedString.CharacterRegion.Builder()
-              .contentStartPosInclusive(CharOffset.asCharOffset(bufferStartCharOffset))
-              .contentEndPosExclusive(CharOffset.asCharOffset(curCharOffset))
-              .contentNonBmp(
-                  s.hasNonBmpCharacter(
-                      OffsetRange.charOffsetRange(bufferStartCharOffset, curCharOffset - 1)))
-              .referenceStartOffsetInclusive(
-                  OffsetGroup.from(
-                      CharOffset.asCharOffset(bufferStartCharOffset),
-                      EDTOffset.asEDTOffset(bufferStartCharOffset)))
-              .referenceEndOffsetInclusive(
-                  OffsetGroup.from(
-                      CharOffset.asCharOffset(curCharOffset - 1),
-                      EDTOffset.asEDTOffset(curCharOffset - 1)))
-              .build());
-      bufferStartCharOffset = curCharOffset;
+      // the reference string is the content string, so the content and reference character
+      // offsets of each region are the same
+      regions.addRegion(
+          bufferStartCharOffset,
+          curCharOffset,
+          bufferNonBmp,
+          bufferStartCharOffset,
+          curCharOffset - 1,
+          bufferStartEdtOffset,
+          lastEdtOffset,
+          computeBytes ? bufferStartByteOffset : PackedCharacterRegions.ABSENT,
+          computeBytes ? curByteOffset - 1 : PackedCharacterRegions.ABSENT,
+          PackedCharacterRegions.ABSENT,
+          PackedCharacterRegions.ABSENT);
     }
 
     LocatedString calculateOffsets() {
       checkNotNull(s);
       checkArgument(!s.isEmpty(), "Cannot have a LocatedString of an empty string");
 
-      // we initialize this to the codepoint count of the first character to ensure we don't
-      // trigger a buffer clear due to code point size mismatch on the first iteration through
-      // the loop
-      int lastCodeUnitCount = Character.charCount(Character.codePointAt(s.utf16CodeUnits(), 0));
-
-      for (int curUtf16CodeUnit = 0; curUtf16CodeUnit < s.lengthInUtf16CodeUnits(); ) {
-        final int codePoint = Character.codePointAt(s.utf16CodeUnits(), curUtf16CodeUnit);
+      final String codeUnits = s.utf16CodeUnits();
+      boolean inTag = false;
+      for (int curUtf16CodeUnit = 0; curUtf16CodeUnit < codeUnits.length(); ) {
+        final int codePoint = codeUnits.codePointAt(curUtf16CodeUnit);
+
+        final boolean nonBmp = Character.charCount(codePoint) == 2;
+        final int utf8Width = computeBytes ? utf8BytesForCodePoint(codePoint) : 0;
+        final boolean edtCounted;
+        if (aceEdtRules) {
+          // everything from a '<' to the following '>' is skipped, as is '\r'
+          if (codePoint == '<') {
+            inTag = true;
+          }
+          edtCounted = !inTag && codePoint != '\r';
+          if (codePoint == '>') {
+            inTag = false;
+          }
+        } else {
+          edtCounted = true;
+        }
 
-        final int codeUnitsForCharacter = Character.charCount(codePoint);
-        if (lastCodeUnitCount != codeUnitsForCharacter) {
+        if (curCharOffset == 0) {
+          startBuffer(nonBmp, utf8Width, edtCounted);
+        } else if (nonBmp != bufferNonBmp
+            || utf8Width != bufferUtf8Width
+            || edtCounted != bufferEdtCounted) {
           clearBuffer();
+          startBuffer(nonBmp, utf8Width, edtCounted);
         }
-        lastCodeUnitCount = codeUnitsForCharacter;
-        curUtf16CodeUnit += codeUnitsForCharacter;
-        // commented-out code intentionally left in for future re-enabling of byte offset
-        // computation
-        /*if (computeUtf8ByteOffsets()) {
-          curByteOffset += utf8BytesForCodePoint(codePoint);
-        }*/
+
+        // skipped characters get the EDT offset of the next counted character
+        lastEdtOffset = curEdtOffset;
         ++curCharOffset;
+        if (edtCounted) {
+          ++curEdtOffset;
+        }
+        curByteOffset += utf8Width;
+        curUtf16CodeUnit += Character.charCount(codePoint);
       }
 
       clearBuffer();
@@ -1131,12 +980,20 @@ abstract class OffsetCalculator {
       return new LocatedString.Builder()
           .content(s)
           .referenceString(s)
-          .characterRegions(regions.build())
+          .packedRegions(regions.build())
           .build();
     }
 
-    @SuppressWarnings("unused")
-    private int utf8BytesForCodePoint(final int c) {
+    private void startBuffer(boolean nonBmp, int utf8Width, boolean edtCounted) {
+      bufferStartCharOffset = curCharOffset;
+      bufferStartEdtOffset = curEdtOffset;
+      bufferStartByteOffset = curByteOffset;
+      bufferNonBmp = nonBmp;
+      bufferUtf8Width = utf8Width;
+      bufferEdtCounted = edtCounted;
+    }
+
+    private static int utf8BytesForCodePoint(final int c) {
       // see section 3 of https://tools.ietf.org/html/rfc3629
       if (c <= ONE_BYTE) {
         return 1;
@@ -0,0 +1,190 @@
+package edu.isi.nlp.strings;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import edu.isi.nlp.UnicodeFriendlyString;
+import edu.isi.nlp.strings.offsets.CharOffset;
+import edu.isi.nlp.strings.offsets.OffsetGroup;
+import edu.isi.nlp.strings.offsets.OffsetGroupRange;
+import edu.isi.nlp.strings.offsets.OffsetRange;
+
+/**
+ * A substring of a {@link LocatedString} which shares the content and offset mapping storage of the
+ * string it was taken from rather than copying them. Get one from {@link
+ * LocatedString#contentLocatedSubstringViewByContentOffsets(OffsetRange)}.
+ *
+ * <p>A view behaves exactly like the {@link LocatedString} which {@link
+ * LocatedString#contentLocatedSubstringByContentOffsets(OffsetRange)} would return for the same
+ * range: all content offsets are relative to the start of the view, and offset mapping and {@code
+ * containsExactly} give the same results. {@link #toLocatedString()} returns that {@link
+ * LocatedString}, for callers which need an independent copy (for example, to keep long-term
+ * without keeping the whole parent string reachable).
+ *
+ * <p>The content text of the view is only extracted from the parent if {@link #content()} is
+ * called.
+ */
+@Beta
+public final class LocatedStringView {
+
+  private final LocatedString parent;
+  private final int parentContentStart;
+  private final int parentContentEnd;
+  private final PackedCharacterRegions regions;
+  // computed on demand.  Racing threads will compute equal values, so there's no need to lock
+  private volatile UnicodeFriendlyString content = null;
+  private volatile LocatedString materialized = null;
+
+  /**
+   * Creates a view of {@code parent}'s content from {@code parentContentStart} to {@code
+   * parentContentEnd} (exclusive).
+   */
+  LocatedStringView(LocatedString parent, int parentContentStart, int parentContentEnd) {
+    this.parent = checkNotNull(parent);
+    checkArgument(
+        0 <= parentContentStart
+            && parentContentStart < parentContentEnd
+            && parentContentEnd <= parent.content().lengthInCodePoints(),
+        "Invalid view bounds [%s, %s) for LocatedString of length %s",
+        parentContentStart,
+        parentContentEnd,
+        parent.content().lengthInCodePoints());
+    this.parentContentStart = parentContentStart;
+    this.parentContentEnd = parentContentEnd;
+    this.regions = parent.packedRegions().window(parentContentStart, parentContentEnd);
+  }
+
+  /** The string this is a view of. */
+  public LocatedString parent() {
+    return parent;
+  }
+
+  /** The content offsets of the parent string this view covers. */
+  public OffsetRange<CharOffset> parentContentOffsets() {
+    return OffsetRange.charOffsetRange(parentContentStart, parentContentEnd - 1);
+  }
+
+  /** The length of this view's content in code points. This does not require extracting it. */
+  public int lengthInCodePoints() {
+    return parentContentEnd - parentContentStart;
+  }
+
+  /** The content text of this view. This is extracted from the parent on first request. */
+  public UnicodeFriendlyString content() {
+    UnicodeFriendlyString ret = content;
+    if (ret == null) {
+      ret = parent.content().substringByCodePoints(parentContentOffsets());
+      content = ret;
+    }
+    return ret;
+  }
+
+  /** The reference string of the parent. */
+  public Optional<UnicodeFriendlyString> referenceString() {
+    return parent.referenceString();
+  }
+
+  /** See {@link LocatedString#referenceBounds()}. */
+  public OffsetGroupRange referenceBounds() {
+    return regions.referenceBounds();
+  }
+
+  /** See {@link LocatedString#startReferenceOffsetsForContentOffset(CharOffset)}. */
+  public OffsetGroup startReferenceOffsetsForContentOffset(CharOffset contentOffset) {
+    return regions.startOffsetGroupForPosition(
+        regions.checkedRegionIndexContainingContentOffset(contentOffset.asInt()),
+        contentOffset.asInt());
+  }
+
+  /** See {@link LocatedString#endReferenceOffsetsForContentOffset(CharOffset)}. */
+  public OffsetGroup endReferenceOffsetsForContentOffset(CharOffset contentOffset) {
+    return regions.endOffsetGroupForPosition(
+        regions.checkedRegionIndexContainingContentOffset(contentOffset.asInt()),
+        contentOffset.asInt());
+  }
+
+  /** See {@link LocatedString#startReferenceOffsetsForContentOffsets(int[])}. */
+  public ImmutableList<OffsetGroup> startReferenceOffsetsForContentOffsets(
+      int[] sortedContentOffsets) {
+    return regions.referenceOffsetsForContentOffsets(sortedContentOffsets, true);
+  }
+
+  /** See {@link LocatedString#endReferenceOffsetsForContentOffsets(int[])}. */
+  public ImmutableList<OffsetGroup> endReferenceOffsetsForContentOffsets(
+      int[] sortedContentOffsets) {
+    return regions.referenceOffsetsForContentOffsets(sortedContentOffsets, false);
+  }
+
+  /** See {@link LocatedString#referenceSubstringByContentOffsets(OffsetRange)}. */
+  public Optional<UnicodeFriendlyString> referenceSubstringByContentOffsets(
+      final OffsetRange<CharOffset> contentOffsets) {
+    if (referenceString().isPresent()) {
+      return Optional.of(
+          referenceString()
+              .get()
+              .substringByCodePoints(
+                  OffsetGroupRange.from(
+                          startReferenceOffsetsForContentOffset(contentOffsets.startInclusive()),
+                          endReferenceOffsetsForContentOffset(contentOffsets.endInclusive()))
+                      .asCharOffsetRange()));
+    } else {
+      return Optional.absent();
+    }
+  }
+
+  /**
+   * A view of a substring of this view, specified by offsets relative to this view. The result is a
+   * view of the same parent.
+   */
+  public LocatedStringView contentLocatedSubstringViewByContentOffsets(
+      final OffsetRange<CharOffset> contentOffsets) {
+    checkArgument(contentOffsets.startInclusive().asInt() >= 0);
+    checkArgument(contentOffsets.endInclusive().asInt() < lengthInCodePoints());
+    return new LocatedStringView(
+        parent,
+        parentContentStart + contentOffsets.startInclusive().asInt(),
+        parentContentStart + contentOffsets.endInclusive().asInt() + 1);
+  }
+
+  /** See {@link LocatedString#containsExactly(LocatedString)}. */
+  public boolean containsExactly(LocatedString other) {
+    return LocatedString.containsExactly(
+        regions, parent.content(), parentContentStart, other.packedRegions(), other.content());
+  }
+
+  /** See {@link LocatedString#containsExactly(LocatedString)}. */
+  public boolean containsExactly(LocatedStringView other) {
+    return LocatedString.containsExactly(
+        regions, parent.content(), parentContentStart, other.regions, other.content());
+  }
+
+  /**
+   * The independent {@link LocatedString} equivalent to this view. This is created on first request
+   * and does not share storage with the parent.
+   */
+  public LocatedString toLocatedString() {
+    LocatedString ret = materialized;
+    if (ret == null) {
+      ret =
+          new LocatedString.Builder()
+              .content(content())
+              .referenceString(referenceString())
+              .packedRegions(regions.substring(0, lengthInCodePoints()))
+              .build();
+      materialized = ret;
+    }
+    return ret;
+  }
+
+  PackedCharacterRegions regions() {
+    return regions;
+  }
+
+  @Override
+  public String toString() {
+    return content() + " [" + referenceBounds() + "]";
+  }
+}
@@ -0,0 +1,1017 @@
+package edu.isi.nlp.strings;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+import com.fasterxml.jackson.databind.util.StdConverter;
+import com.google.common.collect.ImmutableList;
+import edu.isi.nlp.strings.LocatedString.CharacterRegion;
+import edu.isi.nlp.strings.offsets.ASRTime;
+import edu.isi.nlp.strings.offsets.ByteOffset;
+import edu.isi.nlp.strings.offsets.CharOffset;
+import edu.isi.nlp.strings.offsets.EDTOffset;
+import edu.isi.nlp.strings.offsets.OffsetGroup;
+import edu.isi.nlp.strings.offsets.OffsetGroupRange;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * The {@link CharacterRegion}s of a {@link LocatedString} stored column-wise in parallel primitive
+ * arrays rather than as region objects. A region costs a few {@code int}s rather than the dozen or
+ * so objects of a {@link CharacterRegion} and its {@link OffsetGroup}s, and regions can be located
+ * by binary search without touching any objects. {@link CharacterRegion}s are only materialized
+ * when requested.
+ *
+ * <p>An instance may be a {@link #window(int, int)} onto the regions of another, in which case it
+ * shares the other's arrays and records only which regions it covers, where its content bounds fall
+ * within them, and the reference offsets of its first and last regions, which differ from those
+ * stored if the window boundaries fall within a region. Region indices and content offsets are
+ * always relative to the window, so the two cases are indistinguishable to callers.
+ *
+ * <p>The rules for mapping content offsets to reference offsets within a region are implemented
+ * here directly on the columns; {@link CharacterRegion} delegates to the static helpers here for
+ * classifying regions so the two always agree.
+ *
+ * <p>Regions are put into the canonical form described in the {@link LocatedString} Javadoc as they
+ * are added to a {@link Builder}.
+ *
+ * <p>This is part of the internal representation of {@link LocatedString} and should not be used
+ * elsewhere.
+ */
+final class PackedCharacterRegions {
+
+  /** Returned by lookup methods when no region matches. */
+  static final int NO_REGION = -1;
+
+  /** Stored in the optional byte and ASR time columns when a region lacks that offset. */
+  static final int ABSENT = -1;
+
+  // storage, possibly shared with other instances.
+  // contentBoundaries[i] is the inclusive content start of stored region i. Because regions cover
+  // the content string without gaps, contentBoundaries[i+1] is also the exclusive end of region i
+  private final int[] contentBoundaries;
+  private final BitSet contentNonBmp;
+  private final int[] referenceCharStarts;
+  private final int[] referenceCharEnds;
+  private final int[] referenceEdtStarts;
+  private final int[] referenceEdtEnds;
+  // the optional offset types are null if no stored region has them
+  @Nullable private final int[] referenceByteStarts;
+  @Nullable private final int[] referenceByteEnds;
+  @Nullable private final int[] referenceAsrStarts;
+  @Nullable private final int[] referenceAsrEnds;
+
+  // the portion of the storage this instance covers
+  private final int firstStoredRegion;
+  private final int numRegions;
+  private final int storedContentStart;
+  private final int storedContentEnd;
+  // the reference offsets at the outer ends of the covered portion, which override the stored ones
+  private final int firstCharStart;
+  private final int firstEdtStart;
+  private final int firstByteStart;
+  private final int firstAsrStart;
+  private final int lastCharEnd;
+  private final int lastEdtEnd;
+  private final int lastByteEnd;
+  private final int lastAsrEnd;
+
+  private final boolean referenceCharOffsetsSequential;
+
+  private PackedCharacterRegions(Builder builder) {
+    final int n = builder.numRegions;
+    this.contentBoundaries = Arrays.copyOf(builder.contentBoundaries, n + 1);
+    this.contentNonBmp = (BitSet) builder.contentNonBmp.clone();
+    this.referenceCharStarts = Arrays.copyOf(builder.referenceCharStarts, n);
+    this.referenceCharEnds = Arrays.copyOf(builder.referenceCharEnds, n);
+    this.referenceEdtStarts = Arrays.copyOf(builder.referenceEdtStarts, n);
+    this.referenceEdtEnds = Arrays.copyOf(builder.referenceEdtEnds, n);
+    this.referenceByteStarts =
+        builder.hasByteOffsets ? Arrays.copyOf(builder.referenceByteStarts, n) : null;
+    this.referenceByteEnds =
+        builder.hasByteOffsets ? Arrays.copyOf(builder.referenceByteEnds, n) : null;
+    this.referenceAsrStarts =
+        builder.hasAsrTimes ? Arrays.copyOf(builder.referenceAsrStarts, n) : null;
+    this.referenceAsrEnds = builder.hasAsrTimes ? Arrays.copyOf(builder.referenceAsrEnds, n) : null;
+
+    this.firstStoredRegion = 0;
+    this.numRegions = n;
+    this.storedContentStart = contentBoundaries[0];
+    this.storedContentEnd = contentBoundaries[n];
+    if (n > 0) {
+      this.firstCharStart = builder.referenceCharStarts[0];
+      this.firstEdtStart = builder.referenceEdtStarts[0];
+      this.firstByteStart = builder.referenceByteStarts[0];
+      this.firstAsrStart = builder.referenceAsrStarts[0];
+      this.lastCharEnd = builder.referenceCharEnds[n - 1];
+      this.lastEdtEnd = builder.referenceEdtEnds[n - 1];
+      this.lastByteEnd = builder.referenceByteEnds[n - 1];
+      this.lastAsrEnd = builder.referenceAsrEnds[n - 1];
+    } else {
+      this.firstCharStart = ABSENT;
+      this.firstEdtStart = ABSENT;
+      this.firstByteStart = ABSENT;
+      this.firstAsrStart = ABSENT;
+      this.lastCharEnd = ABSENT;
+      this.lastEdtEnd = ABSENT;
+      this.lastByteEnd = ABSENT;
+      this.lastAsrEnd = ABSENT;
+    }
+    this.referenceCharOffsetsSequential = computeReferenceCharOffsetsSequential();
+  }
+
+  /**
+   * Creates a window on {@code parent} covering {@code numRegions} of its regions starting from
+   * {@code firstRegion}. {@code firstStart} and {@code lastEnd} give the char, EDT, byte and ASR
+   * columns of the start of the first region and the end of the last.
+   */
+  private PackedCharacterRegions(
+      PackedCharacterRegions parent,
+      int firstRegion,
+      int numRegions,
+      int contentStart,
+      int contentEnd,
+      int[] firstStart,
+      int[] lastEnd) {
+    this.contentBoundaries = parent.contentBoundaries;
+    this.contentNonBmp = parent.contentNonBmp;
+    this.referenceCharStarts = parent.referenceCharStarts;
+    this.referenceCharEnds = parent.referenceCharEnds;
+    this.referenceEdtStarts = parent.referenceEdtStarts;
+    this.referenceEdtEnds = parent.referenceEdtEnds;
+    this.referenceByteStarts = parent.referenceByteStarts;
+    this.referenceByteEnds = parent.referenceByteEnds;
+    this.referenceAsrStarts = parent.referenceAsrStarts;
+    this.referenceAsrEnds = parent.referenceAsrEnds;
+
+    this.firstStoredRegion = parent.firstStoredRegion + firstRegion;
+    this.numRegions = numRegions;
+    this.storedContentStart = parent.storedContentStart + contentStart;
+    this.storedContentEnd = parent.storedContentStart + contentEnd;
+    this.firstCharStart = firstStart[0];
+    this.firstEdtStart = firstStart[1];
+    this.firstByteStart = firstStart[2];
+    this.firstAsrStart = firstStart[3];
+    this.lastCharEnd = lastEnd[0];
+    this.lastEdtEnd = lastEnd[1];
+    this.lastByteEnd = lastEnd[2];
+    this.lastAsrEnd = lastEnd[3];
+    // only the reference offsets at the outer ends of the window can differ from the parent's,
+    // and those don't participate in the sequence check
+    this.referenceCharOffsetsSequential =
+        parent.referenceCharOffsetsSequential || computeReferenceCharOffsetsSequential();
+  }
+
+  private boolean computeReferenceCharOffsetsSequential() {
+    for (int i = 1; i < numRegions; ++i) {
+      if (referenceCharEnd(i - 1) > referenceCharStart(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static PackedCharacterRegions fromRegions(Iterable<? extends CharacterRegion> regions) {
+    final Builder ret = new Builder();
+    for (final CharacterRegion region : regions) {
+      ret.addRegion(region);
+    }
+    return ret.build();
+  }
+
+  // column accessors. All region indices and content offsets are relative to this instance
+
+  int numRegions() {
+    return numRegions;
+  }
+
+  boolean isEmpty() {
+    return numRegions == 0;
+  }
+
+  /** The length of the content string these regions cover, in code points. */
+  int contentLength() {
+    return storedContentEnd - storedContentStart;
+  }
+
+  /** The inclusive content start offset of the given region. */
+  int contentStart(int regionIdx) {
+    return regionIdx == 0
+        ? 0
+        : contentBoundaries[firstStoredRegion + regionIdx] - storedContentStart;
+  }
+
+  /** The exclusive content end offset of the given region. */
+  int contentEndExclusive(int regionIdx) {
+    return regionIdx == numRegions - 1
+        ? storedContentEnd - storedContentStart
+        : contentBoundaries[firstStoredRegion + regionIdx + 1] - storedContentStart;
+  }
+
+  private boolean contentNonBmp(int regionIdx) {
+    return contentNonBmp.get(firstStoredRegion + regionIdx);
+  }
+
+  int referenceCharStart(int regionIdx) {
+    return regionIdx == 0 ? firstCharStart : referenceCharStarts[firstStoredRegion + regionIdx];
+  }
+
+  int referenceCharEnd(int regionIdx) {
+    return regionIdx == numRegions - 1
+        ? lastCharEnd
+        : referenceCharEnds[firstStoredRegion + regionIdx];
+  }
+
+  private int referenceEdtStart(int regionIdx) {
+    return regionIdx == 0 ? firstEdtStart : referenceEdtStarts[firstStoredRegion + regionIdx];
+  }
+
+  private int referenceEdtEnd(int regionIdx) {
+    return regionIdx == numRegions - 1
+        ? lastEdtEnd
+        : referenceEdtEnds[firstStoredRegion + regionIdx];
+  }
+
+  private int referenceByteStart(int regionIdx) {
+    if (regionIdx == 0) {
+      return firstByteStart;
+    }
+    return referenceByteStarts != null
+        ? referenceByteStarts[firstStoredRegion + regionIdx]
+        : ABSENT;
+  }
+
+  private int referenceByteEnd(int regionIdx) {
+    if (regionIdx == numRegions - 1) {
+      return lastByteEnd;
+    }
+    return referenceByteEnds != null ? referenceByteEnds[firstStoredRegion + regionIdx] : ABSENT;
+  }
+
+  private int referenceAsrStart(int regionIdx) {
+    if (regionIdx == 0) {
+      return firstAsrStart;
+    }
+    return referenceAsrStarts != null ? referenceAsrStarts[firstStoredRegion + regionIdx] : ABSENT;
+  }
+
+  private int referenceAsrEnd(int regionIdx) {
+    if (regionIdx == numRegions - 1) {
+      return lastAsrEnd;
+    }
+    return referenceAsrEnds != null ? referenceAsrEnds[firstStoredRegion + regionIdx] : ABSENT;
+  }
+
+  boolean referenceCharOffsetsSequential() {
+    return referenceCharOffsetsSequential;
+  }
+
+  /** Materializes a single region as a {@link CharacterRegion}. */
+  CharacterRegion region(int regionIdx) {
+    checkElementIndex(regionIdx, numRegions);
+    return new CharacterRegion.Builder()
+        .contentNonBmp(contentNonBmp(regionIdx))
+        .contentStartPosInclusive(CharOffset.asCharOffset(contentStart(regionIdx)))
+        .contentEndPosExclusive(CharOffset.asCharOffset(contentEndExclusive(regionIdx)))
+        .referenceStartOffsetInclusive(referenceStartOffsets(regionIdx))
+        .referenceEndOffsetInclusive(referenceEndOffsets(regionIdx))
+        .build();
+  }
+
+  /** Materializes all regions. */
+  ImmutableList<CharacterRegion> toRegions() {
+    final ImmutableList.Builder<CharacterRegion> ret = ImmutableList.builder();
+    for (int i = 0; i < numRegions; ++i) {
+      ret.add(region(i));
+    }
+    return ret.build();
+  }
+
+  /** The reference offsets corresponding to the first content character of a region. */
+  OffsetGroup referenceStartOffsets(int regionIdx) {
+    return offsetGroup(
+        referenceCharStart(regionIdx),
+        referenceEdtStart(regionIdx),
+        referenceByteStart(regionIdx),
+        referenceAsrStart(regionIdx));
+  }
+
+  /** The reference offsets corresponding to the last content character of a region. */
+  OffsetGroup referenceEndOffsets(int regionIdx) {
+    return offsetGroup(
+        referenceCharEnd(regionIdx),
+        referenceEdtEnd(regionIdx),
+        referenceByteEnd(regionIdx),
+        referenceAsrEnd(regionIdx));
+  }
+
+  /** The reference offsets from the start of the first region to the end of the last. */
+  OffsetGroupRange referenceBounds() {
+    return OffsetGroupRange.from(referenceStartOffsets(0), referenceEndOffsets(numRegions - 1));
+  }
+
+  private static OffsetGroup offsetGroup(int[] columns) {
+    return offsetGroup(columns[0], columns[1], columns[2], columns[3]);
+  }
+
+  private static OffsetGroup offsetGroup(int charOffset, int edtOffset, int byteOffset, int asr) {
+    if (byteOffset == ABSENT && asr == ABSENT) {
+      // the common case, which may be served from the flyweight cache
+      return OffsetGroup.from(
+          CharOffset.asCharOffset(charOffset), EDTOffset.asEDTOffset(edtOffset));
+    }
+    final OffsetGroup.Builder ret = new OffsetGroup.Builder();
+    ret.charOffset(CharOffset.asCharOffset(charOffset));
+    ret.edtOffset(EDTOffset.asEDTOffset(edtOffset));
+    if (byteOffset != ABSENT) {
+      ret.byteOffset(ByteOffset.asByteOffset(byteOffset));
+    }
+    if (asr != ABSENT) {
+      ret.asrTime(ASRTime.of(asr));
+    }
+    return ret.build();
+  }
+
+  // offset mapping
+
+  /**
+   * The index of the region containing the given content offset. The caller is responsible for
+   * ensuring the offset lies within the content string.
+   */
+  int regionIndexContainingContentOffset(int contentOffset) {
+    // search only the region starts; an exact hit is the region starting at the offset, otherwise
+    // we want the last region starting before it. The stored start of our first region may
+    // precede our content start, but that doesn't affect the search
+    final int searchResult =
+        Arrays.binarySearch(
+            contentBoundaries,
+            firstStoredRegion,
+            firstStoredRegion + numRegions,
+            contentOffset + storedContentStart);
+    final int storedRegionIdx = searchResult >= 0 ? searchResult : -searchResult - 2;
+    return storedRegionIdx - firstStoredRegion;
+  }
+
+  /**
+   * As {@link #regionIndexContainingContentOffset(int)}, but throws an {@link
+   * IndexOutOfBoundsException} if the offset lies outside the content string.
+   */
+  int checkedRegionIndexContainingContentOffset(int contentOffset) {
+    if (contentOffset < 0) {
+      throw new IndexOutOfBoundsException(
+          "Not a valid character offset for LocatedString conent: " + contentOffset);
+    }
+    if (contentOffset >= contentLength()) {
+      throw new IndexOutOfBoundsException(
+          "Requested code point offset "
+              + contentOffset
+              + " exceeds LocatedString code point length "
+              + contentLength());
+    }
+    return regionIndexContainingContentOffset(contentOffset);
+  }
+
+  /**
+   * The index of the first region whose reference character offsets include {@code
+   * referenceCharOffset}, or {@link #NO_REGION} if there is none.
+   */
+  int firstRegionIndexContainingReferenceCharOffset(int referenceCharOffset) {
+    if (referenceCharOffsetsSequential) {
+      // when reference offsets are sequential, both region starts and ends are non-decreasing,
+      // so the first region which could contain the offset is the first whose end is at or
+      // after it.  If that one doesn't contain it, no later one does either.
+      int low = 0;
+      int high = numRegions;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (referenceCharEnd(mid) < referenceCharOffset) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      if (low < numRegions && referenceCharStart(low) <= referenceCharOffset) {
+        return low;
+      }
+      return NO_REGION;
+    } else {
+      // there is no order to exploit for non-monotonic reference offsets, but at least we scan
+      // primitive arrays rather than region objects
+      for (int i = 0; i < numRegions; ++i) {
+        if (referenceCharStart(i) <= referenceCharOffset
+            && referenceCharOffset <= referenceCharEnd(i)) {
+          return i;
+        }
+      }
+      return NO_REGION;
+    }
+  }
+
+  /**
+   * The beginning of the reference offsets mapped to a content string offset within the given
+   * region.
+   */
+  OffsetGroup startOffsetGroupForPosition(int regionIdx, int contentOffset) {
+    final int relativePosition = contentOffset - contentStart(regionIdx);
+    if (relativePosition > 0) {
+      return offsetGroup(startColumnsForRelativePosition(regionIdx, relativePosition));
+    } else {
+      return referenceStartOffsets(regionIdx);
+    }
+  }
+
+  /** The end of the reference offsets mapped to a content string offset within the given region. */
+  OffsetGroup endOffsetGroupForPosition(int regionIdx, int contentOffset) {
+    return offsetGroup(
+        endColumnsForRelativePosition(regionIdx, contentOffset - contentStart(regionIdx)));
+  }
+
+  /**
+   * Maps many content offsets to their start or end reference offsets in a single merge pass over
+   * the regions.
+   *
+   * @throws IllegalArgumentException if the offsets are not sorted
+   * @throws IndexOutOfBoundsException if any offset lies outside the content string
+   */
+  ImmutableList<OffsetGroup> referenceOffsetsForContentOffsets(
+      int[] sortedContentOffsets, boolean start) {
+    final ImmutableList.Builder<OffsetGroup> ret = ImmutableList.builder();
+    if (sortedContentOffsets.length == 0) {
+      return ret.build();
+    }
+    // this also bounds-checks the first offset; the sort check below covers the lower bound
+    // of the rest
+    int regionIdx = checkedRegionIndexContainingContentOffset(sortedContentOffsets[0]);
+
+    int previousOffset = sortedContentOffsets[0];
+    for (final int contentOffset : sortedContentOffsets) {
+      checkArgument(
+          contentOffset >= previousOffset,
+          "Content offsets must be sorted, but %s follows %s",
+          contentOffset,
+          previousOffset);
+      if (contentOffset >= contentLength()) {
+        throw new IndexOutOfBoundsException(
+            "Requested code point offset "
+                + contentOffset
+                + " exceeds LocatedString code point length "
+                + contentLength());
+      }
+      // merge step: advance to the region containing this offset
+      while (contentEndExclusive(regionIdx) <= contentOffset) {
+        ++regionIdx;
+      }
+      ret.add(
+          start
+              ? startOffsetGroupForPosition(regionIdx, contentOffset)
+              : endOffsetGroupForPosition(regionIdx, contentOffset));
+      previousOffset = contentOffset;
+    }
+    return ret.build();
+  }
+
+  /**
+   * The char, EDT, byte and ASR columns of the start offsets of a position within a region. ASR
+   * times are only known for the first position.
+   */
+  private int[] startColumnsForRelativePosition(int regionIdx, int relativePosition) {
+    if (relativePosition > 0) {
+      return new int[] {
+        startReferenceCharForRelativePosition(regionIdx, relativePosition),
+        startReferenceEdtForRelativePosition(regionIdx, relativePosition),
+        startReferenceByteForRelativePosition(regionIdx, relativePosition),
+        ABSENT
+      };
+    } else {
+      return startColumns(regionIdx);
+    }
+  }
+
+  /**
+   * The char, EDT, byte and ASR columns of the end offsets of a position within a region. ASR times
+   * are only known for the first position.
+   */
+  private int[] endColumnsForRelativePosition(int regionIdx, int relativePosition) {
+    if (relativePosition > 0) {
+      return new int[] {
+        endReferenceCharForRelativePosition(regionIdx, relativePosition),
+        endReferenceEdtForRelativePosition(regionIdx, relativePosition),
+        endReferenceByteForRelativePosition(regionIdx, relativePosition),
+        ABSENT
+      };
+    } else {
+      // the first position of a region historically maps to the region's start offsets; only the
+      // byte offset is adjusted to cover the whole of the code point
+      return new int[] {
+        referenceCharStart(regionIdx),
+        referenceEdtStart(regionIdx),
+        endReferenceByteForRelativePosition(regionIdx, 0),
+        referenceAsrStart(regionIdx)
+      };
+    }
+  }
+
+  private int startReferenceCharForRelativePosition(int regionIdx, int relativePosition) {
+    if (isInsertionOrDeletion(regionIdx)) {
+      return referenceCharStart(regionIdx);
+    } else {
+      return referenceCharStart(regionIdx) + relativePosition;
+    }
+  }
+
+  private int endReferenceCharForRelativePosition(int regionIdx, int relativePosition) {
+    if (isInsertionOrDeletion(regionIdx)) {
+      return referenceCharEnd(regionIdx);
+    } else {
+      return referenceCharStart(regionIdx) + relativePosition;
+    }
+  }
+
+  private int startReferenceEdtForRelativePosition(int regionIdx, int relativePosition) {
+    // within any region, either the EDT offsets are constant or increase in lockstep with
+    // the content offsets
+    if (isInsertionOrDeletion(regionIdx) || isEdtSkipRegion(regionIdx)) {
+      return referenceEdtStart(regionIdx);
+    } else {
+      return referenceEdtStart(regionIdx) + relativePosition;
+    }
+  }
+
+  private int endReferenceEdtForRelativePosition(int regionIdx, int relativePosition) {
+    if (isInsertionOrDeletion(regionIdx) || isEdtSkipRegion(regionIdx)) {
+      return referenceEdtEnd(regionIdx);
+    } else {
+      return referenceEdtStart(regionIdx) + relativePosition;
+    }
+  }
+
+  /**
+   * The first byte offset mapped to a position within a region, or {@link #ABSENT} if it cannot be
+   * determined.
+   */
+  private int startReferenceByteForRelativePosition(int regionIdx, int relativePosition) {
+    final int byteStart = referenceByteStart(regionIdx);
+    if (isInsertionOrDeletion(regionIdx)) {
+      return byteStart;
+    }
+    final int bytesPerCodePoint = referenceBytesPerCodePoint(regionIdx);
+    if (bytesPerCodePoint != ABSENT) {
+      return byteStart + relativePosition * bytesPerCodePoint;
+    }
+    return relativePosition == 0 ? byteStart : ABSENT;
+  }
+
+  /**
+   * The last byte offset mapped to a position within a region, or {@link #ABSENT} if it cannot be
+   * determined.
+   */
+  private int endReferenceByteForRelativePosition(int regionIdx, int relativePosition) {
+    if (isInsertionOrDeletion(regionIdx) && referenceByteStart(regionIdx) != ABSENT) {
+      return referenceByteEnd(regionIdx);
+    }
+    final int bytesPerCodePoint = referenceBytesPerCodePoint(regionIdx);
+    if (bytesPerCodePoint != ABSENT) {
+      return referenceByteStart(regionIdx) + (relativePosition + 1) * bytesPerCodePoint - 1;
+    }
+    // we can't do better than the region's start, which is what has always been returned here
+    return relativePosition == 0 ? referenceByteStart(regionIdx) : ABSENT;
+  }
+
+  /**
+   * The number of bytes encoding each reference code point of a region which has byte offsets at
+   * both ends. The {@link LocatedString} Javadoc requires this to be the same for all code points
+   * in a region. Returns {@link #ABSENT} if the region lacks byte offsets or they are inconsistent
+   * with that requirement.
+   */
+  private int referenceBytesPerCodePoint(int regionIdx) {
+    final int byteStart = referenceByteStart(regionIdx);
+    final int byteEnd = referenceByteEnd(regionIdx);
+    if (byteStart == ABSENT || byteEnd == ABSENT) {
+      return ABSENT;
+    }
+    final int byteLength = byteEnd - byteStart + 1;
+    final int referenceLength = referenceLength(regionIdx);
+    if (byteLength >= referenceLength && byteLength % referenceLength == 0) {
+      return byteLength / referenceLength;
+    }
+    return ABSENT;
+  }
+
+  // substrings and comparisons
+
+  /**
+   * The regions for the substring of the content from {@code contentStart} (inclusive) to {@code
+   * contentEnd} (exclusive), with content offsets shifted so the substring starts at zero. The
+   * result shares storage with this object where possible, so it is cheap to create but keeps all
+   * of this object's storage reachable; use {@link #substring(int, int)} for an independent copy.
+   * The caller is responsible for ensuring the bounds are valid.
+   */
+  PackedCharacterRegions window(int contentStart, int contentEnd) {
+    checkArgument(contentStart < contentEnd, "Substrings may not be empty");
+    final int startRegionIdx = regionIndexContainingContentOffset(contentStart);
+    final int endRegionIdx = regionIndexContainingContentOffset(contentEnd - 1);
+
+    // if the window cuts into its first and last regions, their reference offsets are computed
+    // just as they would be for an explicitly constructed substring region
+    final int[] firstStart =
+        startColumnsForRelativePosition(
+            startRegionIdx, contentStart - contentStart(startRegionIdx));
+
+    final int[] lastEnd;
+    final boolean lastRegionTrimmed =
+        contentStart > contentStart(endRegionIdx) || contentEnd < contentEndExclusive(endRegionIdx);
+    if (lastRegionTrimmed) {
+      lastEnd =
+          endColumnsForRelativePosition(endRegionIdx, contentEnd - 1 - contentStart(endRegionIdx));
+    } else {
+      lastEnd = endColumns(endRegionIdx);
+    }
+
+    final PackedCharacterRegions ret =
+        new PackedCharacterRegions(
+            this,
+            startRegionIdx,
+            endRegionIdx - startRegionIdx + 1,
+            contentStart,
+            contentEnd,
+            firstStart,
+            lastEnd);
+
+    // trimming the end regions can change their mapping rules (e.g. an insertion trimmed to a
+    // single character), which could make them mergeable with their neighbors. In that case we
+    // need a copy to restore canonical form.
+    final int n = ret.numRegions;
+    if (n > 1 && (ret.mayMergeWithFollowing(0) || ret.mayMergeWithFollowing(n - 2))) {
+      return ret.compactCopy();
+    }
+    return ret;
+  }
+
+  /**
+   * As {@link #window(int, int)}, but the result has its own storage, sized to the substring, so it
+   * does not keep this object's storage reachable.
+   */
+  PackedCharacterRegions substring(int contentStart, int contentEnd) {
+    return window(contentStart, contentEnd).compactCopy();
+  }
+
+  private PackedCharacterRegions compactCopy() {
+    final Builder ret = new Builder();
+    for (int i = 0; i < numRegions; ++i) {
+      ret.addFrom(this, i);
+    }
+    return ret.build();
+  }
+
+  private int[] startColumns(int regionIdx) {
+    return new int[] {
+      referenceCharStart(regionIdx),
+      referenceEdtStart(regionIdx),
+      referenceByteStart(regionIdx),
+      referenceAsrStart(regionIdx)
+    };
+  }
+
+  private int[] endColumns(int regionIdx) {
+    return new int[] {
+      referenceCharEnd(regionIdx),
+      referenceEdtEnd(regionIdx),
+      referenceByteEnd(regionIdx),
+      referenceAsrEnd(regionIdx)
+    };
+  }
+
+  /**
+   * Would merging region {@code regionIdx} with the following region maintain offset mapping? This
+   * is the same rule {@link Builder} applies as regions are added.
+   */
+  private boolean mayMergeWithFollowing(int regionIdx) {
+    final int next = regionIdx + 1;
+    final int length = contentLength(regionIdx);
+    final int referenceLength = referenceLength(regionIdx);
+    final int nextLength = contentLength(next);
+    final int nextReferenceLength = referenceLength(next);
+    return referenceCharEnd(regionIdx) == referenceCharStart(next)
+        && referenceEdtEnd(regionIdx) == referenceEdtStart(next)
+        && referenceByteEnd(regionIdx) == referenceByteStart(next)
+        && referenceAsrEnd(regionIdx) == referenceAsrStart(next)
+        && isDeletion(length, referenceLength) == isDeletion(nextLength, nextReferenceLength)
+        && isInsertion(length, referenceLength) == isInsertion(nextLength, nextReferenceLength)
+        && isEdtSkipRegion(regionIdx) == isEdtSkipRegion(next)
+        && contentNonBmp(regionIdx) == contentNonBmp(next);
+  }
+
+  /**
+   * True if and only if region {@code regionIdx} has exactly the same mapping as region {@code
+   * otherRegionIdx} of {@code other}, apart from its content offsets.
+   */
+  boolean equivalentUpToShiftedContentOffsets(
+      int regionIdx, PackedCharacterRegions other, int otherRegionIdx) {
+    return contentNonBmp(regionIdx) == other.contentNonBmp(otherRegionIdx)
+        && contentLength(regionIdx) == other.contentLength(otherRegionIdx)
+        && referenceCharStart(regionIdx) == other.referenceCharStart(otherRegionIdx)
+        && referenceCharEnd(regionIdx) == other.referenceCharEnd(otherRegionIdx)
+        && referenceEdtStart(regionIdx) == other.referenceEdtStart(otherRegionIdx)
+        && referenceEdtEnd(regionIdx) == other.referenceEdtEnd(otherRegionIdx)
+        && referenceByteStart(regionIdx) == other.referenceByteStart(otherRegionIdx)
+        && referenceByteEnd(regionIdx) == other.referenceByteEnd(otherRegionIdx)
+        && referenceAsrStart(regionIdx) == other.referenceAsrStart(otherRegionIdx)
+        && referenceAsrEnd(regionIdx) == other.referenceAsrEnd(otherRegionIdx);
+  }
+
+  private int contentLength(int regionIdx) {
+    return contentEndExclusive(regionIdx) - contentStart(regionIdx);
+  }
+
+  private int referenceLength(int regionIdx) {
+    return referenceCodePointLength(referenceCharStart(regionIdx), referenceCharEnd(regionIdx));
+  }
+
+  private boolean isInsertionOrDeletion(int regionIdx) {
+    final int contentLength = contentLength(regionIdx);
+    final int referenceLength = referenceLength(regionIdx);
+    return isInsertion(contentLength, referenceLength)
+        || isDeletion(contentLength, referenceLength);
+  }
+
+  private boolean isEdtSkipRegion(int regionIdx) {
+    return isEdtSkipRegion(
+        referenceLength(regionIdx), referenceEdtStart(regionIdx), referenceEdtEnd(regionIdx));
+  }
+
+  // region classification rules, shared with CharacterRegion
+
+  /** The size of a region on the reference side, in code points. */
+  static int referenceCodePointLength(int referenceCharStart, int referenceCharEnd) {
+    // +1 because offsets are inclusive
+    return referenceCharEnd - referenceCharStart + 1;
+  }
+
+  /** Whether a region represents content inserted with no corresponding reference text. */
+  static boolean isInsertion(int contentCodePointLength, int referenceCodePointLength) {
+    return contentCodePointLength > 1 && referenceCodePointLength == 1;
+  }
+
+  /** Whether a region represents content deleted from the reference text. */
+  static boolean isDeletion(int contentCodePointLength, int referenceCodePointLength) {
+    return contentCodePointLength == 1 && referenceCodePointLength > 1;
+  }
+
+  /** Whether a region is one where EDT offsets are not incremented. */
+  static boolean isEdtSkipRegion(int referenceCodePointLength, int edtStart, int edtEnd) {
+    return referenceCodePointLength > 0 && edtStart == edtEnd;
+  }
+
+  @Override
+  public boolean equals(@Nullable Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof PackedCharacterRegions)) {
+      return false;
+    }
+    final PackedCharacterRegions other = (PackedCharacterRegions) o;
+    if (numRegions != other.numRegions) {
+      return false;
+    }
+    for (int i = 0; i < numRegions; ++i) {
+      if (contentEndExclusive(i) != other.contentEndExclusive(i)
+          || !equivalentUpToShiftedContentOffsets(i, other, i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    // this must not depend on how storage is shared, so it is computed region by region.
+    // The optional offset types are left out since they rarely distinguish otherwise equal regions
+    int h = numRegions;
+    for (int i = 0; i < numRegions; ++i) {
+      h = 31 * h + contentEndExclusive(i);
+      h = 31 * h + referenceCharStart(i);
+      h = 31 * h + referenceCharEnd(i);
+      h = 31 * h + referenceEdtStart(i);
+      h = 31 * h + referenceEdtEnd(i);
+      h = 31 * h + (contentNonBmp(i) ? 1 : 0);
+    }
+    return h;
+  }
+
+  @Override
+  public String toString() {
+    return toRegions().toString();
+  }
+
+  /**
+   * Accumulates regions, merging each with its predecessor when they follow the same mapping rules
+   * so the result is in canonical form.
+   */
+  static final class Builder {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private int numRegions = 0;
+    private int[] contentBoundaries = new int[INITIAL_CAPACITY + 1];
+    private final BitSet contentNonBmp = new BitSet();
+    private int[] referenceCharStarts = new int[INITIAL_CAPACITY];
+    private int[] referenceCharEnds = new int[INITIAL_CAPACITY];
+    private int[] referenceEdtStarts = new int[INITIAL_CAPACITY];
+    private int[] referenceEdtEnds = new int[INITIAL_CAPACITY];
+    private int[] referenceByteStarts = new int[INITIAL_CAPACITY];
+    private int[] referenceByteEnds = new int[INITIAL_CAPACITY];
+    private int[] referenceAsrStarts = new int[INITIAL_CAPACITY];
+    private int[] referenceAsrEnds = new int[INITIAL_CAPACITY];
+    private boolean hasByteOffsets = false;
+    private boolean hasAsrTimes = false;
+
+    Builder addRegion(CharacterRegion region) {
+      return addRegion(
+          region.contentStartPosInclusive().asInt(),
+          region.contentEndPosExclusive().asInt(),
+          region.contentNonBmp(),
+          region.referenceStartOffsetInclusive(),
+          region.referenceEndOffsetInclusive());
+    }
+
+    Builder addRegion(
+        int contentStart,
+        int contentEndExclusive,
+        boolean contentNonBmp,
+        OffsetGroup referenceStart,
+        OffsetGroup referenceEnd) {
+      return addRegion(
+          contentStart,
+          contentEndExclusive,
+          contentNonBmp,
+          referenceStart.charOffset().asInt(),
+          referenceEnd.charOffset().asInt(),
+          referenceStart.edtOffset().asInt(),
+          referenceEnd.edtOffset().asInt(),
+          referenceStart.byteOffset().isPresent()
+              ? referenceStart.byteOffset().get().asInt()
+              : ABSENT,
+          referenceEnd.byteOffset().isPresent() ? referenceEnd.byteOffset().get().asInt() : ABSENT,
+          referenceStart.asrTime().isPresent() ? referenceStart.asrTime().get().asInt() : ABSENT,
+          referenceEnd.asrTime().isPresent() ? referenceEnd.asrTime().get().asInt() : ABSENT);
+    }
+
+    private Builder addFrom(PackedCharacterRegions source, int regionIdx) {
+      return addRegion(
+          source.contentStart(regionIdx),
+          source.contentEndExclusive(regionIdx),
+          source.contentNonBmp(regionIdx),
+          source.referenceCharStart(regionIdx),
+          source.referenceCharEnd(regionIdx),
+          source.referenceEdtStart(regionIdx),
+          source.referenceEdtEnd(regionIdx),
+          source.referenceByteStart(regionIdx),
+          source.referenceByteEnd(regionIdx),
+          source.referenceAsrStart(regionIdx),
+          source.referenceAsrEnd(regionIdx));
+    }
+
+    /**
+     * Adds a region given all its columns. Regions must be added in content order without gaps,
+     * starting from content offset zero. Byte offsets and ASR times should be given as {@link
+     * #ABSENT} if not present.
+     */
+    Builder addRegion(
+        int contentStart,
+        int contentEndExclusive,
+        boolean nonBmp,
+        int charStart,
+        int charEnd,
+        int edtStart,
+        int edtEnd,
+        int byteStart,
+        int byteEnd,
+        int asrStart,
+        int asrEnd) {
+      if (numRegions == 0) {
+        checkArgument(
+            contentStart == 0,
+            "First region of a located string must have a content position of 0");
+      } else {
+        final int last = numRegions - 1;
+        checkArgument(
+            contentBoundaries[numRegions] == contentStart,
+            "There is a gap in the content string not covered by any region: region ending at %s "
+                + "immediately precedes region starting at %s",
+            contentBoundaries[numRegions],
+            contentStart);
+
+        if (mayMergeWithLast(
+            contentEndExclusive - contentStart,
+            nonBmp,
+            charStart,
+            charEnd,
+            edtStart,
+            edtEnd,
+            byteStart,
+            asrStart)) {
+          contentBoundaries[numRegions] = contentEndExclusive;
+          referenceCharEnds[last] = charEnd;
+          referenceEdtEnds[last] = edtEnd;
+          referenceByteEnds[last] = byteEnd;
+          referenceAsrEnds[last] = asrEnd;
+          hasByteOffsets |= byteEnd != ABSENT;
+          hasAsrTimes |= asrEnd != ABSENT;
+          return this;
+        }
+      }
+
+      ensureCapacity(numRegions + 1);
+      final int idx = numRegions;
+      contentBoundaries[idx] = contentStart;
+      contentBoundaries[idx + 1] = contentEndExclusive;
+      contentNonBmp.set(idx, nonBmp);
+      referenceCharStarts[idx] = charStart;
+      referenceCharEnds[idx] = charEnd;
+      referenceEdtStarts[idx] = edtStart;
+      referenceEdtEnds[idx] = edtEnd;
+      referenceByteStarts[idx] = byteStart;
+      referenceByteEnds[idx] = byteEnd;
+      referenceAsrStarts[idx] = asrStart;
+      referenceAsrEnds[idx] = asrEnd;
+      hasByteOffsets |= byteStart != ABSENT || byteEnd != ABSENT;
+      hasAsrTimes |= asrStart != ABSENT || asrEnd != ABSENT;
+      ++numRegions;
+      return this;
+    }
+
+    /**
+     * Would merging the last region with a following one with the given properties maintain offset
+     * mapping? If so, they must be merged to be in canonical form.
+     */
+    private boolean mayMergeWithLast(
+        int contentLength,
+        boolean nonBmp,
+        int charStart,
+        int charEnd,
+        int edtStart,
+        int edtEnd,
+        int byteStart,
+        int asrStart) {
+      final int last = numRegions - 1;
+      final int lastContentLength = contentBoundaries[numRegions] - contentBoundaries[last];
+      final int lastReferenceLength =
+          referenceCodePointLength(referenceCharStarts[last], referenceCharEnds[last]);
+      final int referenceLength = referenceCodePointLength(charStart, charEnd);
+
+      return referenceCharEnds[last] == charStart
+          && referenceEdtEnds[last] == edtStart
+          && referenceByteEnds[last] == byteStart
+          && referenceAsrEnds[last] == asrStart
+          && isDeletion(lastContentLength, lastReferenceLength)
+              == isDeletion(contentLength, referenceLength)
+          && isInsertion(lastContentLength, lastReferenceLength)
+              == isInsertion(contentLength, referenceLength)
+          && isEdtSkipRegion(lastReferenceLength, referenceEdtStarts[last], referenceEdtEnds[last])
+              == isEdtSkipRegion(referenceLength, edtStart, edtEnd)
+          && contentNonBmp.get(last) == nonBmp;
+    }
+
+    private void ensureCapacity(int requiredRegions) {
+      if (requiredRegions > referenceCharStarts.length) {
+        final int newCapacity = Math.max(requiredRegions, 2 * referenceCharStarts.length);
+        contentBoundaries = Arrays.copyOf(contentBoundaries, newCapacity + 1);
+        referenceCharStarts = Arrays.copyOf(referenceCharStarts, newCapacity);
+        referenceCharEnds = Arrays.copyOf(referenceCharEnds, newCapacity);
+        referenceEdtStarts = Arrays.copyOf(referenceEdtStarts, newCapacity);
+        referenceEdtEnds = Arrays.copyOf(referenceEdtEnds, newCapacity);
+        referenceByteStarts = Arrays.copyOf(referenceByteStarts, newCapacity);
+        referenceByteEnds = Arrays.copyOf(referenceByteEnds, newCapacity);
+        referenceAsrStarts = Arrays.copyOf(referenceAsrStarts, newCapacity);
+        referenceAsrEnds = Arrays.copyOf(referenceAsrEnds, newCapacity);
+      }
+    }
+
+    PackedCharacterRegions build() {
+      return new PackedCharacterRegions(this);
+    }
+  }
+
+  /** Allows Jackson to write packed regions as the list of regions they represent. */
+  static final class ToRegionList
+      extends StdConverter<PackedCharacterRegions, List<CharacterRegion>> {
+
+    @Override
+    public List<CharacterRegion> convert(final PackedCharacterRegions value) {
+      return value.toRegions();
+    }
+  }
+
+  /** Allows Jackson to read packed regions from a list of regions. */
+  static final class FromRegionList
+      extends StdConverter<List<CharacterRegion>, PackedCharacterRegions> {
+
+    @Override
+    public PackedCharacterRegions convert(final List<CharacterRegion> value) {
+      return fromRegions(value);
+    }
+  }
+}
@@ -6,8 +6,10 @@ public final class ASRTime extends AbstractOffset<ASRTime> {
     super(val);
   }
 
+  private static final ASRTime[] CACHE = new ASRTime[OffsetCaches.CACHE_SIZE];
+
   public static ASRTime of(int val) {
-    return new ASRTime(val);
+    return OffsetCaches.cached(CACHE, val, ASRTime::new);
   }
 
   @Override
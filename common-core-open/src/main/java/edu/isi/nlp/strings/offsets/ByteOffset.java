@@ -6,8 +6,10 @@ public final class ByteOffset extends AbstractOffset<ByteOffset> {
     super(val);
   }
 
+  private static final ByteOffset[] CACHE = new ByteOffset[OffsetCaches.CACHE_SIZE];
+
   public static ByteOffset asByteOffset(final int val) {
-    return new ByteOffset(val);
+    return OffsetCaches.cached(CACHE, val, ByteOffset::new);
   }
 
   @Override
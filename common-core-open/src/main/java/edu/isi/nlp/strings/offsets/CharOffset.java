@@ -10,9 +10,12 @@ public final class CharOffset extends AbstractOffset<CharOffset> {
     super(val);
   }
 
+  // small offsets are shared flyweights; see OffsetCaches
+  private static final CharOffset[] CACHE = new CharOffset[OffsetCaches.CACHE_SIZE];
+
   @JsonCreator
   public static CharOffset asCharOffset(@JsonProperty("value") final int val) {
-    return new CharOffset(val);
+    return OffsetCaches.cached(CACHE, val, CharOffset::new);
   }
 
   @Override
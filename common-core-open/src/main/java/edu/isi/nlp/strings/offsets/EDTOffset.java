@@ -6,8 +6,10 @@ public final class EDTOffset extends AbstractOffset<EDTOffset> {
     super(val);
   }
 
+  private static final EDTOffset[] CACHE = new EDTOffset[OffsetCaches.CACHE_SIZE];
+
   public static EDTOffset asEDTOffset(int val) {
-    return new EDTOffset(val);
+    return OffsetCaches.cached(CACHE, val, EDTOffset::new);
   }
 
   @Override
@@ -0,0 +1,44 @@
+package edu.isi.nlp.strings.offsets;
+
+import java.util.function.IntFunction;
+
+/**
+ * Configuration for the flyweight caches of small offsets. Offsets are immutable and small values
+ * recur constantly (every document has a character offset 0, 1, 2, ...), so, like {@link
+ * Integer#valueOf(int)}, the factory methods of the {@link AbstractOffset} subclasses and {@link
+ * OffsetGroup#fromMatchingCharAndEDT(int)} return shared instances for values below {@link
+ * #CACHE_SIZE} rather than allocating new ones. Cached instances are created on first use.
+ *
+ * <p>The cache size may be set with the system property {@value #CACHE_SIZE_PROPERTY}; setting it
+ * to zero disables caching. Code must never rely on offsets being identical objects; use {@code
+ * equals}.
+ */
+final class OffsetCaches {
+
+  private OffsetCaches() {
+    throw new UnsupportedOperationException();
+  }
+
+  static final String CACHE_SIZE_PROPERTY = "edu.isi.nlp.strings.offsets.cacheSize";
+
+  /** Offsets from zero up to but not including this are cached. */
+  static final int CACHE_SIZE = Math.max(0, Integer.getInteger(CACHE_SIZE_PROPERTY, 4096));
+
+  /**
+   * Gets the shared instance for {@code val} from {@code cache}, creating it with {@code factory}
+   * on first use. Values outside the cache get a new instance from {@code factory} every time.
+   */
+  static <T> T cached(final T[] cache, final int val, final IntFunction<T> factory) {
+    if (val >= 0 && val < cache.length) {
+      T ret = cache[val];
+      if (ret == null) {
+        // racing threads may each create an instance for the same value, which is harmless since
+        // cached objects are immutable and code must not rely on their identity
+        ret = factory.apply(val);
+        cache[val] = ret;
+      }
+      return ret;
+    }
+    return factory.apply(val);
+  }
+}
@@ -26,7 +26,10 @@ public abstract class OffsetGroup {
    * EDTOffset}. This is for unit testing purposes and probably shouldn't be used in other code.
    */
   public static OffsetGroup fromMatchingCharAndEDT(int offset) {
-    return from(CharOffset.asCharOffset(offset), EDTOffset.asEDTOffset(offset));
+    return OffsetCaches.cached(
+        MATCHING_CHAR_AND_EDT_CACHE,
+        offset,
+        val -> build(CharOffset.asCharOffset(val), EDTOffset.asEDTOffset(val)));
   }
 
   /**
@@ -34,6 +37,18 @@ public abstract class OffsetGroup {
    * byte or ASR offsets.
    */
   public static OffsetGroup from(final CharOffset charOffset, final EDTOffset edtOffset) {
+    // groups with equal small char and EDT offsets are by far the most common, so they are shared
+    if (charOffset.asInt() == edtOffset.asInt()) {
+      return fromMatchingCharAndEDT(charOffset.asInt());
+    }
+    return build(charOffset, edtOffset);
+  }
+
+  // see OffsetCaches
+  private static final OffsetGroup[] MATCHING_CHAR_AND_EDT_CACHE =
+      new OffsetGroup[OffsetCaches.CACHE_SIZE];
+
+  private static OffsetGroup build(final CharOffset charOffset, final EDTOffset edtOffset) {
     return new Builder().charOffset(charOffset).edtOffset(edtOffset).build();
   }
 
@@ -1,5 +1,8 @@
 package edu.isi.nlp.strings.offsets;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.Beta;
 import com.google.common.base.Function;
 
 public final class Offsets {
@@ -17,4 +20,69 @@ public final class Offsets {
       }
     };
   }
+
+  // Packed ranges
+  //
+  // An OffsetRange costs three objects. Where millions of them must be held, the two endpoints of
+  // a range can instead be packed into a single long, with the start in the high 32 bits and the
+  // end in the low 32 bits. Because offsets are non-negative, ordering packed ranges as longs
+  // orders them by start and then by end, so arrays of them can be sorted and binary-searched
+  // directly. See PackedCharOffsetRangeList for a sorted collection of packed ranges.
+
+  /**
+   * Packs the inclusive range from {@code startInclusive} to {@code endInclusive} into a {@code
+   * long}. Both must be non-negative and the start may not exceed the end.
+   */
+  @Beta
+  public static long packRange(final int startInclusive, final int endInclusive) {
+    checkArgument(
+        0 <= startInclusive && startInclusive <= endInclusive,
+        "Invalid offset range to pack: %s-%s",
+        startInclusive,
+        endInclusive);
+    return ((long) startInclusive << 32) | endInclusive;
+  }
+
+  /** Packs an {@link OffsetRange} of any offset type as for {@link #packRange(int, int)}. */
+  @Beta
+  public static long packRange(final OffsetRange<?> range) {
+    return packRange(range.startInclusive().asInt(), range.endInclusive().asInt());
+  }
+
+  /** The inclusive start of a range packed by {@link #packRange(int, int)}. */
+  @Beta
+  public static int packedStart(final long packedRange) {
+    return (int) (packedRange >>> 32);
+  }
+
+  /** The inclusive end of a range packed by {@link #packRange(int, int)}. */
+  @Beta
+  public static int packedEnd(final long packedRange) {
+    return (int) packedRange;
+  }
+
+  /** The number of offsets in a range packed by {@link #packRange(int, int)}. */
+  @Beta
+  public static int packedLength(final long packedRange) {
+    return packedEnd(packedRange) - packedStart(packedRange) + 1;
+  }
+
+  /** Unpacks a range packed by {@link #packRange(int, int)} as character offsets. */
+  @Beta
+  public static OffsetRange<CharOffset> unpackCharOffsetRange(final long packedRange) {
+    return OffsetRange.charOffsetRange(packedStart(packedRange), packedEnd(packedRange));
+  }
+
+  /** Whether two packed ranges share at least one offset. */
+  @Beta
+  public static boolean packedRangesOverlap(final long packedRange1, final long packedRange2) {
+    return packedStart(packedRange1) <= packedEnd(packedRange2)
+        && packedStart(packedRange2) <= packedEnd(packedRange1);
+  }
+
+  /** Whether every offset of {@code inner} is within {@code outer}. */
+  @Beta
+  public static boolean packedRangeContains(final long outer, final long inner) {
+    return packedStart(outer) <= packedStart(inner) && packedEnd(inner) <= packedEnd(outer);
+  }
 }
@@ -0,0 +1,280 @@
+package edu.isi.nlp.strings.offsets;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static edu.isi.nlp.strings.offsets.Offsets.packRange;
+import static edu.isi.nlp.strings.offsets.Offsets.packedEnd;
+import static edu.isi.nlp.strings.offsets.Offsets.packedStart;
+
+import com.google.common.annotations.Beta;
+import java.util.Arrays;
+
+/**
+ * An immutable sorted list of character offset ranges, stored as a single {@code long[]} of ranges
+ * packed by {@link Offsets#packRange(int, int)} rather than as {@link OffsetRange} objects. Ranges
+ * are sorted by start and then end; duplicates are kept.
+ *
+ * <p>Queries return indices into the list (or arrays of them) rather than {@link OffsetRange}s, so
+ * no objects are created per range. Use {@link #start(int)} and {@link #end(int)} to get the bounds
+ * of the range at an index.
+ *
+ * <p>Queries take {@code O(log(n))} time plus time proportional to the number of ranges examined.
+ * For overlap and containment queries, this is every range which starts between the start of the
+ * first overlapping range and the end of the query, so it may include ranges nested inside others
+ * which do not match. For typical spans such as tokens, mentions or sentences this is close to the
+ * number of results.
+ */
+@Beta
+public final class PackedCharOffsetRangeList {
+
+  private static final int[] NO_INDICES = new int[0];
+
+  private final long[] ranges;
+  // maxEnds[i] is the greatest end of any of the first i + 1 ranges. This never decreases, so it
+  // can be binary searched to find the first range which could reach a given offset
+  private final int[] maxEnds;
+
+  private PackedCharOffsetRangeList(final long[] sortedRanges) {
+    this.ranges = sortedRanges;
+    this.maxEnds = new int[sortedRanges.length];
+    int maxEnd = -1;
+    for (int i = 0; i < sortedRanges.length; ++i) {
+      maxEnd = Math.max(maxEnd, packedEnd(sortedRanges[i]));
+      maxEnds[i] = maxEnd;
+    }
+  }
+
+  /**
+   * Creates a list from ranges packed by {@link Offsets#packRange(int, int)}, in any order. The
+   * array is copied.
+   */
+  public static PackedCharOffsetRangeList fromPackedRanges(final long[] packedRanges) {
+    final Builder ret = new Builder();
+    for (final long packedRange : packedRanges) {
+      ret.addPacked(packedRange);
+    }
+    return ret.build();
+  }
+
+  public static PackedCharOffsetRangeList copyOf(
+      final Iterable<? extends OffsetRange<CharOffset>> ranges) {
+    final Builder ret = new Builder();
+    for (final OffsetRange<CharOffset> range : ranges) {
+      ret.add(range);
+    }
+    return ret.build();
+  }
+
+  public int size() {
+    return ranges.length;
+  }
+
+  public boolean isEmpty() {
+    return ranges.length == 0;
+  }
+
+  /** The inclusive start of the range at {@code idx}. */
+  public int start(final int idx) {
+    return packedStart(ranges[idx]);
+  }
+
+  /** The inclusive end of the range at {@code idx}. */
+  public int end(final int idx) {
+    return packedEnd(ranges[idx]);
+  }
+
+  /** The range at {@code idx}, packed as by {@link Offsets#packRange(int, int)}. */
+  public long packed(final int idx) {
+    return ranges[idx];
+  }
+
+  /** The range at {@code idx}. Unlike the other accessors, this creates objects. */
+  public OffsetRange<CharOffset> get(final int idx) {
+    return Offsets.unpackCharOffsetRange(ranges[idx]);
+  }
+
+  /**
+   * The index of an occurrence of the range from {@code startInclusive} to {@code endInclusive}, or
+   * a negative number if it is not present. Since no range can be negative or end before it starts,
+   * such arguments are simply not present.
+   */
+  public int indexOf(final int startInclusive, final int endInclusive) {
+    if (startInclusive < 0 || startInclusive > endInclusive) {
+      return -1;
+    }
+    final int idx = Arrays.binarySearch(ranges, packRange(startInclusive, endInclusive));
+    return idx >= 0 ? idx : -1;
+  }
+
+  public boolean contains(final int startInclusive, final int endInclusive) {
+    return indexOf(startInclusive, endInclusive) >= 0;
+  }
+
+  /** The indices of all ranges which share at least one offset with the query range. */
+  public int[] indicesOverlapping(final int startInclusive, final int endInclusive) {
+    checkQuery(startInclusive, endInclusive);
+    return scan(
+        firstIndexReaching(startInclusive),
+        firstIndexStartingAfter(endInclusive),
+        startInclusive,
+        Integer.MAX_VALUE);
+  }
+
+  /** The indices of all ranges which contain every offset of the query range. */
+  public int[] indicesContaining(final int startInclusive, final int endInclusive) {
+    checkQuery(startInclusive, endInclusive);
+    return scan(
+        firstIndexReaching(endInclusive),
+        firstIndexStartingAfter(startInclusive),
+        endInclusive,
+        Integer.MAX_VALUE);
+  }
+
+  /** The indices of all ranges which lie entirely within the query range. */
+  public int[] indicesContainedBy(final int startInclusive, final int endInclusive) {
+    checkQuery(startInclusive, endInclusive);
+    return scan(
+        firstIndexStartingAtOrAfter(startInclusive),
+        firstIndexStartingAfter(endInclusive),
+        Integer.MIN_VALUE,
+        endInclusive);
+  }
+
+  /** Whether any range contains {@code offset}. */
+  public boolean anyContains(final int offset) {
+    final int firstStartingAfter = firstIndexStartingAfter(offset);
+    return firstStartingAfter > 0 && maxEnds[firstStartingAfter - 1] >= offset;
+  }
+
+  /**
+   * The index of the range nearest to {@code offset}: one containing it if there is one, otherwise
+   * the one with the smallest gap to it. Ties go to the earlier range. Returns -1 if this list is
+   * empty.
+   */
+  public int indexOfNearest(final int offset) {
+    if (ranges.length == 0) {
+      return -1;
+    }
+    final int firstStartingAfter = firstIndexStartingAfter(offset);
+    if (firstStartingAfter == 0) {
+      return 0;
+    }
+    final int furthestEnd = maxEnds[firstStartingAfter - 1];
+    if (furthestEnd >= offset) {
+      // the first range to reach offset contains it
+      return firstIndexReaching(offset);
+    }
+    // otherwise, of the ranges starting before offset, the first to reach furthest is closest
+    final int bestBefore = firstIndexReaching(furthestEnd);
+    if (firstStartingAfter == ranges.length) {
+      return bestBefore;
+    }
+    final long gapBefore = (long) offset - furthestEnd;
+    final long gapAfter = (long) start(firstStartingAfter) - offset;
+    return gapAfter < gapBefore ? firstStartingAfter : bestBefore;
+  }
+
+  /**
+   * Returns the indices in {@code [from, to)} of ranges ending at or after {@code minEnd} and at or
+   * before {@code maxEnd}.
+   */
+  private int[] scan(final int from, final int to, final int minEnd, final int maxEnd) {
+    if (from >= to) {
+      return NO_INDICES;
+    }
+    int[] ret = new int[Math.min(to - from, 8)];
+    int size = 0;
+    for (int i = from; i < to; ++i) {
+      final int end = packedEnd(ranges[i]);
+      if (end >= minEnd && end <= maxEnd) {
+        if (size == ret.length) {
+          ret = Arrays.copyOf(ret, Math.min(to - from, 2 * size));
+        }
+        ret[size++] = i;
+      }
+    }
+    return size == ret.length ? ret : Arrays.copyOf(ret, size);
+  }
+
+  /** The first index whose range, or some range before it, ends at or after {@code offset}. */
+  private int firstIndexReaching(final int offset) {
+    int lo = 0;
+    int hi = maxEnds.length;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (maxEnds[mid] < offset) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  private int firstIndexStartingAtOrAfter(final int offset) {
+    return firstIndexWithPackedValueAtLeast((long) offset << 32);
+  }
+
+  private int firstIndexStartingAfter(final int offset) {
+    if (offset == Integer.MAX_VALUE) {
+      // no range can start after this, and offset + 1 would overflow the packed start
+      return ranges.length;
+    }
+    return firstIndexWithPackedValueAtLeast((long) offset + 1 << 32);
+  }
+
+  private int firstIndexWithPackedValueAtLeast(final long packed) {
+    int lo = 0;
+    int hi = ranges.length;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (ranges[mid] < packed) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  private static void checkQuery(final int startInclusive, final int endInclusive) {
+    checkArgument(
+        startInclusive <= endInclusive,
+        "Query start %s may not exceed its end %s",
+        startInclusive,
+        endInclusive);
+  }
+
+  public static final class Builder {
+
+    private long[] ranges = new long[16];
+    private int size = 0;
+
+    public Builder add(final int startInclusive, final int endInclusive) {
+      return addPacked(packRange(startInclusive, endInclusive));
+    }
+
+    public Builder add(final OffsetRange<CharOffset> range) {
+      return addPacked(Offsets.packRange(range));
+    }
+
+    /** Adds a range packed by {@link Offsets#packRange(int, int)}. */
+    public Builder addPacked(final long packedRange) {
+      checkArgument(packedStart(packedRange) >= 0, "Not a packed range: %s", packedRange);
+      checkArgument(
+          packedStart(packedRange) <= packedEnd(packedRange),
+          "Not a packed range: %s",
+          packedRange);
+      if (size == ranges.length) {
+        ranges = Arrays.copyOf(ranges, 2 * size);
+      }
+      ranges[size++] = packedRange;
+      return this;
+    }
+
+    public PackedCharOffsetRangeList build() {
+      final long[] sorted = Arrays.copyOf(ranges, size);
+      Arrays.sort(sorted);
+      return new PackedCharOffsetRangeList(sorted);
+    }
+  }
+}
@@ -7,8 +7,10 @@ public final class TokenOffset extends AbstractOffset<TokenOffset> {
     super(val);
   }
 
+  private static final TokenOffset[] CACHE = new TokenOffset[OffsetCaches.CACHE_SIZE];
+
   public static TokenOffset asTokenOffset(final int val) {
-    return new TokenOffset(val);
+    return OffsetCaches.cached(CACHE, val, TokenOffset::new);
   }
 
   @Override
@@ -13,8 +13,10 @@ public final class UTF16Offset extends AbstractOffset<UTF16Offset> {
     super(val);
   }
 
+  private static final UTF16Offset[] CACHE = new UTF16Offset[OffsetCaches.CACHE_SIZE];
+
   public static UTF16Offset of(int val) {
-    return new UTF16Offset(val);
+    return OffsetCaches.cached(CACHE, val, UTF16Offset::new);
   }
 
   @Override
@@ -5,14 +5,18 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import edu.isi.nlp.HasStableHashCode;
 import edu.isi.nlp.StringUtils;
 import edu.isi.nlp.UnicodeFriendlyString;
 import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Symbol (adapted from Serif) is represents an interned String. Symbol-ized Strings can be used to
@@ -33,12 +37,17 @@ import java.util.Map;
  *
  * <p>The hashcode is not stable across program runs.
  *
+ * <p>Interning is thread-safe and does not take a global lock, so many threads may create {@code
+ * Symbol}s concurrently. Entries for {@code Symbol}s which are no longer referenced anywhere are
+ * cleaned up as they are garbage collected.
+ *
  * @author rgabbard
  */
 public final class Symbol implements Serializable, HasStableHashCode {
 
-  private static Map<String, WeakReference<Symbol>> symbols =
-      new HashMap<String, WeakReference<Symbol>>();
+  private static final ConcurrentMap<String, SymbolReference> symbols =
+      new ConcurrentHashMap<String, SymbolReference>();
+  private static final ReferenceQueue<Symbol> collectedSymbols = new ReferenceQueue<Symbol>();
   private final String string;
 
   private Symbol(String string) {
@@ -51,25 +60,110 @@ public final class Symbol implements Serializable, HasStableHashCode {
    * @param string Must be non-null.
    */
   @JsonCreator
-  public static synchronized Symbol from(@JsonProperty("string") final String string) {
-    final WeakReference<Symbol> ref = symbols.get(checkNotNull(string));
-
+  public static Symbol from(@JsonProperty("string") final String string) {
+    final SymbolReference ref = symbols.get(checkNotNull(string));
     if (ref != null) {
       final Symbol sym = ref.get();
       if (sym != null) {
         return sym;
       }
     }
-
-    final Symbol sym = new Symbol(string);
-    symbols.put(string, new WeakReference<Symbol>(sym));
-    return sym;
+    return intern(string);
   }
 
-  public static synchronized Symbol from(final UnicodeFriendlyString unicodeFriendlyString) {
+  public static Symbol from(final UnicodeFriendlyString unicodeFriendlyString) {
     return from(unicodeFriendlyString.utf16CodeUnits());
   }
 
+  /**
+   * Creates <code>Symbol</code>s for many strings at once, returning them in the same order as the
+   * input. This is equivalent to calling {@link #from(String)} on each string but is cheaper when
+   * loading large vocabularies (e.g. document ID lists).
+   *
+   * @param strings No string may be null.
+   */
+  public static ImmutableList<Symbol> fromAll(final Iterable<String> strings) {
+    expungeCollectedSymbols();
+    final ImmutableList.Builder<Symbol> ret = ImmutableList.builder();
+    for (final String string : strings) {
+      final SymbolReference ref = symbols.get(checkNotNull(string));
+      final Symbol sym = ref != null ? ref.get() : null;
+      ret.add(sym != null ? sym : install(string));
+    }
+    return ret.build();
+  }
+
+  /**
+   * Returns all <code>Symbol</code>s which currently exist. This is primarily useful for making
+   * snapshots of the vocabulary of a program; see {@link SymbolVocabularySnapshots}.
+   */
+  public static ImmutableSet<Symbol> liveSymbols() {
+    final ImmutableSet.Builder<Symbol> ret = ImmutableSet.builder();
+    for (final SymbolReference ref : symbols.values()) {
+      final Symbol sym = ref.get();
+      if (sym != null) {
+        ret.add(sym);
+      }
+    }
+    return ret.build();
+  }
+
+  /**
+   * Slow path of {@link #from(String)}: either installs a new {@code Symbol} for {@code string} or
+   * returns the one another thread installed first. A mapping whose {@code Symbol} has been
+   * collected is atomically replaced, so there is never more than one live {@code Symbol} per
+   * string.
+   */
+  private static Symbol intern(final String string) {
+    expungeCollectedSymbols();
+    return install(string);
+  }
+
+  private static Symbol install(final String string) {
+    final Symbol candidate = new Symbol(string);
+    final SymbolReference candidateRef = new SymbolReference(string, candidate, collectedSymbols);
+    while (true) {
+      final SymbolReference existingRef = symbols.putIfAbsent(string, candidateRef);
+      if (existingRef == null) {
+        return candidate;
+      }
+      final Symbol existing = existingRef.get();
+      if (existing != null) {
+        return existing;
+      }
+      if (symbols.replace(string, existingRef, candidateRef)) {
+        return candidate;
+      }
+    }
+  }
+
+  /**
+   * Removes table entries whose {@code Symbol}s have been garbage collected. An entry is only
+   * removed if it still maps to the collected reference, so a concurrently installed replacement is
+   * never lost.
+   */
+  private static void expungeCollectedSymbols() {
+    Reference<? extends Symbol> collected;
+    while ((collected = collectedSymbols.poll()) != null) {
+      final SymbolReference collectedRef = (SymbolReference) collected;
+      symbols.remove(collectedRef.string, collectedRef);
+    }
+  }
+
+  /**
+   * A weak reference to an interned {@code Symbol} which remembers its key so that it can be
+   * removed from the table once the {@code Symbol} is collected.
+   */
+  private static final class SymbolReference extends WeakReference<Symbol> {
+
+    private final String string;
+
+    SymbolReference(String string, Symbol symbol, ReferenceQueue<Symbol> queue) {
+      super(symbol, queue);
+      this.string = string;
+    }
+  }
+
   /** Returns the string this Symbol represents. Will never be {@code null}. */
   @JsonProperty("string")
   public String asString() {
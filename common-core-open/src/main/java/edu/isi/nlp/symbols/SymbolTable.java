@@ -0,0 +1,218 @@
+package edu.isi.nlp.symbols;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteSink;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Closeables;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Assigns each {@link Symbol} added to it a dense integer ID. IDs are assigned in the order symbols
+ * are first seen, starting from zero, and never change, so they can be used to index primitive
+ * arrays or as keys of primitive-keyed maps instead of keying on {@link Symbol}s directly.
+ *
+ * <p>Both {@link #idOf(Symbol)} and {@link #symbolOf(int)} are constant time. Lookups of symbols
+ * which already have IDs never block; assignment of new IDs is safe to do from multiple threads.
+ *
+ * <p>A table may be {@link #freeze() frozen}, after which requesting the ID of an unknown symbol is
+ * an error. Tables may be written to and read from a compact binary format with {@link
+ * #writeBinary(ByteSink)} and {@link #readBinary(ByteSource)}. Loaded tables are frozen.
+ */
+@Beta
+public final class SymbolTable {
+
+  /** Returned by {@link #lookupId(Symbol)} for symbols which have not been assigned an ID. */
+  public static final int NO_ID = -1;
+
+  private static final int MAGIC = 0x53594d54; // "SYMT"
+  private static final int FORMAT_VERSION = 1;
+  private static final int DEFAULT_INITIAL_CAPACITY = 1024;
+
+  private final ConcurrentMap<Symbol, Integer> symbolsToIds;
+  // only grows under the lock.  A slot is always written before its symbol is published to
+  // symbolsToIds, so any ID a caller could have obtained is visible in this array
+  private volatile Symbol[] idsToSymbols;
+  private volatile int size = 0;
+  private volatile boolean frozen = false;
+
+  private SymbolTable(int initialCapacity) {
+    this.symbolsToIds = new ConcurrentHashMap<>(initialCapacity);
+    this.idsToSymbols = new Symbol[Math.max(1, initialCapacity)];
+  }
+
+  /** Creates a new, empty, unfrozen table. */
+  public static SymbolTable create() {
+    return new SymbolTable(DEFAULT_INITIAL_CAPACITY);
+  }
+
+  /** Creates a new unfrozen table with IDs assigned to {@code symbols} in iteration order. */
+  public static SymbolTable createFrom(Iterable<Symbol> symbols) {
+    final SymbolTable ret = create();
+    for (final Symbol symbol : symbols) {
+      ret.idOf(symbol);
+    }
+    return ret;
+  }
+
+  /**
+   * Gets the ID of {@code symbol}, assigning it the next available ID if it does not already have
+   * one.
+   *
+   * @throws IllegalStateException if the symbol has no ID and this table is frozen.
+   */
+  public int idOf(Symbol symbol) {
+    final Integer id = symbolsToIds.get(checkNotNull(symbol));
+    if (id != null) {
+      return id;
+    }
+    return assignId(symbol);
+  }
+
+  /**
+   * Gets the ID of {@code symbol} without assigning one. Returns {@link #NO_ID} if {@code symbol}
+   * has no ID.
+   */
+  public int lookupId(Symbol symbol) {
+    final Integer id = symbolsToIds.get(checkNotNull(symbol));
+    return id != null ? id : NO_ID;
+  }
+
+  /**
+   * Gets the symbol with the given ID.
+   *
+   * @throws IndexOutOfBoundsException if no symbol has been assigned {@code id}
+   */
+  public Symbol symbolOf(int id) {
+    checkElementIndex(id, size, "symbol ID");
+    return idsToSymbols[id];
+  }
+
+  /** The number of symbols which have been assigned IDs. IDs range from 0 to {@code size()-1}. */
+  public int size() {
+    return size;
+  }
+
+  /** All symbols in the table in ID order. */
+  public ImmutableList<Symbol> symbols() {
+    final int currentSize = size;
+    return ImmutableList.copyOf(Arrays.asList(idsToSymbols).subList(0, currentSize));
+  }
+
+  /**
+   * Prevents any further IDs from being assigned. Returns this table for convenience. Freezing an
+   * already frozen table has no effect.
+   */
+  public synchronized SymbolTable freeze() {
+    frozen = true;
+    return this;
+  }
+
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  private synchronized int assignId(Symbol symbol) {
+    // another thread may have assigned it while we were waiting for the lock
+    final Integer existingId = symbolsToIds.get(symbol);
+    if (existingId != null) {
+      return existingId;
+    }
+    if (frozen) {
+      throw new IllegalStateException(
+          "Cannot assign an ID to " + symbol + " because the symbol table is frozen");
+    }
+    final int newId = size;
+    if (newId == idsToSymbols.length) {
+      idsToSymbols = Arrays.copyOf(idsToSymbols, 2 * idsToSymbols.length);
+    }
+    idsToSymbols[newId] = symbol;
+    size = newId + 1;
+    symbolsToIds.put(symbol, newId);
+    return newId;
+  }
+
+  /**
+   * Writes this table in a compact binary format which can be read with {@link
+   * #readBinary(ByteSource)}. Symbols are written in ID order, so IDs are preserved.
+   */
+  public void writeBinary(ByteSink sink) throws IOException {
+    writeStrings(Lists.transform(symbols(), SymbolUtils.desymbolizeFunction()), sink);
+  }
+
+  /**
+   * Reads a table written by {@link #writeBinary(ByteSink)}. Every symbol receives the same ID it
+   * had in the written table. The returned table is frozen.
+   */
+  public static SymbolTable readBinary(ByteSource source) throws IOException {
+    final ImmutableList<Symbol> symbols = Symbol.fromAll(readStrings(source));
+    final SymbolTable ret = new SymbolTable(symbols.size());
+    for (int i = 0; i < symbols.size(); ++i) {
+      if (ret.idOf(symbols.get(i)) != i) {
+        throw new IOException("Duplicate symbol " + symbols.get(i) + " in symbol table " + source);
+      }
+    }
+    return ret.freeze();
+  }
+
+  /** Writes {@code strings} in the binary format used by {@link #writeBinary(ByteSink)}. */
+  static void writeStrings(Collection<String> strings, ByteSink sink) throws IOException {
+    final DataOutputStream out = new DataOutputStream(sink.openBufferedStream());
+
+    boolean threw = true;
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(strings.size());
+      for (final String string : strings) {
+        final byte[] utf8 = string.getBytes(Charsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+      }
+      threw = false;
+    } finally {
+      Closeables.close(out, threw);
+    }
+  }
+
+  /** Reads the strings of a file written by {@link #writeStrings(Collection, ByteSink)}. */
+  static List<String> readStrings(ByteSource source) throws IOException {
+    final DataInputStream in = new DataInputStream(source.openBufferedStream());
+    try {
+      final int magic = in.readInt();
+      if (magic != MAGIC) {
+        throw new IOException("Not a symbol table file: " + source);
+      }
+      final int version = in.readInt();
+      if (version != FORMAT_VERSION) {
+        throw new IOException("Unsupported symbol table format version " + version);
+      }
+      final int numStrings = in.readInt();
+      final String[] ret = new String[numStrings];
+      byte[] buffer = new byte[256];
+      for (int i = 0; i < numStrings; ++i) {
+        final int length = in.readInt();
+        if (length > buffer.length) {
+          buffer = new byte[Math.max(length, 2 * buffer.length)];
+        }
+        in.readFully(buffer, 0, length);
+        ret[i] = new String(buffer, 0, length, Charsets.UTF_8);
+      }
+      return Arrays.asList(ret);
+    } finally {
+      Closeables.closeQuietly(in);
+    }
+  }
+}
@@ -103,7 +103,7 @@ public class SymbolUtils {
    */
   public static ImmutableList<Symbol> listFrom(final Iterable<String> strings) {
     checkNotNull(strings);
-    return FluentIterable.from(strings).transform(symbolizeFunction()).toList();
+    return Symbol.fromAll(strings);
   }
 
   public static ImmutableSet<String> toStringSet(final Iterable<Symbol> syms) {
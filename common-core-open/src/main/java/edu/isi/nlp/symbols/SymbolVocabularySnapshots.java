@@ -0,0 +1,57 @@
+package edu.isi.nlp.symbols;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteSink;
+import com.google.common.io.ByteSource;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Saves and restores the set of {@link Symbol}s in use by a program. Short-lived programs which
+ * intern the same large vocabulary (e.g. document IDs) on every run can write a snapshot once with
+ * {@link #writeLiveVocabulary(ByteSink)} and then {@link #preload(ByteSource)} it at startup, so
+ * the vocabulary is interned in a single bulk pass rather than as it is encountered.
+ *
+ * <p>Snapshots use the same binary format as {@link SymbolTable#writeBinary(ByteSink)}, so a
+ * snapshot may also be loaded as a {@link SymbolTable}.
+ *
+ * <p>{@link edu.isi.nlp.IsiNlpEntryPoints} will preload and dump snapshots if requested by
+ * parameters.
+ */
+@Beta
+public final class SymbolVocabularySnapshots {
+
+  private SymbolVocabularySnapshots() {
+    throw new UnsupportedOperationException();
+  }
+
+  // symbols are only weakly interned, so we need to hold on to preloaded vocabularies to
+  // keep them from being collected before they are used
+  private static final List<ImmutableList<Symbol>> preloadedVocabularies =
+      new CopyOnWriteArrayList<>();
+
+  /**
+   * Writes all currently live {@link Symbol}s to {@code sink}, sorted by their strings. Returns the
+   * number of symbols written.
+   */
+  public static int writeLiveVocabulary(ByteSink sink) throws IOException {
+    final ImmutableList<Symbol> vocabulary =
+        SymbolUtils.byStringOrdering().immutableSortedCopy(Symbol.liveSymbols());
+    SymbolTable.writeStrings(Lists.transform(vocabulary, SymbolUtils.desymbolizeFunction()), sink);
+    return vocabulary.size();
+  }
+
+  /**
+   * Interns every symbol in a snapshot written by {@link #writeLiveVocabulary(ByteSink)} (or {@link
+   * SymbolTable#writeBinary(ByteSink)}). The loaded symbols are retained for the life of the
+   * program. Returns the number of symbols loaded.
+   */
+  public static int preload(ByteSource source) throws IOException {
+    final ImmutableList<Symbol> vocabulary = Symbol.fromAll(SymbolTable.readStrings(source));
+    preloadedVocabularies.add(vocabulary);
+    return vocabulary.size();
+  }
+}
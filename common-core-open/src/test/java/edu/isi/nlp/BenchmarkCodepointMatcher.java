@@ -0,0 +1,111 @@
+package edu.isi.nlp;
+
+import com.google.common.base.Stopwatch;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Test program comparing the speed of {@link CodepointMatcher}s evaluated as trees of calls with
+ * that of their {@link CodepointMatcher#precomputed()} equivalents, over a document mixing ASCII,
+ * accented Latin, CJK and non-BMP text.
+ *
+ * <p>Takes optional arguments giving the document size in code units (defaults to 1 MB worth) and
+ * the number of passes over it (defaults to 20).
+ */
+public final class BenchmarkCodepointMatcher {
+
+  private static Logger log = LoggerFactory.getLogger(BenchmarkCodepointMatcher.class);
+
+  // non-BMP emoji
+  private static final String CHEESE_WEDGE = "\uD83E\uDDC0";
+  private static final String[] WORDS = {
+    "The",
+    "cat",
+    "sat",
+    "on",
+    "a",
+    "mat.",
+    "caf\u00e9",
+    "\u4e2d\u6587",
+    "(quoted)",
+    "42",
+    CHEESE_WEDGE
+  };
+
+  public static void main(String[] args) {
+    // We wrap the main method in this way to ensure a non-zero return value on failure
+    try {
+      trueMain(args);
+    } catch (Exception e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static void trueMain(String[] args) {
+    final int documentSize = args.length > 0 ? Integer.parseInt(args[0]) : 1024 * 1024;
+    final int passes = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+    final Random rng = new Random(0);
+    final StringBuilder sb = new StringBuilder();
+    while (sb.length() < documentSize) {
+      sb.append(WORDS[rng.nextInt(WORDS.length)]).append(' ');
+    }
+    final String document = sb.toString();
+
+    benchmark("punctuation", CodepointMatcher.punctuation(), document, passes);
+    benchmark(
+        "punctuation or whitespace",
+        CodepointMatcher.or(CodepointMatcher.punctuation(), CodepointMatcher.whitespace()),
+        document,
+        passes);
+    benchmark("uncased letter", CodepointMatcher.uncasedLetter(), document, passes);
+    benchmark(
+        "not alphanumeric and not whitespace",
+        CodepointMatcher.and(
+            CodepointMatcher.not(CodepointMatcher.alphanumeric()),
+            CodepointMatcher.not(CodepointMatcher.whitespace())),
+        document,
+        passes);
+  }
+
+  private static void benchmark(String name, CodepointMatcher tree, String document, int passes) {
+    final Stopwatch precomputeTime = Stopwatch.createStarted();
+    final CodepointMatcher precomputed = tree.precomputed();
+    precomputeTime.stop();
+
+    // warm up both so neither is penalized by JIT compilation
+    long treeMatches = countMatches(tree, document, 2);
+    long precomputedMatches = countMatches(precomputed, document, 2);
+
+    final Stopwatch treeTime = Stopwatch.createStarted();
+    treeMatches = countMatches(tree, document, passes);
+    treeTime.stop();
+
+    final Stopwatch precomputedTime = Stopwatch.createStarted();
+    precomputedMatches = countMatches(precomputed, document, passes);
+    precomputedTime.stop();
+
+    if (treeMatches != precomputedMatches) {
+      throw new IllegalStateException(
+          "Precomputed matcher for " + name + " disagrees with the original");
+    }
+    log.info(
+        "{}: tree {} ms, precomputed {} ms (precomputation took {} ms) for {} matches",
+        name,
+        treeTime.elapsed(TimeUnit.MILLISECONDS),
+        precomputedTime.elapsed(TimeUnit.MILLISECONDS),
+        precomputeTime.elapsed(TimeUnit.MILLISECONDS),
+        treeMatches);
+  }
+
+  private static long countMatches(CodepointMatcher matcher, String document, int passes) {
+    long matches = 0;
+    for (int i = 0; i < passes; ++i) {
+      matches += matcher.countIn(document);
+    }
+    return matches;
+  }
+}
@@ -0,0 +1,68 @@
+package edu.isi.nlp;
+
+import com.google.common.base.Stopwatch;
+import edu.isi.nlp.strings.offsets.CharOffset;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Test program for timing per-token substring extraction by codepoint offsets from a long document
+ * containing non-BMP characters, which is the access pattern of tokenizers and aligners.
+ *
+ * <p>Takes an optional argument giving the document size in code units (defaults to 1 MB worth).
+ */
+public final class BenchmarkUnicodeFriendlySubstrings {
+
+  private static Logger log = LoggerFactory.getLogger(BenchmarkUnicodeFriendlySubstrings.class);
+
+  // non-BMP emoji
+  private static final String CHEESE_WEDGE = "\uD83E\uDDC0";
+  private static final String[] WORDS = {"the", "cat", "sat", "on", "a", "mat", CHEESE_WEDGE};
+
+  public static void main(String[] args) {
+    // We wrap the main method in this way to ensure a non-zero return value on failure
+    try {
+      trueMain(args);
+    } catch (Exception e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static void trueMain(String[] args) {
+    final int documentSize = args.length > 0 ? Integer.parseInt(args[0]) : 1024 * 1024;
+
+    final Random rng = new Random(0);
+    final StringBuilder sb = new StringBuilder();
+    while (sb.length() < documentSize) {
+      sb.append(WORDS[rng.nextInt(WORDS.length)]).append(' ');
+    }
+    final UnicodeFriendlyString document = StringUtils.unicodeFriendly(sb.toString());
+    log.info(
+        "Document has {} code units and {} codepoints",
+        document.lengthInUtf16CodeUnits(),
+        document.lengthInCodePoints());
+
+    final Stopwatch stopwatch = Stopwatch.createStarted();
+    int tokens = 0;
+    long checksum = 0;
+    int tokenStart = 0;
+    for (int i = 0; i < document.lengthInCodePoints(); ++i) {
+      if (document.codepointAtCodepointIndex(CharOffset.asCharOffset(i)) == ' ') {
+        final UnicodeFriendlyString token =
+            document.substringByCodePoints(
+                CharOffset.asCharOffset(tokenStart), CharOffset.asCharOffset(i));
+        checksum += token.lengthInCodePoints();
+        ++tokens;
+        tokenStart = i + 1;
+      }
+    }
+    log.info(
+        "Extracted {} tokens ({} codepoints) in {} ms",
+        tokens,
+        checksum,
+        stopwatch.elapsed(TimeUnit.MILLISECONDS));
+  }
+}
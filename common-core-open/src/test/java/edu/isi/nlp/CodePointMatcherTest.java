@@ -3,6 +3,9 @@ package edu.isi.nlp;
 import static edu.isi.nlp.CodepointMatcher.digit;
 import static edu.isi.nlp.CodepointMatcher.not;
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertSame;
+import static junit.framework.TestCase.assertTrue;
 
 import org.junit.Test;
 
@@ -88,4 +91,38 @@ public class CodePointMatcherTest {
         CodepointMatcher.is("\uD87E\uDDF3").trimAndCollapseFrom(toTrimAndCollapse2, '-');
     assertEquals(reference2, predicted2);
   }
+
+  @Test
+  public void testPrecomputedMatchesEverywhere() {
+    final CodepointMatcher tree =
+        CodepointMatcher.or(
+            CodepointMatcher.and(CodepointMatcher.letter(), not(CodepointMatcher.uppercase())),
+            CodepointMatcher.or(
+                CodepointMatcher.punctuation(), CodepointMatcher.anyOf("7" + CHEESE_WEDGE)));
+    final CodepointMatcher precomputed = tree.precomputed();
+    for (int codepoint = 0; codepoint <= Character.MAX_CODE_POINT; ++codepoint) {
+      if (tree.matches(codepoint) != precomputed.matches(codepoint)) {
+        assertEquals(
+            "Mismatch at " + codepoint, tree.matches(codepoint), precomputed.matches(codepoint));
+      }
+    }
+    assertEquals(tree.matches(-1), precomputed.matches(-1));
+    assertEquals(
+        tree.collapseFrom("a" + CHEESE_WEDGE + "B\uD87E\uDDF3!?c", '-'),
+        precomputed.collapseFrom("a" + CHEESE_WEDGE + "B\uD87E\uDDF3!?c", '-'));
+    assertSame(precomputed, precomputed.precomputed());
+  }
+
+  @Test
+  public void testPrecomputedRangeBoundaries() {
+    final CodepointMatcher any = CodepointMatcher.any().precomputed();
+    final CodepointMatcher none = CodepointMatcher.none().precomputed();
+    final CodepointMatcher astral = not(CodepointMatcher.basicMultilingualPlane()).precomputed();
+    for (final int codepoint :
+        new int[] {0, Character.MAX_VALUE, Character.MAX_VALUE + 1, Character.MAX_CODE_POINT}) {
+      assertTrue(any.matches(codepoint));
+      assertFalse(none.matches(codepoint));
+      assertEquals(codepoint > Character.MAX_VALUE, astral.matches(codepoint));
+    }
+  }
 }
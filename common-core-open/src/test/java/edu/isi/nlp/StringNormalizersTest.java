@@ -0,0 +1,82 @@
+package edu.isi.nlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.collect.ImmutableList;
+import com.ibm.icu.util.ULocale;
+import org.junit.Test;
+
+public class StringNormalizersTest {
+
+  private static final String CHEESE_WEDGE = "\uD83E\uDDC0";
+
+  private static final ImmutableList<StringNormalizer> STAGES =
+      ImmutableList.of(
+          StringNormalizers.toNfkc(),
+          StringNormalizers.toLowercase(NlpLocale.forIcuLocale(ULocale.ENGLISH)),
+          StringNormalizers.translate(CodepointMatcher.digit(), '0'),
+          StringNormalizers.translate(CodepointMatcher.punctuation(), '.'),
+          StringNormalizers.collapseConsecutive(CodepointMatcher.anyOf("0." + CHEESE_WEDGE)),
+          StringNormalizers.stripFromEnd(CharMatcher.is('.')));
+
+  @Test
+  public void testComposedMatchesSequentialApplication() {
+    final StringNormalizer composed = StringNormalizers.compose(STAGES);
+    for (final String input :
+        ImmutableList.of(
+            "",
+            "abc",
+            "617-873-8000",
+            "Attorney-General!!",
+            "\ufb01ne 12,345.67",
+            CHEESE_WEDGE + CHEESE_WEDGE + "x" + CHEESE_WEDGE,
+            "...")) {
+      String expected = input;
+      for (final StringNormalizer stage : STAGES) {
+        expected = stage.normalize(expected);
+      }
+      assertEquals(expected, composed.normalize(input));
+    }
+  }
+
+  @Test
+  public void testUnchangedInputIsReturnedAsIs() {
+    final StringNormalizer composed = StringNormalizers.compose(STAGES);
+    // use a fresh instance so we are not fooled by interning
+    final String alreadyNormalized = new String("already normal 0.0");
+    assertSame(alreadyNormalized, composed.normalize(alreadyNormalized));
+    for (final StringNormalizer stage : STAGES) {
+      assertSame(alreadyNormalized, stage.normalize(alreadyNormalized));
+    }
+  }
+
+  @Test
+  public void testCollapseConsecutive() {
+    assertEquals(
+        "a" + CHEESE_WEDGE + "b-c",
+        StringNormalizers.collapseConsecutive(CodepointMatcher.anyOf(CHEESE_WEDGE + "-"))
+            .normalize("a" + CHEESE_WEDGE + CHEESE_WEDGE + "b--c"));
+  }
+
+  @Test
+  public void testCachedKeepsFrequentInputs() {
+    final CachingStringNormalizer cached =
+        StringNormalizers.cached(
+            StringNormalizers.toLowercase(NlpLocale.forIcuLocale(ULocale.ENGLISH)), 10);
+    for (int round = 0; round < 100; ++round) {
+      for (int hot = 0; hot < 5; ++hot) {
+        assertEquals("hot" + hot, cached.normalize("HOT" + hot));
+      }
+      // a stream of inputs which are never repeated should not evict the frequent ones
+      for (int rare = 0; rare < 5; ++rare) {
+        assertEquals("rare" + round + "x" + rare, cached.normalize("RARE" + round + "X" + rare));
+      }
+    }
+    assertEquals(1000, cached.hitCount() + cached.missCount());
+    // only the first sighting of each hot input should miss
+    assertTrue(cached.hitCount() >= 5 * 99);
+  }
+}
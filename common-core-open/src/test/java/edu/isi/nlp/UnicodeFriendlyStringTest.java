@@ -518,4 +518,49 @@ public class UnicodeFriendlyStringTest {
     oldTurkic.processCodePoints(processor);
     assertEquals(2, processor.getResult().intValue());
   }
+
+  @Test
+  public void testOffsetTranslationMatchesCodepointWalk() {
+    // mixes runs of non-BMP characters, BMP characters and non-BMP characters at both ends
+    final String codeUnits =
+        CHEESE_WEDGE
+            + "ab"
+            + FACE_WITH_TEARS_OF_JOY
+            + CHEESE_WEDGE
+            + "c"
+            + FACE_WITH_TEARS_OF_JOY
+            + "de"
+            + CHEESE_WEDGE;
+    final UnicodeFriendlyString s = StringUtils.unicodeFriendly(codeUnits);
+    final int numCodepoints = codeUnits.codePointCount(0, codeUnits.length());
+    assertEquals(numCodepoints, s.lengthInCodePoints());
+
+    for (int codeUnit = 0; codeUnit < codeUnits.length(); ++codeUnit) {
+      final int expectedCodepoint =
+          Character.isLowSurrogate(codeUnits.charAt(codeUnit))
+              ? codeUnits.codePointCount(0, codeUnit) - 1
+              : codeUnits.codePointCount(0, codeUnit);
+      assertEquals(expectedCodepoint, s.codepointIndex(UTF16Offset.of(codeUnit)).asInt());
+    }
+
+    for (int start = 0; start < numCodepoints; ++start) {
+      final int startCodeUnit = codeUnits.offsetByCodePoints(0, start);
+      assertEquals(
+          codeUnits.codePointAt(startCodeUnit),
+          s.codepointAtCodepointIndex(CharOffset.asCharOffset(start)));
+      for (int end = start; end < numCodepoints; ++end) {
+        final String expectedSubstring =
+            codeUnits.substring(startCodeUnit, codeUnits.offsetByCodePoints(0, end + 1));
+        assertEquals(
+            expectedSubstring,
+            s.substringByCodePoints(
+                    CharOffset.asCharOffset(start), CharOffset.asCharOffset(end + 1))
+                .utf16CodeUnits());
+        assertEquals(
+            expectedSubstring.length()
+                != expectedSubstring.codePointCount(0, expectedSubstring.length()),
+            s.hasNonBmpCharacter(OffsetRange.charOffsetRange(start, end)));
+      }
+    }
+  }
 }
@@ -0,0 +1,102 @@
+package edu.isi.nlp.collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
+import edu.isi.nlp.strings.offsets.CharOffset;
+import edu.isi.nlp.strings.offsets.OffsetRange;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class IntOverlappingRangeSetTest {
+
+  @Test
+  public void testMatchesBruteForce() {
+    final Random rng = new Random(0);
+    for (final int numRanges : new int[] {0, 1, 2, 10, 200}) {
+      final List<OffsetRange<CharOffset>> ranges = new ArrayList<>();
+      for (int i = 0; i < numRanges; ++i) {
+        ranges.add(randomRange(rng));
+      }
+      // duplicates are kept under separate ids
+      if (numRanges > 0) {
+        ranges.add(ranges.get(0));
+      }
+      final IntOverlappingRangeSet set = IntOverlappingRangeSet.fromCharOffsetRanges(ranges);
+      assertEquals(ranges.size(), set.size());
+
+      for (int point = -1; point < 62; ++point) {
+        assertArrayEquals(bruteForce(ranges, point, point, 0), set.rangesContaining(point));
+      }
+      for (int i = 0; i < 300; ++i) {
+        final OffsetRange<CharOffset> query = randomRange(rng);
+        final int start = query.startInclusive().asInt();
+        final int end = query.endInclusive().asInt();
+        assertArrayEquals(bruteForce(ranges, start, end, 0), set.rangesOverlapping(start, end));
+        assertArrayEquals(bruteForce(ranges, start, end, 1), set.rangesContaining(start, end));
+        assertArrayEquals(bruteForce(ranges, start, end, 2), set.rangesContainedBy(start, end));
+      }
+
+      final int[] points = {-1, 0, 0, 3, 7, 8, 20, 21, 35, 59, 70};
+      final int[][] stabbed = set.rangesContainingEach(points);
+      for (int i = 0; i < points.length; ++i) {
+        assertArrayEquals(set.rangesContaining(points[i]), stabbed[i]);
+      }
+    }
+  }
+
+  @Test
+  public void testIdsFollowInputOrder() {
+    final IntOverlappingRangeSet set =
+        IntOverlappingRangeSet.fromClosedRanges(new int[] {10, 0, 5}, new int[] {20, 30, 5});
+    assertArrayEquals(new int[] {1, 2}, set.rangesContaining(5));
+    assertArrayEquals(new int[] {1, 0}, set.rangesOverlapping(15, 40));
+    assertArrayEquals(new int[] {2, 0}, set.rangesContainedBy(5, 25));
+    assertEquals(OffsetRange.charOffsetRange(10, 20), set.asCharOffsetRange(0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsortedStabbingPointsRejected() {
+    IntOverlappingRangeSet.fromCharOffsetRanges(ImmutableList.of(OffsetRange.charOffsetRange(0, 5)))
+        .rangesContainingEach(new int[] {3, 1});
+  }
+
+  private static OffsetRange<CharOffset> randomRange(Random rng) {
+    final int start = rng.nextInt(50);
+    return OffsetRange.charOffsetRange(start, start + rng.nextInt(10));
+  }
+
+  /**
+   * The ids of ranges matching a query, ordered by start and then id. {@code query} is 0 for
+   * overlapping, 1 for containing and 2 for contained by.
+   */
+  private static int[] bruteForce(
+      List<OffsetRange<CharOffset>> ranges, int start, int end, int query) {
+    final List<Integer> ret = new ArrayList<>();
+    for (int rangeStart = -1; rangeStart < 62; ++rangeStart) {
+      for (int id = 0; id < ranges.size(); ++id) {
+        final int s = ranges.get(id).startInclusive().asInt();
+        final int e = ranges.get(id).endInclusive().asInt();
+        if (s != rangeStart) {
+          continue;
+        }
+        final boolean matches;
+        if (query == 0) {
+          matches = s <= end && e >= start;
+        } else if (query == 1) {
+          matches = s <= start && e >= end;
+        } else {
+          matches = s >= start && e <= end;
+        }
+        if (matches) {
+          ret.add(id);
+        }
+      }
+    }
+    return Ints.toArray(ret);
+  }
+}
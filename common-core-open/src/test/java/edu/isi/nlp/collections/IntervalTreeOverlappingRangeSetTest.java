@@ -0,0 +1,78 @@
+package edu.isi.nlp.collections;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.BoundType;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Range;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class IntervalTreeOverlappingRangeSetTest {
+
+  @Test
+  public void testMatchesLinearScan() {
+    final Random rng = new Random(0);
+    for (final int numRanges : new int[] {0, 1, 2, 10, 100}) {
+      final List<Range<Integer>> ranges = new ArrayList<>();
+      for (int i = 0; i < numRanges; ++i) {
+        ranges.add(randomRange(rng));
+      }
+      // include some duplicates
+      if (numRanges > 0) {
+        ranges.add(ranges.get(0));
+      }
+      final OverlappingRangeSet<Integer> reference = ImmutableOverlappingRangeSet.create(ranges);
+      final OverlappingRangeSet<Integer> tree = IntervalTreeOverlappingRangeSet.create(ranges);
+
+      for (int point = -2; point < 52; ++point) {
+        assertSameElements(reference.rangesContaining(point), tree.rangesContaining(point));
+      }
+      final List<Range<Integer>> queries = new ArrayList<>();
+      for (int i = 0; i < 200; ++i) {
+        queries.add(randomRange(rng));
+      }
+      queries.add(Range.<Integer>all());
+      queries.add(Range.atLeast(25));
+      queries.add(Range.lessThan(10));
+      queries.add(Range.closedOpen(20, 20));
+      for (final Range<Integer> query : queries) {
+        assertSameElements(reference.rangesContaining(query), tree.rangesContaining(query));
+        assertSameElements(reference.rangesContainedBy(query), tree.rangesContainedBy(query));
+        assertSameElements(reference.rangesOverlapping(query), tree.rangesOverlapping(query));
+      }
+    }
+  }
+
+  @Test
+  public void testFactoryPicksIntervalTreeForLargeInputs() {
+    final List<Range<Integer>> ranges = new ArrayList<>();
+    for (int i = 0; i < OverlappingRangeSets.INTERVAL_TREE_THRESHOLD; ++i) {
+      ranges.add(Range.closed(i, i + 5));
+    }
+    assertEquals(
+        ImmutableOverlappingRangeSet.class,
+        OverlappingRangeSets.copyOf(ranges.subList(0, 3)).getClass());
+    final OverlappingRangeSet<Integer> large = OverlappingRangeSets.copyOf(ranges);
+    assertEquals(IntervalTreeOverlappingRangeSet.class, large.getClass());
+    assertEquals(
+        ImmutableList.of(Range.closed(5, 10), Range.closed(6, 11)),
+        ImmutableList.copyOf(large.rangesContainedBy(Range.closed(5, 11))));
+  }
+
+  private static Range<Integer> randomRange(Random rng) {
+    final int lower = rng.nextInt(50);
+    final int upper = lower + rng.nextInt(10);
+    final BoundType lowerType = rng.nextBoolean() ? BoundType.OPEN : BoundType.CLOSED;
+    final BoundType upperType =
+        lower == upper || rng.nextBoolean() ? BoundType.CLOSED : BoundType.OPEN;
+    return Range.range(lower, lowerType, upper, upperType);
+  }
+
+  private static <T> void assertSameElements(Iterable<T> expected, Iterable<T> actual) {
+    assertEquals(ImmutableSet.copyOf(expected), ImmutableSet.copyOf(actual));
+  }
+}
@@ -37,6 +37,7 @@ public final class BenchmarkKeyValueSinks {
     final File outputDir = params.getCreatableDirectory("outputDir");
     final File dbFile = new File(outputDir, "output.db");
     final File zipFile = new File(outputDir, "output.zip");
+    final File mappedDir = new File(outputDir, "mapped");
     final File fileDir = new File(outputDir, "files");
     fileDir.mkdirs();
     final File outputMap = new File(fileDir, "files.map");
@@ -45,6 +46,7 @@ public final class BenchmarkKeyValueSinks {
     long readingTime = 0;
     long dbWritingTime = 0;
     long zipWritingTime = 0;
+    long mappedWritingTime = 0;
     long fileWritingTime = 0;
     int documents = 0;
 
@@ -64,6 +66,10 @@ public final class BenchmarkKeyValueSinks {
     final KeyValueSink<Symbol, byte[]> zipSink = KeyValueSinks.forZip(zipFile);
     zipWritingTime += stopwatch.elapsed(TimeUnit.MILLISECONDS);
 
+    stopwatch.reset().start();
+    final KeyValueSink<Symbol, byte[]> mappedSink = KeyValueSinks.forMapped(mappedDir);
+    mappedWritingTime += stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
     // Write the output
     for (final Symbol key : source.keys()) {
       documents++;
@@ -83,6 +89,11 @@ public final class BenchmarkKeyValueSinks {
       zipSink.put(key, value);
       zipWritingTime += stopwatch.elapsed(TimeUnit.MILLISECONDS);
 
+      // Mapped store write
+      stopwatch.reset().start();
+      mappedSink.put(key, value);
+      mappedWritingTime += stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
       // File write
       stopwatch.reset().start();
       final File outputFile = new File(fileDir, key.asString());
@@ -100,6 +111,10 @@ public final class BenchmarkKeyValueSinks {
     zipSink.close();
     zipWritingTime += stopwatch.elapsed(TimeUnit.MILLISECONDS);
 
+    stopwatch.reset().start();
+    mappedSink.close();
+    mappedWritingTime += stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
     // Write out the map
     stopwatch.reset().start();
     FileUtils.writeSymbolToFileMap(mapBuilder.build(), Files.asCharSink(outputMap, Charsets.UTF_8));
@@ -110,5 +125,6 @@ public final class BenchmarkKeyValueSinks {
     log.info("File writing time: {}", fileWritingTime);
     log.info("DB writing time: {}", dbWritingTime);
     log.info("Zip writing time: {}", zipWritingTime);
+    log.info("Mapped store writing time: {}", mappedWritingTime);
   }
 }
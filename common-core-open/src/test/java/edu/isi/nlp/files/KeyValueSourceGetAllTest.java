@@ -0,0 +1,138 @@
+package edu.isi.nlp.files;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+import edu.isi.nlp.symbols.Symbol;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipFile;
+import javax.annotation.Nonnull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests batch lookups on each of the key-value sources. */
+public final class KeyValueSourceGetAllTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  // in the order they are written, which is the reverse of their key order
+  private static final ImmutableMap<Symbol, byte[]> DATA =
+      ImmutableMap.<Symbol, byte[]>builder()
+          .put(Symbol.from("d"), "four".getBytes(Charsets.UTF_8))
+          .put(Symbol.from("c"), "three".getBytes(Charsets.UTF_8))
+          .put(Symbol.from("b"), new byte[0])
+          .put(Symbol.from("a"), "one".getBytes(Charsets.UTF_8))
+          .build();
+
+  // requested out of storage order, with a repeat and a missing key
+  private static final ImmutableList<Symbol> REQUEST =
+      ImmutableList.of(
+          Symbol.from("a"), Symbol.from("missing"), Symbol.from("c"), Symbol.from("a"));
+  private static final ImmutableList<Symbol> IN_STORAGE_ORDER =
+      ImmutableList.of(Symbol.from("c"), Symbol.from("a"));
+
+  @Test
+  public void testFileMap() throws Exception {
+    final File dir = folder.newFolder("files");
+    final ImmutableMap.Builder<Symbol, File> fileMap = ImmutableMap.builder();
+    // give files paths in storage order
+    int i = 0;
+    for (final Map.Entry<Symbol, byte[]> e : DATA.entrySet()) {
+      final File file = new File(dir, (i++) + ".txt");
+      Files.write(e.getValue(), file);
+      fileMap.put(e.getKey(), file);
+    }
+    checkSource(KeyValueSources.fromFileMap(fileMap.build()), IN_STORAGE_ORDER);
+  }
+
+  @Test
+  public void testZip() throws Exception {
+    final File zip = new File(folder.getRoot(), "test.zip");
+    write(KeyValueSinks.forZip(zip));
+    try (final ZipFile zipFile = new ZipFile(zip)) {
+      checkSource(KeyValueSources.fromZip(zipFile), IN_STORAGE_ORDER);
+    }
+  }
+
+  @Test
+  public void testMapped() throws Exception {
+    final File storeDir = new File(folder.getRoot(), "store");
+    write(KeyValueSinks.forMapped(storeDir));
+    checkSource(KeyValueSources.fromMapped(storeDir), IN_STORAGE_ORDER);
+  }
+
+  /** Tests both the per-key lookups and whole-store scan used by the PalDB source. */
+  @Test
+  public void testPalDB() throws Exception {
+    final File dbFile = new File(folder.getRoot(), "test.db");
+    write(KeyValueSinks.forPalDB(dbFile, false));
+    // PalDB doesn't expose its storage order, so it isn't checked
+    checkSource(KeyValueSources.fromPalDB(dbFile), null);
+
+    // with enough other keys, the request is small enough to look up each key
+    final File largerDBFile = new File(folder.getRoot(), "larger.db");
+    final KeyValueSink<Symbol, byte[]> sink = KeyValueSinks.forPalDB(largerDBFile, false);
+    for (int i = 0; i < 20; ++i) {
+      sink.put(Symbol.from("other" + i), new byte[] {(byte) i});
+    }
+    write(sink);
+    checkSource(KeyValueSources.fromPalDB(largerDBFile), null);
+  }
+
+  /** Sources which only implement the original methods should get the default batch lookups. */
+  @Test
+  public void testDefaultImplementation() throws Exception {
+    final KeyValueSource<Symbol, ByteSource> source =
+        new KeyValueSource<Symbol, ByteSource>() {
+          @Nonnull
+          @Override
+          public Set<Symbol> keySet() {
+            return DATA.keySet();
+          }
+
+          @Nonnull
+          @Override
+          public Iterable<Symbol> keys() {
+            return DATA.keySet();
+          }
+
+          @Nonnull
+          @Override
+          public Optional<ByteSource> get(final Symbol key) {
+            return DATA.containsKey(key)
+                ? Optional.of(ByteSource.wrap(DATA.get(key)))
+                : Optional.<ByteSource>absent();
+          }
+
+          @Nonnull
+          @Override
+          public ByteSource getRequired(final Symbol key) {
+            return get(key).get();
+          }
+
+          @Override
+          public void close() {}
+        };
+    // the default lookups are in the order requested
+    checkSource(source, ImmutableList.of(Symbol.from("a"), Symbol.from("c")));
+  }
+
+  /** Writes {@link #DATA} in order and closes {@code sink}. */
+  private static void write(final KeyValueSink<Symbol, byte[]> sink) throws IOException {
+    KeyValueTestFixture.write(sink, DATA, 1);
+  }
+
+  private static void checkSource(
+      final KeyValueSource<Symbol, ByteSource> source, final ImmutableList<Symbol> expectedOrder)
+      throws Exception {
+    KeyValueTestFixture.checkGetAll(source, DATA, REQUEST, expectedOrder);
+    source.close();
+  }
+}
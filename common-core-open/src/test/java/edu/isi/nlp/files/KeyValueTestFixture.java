@@ -0,0 +1,103 @@
+package edu.isi.nlp.files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteSource;
+import edu.isi.nlp.symbols.Symbol;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Writes test data to key-value sinks and checks the batch lookups of the resulting sources. */
+final class KeyValueTestFixture {
+
+  private KeyValueTestFixture() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Writes {@code data} to {@code sink} from {@code numThreads} threads at once and closes it. With
+   * a single thread, entries are written in the order of {@code data}.
+   */
+  static void write(
+      final KeyValueSink<Symbol, byte[]> sink,
+      final ImmutableMap<Symbol, byte[]> data,
+      final int numThreads)
+      throws IOException {
+    final ImmutableList<Symbol> keys = data.keySet().asList();
+    final ImmutableList.Builder<Callable<Void>> jobs = ImmutableList.builder();
+    for (int thread = 0; thread < numThreads; ++thread) {
+      final int firstKey = thread;
+      jobs.add(
+          new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+              for (int i = firstKey; i < keys.size(); i += numThreads) {
+                sink.put(keys.get(i), data.get(keys.get(i)));
+              }
+              return null;
+            }
+          });
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      for (final Future<Void> result : executor.invokeAll(jobs.build())) {
+        result.get();
+      }
+    } catch (Exception e) {
+      throw new IOException(e);
+    } finally {
+      executor.shutdownNow();
+    }
+    sink.close();
+  }
+
+  /**
+   * Checks that {@link KeyValueSource#getAll(Iterable)} and {@link
+   * KeyValueSource#getAllAsync(Iterable, ExecutorService)} on {@code source}, which holds {@code
+   * data}, return the values of the keys in {@code request} which are present. If {@code
+   * expectedOrder} is not null, the values must be returned in that order. The source is not
+   * closed.
+   */
+  static void checkGetAll(
+      final KeyValueSource<Symbol, ByteSource> source,
+      final ImmutableMap<Symbol, byte[]> data,
+      final ImmutableList<Symbol> request,
+      final ImmutableList<Symbol> expectedOrder)
+      throws Exception {
+    checkValues(data, request, source.getAll(request), expectedOrder);
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      checkValues(data, request, source.getAllAsync(request, executor).get(), expectedOrder);
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(ImmutableMap.of(), source.getAll(ImmutableList.<Symbol>of()));
+  }
+
+  private static void checkValues(
+      final ImmutableMap<Symbol, byte[]> data,
+      final ImmutableList<Symbol> request,
+      final ImmutableMap<Symbol, ByteSource> values,
+      final ImmutableList<Symbol> expectedOrder)
+      throws IOException {
+    assertEquals(
+        Sets.intersection(ImmutableSet.copyOf(request), data.keySet()).size(), values.size());
+    if (expectedOrder != null) {
+      assertEquals(expectedOrder, values.keySet().asList());
+    }
+    for (final Map.Entry<Symbol, ByteSource> e : values.entrySet()) {
+      assertTrue(request.contains(e.getKey()));
+      assertArrayEquals(data.get(e.getKey()), e.getValue().read());
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package edu.isi.nlp.files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteSource;
+import edu.isi.nlp.symbols.Symbol;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests the memory-mapped key-value source and sink. */
+public final class MappedKeyValueTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final ImmutableMap<Symbol, byte[]> DATA =
+      ImmutableMap.<Symbol, byte[]>builder()
+          .put(Symbol.from("foo"), "bar".getBytes(Charsets.UTF_8))
+          .put(Symbol.from("empty"), new byte[0])
+          // keys are sorted by code point, so this sorts after foo
+          .put(Symbol.from("\u00e9t\u00e9"), "summer".getBytes(Charsets.UTF_8))
+          .put(Symbol.from("a"), "a longer value which will cross windows".getBytes(Charsets.UTF_8))
+          .put(Symbol.from("fo"), "prefix".getBytes(Charsets.UTF_8))
+          .build();
+
+  /** Tests basic source and sink operations. */
+  @Test
+  public void testPutAndGet() throws IOException {
+    final File storeDir = createTestStore(DATA);
+    final ImmutableKeyValueSource<Symbol, ByteSource> source = KeyValueSources.fromMapped(storeDir);
+
+    for (final Map.Entry<Symbol, byte[]> e : DATA.entrySet()) {
+      assertArrayEquals(e.getValue(), source.getRequired(e.getKey()).read());
+      assertEquals(e.getValue().length, source.getRequired(e.getKey()).size());
+    }
+    assertFalse(source.get(Symbol.from("baz")).isPresent());
+    assertFalse(source.get(Symbol.from("f")).isPresent());
+    assertFalse(source.get(Symbol.from("fooo")).isPresent());
+
+    assertEquals(DATA.keySet(), source.keySet());
+    assertEquals(
+        ImmutableList.of(
+            Symbol.from("a"),
+            Symbol.from("empty"),
+            Symbol.from("fo"),
+            Symbol.from("foo"),
+            Symbol.from("\u00e9t\u00e9")),
+        ImmutableList.copyOf(source.keys()));
+    source.close();
+  }
+
+  /** Tests values which are split across several mapped windows. */
+  @Test
+  public void testSmallWindows() throws IOException {
+    final File storeDir = createTestStore(DATA);
+    for (final long windowBytes : new long[] {1, 3, 7, 64}) {
+      final ImmutableKeyValueSource<Symbol, ByteSource> source =
+          MappedKeyValueSource.fromDirectory(storeDir, windowBytes);
+      for (final Map.Entry<Symbol, byte[]> e : DATA.entrySet()) {
+        final ByteSource value = source.getRequired(e.getKey());
+        assertArrayEquals(e.getValue(), value.read());
+        if (e.getValue().length > 2) {
+          assertArrayEquals(
+              new byte[] {e.getValue()[1], e.getValue()[2]}, value.slice(1, 2).read());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testEmptyStore() throws IOException {
+    final File storeDir = createTestStore(ImmutableMap.<Symbol, byte[]>of());
+    final ImmutableKeyValueSource<Symbol, ByteSource> source = KeyValueSources.fromMapped(storeDir);
+    assertTrue(source.keySet().isEmpty());
+    assertFalse(source.get(Symbol.from("foo")).isPresent());
+  }
+
+  /** Writing over an existing store should replace it entirely. */
+  @Test
+  public void testOverwrite() throws IOException {
+    final File storeDir = createTestStore(DATA);
+    final Symbol key = Symbol.from("new");
+    final byte[] value = "value".getBytes(Charsets.UTF_8);
+    try (final KeyValueSink<Symbol, byte[]> sink = KeyValueSinks.forMapped(storeDir)) {
+      sink.put(key, value);
+    }
+    final ImmutableKeyValueSource<Symbol, ByteSource> source = KeyValueSources.fromMapped(storeDir);
+    assertEquals(ImmutableSet.of(key), source.keySet());
+    assertArrayEquals(value, source.getRequired(key).read());
+  }
+
+  /** The key directory should only appear, complete, once the sink is closed. */
+  @Test
+  public void testKeysWrittenOnClose() throws IOException {
+    final File storeDir = createTestStore(DATA);
+    final KeyValueSink<Symbol, byte[]> sink = KeyValueSinks.forMapped(storeDir);
+    sink.put(Symbol.from("new"), new byte[] {1});
+    assertFalse(new File(storeDir, MappedKeyValueSource.KEYS_FILE).exists());
+    sink.close();
+    assertEquals(
+        ImmutableSet.of(MappedKeyValueSource.KEYS_FILE, MappedKeyValueSource.VALUES_FILE),
+        ImmutableSet.copyOf(storeDir.list()));
+    assertEquals(
+        ImmutableSet.of(Symbol.from("new")), KeyValueSources.fromMapped(storeDir).keySet());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDuplicateKey() throws IOException {
+    try (final KeyValueSink<Symbol, byte[]> sink =
+        KeyValueSinks.forMapped(folder.newFolder("store"))) {
+      sink.put(Symbol.from("foo"), new byte[] {1});
+      sink.put(Symbol.from("foo"), new byte[] {2});
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testNotAStore() throws IOException {
+    final File storeDir = folder.newFolder("store");
+    new File(storeDir, MappedKeyValueSource.KEYS_FILE).createNewFile();
+    new File(storeDir, MappedKeyValueSource.VALUES_FILE).createNewFile();
+    KeyValueSources.fromMapped(storeDir);
+  }
+
+  private File createTestStore(final Map<Symbol, byte[]> data) throws IOException {
+    final File storeDir = new File(folder.getRoot(), "store");
+    try (final KeyValueSink<Symbol, byte[]> sink = KeyValueSinks.forMapped(storeDir)) {
+      for (final Map.Entry<Symbol, byte[]> e : data.entrySet()) {
+        sink.put(e.getKey(), e.getValue());
+      }
+    }
+    return storeDir;
+  }
+}
@@ -0,0 +1,261 @@
+package edu.isi.nlp.files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+import edu.isi.nlp.symbols.Symbol;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests the sharded key-value source and sink. */
+public final class ShardedKeyValueTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final int NUM_SHARDS = 4;
+  private static final int NUM_THREADS = 3;
+  private static final int LOOKUP_ROUNDS = 1000;
+
+  private static final ImmutableMap<Symbol, byte[]> DATA = testData(100);
+
+  @Test
+  public void testMapped() throws Exception {
+    final File shardDir = new File(folder.getRoot(), "sharded");
+    write(KeyValueSinks.forShardedMapped(shardDir, NUM_SHARDS, NUM_THREADS));
+    assertEquals(NUM_SHARDS, shardDir.list().length);
+    checkSource(KeyValueSources.fromShardedMapped(shardDir));
+  }
+
+  @Test
+  public void testPalDB() throws Exception {
+    final File shardDir = new File(folder.getRoot(), "sharded");
+    write(KeyValueSinks.forShardedPalDB(shardDir, NUM_SHARDS, true, NUM_THREADS));
+    assertEquals(NUM_SHARDS, shardDir.list().length);
+    checkSource(KeyValueSources.fromShardedPalDB(shardDir));
+  }
+
+  /**
+   * PalDB stores share internal state across the JVM, so lookups in different shards from several
+   * threads at once shouldn't interfere with each other.
+   */
+  @Test
+  public void testPalDBLookupsFromSeveralThreads() throws Exception {
+    final File shardDir = new File(folder.getRoot(), "sharded");
+    write(KeyValueSinks.forShardedPalDB(shardDir, NUM_SHARDS, false, NUM_THREADS));
+    final ImmutableKeyValueSource<Symbol, ByteSource> source =
+        KeyValueSources.fromShardedPalDB(shardDir);
+    final ImmutableList.Builder<Callable<Void>> jobs = ImmutableList.builder();
+    for (int thread = 0; thread < NUM_THREADS; ++thread) {
+      jobs.add(
+          new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+              for (int round = 0; round < LOOKUP_ROUNDS; ++round) {
+                for (final Map.Entry<Symbol, byte[]> e : DATA.entrySet()) {
+                  assertArrayEquals(e.getValue(), source.getRequired(e.getKey()).read());
+                }
+              }
+              return null;
+            }
+          });
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+    try {
+      for (final Future<Void> result : executor.invokeAll(jobs.build())) {
+        result.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    source.close();
+  }
+
+  /** Shards should only be opened when a key in them is needed. */
+  @Test
+  public void testShardsOpenedLazily() throws Exception {
+    final File shardDir = new File(folder.getRoot(), "sharded");
+    write(KeyValueSinks.forShardedMapped(shardDir, NUM_SHARDS, NUM_THREADS));
+    final Symbol key = DATA.keySet().asList().get(0);
+    final int brokenShard = (ShardedKeyValueSource.shardOf(key, NUM_SHARDS) + 1) % NUM_SHARDS;
+    Files.write(
+        new byte[] {0},
+        new File(
+            ShardedKeyValueSource.shardFile(shardDir, brokenShard, NUM_SHARDS),
+            MappedKeyValueSource.KEYS_FILE));
+
+    final ImmutableKeyValueSource<Symbol, ByteSource> source =
+        KeyValueSources.fromShardedMapped(shardDir);
+    assertArrayEquals(DATA.get(key), source.getRequired(key).read());
+    try {
+      source.keys();
+      fail("Listing the keys should open the broken shard");
+    } catch (IOException expected) {
+      // expected
+    }
+    source.close();
+  }
+
+  /**
+   * A shard which is slow to open shouldn't hold up opening other shards, and each shard should be
+   * opened once however many threads need it.
+   */
+  @Test(timeout = 30000)
+  public void testShardsOpenedConcurrently() throws Exception {
+    final File shardDir = new File(folder.getRoot(), "sharded");
+    write(KeyValueSinks.forShardedMapped(shardDir, NUM_SHARDS, NUM_THREADS));
+    final File slowShard = ShardedKeyValueSource.shardFile(shardDir, 0, NUM_SHARDS);
+    final CountDownLatch slowShardOpening = new CountDownLatch(1);
+    final CountDownLatch otherShardOpened = new CountDownLatch(1);
+    final AtomicInteger numOpens = new AtomicInteger();
+    final ImmutableKeyValueSource<Symbol, ByteSource> source =
+        ShardedKeyValueSource.fromDirectory(
+            shardDir,
+            new ShardedKeyValueSource.ShardSourceFactory() {
+              @Override
+              public ImmutableKeyValueSource<Symbol, ByteSource> open(final File shardFile)
+                  throws IOException {
+                numOpens.incrementAndGet();
+                if (shardFile.equals(slowShard)) {
+                  slowShardOpening.countDown();
+                  try {
+                    if (!otherShardOpened.await(10, TimeUnit.SECONDS)) {
+                      throw new IOException("Other shards were blocked by a slow shard");
+                    }
+                  } catch (InterruptedException e) {
+                    throw new IOException(e);
+                  }
+                } else {
+                  otherShardOpened.countDown();
+                }
+                return KeyValueSources.fromMapped(shardFile);
+              }
+            });
+
+    // start opening the slow shard, then look up the keys in the other shards from several
+    // threads. Each of these needs every other shard.
+    final ImmutableList.Builder<Symbol> otherKeys = ImmutableList.builder();
+    for (final Symbol key : DATA.keySet()) {
+      if (ShardedKeyValueSource.shardOf(key, NUM_SHARDS) != 0) {
+        otherKeys.add(key);
+      }
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS + 1);
+    try {
+      final ImmutableList.Builder<Future<ImmutableMap<Symbol, ByteSource>>> results =
+          ImmutableList.builder();
+      results.add(executor.submit(getAllJob(source, ImmutableList.of(keyInShard(0)))));
+      slowShardOpening.await();
+      for (int thread = 0; thread < NUM_THREADS; ++thread) {
+        results.add(executor.submit(getAllJob(source, otherKeys.build())));
+      }
+      for (final Future<ImmutableMap<Symbol, ByteSource>> result : results.build()) {
+        assertFalse(result.get().isEmpty());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(NUM_SHARDS, numOpens.get());
+    source.close();
+  }
+
+  /** Once closed, shards shouldn't be silently reopened by later lookups. */
+  @Test
+  public void testLookupAfterClose() throws IOException {
+    final File shardDir = new File(folder.getRoot(), "sharded");
+    write(KeyValueSinks.forShardedMapped(shardDir, NUM_SHARDS, NUM_THREADS));
+    final ImmutableKeyValueSource<Symbol, ByteSource> source =
+        KeyValueSources.fromShardedMapped(shardDir);
+    final Symbol key = DATA.keySet().asList().get(0);
+    assertArrayEquals(DATA.get(key), source.getRequired(key).read());
+    source.close();
+    for (final Symbol otherKey : ImmutableList.of(key, keyInShard(NUM_SHARDS - 1))) {
+      try {
+        source.get(otherKey);
+        fail("Lookups in a closed store should fail");
+      } catch (IllegalStateException expected) {
+        // expected
+      }
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testMissingShard() throws IOException {
+    final File shardDir = new File(folder.getRoot(), "sharded");
+    write(KeyValueSinks.forShardedPalDB(shardDir, NUM_SHARDS, false, 1));
+    ShardedKeyValueSource.shardFile(shardDir, 1, NUM_SHARDS).delete();
+    KeyValueSources.fromShardedPalDB(shardDir);
+  }
+
+  @Test(expected = IOException.class)
+  public void testNotAShardedStore() throws IOException {
+    KeyValueSources.fromShardedMapped(folder.newFolder("empty"));
+  }
+
+  private static Callable<ImmutableMap<Symbol, ByteSource>> getAllJob(
+      final KeyValueSource<Symbol, ByteSource> source, final Iterable<Symbol> keys) {
+    return new Callable<ImmutableMap<Symbol, ByteSource>>() {
+      @Override
+      public ImmutableMap<Symbol, ByteSource> call() throws IOException {
+        return source.getAll(keys);
+      }
+    };
+  }
+
+  private static Symbol keyInShard(final int shard) {
+    for (final Symbol key : DATA.keySet()) {
+      if (ShardedKeyValueSource.shardOf(key, NUM_SHARDS) == shard) {
+        return key;
+      }
+    }
+    throw new AssertionError("No test key in shard " + shard);
+  }
+
+  /** Writes {@link #DATA} from several threads at once and closes {@code sink}. */
+  private static void write(final KeyValueSink<Symbol, byte[]> sink) throws IOException {
+    KeyValueTestFixture.write(sink, DATA, NUM_THREADS);
+  }
+
+  private static void checkSource(final ImmutableKeyValueSource<Symbol, ByteSource> source)
+      throws Exception {
+    assertEquals(DATA.keySet(), source.keySet());
+    for (final Map.Entry<Symbol, byte[]> e : DATA.entrySet()) {
+      assertArrayEquals(e.getValue(), source.getRequired(e.getKey()).read());
+    }
+    assertFalse(source.get(Symbol.from("missing")).isPresent());
+
+    final ImmutableList<Symbol> request =
+        ImmutableList.<Symbol>builder()
+            .addAll(DATA.keySet().asList().subList(0, 20))
+            .add(Symbol.from("missing"))
+            .build();
+    // values come back shard by shard, so the request order isn't checked
+    KeyValueTestFixture.checkGetAll(source, DATA, request, null);
+    source.close();
+  }
+
+  private static ImmutableMap<Symbol, byte[]> testData(final int numKeys) {
+    final ImmutableMap.Builder<Symbol, byte[]> ret = ImmutableMap.builder();
+    for (int i = 0; i < numKeys; ++i) {
+      ret.put(Symbol.from("doc" + i), ("value of doc" + i).getBytes(Charsets.UTF_8));
+    }
+    return ret.build();
+  }
+}
@@ -0,0 +1,79 @@
+package edu.isi.nlp.io;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.io.ByteSink;
+import com.google.common.io.ByteSource;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Test program comparing the throughput of {@link GZIPByteSink#gzipCompress(ByteSink)} with that of
+ * {@link GZIPByteSink#parallelGzipCompress(ByteSink, int, int)} for various thread counts.
+ *
+ * <p>Compresses synthetic text held in memory. Takes optional arguments giving the amount of text
+ * in megabytes (defaults to 64) and the parallel block size in bytes (defaults to {@link
+ * GZIPByteSink#DEFAULT_PARALLEL_BLOCK_SIZE}).
+ */
+public final class BenchmarkGZIPByteSink {
+
+  private static Logger log = LoggerFactory.getLogger(BenchmarkGZIPByteSink.class);
+
+  private static final String[] WORDS = {
+    "the", "cat", "sat", "on", "a", "mat", "while", "Gigaword", "documents", "were", "indexed"
+  };
+
+  public static void main(String[] args) {
+    // We wrap the main method in this way to ensure a non-zero return value on failure
+    try {
+      trueMain(args);
+    } catch (Exception e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static void trueMain(String[] args) throws IOException {
+    final int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+    final int blockSize =
+        args.length > 1 ? Integer.parseInt(args[1]) : GZIPByteSink.DEFAULT_PARALLEL_BLOCK_SIZE;
+
+    final Random rng = new Random(0);
+    final StringBuilder sb = new StringBuilder();
+    while (sb.length() < megabytes * 1024 * 1024) {
+      sb.append(WORDS[rng.nextInt(WORDS.length)]).append(rng.nextInt(100)).append(' ');
+    }
+    final byte[] data = sb.toString().getBytes("UTF-8");
+    log.info(
+        "Compressing {} MB using {} processors",
+        megabytes,
+        Runtime.getRuntime().availableProcessors());
+
+    // the first run of each warms up the JIT
+    for (int run = 0; run < 2; ++run) {
+      for (final int numThreads : new int[] {1, 2, 4, 8}) {
+        final ByteArraySink compressed = ByteArraySink.create();
+        final ByteSink sink =
+            numThreads == 1
+                ? GZIPByteSink.gzipCompress(compressed)
+                : GZIPByteSink.parallelGzipCompress(compressed, numThreads, blockSize);
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        sink.write(data);
+        final long elapsedMs = Math.max(1, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        if (!Arrays.equals(
+            data,
+            GZIPByteSource.fromCompressed(ByteSource.wrap(compressed.toByteArray())).read())) {
+          throw new RuntimeException("Compressed data did not round-trip");
+        }
+        log.info(
+            "{}: {} MB/s, compressed to {}% of original size",
+            numThreads == 1 ? "GZIPOutputStream" : numThreads + " threads",
+            String.format("%.1f", data.length / 1024.0 / 1024.0 / (elapsedMs / 1000.0)),
+            String.format("%.1f", 100.0 * compressed.toByteArray().length / data.length));
+      }
+    }
+  }
+}
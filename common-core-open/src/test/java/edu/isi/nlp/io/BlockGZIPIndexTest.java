@@ -0,0 +1,95 @@
+package edu.isi.nlp.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.io.ByteSource;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class BlockGZIPIndexTest {
+
+  private static byte[] testData(final int size) {
+    final byte[] ret = new byte[size];
+    final Random rng = new Random(0);
+    for (int i = 0; i < ret.length; ++i) {
+      ret[i] = (byte) ('a' + rng.nextInt(20));
+    }
+    return ret;
+  }
+
+  private static ByteSource blockCompress(final byte[] data, final int numThreads)
+      throws IOException {
+    final ByteArraySink compressed = ByteArraySink.create();
+    GZIPByteSink.blockGzipCompress(compressed, numThreads).write(data);
+    return ByteSource.wrap(compressed.toByteArray());
+  }
+
+  @Test
+  public void testReadableAsOrdinaryGzip() throws IOException {
+    final byte[] data = testData(200000);
+    for (final int numThreads : new int[] {1, 3}) {
+      assertArrayEquals(
+          data, GZIPByteSource.fromCompressed(blockCompress(data, numThreads)).read());
+    }
+  }
+
+  @Test
+  public void testScanAndSlice() throws IOException {
+    final byte[] data = testData(200000);
+    final ByteSource compressed = blockCompress(data, 2);
+    final BlockGZIPIndex index = BlockGZIPIndex.scan(compressed);
+    assertEquals(data.length, index.uncompressedSize());
+    // blocks hold 0xff00 bytes each
+    assertEquals(4, index.numBlocks());
+    assertEquals(0xff00, index.uncompressedStart(1));
+    assertEquals(1, index.blockContaining(0xff00));
+    assertEquals(0, index.blockContaining(0xff00 - 1));
+    assertEquals(index.compressedStart(1) << 16 | 5, index.virtualOffset(0xff00 + 5));
+
+    final ByteSource uncompressed = GZIPByteSource.fromBlockCompressed(compressed, index);
+    assertEquals(data.length, uncompressed.size());
+    assertArrayEquals(data, uncompressed.read());
+    final int[][] slices = {
+      {0, 10}, {0xff00 - 3, 10}, {100000, 80000}, {199990, 100}, {200000, 5}, {5, 0}
+    };
+    for (final int[] slice : slices) {
+      final int end = Math.min(data.length, slice[0] + slice[1]);
+      assertArrayEquals(
+          Arrays.copyOfRange(data, slice[0], end), uncompressed.slice(slice[0], slice[1]).read());
+      assertEquals(end - slice[0], uncompressed.slice(slice[0], slice[1]).size());
+    }
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    final ByteSource compressed = blockCompress(new byte[0], 1);
+    final BlockGZIPIndex index = BlockGZIPIndex.scan(compressed);
+    assertEquals(0, index.numBlocks());
+    assertEquals(0, index.uncompressedSize());
+    assertEquals(0, GZIPByteSource.fromCompressed(compressed).read().length);
+  }
+
+  @Test
+  public void testWriteAndRead() throws IOException {
+    final BlockGZIPIndex index = BlockGZIPIndex.scan(blockCompress(testData(100000), 1));
+    final ByteArraySink sink = ByteArraySink.create();
+    index.write(sink);
+    final BlockGZIPIndex reloaded = BlockGZIPIndex.read(ByteSource.wrap(sink.toByteArray()));
+    assertEquals(index.numBlocks(), reloaded.numBlocks());
+    assertEquals(index.uncompressedSize(), reloaded.uncompressedSize());
+    for (int i = 0; i < index.numBlocks(); ++i) {
+      assertEquals(index.compressedStart(i), reloaded.compressedStart(i));
+      assertEquals(index.uncompressedStart(i), reloaded.uncompressedStart(i));
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testRejectsOrdinaryGzip() throws IOException {
+    final ByteArraySink compressed = ByteArraySink.create();
+    GZIPByteSink.gzipCompress(compressed).write(testData(1000));
+    BlockGZIPIndex.scan(ByteSource.wrap(compressed.toByteArray()));
+  }
+}
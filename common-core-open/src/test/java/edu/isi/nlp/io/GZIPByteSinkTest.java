@@ -0,0 +1,68 @@
+package edu.isi.nlp.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.io.ByteSink;
+import com.google.common.io.ByteSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import org.junit.Test;
+
+public class GZIPByteSinkTest {
+
+  @Test
+  public void testParallelRoundTrip() throws IOException {
+    final byte[] data = new byte[100000];
+    final Random rng = new Random(0);
+    for (int i = 0; i < data.length; ++i) {
+      // compressible, but not trivially so
+      data[i] = (byte) ('a' + rng.nextInt(8));
+    }
+    for (final int blockSize : new int[] {1, 1000, 4096, 65536, 1 << 20}) {
+      for (final int numThreads : new int[] {2, 4}) {
+        final ByteArraySink compressed = ByteArraySink.create();
+        GZIPByteSink.parallelGzipCompress(compressed, numThreads, blockSize).write(data);
+        assertArrayEquals(
+            data, GZIPByteSource.fromCompressed(ByteSource.wrap(compressed.toByteArray())).read());
+      }
+    }
+  }
+
+  @Test
+  public void testParallelWritesAndFlushes() throws IOException {
+    final ByteArraySink compressed = ByteArraySink.create();
+    final ByteSink sink = GZIPByteSink.parallelGzipCompress(compressed, 3, 10);
+    final OutputStream out = sink.openStream();
+    final StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 100; ++i) {
+      final String s = "line " + i + "\n";
+      if (i % 7 == 0) {
+        for (final byte b : s.getBytes("UTF-8")) {
+          out.write(b);
+        }
+      } else {
+        out.write(s.getBytes("UTF-8"));
+      }
+      if (i % 13 == 0) {
+        out.flush();
+      }
+      expected.append(s);
+    }
+    out.close();
+    assertEquals(
+        expected.toString(),
+        new String(
+            GZIPByteSource.fromCompressed(ByteSource.wrap(compressed.toByteArray())).read(),
+            "UTF-8"));
+  }
+
+  @Test
+  public void testParallelEmpty() throws IOException {
+    final ByteArraySink compressed = ByteArraySink.create();
+    GZIPByteSink.parallelGzipCompress(compressed, 2).openStream().close();
+    assertEquals(
+        0, GZIPByteSource.fromCompressed(ByteSource.wrap(compressed.toByteArray())).read().length);
+  }
+}
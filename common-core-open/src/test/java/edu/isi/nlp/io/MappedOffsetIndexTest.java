@@ -0,0 +1,147 @@
+package edu.isi.nlp.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Range;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+import edu.isi.nlp.strings.offsets.ByteOffset;
+import edu.isi.nlp.strings.offsets.OffsetRange;
+import edu.isi.nlp.symbols.Symbol;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests the memory-mappable offset index format and opening indices in any format. */
+public class MappedOffsetIndexTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  final MapOffsetIndex offsetIndex =
+      MapOffsetIndex.fromMap(
+          ImmutableMap.of(
+              Symbol.from("foo"), OffsetRange.byteOffsetRange(0, 42),
+              Symbol.from("bar"), OffsetRange.byteOffsetRange(100, 101)));
+
+  @Test
+  public void testMappableIO() throws IOException {
+    // includes keys whose UTF-16 and UTF-8 orders differ
+    final ImmutableMap<Symbol, OffsetRange<ByteOffset>> ranges =
+        ImmutableMap.<Symbol, OffsetRange<ByteOffset>>builder()
+            .put(Symbol.from("foo"), OffsetRange.byteOffsetRange(0, 42))
+            .put(Symbol.from("bar"), OffsetRange.byteOffsetRange(100, 101))
+            .put(Symbol.from("ba"), OffsetRange.byteOffsetRange(102, 110))
+            .put(Symbol.from("\uD83E\uDDC0"), OffsetRange.byteOffsetRange(111, 112))
+            .put(Symbol.from("\uFB01"), OffsetRange.byteOffsetRange(113, 114))
+            .put(Symbol.from(""), OffsetRange.byteOffsetRange(115, 115))
+            .build();
+    final ByteArraySink sink = ByteArraySink.create();
+    OffsetIndices.writeMappable(OffsetIndices.forMap(ranges), sink);
+
+    final MappedOffsetIndex reloaded =
+        MappedOffsetIndex.fromBuffer(ByteBuffer.wrap(sink.toByteArray()));
+    assertEquals(ranges.size(), reloaded.size());
+    assertEquals(ranges.keySet(), reloaded.keySet());
+    assertEquals(ranges.keySet(), ImmutableSet.copyOf(reloaded.keySet()));
+    for (final Symbol key : ranges.keySet()) {
+      assertEquals(Optional.of(ranges.get(key)), reloaded.byteOffsetsOf(key));
+    }
+    assertFalse(reloaded.byteOffsetsOf(Symbol.from("baz")).isPresent());
+    assertFalse(reloaded.byteOffsetsOf(Symbol.from("b")).isPresent());
+    assertFalse(reloaded.keySet().contains(Symbol.from("fooo")));
+
+    // readBinary recognizes the new format
+    assertEquals(
+        Optional.of(OffsetRange.byteOffsetRange(100, 101)),
+        OffsetIndices.readBinary(ByteSource.wrap(sink.toByteArray()))
+            .byteOffsetsOf(Symbol.from("bar")));
+  }
+
+  @Test
+  public void testEmptyMappable() throws IOException {
+    final ByteArraySink sink = ByteArraySink.create();
+    OffsetIndices.writeMappable(
+        OffsetIndices.forMap(ImmutableMap.<Symbol, OffsetRange<ByteOffset>>of()), sink);
+    final MappedOffsetIndex reloaded =
+        MappedOffsetIndex.fromBuffer(ByteBuffer.wrap(sink.toByteArray()));
+    assertTrue(reloaded.keySet().isEmpty());
+    assertFalse(reloaded.byteOffsetsOf(Symbol.from("foo")).isPresent());
+  }
+
+  @Test
+  public void testLongOffsets() throws IOException {
+    final long fiveGigabytes = 5L * 1024 * 1024 * 1024;
+    final ByteArraySink sink = ByteArraySink.create();
+    OffsetIndices.writeMappable(
+        ImmutableMap.of(
+            Symbol.from("small"), Range.closed(0L, 10L),
+            Symbol.from("large"), Range.closed(fiveGigabytes, fiveGigabytes + 10)),
+        sink);
+    final MappedOffsetIndex reloaded =
+        MappedOffsetIndex.fromBuffer(ByteBuffer.wrap(sink.toByteArray()));
+
+    assertEquals(
+        Optional.of(Range.closed(fiveGigabytes, fiveGigabytes + 10)),
+        reloaded.longByteOffsetsOf(Symbol.from("large")));
+    assertEquals(
+        Optional.of(OffsetRange.byteOffsetRange(0, 10)),
+        reloaded.byteOffsetsOf(Symbol.from("small")));
+    try {
+      reloaded.byteOffsetsOf(Symbol.from("large"));
+      fail("Offsets over 2 GB can't be returned as ints");
+    } catch (IllegalStateException expected) {
+      // pass
+    }
+  }
+
+  @Test
+  public void testConvertAndMap() throws IOException {
+    final ByteArraySink original = ByteArraySink.create();
+    OffsetIndices.writeBinary(offsetIndex, original);
+
+    final File mappable = new File(folder.getRoot(), "index");
+    OffsetIndices.convertToMappable(
+        ByteSource.wrap(original.toByteArray()), Files.asByteSink(mappable));
+    final MappedOffsetIndex mapped = OffsetIndices.mapBinary(mappable);
+    assertEquals(offsetIndex.keySet(), mapped.keySet());
+    for (final Symbol key : offsetIndex.keySet()) {
+      assertEquals(offsetIndex.byteOffsetsOf(key), mapped.byteOffsetsOf(key));
+      assertEquals(offsetIndex.longByteOffsetsOf(key), mapped.longByteOffsetsOf(key));
+    }
+  }
+
+  @Test
+  public void testOpenEitherFormat() throws IOException {
+    final File original = new File(folder.getRoot(), "original");
+    OffsetIndices.writeBinary(offsetIndex, Files.asByteSink(original));
+    final File compressed = new File(folder.getRoot(), "compressed");
+    OffsetIndices.writeBinary(offsetIndex, GZIPByteSink.gzipCompress(Files.asByteSink(compressed)));
+    final File mappable = new File(folder.getRoot(), "mappable");
+    OffsetIndices.writeMappable(offsetIndex, Files.asByteSink(mappable));
+
+    assertEquals(offsetIndex, OffsetIndices.open(original));
+    assertEquals(offsetIndex, OffsetIndices.open(compressed));
+    final OffsetIndex mapped = OffsetIndices.open(mappable);
+    assertTrue(mapped instanceof MappedOffsetIndex);
+    assertEquals(offsetIndex.keySet(), mapped.keySet());
+  }
+
+  @Test
+  public void testRejectsOtherData() {
+    try {
+      MappedOffsetIndex.fromBuffer(ByteBuffer.wrap(new byte[100]));
+      fail("Should not accept data without the format's magic number");
+    } catch (IllegalArgumentException expected) {
+      // pass
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package edu.isi.nlp.strings;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import edu.isi.nlp.StringUtils;
+import edu.isi.nlp.UnicodeFriendlyString;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Test program comparing the heap retained by the packed region storage of {@link LocatedString}s
+ * with that of the equivalent lists of {@link LocatedString.CharacterRegion} objects.
+ *
+ * <p>The test document mixes BMP and non-BMP text so that it has many regions. Takes optional
+ * arguments giving the document size in code units (defaults to 64K) and the number of copies to
+ * retain (defaults to 50). Run with a fixed heap size (e.g. {@code -Xms1g -Xmx1g}) for stable
+ * numbers.
+ */
+public final class BenchmarkLocatedStringFootprint {
+
+  private static Logger log = LoggerFactory.getLogger(BenchmarkLocatedStringFootprint.class);
+
+  // non-BMP emoji
+  private static final String CHEESE_WEDGE = "\uD83E\uDDC0";
+  private static final String[] WORDS = {"the", "cat", "sat", "on", "a", "mat", CHEESE_WEDGE};
+
+  public static void main(String[] args) {
+    // We wrap the main method in this way to ensure a non-zero return value on failure
+    try {
+      trueMain(args);
+    } catch (Exception e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static void trueMain(String[] args) {
+    final int documentSize = args.length > 0 ? Integer.parseInt(args[0]) : 64 * 1024;
+    final int copies = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+    final Random rng = new Random(0);
+    final StringBuilder sb = new StringBuilder();
+    while (sb.length() < documentSize) {
+      sb.append(WORDS[rng.nextInt(WORDS.length)]).append(' ');
+    }
+    final UnicodeFriendlyString document = StringUtils.unicodeFriendly(sb.toString());
+
+    final Stopwatch stopwatch = Stopwatch.createStarted();
+    final LocatedString prototype = LocatedString.fromReferenceString(document);
+    final int numRegions = prototype.packedRegions().numRegions();
+    log.info(
+        "Located {} code units with {} regions in {} ms",
+        document.lengthInUtf16CodeUnits(),
+        numRegions,
+        stopwatch.elapsed(TimeUnit.MILLISECONDS));
+
+    // the content and reference strings are shared by all copies, so only the regions and the
+    // LocatedString objects themselves contribute to the difference in used heap
+    final List<LocatedString> packed = new ArrayList<>();
+    long before = usedHeap();
+    for (int i = 0; i < copies; ++i) {
+      packed.add(LocatedString.fromReferenceString(document));
+    }
+    final long packedBytes = usedHeap() - before;
+
+    final List<ImmutableList<LocatedString.CharacterRegion>> objects = new ArrayList<>();
+    before = usedHeap();
+    for (int i = 0; i < copies; ++i) {
+      objects.add(prototype.characterRegions());
+    }
+    final long objectBytes = usedHeap() - before;
+
+    final long totalRegions = (long) numRegions * copies;
+    log.info(
+        "Packed: {} bytes per region; CharacterRegion objects: {} bytes per region",
+        packedBytes / totalRegions,
+        objectBytes / totalRegions);
+    // keep everything reachable until measurement is done
+    log.info("Retained {} strings and {} region lists", packed.size(), objects.size());
+  }
+
+  private static long usedHeap() {
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; ++i) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
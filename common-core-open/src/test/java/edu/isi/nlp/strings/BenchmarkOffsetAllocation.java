@@ -0,0 +1,101 @@
+package edu.isi.nlp.strings;
+
+import com.google.common.base.Stopwatch;
+import edu.isi.nlp.StringUtils;
+import edu.isi.nlp.UnicodeFriendlyString;
+import edu.isi.nlp.strings.offsets.CharOffset;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Test program measuring the bytes allocated while building {@link LocatedString}s for a batch of
+ * short documents and mapping the offsets of every token back to the reference text, which is
+ * dominated by offset objects.
+ *
+ * <p>Run it once normally and once with {@code -Dedu.isi.nlp.strings.offsets.cacheSize=0} to see
+ * the effect of the offset flyweight caches. Takes optional arguments giving the number of
+ * documents (defaults to 2000) and their size in code units (defaults to 2K). Requires a HotSpot
+ * JVM for allocation accounting.
+ */
+public final class BenchmarkOffsetAllocation {
+
+  private static Logger log = LoggerFactory.getLogger(BenchmarkOffsetAllocation.class);
+
+  // non-BMP emoji
+  private static final String CHEESE_WEDGE = "\uD83E\uDDC0";
+  private static final String[] WORDS = {"the", "cat", "sat", "on", "a", "mat", CHEESE_WEDGE};
+
+  public static void main(String[] args) {
+    // We wrap the main method in this way to ensure a non-zero return value on failure
+    try {
+      trueMain(args);
+    } catch (Exception e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static void trueMain(String[] args) {
+    final int numDocuments = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    final int documentSize = args.length > 1 ? Integer.parseInt(args[1]) : 2 * 1024;
+
+    final Random rng = new Random(0);
+    final StringBuilder sb = new StringBuilder();
+    while (sb.length() < documentSize) {
+      sb.append(WORDS[rng.nextInt(WORDS.length)]).append(' ');
+    }
+    final UnicodeFriendlyString document = StringUtils.unicodeFriendly(sb.toString());
+
+    // warm up so class loading and JIT compilation are not counted
+    processDocuments(document, Math.max(1, numDocuments / 10));
+
+    final com.sun.management.ThreadMXBean threadBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    final long threadId = Thread.currentThread().getId();
+    final long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+    final Stopwatch stopwatch = Stopwatch.createStarted();
+    final long tokens = processDocuments(document, numDocuments);
+    stopwatch.stop();
+    final long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+    log.info(
+        "Offset cache size {}: processed {} documents ({} tokens) in {} ms allocating {} MB "
+            + "({} bytes per token)",
+        Integer.getInteger("edu.isi.nlp.strings.offsets.cacheSize", 4096),
+        numDocuments,
+        tokens,
+        stopwatch.elapsed(TimeUnit.MILLISECONDS),
+        allocated / (1024 * 1024),
+        allocated / Math.max(1, tokens));
+  }
+
+  private static long processDocuments(UnicodeFriendlyString document, int numDocuments) {
+    long tokens = 0;
+    long checksum = 0;
+    for (int doc = 0; doc < numDocuments; ++doc) {
+      final LocatedString located = LocatedString.fromReferenceString(document);
+      int tokenStart = 0;
+      for (int i = 0; i < document.lengthInCodePoints(); ++i) {
+        if (document.codepointAtCodepointIndex(CharOffset.asCharOffset(i)) == ' ') {
+          checksum +=
+              located
+                  .startReferenceOffsetsForContentOffset(CharOffset.asCharOffset(tokenStart))
+                  .charOffset()
+                  .asInt();
+          checksum +=
+              located
+                  .endReferenceOffsetsForContentOffset(CharOffset.asCharOffset(i - 1))
+                  .charOffset()
+                  .asInt();
+          ++tokens;
+          tokenStart = i + 1;
+        }
+      }
+    }
+    // use the checksum so the work can't be optimized away
+    return checksum >= 0 ? tokens : -tokens;
+  }
+}
@@ -6,11 +6,16 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import com.google.common.collect.ImmutableList;
 import edu.isi.nlp.UnicodeFriendlyString;
+import edu.isi.nlp.strings.offsets.ByteOffset;
 import edu.isi.nlp.strings.offsets.CharOffset;
+import edu.isi.nlp.strings.offsets.EDTOffset;
 import edu.isi.nlp.strings.offsets.OffsetGroup;
 import edu.isi.nlp.strings.offsets.OffsetGroupRange;
 import edu.isi.nlp.strings.offsets.OffsetRange;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import org.junit.Test;
 
 /** Tests for {@link LocatedString}. */
@@ -462,4 +467,215 @@ public final class LocatedStringTest {
     assertTrue(container.containsExactly(trueContainee));
     assertFalse(container.containsExactly(spuriousContainee));
   }
+
+  @Test
+  public void testBatchReferenceOffsetsForContentOffsets() {
+    final int[] contentOffsets = {0, 0, 3, 4, 7, 8, 12, 20};
+    final ImmutableList<OffsetGroup> starts =
+        TEST_STRING1.startReferenceOffsetsForContentOffsets(contentOffsets);
+    final ImmutableList<OffsetGroup> ends =
+        TEST_STRING1.endReferenceOffsetsForContentOffsets(contentOffsets);
+    assertEquals(contentOffsets.length, starts.size());
+    assertEquals(contentOffsets.length, ends.size());
+    for (int i = 0; i < contentOffsets.length; ++i) {
+      final CharOffset contentOffset = CharOffset.asCharOffset(contentOffsets[i]);
+      assertEquals(
+          TEST_STRING1.startReferenceOffsetsForContentOffset(contentOffset), starts.get(i));
+      assertEquals(TEST_STRING1.endReferenceOffsetsForContentOffset(contentOffset), ends.get(i));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBatchReferenceOffsetsRequiresSortedOffsets() {
+    TEST_STRING1.startReferenceOffsetsForContentOffsets(new int[] {4, 3});
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testBatchReferenceOffsetsOutOfBounds() {
+    TEST_STRING1.startReferenceOffsetsForContentOffsets(new int[] {3, 21});
+  }
+
+  @Test
+  public void testRegionsAreCanonicalizedAndRoundTrip() {
+    // "abcd" inserted in place of "x", split into two regions which follow the same mapping rule
+    final LocatedString split =
+        new LocatedString.Builder()
+            .referenceString(unicodeFriendly("x"))
+            .content(unicodeFriendly("abcd"))
+            .addCharacterRegions(
+                new LocatedString.CharacterRegion.Builder()
+                    .contentNonBmp(false)
+                    .contentStartPosInclusive(CharOffset.asCharOffset(0))
+                    .contentEndPosExclusive(CharOffset.asCharOffset(2))
+                    .referenceStartOffsetInclusive(
+                        new OffsetGroup.Builder()
+                            .charOffset(CharOffset.asCharOffset(0))
+                            .edtOffset(EDTOffset.asEDTOffset(0))
+                            .byteOffset(ByteOffset.asByteOffset(10))
+                            .build())
+                    .referenceEndOffsetInclusive(fromMatchingCharAndEDT(0))
+                    .build(),
+                new LocatedString.CharacterRegion.Builder()
+                    .contentNonBmp(false)
+                    .contentStartPosInclusive(CharOffset.asCharOffset(2))
+                    .contentEndPosExclusive(CharOffset.asCharOffset(4))
+                    .referenceStartOffsetInclusive(fromMatchingCharAndEDT(0))
+                    .referenceEndOffsetInclusive(fromMatchingCharAndEDT(0))
+                    .build())
+            .build();
+
+    assertEquals(1, split.characterRegions().size());
+    final LocatedString.CharacterRegion merged = split.characterRegions().get(0);
+    assertEquals(4, merged.contentEndPosExclusive().asInt());
+    // optional offset types survive packing
+    assertEquals(10, merged.referenceStartOffsetInclusive().byteOffset().get().asInt());
+    assertFalse(merged.referenceEndOffsetInclusive().byteOffset().isPresent());
+
+    final LocatedString rebuilt =
+        new LocatedString.Builder().from(split).characterRegions(split.characterRegions()).build();
+    assertEquals(split, rebuilt);
+    assertEquals(split.hashCode(), rebuilt.hashCode());
+  }
+
+  /**
+   * Packed regions are serialized by converting them to and from the list of {@link
+   * LocatedString.CharacterRegion}s they represent, which is the JSON form used before regions were
+   * packed.
+   */
+  @Test
+  public void testCharacterRegionsConverters() {
+    final List<LocatedString.CharacterRegion> regions =
+        new PackedCharacterRegions.ToRegionList().convert(TEST_STRING1.packedRegions());
+    assertEquals(TEST_STRING1.characterRegions(), regions);
+    assertEquals(7, regions.size());
+    // the non-BMP regions keep their flag and their code point offsets
+    final LocatedString.CharacterRegion cheeseWedge = regions.get(2);
+    assertTrue(cheeseWedge.contentNonBmp());
+    assertEquals(CharOffset.asCharOffset(4), cheeseWedge.contentStartPosInclusive());
+    assertEquals(CharOffset.asCharOffset(5), cheeseWedge.contentEndPosExclusive());
+    assertEquals(fromMatchingCharAndEDT(6), cheeseWedge.referenceStartOffsetInclusive());
+    assertEquals(fromMatchingCharAndEDT(6), cheeseWedge.referenceEndOffsetInclusive());
+    final LocatedString.CharacterRegion insertedFace = regions.get(4);
+    assertTrue(insertedFace.contentNonBmp());
+    assertEquals(CharOffset.asCharOffset(7), insertedFace.contentStartPosInclusive());
+    assertEquals(fromMatchingCharAndEDT(8), insertedFace.referenceStartOffsetInclusive());
+    assertFalse(regions.get(5).contentNonBmp());
+
+    final PackedCharacterRegions packed =
+        new PackedCharacterRegions.FromRegionList().convert(regions);
+    assertEquals(TEST_STRING1.packedRegions(), packed);
+    assertEquals(regions, packed.toRegions());
+  }
+
+  @Test
+  public void testViewsMatchSubstrings() {
+    final ImmutableList<LocatedString> containees =
+        ImmutableList.of(
+            INITIAL_SUBSTRING1,
+            FINAL_SUBSTRING1,
+            SPLIT_REGIONS_ON_BOTH_ENDS_SUBSTRING1,
+            SINGLE_REGION_SUBSTRING1);
+    final int length = TEST_STRING1.content().lengthInCodePoints();
+    for (int start = 0; start < length; ++start) {
+      for (int end = start; end < length; ++end) {
+        final OffsetRange<CharOffset> range = OffsetRange.charOffsetRange(start, end);
+        final LocatedString substring = TEST_STRING1.contentLocatedSubstringByContentOffsets(range);
+        final LocatedStringView view =
+            TEST_STRING1.contentLocatedSubstringViewByContentOffsets(range);
+
+        assertEquals(substring, view.toLocatedString());
+        assertEquals(substring.content(), view.content());
+        assertEquals(substring.referenceBounds(), view.referenceBounds());
+        for (int i = 0; i <= end - start; ++i) {
+          final CharOffset offset = CharOffset.asCharOffset(i);
+          assertEquals(
+              substring.startReferenceOffsetsForContentOffset(offset),
+              view.startReferenceOffsetsForContentOffset(offset));
+          assertEquals(
+              substring.endReferenceOffsetsForContentOffset(offset),
+              view.endReferenceOffsetsForContentOffset(offset));
+        }
+        assertEquals(TEST_STRING1.containsExactly(substring), TEST_STRING1.containsExactly(view));
+        for (final LocatedString containee : containees) {
+          assertEquals(substring.containsExactly(containee), view.containsExactly(containee));
+        }
+      }
+    }
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testViewOffsetsAreBoundedByView() {
+    TEST_STRING1
+        .contentLocatedSubstringViewByContentOffsets(OffsetRange.charOffsetRange(2, 5))
+        .startReferenceOffsetsForContentOffset(CharOffset.asCharOffset(4));
+  }
+
+  @Test
+  public void testUtf8ByteOffsets() {
+    // one, two, three and four byte characters, in runs of varying lengths
+    final String text = "ab\u00e9\u00e9\u20ac\uD83E\uDDC0\uD83E\uDDC0c\u20ac";
+    final LocatedString located =
+        LocatedString.fromReferenceString(unicodeFriendly(text), false, true);
+    final int length = located.content().lengthInCodePoints();
+    for (int i = 0; i < length; ++i) {
+      final int codeUnitStart = text.offsetByCodePoints(0, i);
+      final int codeUnitEnd = text.offsetByCodePoints(0, i + 1);
+      final int expectedStartByte = utf8Length(text.substring(0, codeUnitStart));
+      final int expectedEndByte = utf8Length(text.substring(0, codeUnitEnd)) - 1;
+      final CharOffset offset = CharOffset.asCharOffset(i);
+      final OffsetGroup start = located.startReferenceOffsetsForContentOffset(offset);
+      final OffsetGroup end = located.endReferenceOffsetsForContentOffset(offset);
+      assertEquals(i, start.charOffset().asInt());
+      assertEquals(i, start.edtOffset().asInt());
+      assertEquals(ByteOffset.asByteOffset(expectedStartByte), start.byteOffset().get());
+      assertEquals(ByteOffset.asByteOffset(expectedEndByte), end.byteOffset().get());
+    }
+
+    // byte offsets survive taking substrings and views
+    final OffsetRange<CharOffset> range = OffsetRange.charOffsetRange(3, 6);
+    final LocatedString substring = located.contentLocatedSubstringByContentOffsets(range);
+    final LocatedStringView view = located.contentLocatedSubstringViewByContentOffsets(range);
+    for (int i = 0; i < 4; ++i) {
+      final CharOffset inSubstring = CharOffset.asCharOffset(i);
+      final CharOffset inParent = CharOffset.asCharOffset(i + 3);
+      assertEquals(
+          located.startReferenceOffsetsForContentOffset(inParent),
+          substring.startReferenceOffsetsForContentOffset(inSubstring));
+      assertEquals(
+          located.endReferenceOffsetsForContentOffset(inParent),
+          substring.endReferenceOffsetsForContentOffset(inSubstring));
+      assertEquals(
+          located.endReferenceOffsetsForContentOffset(inParent),
+          view.endReferenceOffsetsForContentOffset(inSubstring));
+    }
+    assertEquals(substring, view.toLocatedString());
+    assertEquals(
+        ByteOffset.asByteOffset(4),
+        substring.referenceBounds().startInclusive().byteOffset().get());
+    assertEquals(
+        ByteOffset.asByteOffset(16), substring.referenceBounds().endInclusive().byteOffset().get());
+  }
+
+  @Test
+  public void testACEEdtOffsets() {
+    final String text = "<p>Hi\r\nthere</p>!";
+    final LocatedString located =
+        LocatedString.fromReferenceString(unicodeFriendly(text), true, false);
+    // the EDT offset of each character; skipped characters get that of the next counted one
+    final int[] expectedEdtOffsets = {0, 0, 0, 0, 1, 2, 2, 3, 4, 5, 6, 7, 8, 8, 8, 8, 8};
+    assertEquals(expectedEdtOffsets.length, text.length());
+    for (int i = 0; i < text.length(); ++i) {
+      final CharOffset offset = CharOffset.asCharOffset(i);
+      assertEquals(
+          OffsetGroup.from(offset, EDTOffset.asEDTOffset(expectedEdtOffsets[i])),
+          located.startReferenceOffsetsForContentOffset(offset));
+      assertEquals(
+          expectedEdtOffsets[i],
+          located.endReferenceOffsetsForContentOffset(offset).edtOffset().asInt());
+    }
+  }
+
+  private static int utf8Length(String s) {
+    return s.getBytes(StandardCharsets.UTF_8).length;
+  }
 }
@@ -0,0 +1,34 @@
+package edu.isi.nlp.strings.offsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class OffsetCachesTest {
+
+  @Test
+  public void testSmallOffsetsAreShared() {
+    assertSame(CharOffset.asCharOffset(5), CharOffset.asCharOffset(5));
+    assertSame(EDTOffset.asEDTOffset(5), EDTOffset.asEDTOffset(2).shiftedCopy(3));
+    assertSame(ByteOffset.asByteOffset(0), ByteOffset.asByteOffset(0));
+    assertSame(OffsetGroup.fromMatchingCharAndEDT(7), OffsetGroup.fromMatchingCharAndEDT(7));
+    assertSame(
+        OffsetGroup.fromMatchingCharAndEDT(7),
+        OffsetGroup.from(CharOffset.asCharOffset(7), EDTOffset.asEDTOffset(7)));
+  }
+
+  @Test
+  public void testLargeOffsetsAreNotCachedButStillEqual() {
+    final int large = OffsetCaches.CACHE_SIZE + 10;
+    assertNotSame(CharOffset.asCharOffset(large), CharOffset.asCharOffset(large));
+    assertEquals(CharOffset.asCharOffset(large), CharOffset.asCharOffset(large));
+    assertEquals(
+        OffsetGroup.fromMatchingCharAndEDT(large),
+        OffsetGroup.from(CharOffset.asCharOffset(large), EDTOffset.asEDTOffset(large)));
+    // offsets of different types with the same value are still unequal
+    assertFalse(CharOffset.asCharOffset(3).equals(EDTOffset.asEDTOffset(3)));
+  }
+}
@@ -0,0 +1,127 @@
+package edu.isi.nlp.strings.offsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.primitives.Ints;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class PackedCharOffsetRangeListTest {
+
+  @Test
+  public void testPacking() {
+    final long packed = Offsets.packRange(OffsetRange.charOffsetRange(5, 17));
+    assertEquals(5, Offsets.packedStart(packed));
+    assertEquals(17, Offsets.packedEnd(packed));
+    assertEquals(13, Offsets.packedLength(packed));
+    assertEquals(OffsetRange.charOffsetRange(5, 17), Offsets.unpackCharOffsetRange(packed));
+    // packed ranges order by start, then end
+    assertTrue(Offsets.packRange(5, 6) < Offsets.packRange(5, 7));
+    assertTrue(Offsets.packRange(5, Integer.MAX_VALUE) < Offsets.packRange(6, 6));
+    assertTrue(Offsets.packedRangesOverlap(packed, Offsets.packRange(17, 20)));
+    assertFalse(Offsets.packedRangesOverlap(packed, Offsets.packRange(18, 20)));
+    assertTrue(Offsets.packedRangeContains(packed, Offsets.packRange(5, 5)));
+    assertFalse(Offsets.packedRangeContains(packed, Offsets.packRange(4, 5)));
+  }
+
+  @Test
+  public void testQueriesMatchBruteForce() {
+    final Random rng = new Random(0);
+    for (final int numRanges : new int[] {0, 1, 5, 200}) {
+      final PackedCharOffsetRangeList.Builder builder = new PackedCharOffsetRangeList.Builder();
+      for (int i = 0; i < numRanges; ++i) {
+        final int start = rng.nextInt(100);
+        builder.add(start, start + rng.nextInt(rng.nextBoolean() ? 3 : 30));
+      }
+      final PackedCharOffsetRangeList list = builder.build();
+      for (int i = 1; i < list.size(); ++i) {
+        assertTrue(list.packed(i - 1) <= list.packed(i));
+      }
+
+      for (int i = 0; i < 300; ++i) {
+        final int start = rng.nextInt(140) - 5;
+        final int end = start + rng.nextInt(20);
+        checkQueries(list, start, end);
+      }
+      // queries reaching the largest offset mustn't overflow
+      checkQueries(list, 0, Integer.MAX_VALUE);
+      checkQueries(list, 50, Integer.MAX_VALUE);
+      checkQueries(list, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+  }
+
+  @Test
+  public void testLargestOffset() {
+    final PackedCharOffsetRangeList list =
+        new PackedCharOffsetRangeList.Builder().add(0, 5).add(10, 20).build();
+    assertArrayEquals(new int[] {0, 1}, list.indicesOverlapping(0, Integer.MAX_VALUE));
+    assertArrayEquals(new int[] {0, 1}, list.indicesContainedBy(0, Integer.MAX_VALUE));
+    assertFalse(list.anyContains(Integer.MAX_VALUE));
+    assertEquals(1, list.indexOfNearest(Integer.MAX_VALUE));
+
+    final PackedCharOffsetRangeList reachingEnd =
+        new PackedCharOffsetRangeList.Builder().add(10, Integer.MAX_VALUE).build();
+    assertTrue(reachingEnd.anyContains(Integer.MAX_VALUE));
+    assertArrayEquals(
+        new int[] {0}, reachingEnd.indicesContaining(Integer.MAX_VALUE, Integer.MAX_VALUE));
+  }
+
+  @Test
+  public void testIndexOf() {
+    final PackedCharOffsetRangeList list =
+        PackedCharOffsetRangeList.fromPackedRanges(
+            new long[] {Offsets.packRange(10, 12), Offsets.packRange(0, 3)});
+    assertEquals(0, list.indexOf(0, 3));
+    assertEquals(1, list.indexOf(10, 12));
+    assertEquals(-1, list.indexOf(10, 11));
+    // lookups of impossible ranges are simply absent
+    assertEquals(-1, list.indexOf(-1, 3));
+    assertEquals(-1, list.indexOf(12, 10));
+    assertFalse(list.contains(12, 10));
+    assertEquals(OffsetRange.charOffsetRange(10, 12), list.get(1));
+  }
+
+  private static void checkQueries(
+      final PackedCharOffsetRangeList list, final int start, final int end) {
+    final List<Integer> overlapping = new ArrayList<>();
+    final List<Integer> containing = new ArrayList<>();
+    final List<Integer> containedBy = new ArrayList<>();
+    for (int idx = 0; idx < list.size(); ++idx) {
+      if (list.start(idx) <= end && list.end(idx) >= start) {
+        overlapping.add(idx);
+      }
+      if (list.start(idx) <= start && list.end(idx) >= end) {
+        containing.add(idx);
+      }
+      if (list.start(idx) >= start && list.end(idx) <= end) {
+        containedBy.add(idx);
+      }
+    }
+    assertArrayEquals(Ints.toArray(overlapping), list.indicesOverlapping(start, end));
+    assertArrayEquals(Ints.toArray(containing), list.indicesContaining(start, end));
+    assertArrayEquals(Ints.toArray(containedBy), list.indicesContainedBy(start, end));
+    assertEquals(list.indicesContaining(start, start).length > 0, list.anyContains(start));
+    assertEquals(bruteForceNearest(list, start), list.indexOfNearest(start));
+  }
+
+  private static int bruteForceNearest(PackedCharOffsetRangeList list, int offset) {
+    int best = -1;
+    long bestGap = Long.MAX_VALUE;
+    for (int idx = 0; idx < list.size(); ++idx) {
+      final long gap =
+          offset < list.start(idx)
+              ? list.start(idx) - offset
+              : (offset > list.end(idx) ? offset - list.end(idx) : 0);
+      if (gap < bestGap) {
+        best = idx;
+        bestGap = gap;
+      }
+    }
+    return best;
+  }
+}
@@ -0,0 +1,100 @@
+package edu.isi.nlp.symbols;
+
+import com.google.common.base.Stopwatch;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Test program for measuring how {@link Symbol#from(String)} scales as more threads intern
+ * concurrently. Each thread repeatedly interns a vocabulary of strings which overlaps with that of
+ * the other threads, mimicking concurrent loading of document ID maps.
+ *
+ * <p>Takes an optional argument giving the maximum number of threads to try (defaults to the number
+ * of available processors).
+ */
+public final class BenchmarkSymbolInterning {
+
+  private static Logger log = LoggerFactory.getLogger(BenchmarkSymbolInterning.class);
+
+  private static final int VOCABULARY_SIZE = 200000;
+  private static final int LOOKUPS_PER_THREAD = 2000000;
+
+  public static void main(String[] args) {
+    // We wrap the main method in this way to ensure a non-zero return value on failure
+    try {
+      trueMain(args);
+    } catch (Exception e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static void trueMain(String[] args) throws Exception {
+    final int maxThreads =
+        args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+    final String[] vocabulary = new String[VOCABULARY_SIZE];
+    // hold the interned symbols strongly so we measure lookups rather than garbage collection
+    final Symbol[] internedVocabulary = new Symbol[VOCABULARY_SIZE];
+    for (int i = 0; i < vocabulary.length; ++i) {
+      vocabulary[i] = "doc-" + i;
+      internedVocabulary[i] = Symbol.from(vocabulary[i]);
+    }
+    // warm up the JIT and the table
+    runTrial(vocabulary, 1);
+
+    for (int numThreads = 1; numThreads <= maxThreads; numThreads *= 2) {
+      final long elapsedMillis = runTrial(vocabulary, numThreads);
+      final long totalLookups = (long) numThreads * LOOKUPS_PER_THREAD;
+      log.info(
+          "{} threads: {} lookups in {} ms ({} lookups/ms)",
+          numThreads,
+          totalLookups,
+          elapsedMillis,
+          totalLookups / Math.max(1, elapsedMillis));
+    }
+    log.info("Vocabulary size: {}", internedVocabulary.length);
+  }
+
+  private static long runTrial(final String[] vocabulary, final int numThreads) throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    final CountDownLatch startSignal = new CountDownLatch(1);
+    try {
+      final List<Future<Integer>> results = new ArrayList<>();
+      for (int thread = 0; thread < numThreads; ++thread) {
+        final int offset = thread * 7919;
+        results.add(
+            executor.submit(
+                new Callable<Integer>() {
+                  @Override
+                  public Integer call() throws Exception {
+                    startSignal.await();
+                    int checksum = 0;
+                    for (int i = 0; i < LOOKUPS_PER_THREAD; ++i) {
+                      // fresh String instances so we really exercise the table lookup
+                      final String key = new String(vocabulary[(offset + i) % vocabulary.length]);
+                      checksum += Symbol.from(key).asString().length();
+                    }
+                    return checksum;
+                  }
+                }));
+      }
+      final Stopwatch stopwatch = Stopwatch.createStarted();
+      startSignal.countDown();
+      for (final Future<Integer> result : results) {
+        result.get();
+      }
+      return stopwatch.elapsed(TimeUnit.MILLISECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
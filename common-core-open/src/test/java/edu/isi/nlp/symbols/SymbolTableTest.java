@@ -0,0 +1,72 @@
+package edu.isi.nlp.symbols;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SymbolTableTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final Symbol FOO = Symbol.from("foo");
+  private static final Symbol BAR = Symbol.from("bar");
+  private static final Symbol BAZ = Symbol.from("baz");
+
+  @Test
+  public void testDenseIds() {
+    final SymbolTable table = SymbolTable.create();
+    assertEquals(0, table.idOf(FOO));
+    assertEquals(1, table.idOf(BAR));
+    assertEquals(0, table.idOf(FOO));
+    assertEquals(2, table.size());
+    assertSame(BAR, table.symbolOf(1));
+    assertEquals(SymbolTable.NO_ID, table.lookupId(BAZ));
+    assertEquals(ImmutableList.of(FOO, BAR), table.symbols());
+  }
+
+  @Test
+  public void testGrowth() {
+    final SymbolTable table = SymbolTable.create();
+    for (int i = 0; i < 5000; ++i) {
+      assertEquals(i, table.idOf(Symbol.from("growth" + i)));
+    }
+    for (int i = 0; i < 5000; ++i) {
+      assertEquals("growth" + i, table.symbolOf(i).asString());
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testFrozenTableRejectsNewSymbols() {
+    final SymbolTable table = SymbolTable.createFrom(ImmutableList.of(FOO, BAR)).freeze();
+    assertTrue(table.isFrozen());
+    assertEquals(1, table.idOf(BAR));
+    table.idOf(BAZ);
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testUnknownId() {
+    SymbolTable.createFrom(ImmutableList.of(FOO)).symbolOf(1);
+  }
+
+  @Test
+  public void testBinaryRoundTrip() throws IOException {
+    final SymbolTable table = SymbolTable.createFrom(ImmutableList.of(BAZ, FOO, BAR));
+    assertFalse(table.isFrozen());
+    final File file = folder.newFile("symbols.bin");
+    table.writeBinary(Files.asByteSink(file));
+
+    final SymbolTable reloaded = SymbolTable.readBinary(Files.asByteSource(file));
+    assertTrue(reloaded.isFrozen());
+    assertEquals(table.symbols(), reloaded.symbols());
+    assertEquals(2, reloaded.idOf(BAR));
+  }
+}
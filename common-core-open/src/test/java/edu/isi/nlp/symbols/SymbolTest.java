@@ -0,0 +1,80 @@
+package edu.isi.nlp.symbols;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+public class SymbolTest {
+
+  @Test
+  public void testInterning() {
+    final Symbol foo = Symbol.from("foo");
+    assertSame(foo, Symbol.from(new String("foo")));
+    assertNotSame(foo, Symbol.from("bar"));
+    assertEquals("foo", foo.asString());
+  }
+
+  @Test
+  public void testSerializationPreservesIdentity() throws Exception {
+    final Symbol foo = Symbol.from("serializedFoo");
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(foo);
+    out.close();
+
+    final ObjectInputStream in =
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertSame(foo, in.readObject());
+  }
+
+  @Test
+  public void testConcurrentInterningYieldsSingleSymbol() throws Exception {
+    final int numThreads = 8;
+    final int numStrings = 10000;
+    final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    final CountDownLatch startSignal = new CountDownLatch(1);
+    try {
+      final List<Future<List<Symbol>>> results = new ArrayList<>();
+      for (int thread = 0; thread < numThreads; ++thread) {
+        results.add(
+            executor.submit(
+                new Callable<List<Symbol>>() {
+                  @Override
+                  public List<Symbol> call() throws Exception {
+                    startSignal.await();
+                    final ImmutableList.Builder<Symbol> ret = ImmutableList.builder();
+                    for (int i = 0; i < numStrings; ++i) {
+                      ret.add(Symbol.from("concurrent" + i));
+                    }
+                    return ret.build();
+                  }
+                }));
+      }
+      startSignal.countDown();
+
+      final List<Symbol> reference = results.get(0).get();
+      for (final Future<List<Symbol>> result : results) {
+        final List<Symbol> symbols = result.get();
+        for (int i = 0; i < numStrings; ++i) {
+          assertSame(reference.get(i), symbols.get(i));
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
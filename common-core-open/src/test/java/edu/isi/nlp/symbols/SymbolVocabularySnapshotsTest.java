@@ -0,0 +1,42 @@
+package edu.isi.nlp.symbols;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SymbolVocabularySnapshotsTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testFromAll() {
+    final Symbol existing = Symbol.from("fromAllExisting");
+    final ImmutableList<Symbol> symbols =
+        Symbol.fromAll(ImmutableList.of("fromAllNew", "fromAllExisting", "fromAllNew"));
+    assertEquals(3, symbols.size());
+    assertSame(existing, symbols.get(1));
+    assertSame(symbols.get(0), symbols.get(2));
+    assertSame(Symbol.from("fromAllNew"), symbols.get(0));
+  }
+
+  @Test
+  public void testSnapshotRoundTrip() throws IOException {
+    final Symbol snapshotted = Symbol.from("snapshotted");
+    final File file = folder.newFile("vocab.bin");
+    final int numWritten = SymbolVocabularySnapshots.writeLiveVocabulary(Files.asByteSink(file));
+    assertTrue(numWritten >= 1);
+
+    assertEquals(numWritten, SymbolVocabularySnapshots.preload(Files.asByteSource(file)));
+    // snapshots are readable as symbol tables
+    final SymbolTable table = SymbolTable.readBinary(Files.asByteSource(file));
+    assertSame(snapshotted, table.symbolOf(table.idOf(snapshotted)));
+  }
+}
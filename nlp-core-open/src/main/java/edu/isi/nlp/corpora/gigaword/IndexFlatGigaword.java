@@ -1,11 +1,15 @@
 package edu.isi.nlp.corpora.gigaword;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import com.google.common.base.Charsets;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
-import com.google.common.io.ByteSource;
+import com.google.common.collect.Range;
 import com.google.common.io.Files;
 import edu.isi.nlp.files.FileUtils;
-import edu.isi.nlp.io.OffsetIndex;
 import edu.isi.nlp.io.OffsetIndices;
 import edu.isi.nlp.parameters.Parameters;
 import edu.isi.nlp.strings.offsets.ByteOffset;
@@ -13,8 +17,18 @@ import edu.isi.nlp.strings.offsets.OffsetRange;
 import edu.isi.nlp.symbols.Symbol;
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,6 +37,19 @@ import org.slf4j.LoggerFactory;
  * on the CDs). You must unzip all the individual `.gz` files before running this indexer. These
  * offsets often useful because copying the 'exploded' verison of Gigaword with a 12 M separate
  * files is prohibitively expensive.
+ *
+ * <p>Chunk files are memory-mapped and indexed concurrently. Parameters:
+ *
+ * <ul>
+ *   <li>{@code rawGigawordRoot}: contains one directory of chunk files per source.
+ *   <li>{@code rawGigawordOffsetIndexDir}: indices are written to {@code <source>/<chunk>.index}
+ *       under this directory.
+ *   <li>{@code numThreads} (optional, defaults to the number of processors): how many chunk files
+ *       to index at once.
+ *   <li>{@code writeMappableIndices} (optional, default false): if true, write uncompressed indices
+ *       in the format of {@link edu.isi.nlp.io.MappedOffsetIndex} rather than gzipped indices in
+ *       the original format. This is required for chunk files over 2 GB.
+ * </ul>
  */
 public final class IndexFlatGigaword {
 
@@ -32,11 +59,18 @@ public final class IndexFlatGigaword {
     throw new UnsupportedOperationException();
   }
 
-  private static void trueMain(String[] argv) throws IOException {
+  private static void trueMain(String[] argv) throws IOException, InterruptedException {
     final Parameters params = Parameters.loadSerifStyle(new File(argv[0]));
     final File gigawordRawRoot = params.getExistingDirectory("rawGigawordRoot");
     final File outputDirectory = params.getCreatableDirectory("rawGigawordOffsetIndexDir");
+    final int numThreads =
+        params
+            .getOptionalPositiveInteger("numThreads")
+            .or(Runtime.getRuntime().availableProcessors());
+    final boolean writeMappableIndices =
+        params.getOptionalBoolean("writeMappableIndices").or(false);
 
+    final ImmutableList.Builder<Callable<Long>> jobs = ImmutableList.builder();
     for (final File sourceDir : gigawordRawRoot.listFiles()) {
       if (!sourceDir.isDirectory()) {
         continue;
@@ -44,102 +78,279 @@ public final class IndexFlatGigaword {
       final File outputDir = new File(outputDirectory, sourceDir.getName());
       outputDir.mkdir();
       for (final File chunkFile : sourceDir.listFiles()) {
-        log.info("Building offset map for {}", chunkFile);
-        final OffsetIndex offsetIndex = buildOffsetIndex(Files.asByteSource(chunkFile));
         final File indexFile = new File(outputDir, chunkFile.getName() + ".index");
-        log.info(
-            "Writing {} offsets for {} to {}", offsetIndex.keySet().size(), chunkFile, indexFile);
-        OffsetIndices.writeBinary(offsetIndex, FileUtils.asCompressedByteSink(indexFile));
+        jobs.add(
+            new Callable<Long>() {
+              @Override
+              public Long call() throws IOException {
+                return indexChunkFile(chunkFile, indexFile, writeMappableIndices);
+              }
+            });
+      }
+    }
+
+    log.info("Indexing chunk files using {} threads", numThreads);
+    final Stopwatch stopwatch = Stopwatch.createStarted();
+    final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    long totalBytes = 0;
+    try {
+      final List<Future<Long>> results = executor.invokeAll(jobs.build());
+      for (final Future<Long> result : results) {
+        try {
+          totalBytes += result.get();
+        } catch (ExecutionException e) {
+          throw new IOException("Failed to index chunk file", e.getCause());
+        }
       }
+    } finally {
+      executor.shutdownNow();
     }
+    log.info(
+        "Indexed {} MB in {} s ({} MB/s)",
+        totalBytes / BYTES_PER_MEGABYTE,
+        stopwatch.elapsed(TimeUnit.SECONDS),
+        megabytesPerSecond(totalBytes, stopwatch));
+  }
+
+  /** Indexes one chunk file, returning its size in bytes. */
+  private static long indexChunkFile(
+      final File chunkFile, final File indexFile, final boolean writeMappableIndex)
+      throws IOException {
+    final Stopwatch stopwatch = Stopwatch.createStarted();
+    final ImmutableMap<Symbol, Range<Long>> offsets = indexChunk(chunkFile);
+    if (writeMappableIndex) {
+      OffsetIndices.writeMappable(offsets, Files.asByteSink(indexFile));
+    } else {
+      OffsetIndices.writeBinary(
+          OffsetIndices.forMap(asIntOffsets(offsets, chunkFile)),
+          FileUtils.asCompressedByteSink(indexFile));
+    }
+    log.info(
+        "Wrote {} offsets for {} to {} ({} MB/s)",
+        offsets.size(),
+        chunkFile,
+        indexFile,
+        megabytesPerSecond(chunkFile.length(), stopwatch));
+    return chunkFile.length();
+  }
+
+  private static Map<Symbol, OffsetRange<ByteOffset>> asIntOffsets(
+      final Map<Symbol, Range<Long>> offsets, final File chunkFile) throws IOException {
+    final ImmutableMap.Builder<Symbol, OffsetRange<ByteOffset>> ret = ImmutableMap.builder();
+    for (final Map.Entry<Symbol, Range<Long>> e : offsets.entrySet()) {
+      if (e.getValue().upperEndpoint() > Integer.MAX_VALUE) {
+        throw new IOException(
+            chunkFile + " is too large for the original index format; use writeMappableIndices");
+      }
+      ret.put(
+          e.getKey(),
+          OffsetRange.byteOffsetRange(
+              e.getValue().lowerEndpoint().intValue(), e.getValue().upperEndpoint().intValue()));
+    }
+    return ret.build();
+  }
+
+  private static final long BYTES_PER_MEGABYTE = 1024 * 1024;
+
+  private static String megabytesPerSecond(final long bytes, final Stopwatch stopwatch) {
+    final double seconds = Math.max(stopwatch.elapsed(TimeUnit.MILLISECONDS), 1) / 1000.0;
+    return String.format("%.1f", bytes / (double) BYTES_PER_MEGABYTE / seconds);
   }
 
   private static final String beginProbeString = "<DOC id=\"";
   private static final byte[] beginProbe = beginProbeString.getBytes(Charsets.UTF_8);
-  private static final String docIdEndString = "\"";
-  private static final byte[] docIdEnd = docIdEndString.getBytes(Charsets.UTF_8);
+  private static final byte docIdEnd = '"';
   private static final String endProbeString = "</DOC>";
   private static final byte[] endProbe = endProbeString.getBytes(Charsets.UTF_8);
+  // both probes start with this, so we only need to stop and check the probes where it occurs
+  private static final byte TAG_OPEN = '<';
+  private static final long TAG_OPEN_IN_EVERY_BYTE = 0x0101010101010101L * TAG_OPEN;
+
+  private static final int NOT_FOUND = -1;
 
-  private static final int NOT_FOUND = 1;
+  // chunk files are mapped in windows of at most this size, since a single mapping can't exceed
+  // 2 GB
+  private static final int DEFAULT_WINDOW_BYTES = 1 << 30;
+
+  /**
+   * Gets the closed byte offset range of each document in a Gigaword chunk file. If a document ID
+   * occurs more than once, the last occurrence is used.
+   */
+  static ImmutableMap<Symbol, Range<Long>> indexChunk(final File chunkFile) throws IOException {
+    return indexChunk(chunkFile, DEFAULT_WINDOW_BYTES);
+  }
 
   /* package private for testing */
-  static OffsetIndex buildOffsetIndex(ByteSource source) throws IOException {
-    final Map<Symbol, OffsetRange<ByteOffset>> ret = Maps.newHashMap();
+  static ImmutableMap<Symbol, Range<Long>> indexChunk(final File chunkFile, final int windowBytes)
+      throws IOException {
+    checkArgument(windowBytes > 0);
+    final Map<Symbol, Range<Long>> ret = Maps.newHashMap();
+    final RandomAccessFile file = new RandomAccessFile(chunkFile, "r");
+    try {
+      final FileChannel channel = file.getChannel();
+      final long fileSize = channel.size();
+      long windowStart = 0;
+      while (windowStart < fileSize) {
+        final int windowSize = (int) Math.min(fileSize - windowStart, windowBytes);
+        final boolean finalWindow = windowStart + windowSize == fileSize;
+        final ByteBuffer window =
+            channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+        final int resumeFrom = indexDocuments(window, windowStart, finalWindow, ret, chunkFile);
+        if (resumeFrom == 0 && !finalWindow) {
+          throw new IOException(
+              "Document at byte " + windowStart + " of " + chunkFile + " exceeds window size");
+        }
+        windowStart += resumeFrom;
+      }
+    } finally {
+      file.close();
+    }
+    return ImmutableMap.copyOf(ret);
+  }
 
-    // we could be more efficient and deal with the byte stream as it comes along,
-    // but these files don't exceed 50 MB, so it's simpler just to read it all in
-    final byte[] fileAsBytes = source.read();
+  /**
+   * Records the offsets of all complete documents in {@code buffer}, which begins at {@code
+   * bufferOffset} in the file being indexed. Returns the position in the buffer from which indexing
+   * should resume with the next window of the file: the start of a document which is not closed
+   * before the end of the buffer, or the end of the buffer. If this is the final window, an
+   * unclosed document is an error instead.
+   */
+  /* package private for testing */
+  static int indexDocuments(
+      final ByteBuffer buffer,
+      final long bufferOffset,
+      final boolean finalWindow,
+      final Map<Symbol, Range<Long>> ret,
+      final Object sourceForErrors)
+      throws IOException {
+    // a little-endian view lets tagStartsFrom find the first match in a word with trailing zeros
+    final ByteBuffer bytes = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    final int limit = bytes.limit();
 
     // Okay, kids, don't try this at home. In general searching byte-by-byte through UTF-8 is a
     // bad idea, because multibyte characters will trip you up.  However, in this particular case:
     //   (a) all of the characters in our search strings are single-byte, and
-    //   (b) for the begin and end probes, they are long enough that the chances of them occurring
-    //         accidentally starting at a non-initial character of a multibyte character
-    //         is vanishingly small.  It could be a problem for docIdEnd, being only a single
-    // character,
-    //         but this will only be a problem if we have non-ASCII unicode characters in the doc
-    // IDs
-    //         which is not the case for Gigaword.
-    int startDocInclusive;
-    int nextSearchIdx = 0;
-    while ((startDocInclusive = findBytes(fileAsBytes, beginProbe, nextSearchIdx)) != NOT_FOUND) {
-      final int startDocIDInclusive = startDocInclusive + beginProbe.length; // double check this!
-      final int endDocIDIdxExclusive = findBytes(fileAsBytes, docIdEnd, startDocIDInclusive + 1);
-      if (endDocIDIdxExclusive != NOT_FOUND) {
-        final String docID = bytesAsString(fileAsBytes, startDocIDInclusive, endDocIDIdxExclusive);
-        final int endTagIdx = findBytes(fileAsBytes, endProbe, endDocIDIdxExclusive + 1);
-        if (endTagIdx != NOT_FOUND) {
-          final int endDocIdxInclusive = endTagIdx + endProbe.length - 1;
-          if (ret.containsKey(Symbol.from(docID))) {
-            log.warn("Document ID {} occurs more than once; using latest version", docID);
+    //   (b) no byte of a multibyte UTF-8 character is in the ASCII range, so can't match '<' or
+    //       '"'.
+    int startDocInclusive = NOT_FOUND;
+    Symbol docID = null;
+    // where the next window should start if this one ends with an incomplete document
+    int resumeFrom = limit;
+    boolean docIDCutOff = false;
+    int tagStart = tagStartsFrom(bytes, 0, limit);
+    while (tagStart != NOT_FOUND) {
+      if (docID == null) {
+        if (tagStart + beginProbe.length > limit) {
+          if (matchesPrefix(bytes, beginProbe, tagStart, limit)) {
+            // a begin tag may be cut off by the end of the buffer
+            resumeFrom = tagStart;
+            break;
+          }
+        } else if (matches(bytes, beginProbe, tagStart, limit)) {
+          final int startDocIDInclusive = tagStart + beginProbe.length;
+          final int endDocIDExclusive = indexOf(bytes, docIdEnd, startDocIDInclusive, limit);
+          if (endDocIDExclusive == NOT_FOUND) {
+            resumeFrom = tagStart;
+            docIDCutOff = true;
+            break;
           }
-          ret.put(
-              Symbol.from(docID),
-              OffsetRange.byteOffsetRange(startDocInclusive, endDocIdxInclusive));
-          nextSearchIdx = endDocIdxInclusive + 1;
-        } else {
-          throw new IOException("Failed to find closing document tag in " + source);
+          startDocInclusive = tagStart;
+          docID = Symbol.from(bytesAsString(bytes, startDocIDInclusive, endDocIDExclusive));
+          tagStart = tagStartsFrom(bytes, endDocIDExclusive + 1, limit);
+          continue;
         }
-      } else {
-        throw new IOException("Failed to find end of document ID in " + source);
+      } else if (matches(bytes, endProbe, tagStart, limit)) {
+        final int endDocInclusive = tagStart + endProbe.length - 1;
+        if (ret.containsKey(docID)) {
+          log.warn("Document ID {} occurs more than once; using latest version", docID);
+        }
+        ret.put(
+            docID, Range.closed(bufferOffset + startDocInclusive, bufferOffset + endDocInclusive));
+        docID = null;
+        tagStart = tagStartsFrom(bytes, endDocInclusive + 1, limit);
+        continue;
       }
+      tagStart = tagStartsFrom(bytes, tagStart + 1, limit);
+    }
+    if (docID != null) {
+      resumeFrom = startDocInclusive;
+    }
+
+    if (finalWindow) {
+      if (docID != null) {
+        throw new IOException("Failed to find closing document tag in " + sourceForErrors);
+      } else if (docIDCutOff) {
+        throw new IOException("Failed to find end of document ID in " + sourceForErrors);
+      }
+      return limit;
+    } else {
+      return resumeFrom;
     }
-    return OffsetIndices.forMap(ret);
   }
 
-  private static String bytesAsString(
-      final byte[] sourceBytes, final int startInclusive, final int endExclusive) {
-    return new String(
-        Arrays.copyOfRange(sourceBytes, startInclusive, endExclusive), Charsets.UTF_8);
+  /**
+   * Finds the first {@link #TAG_OPEN} at or after {@code from}. This examines eight bytes at a time
+   * using the standard bit trick for finding a zero byte in a word, applied to the word xor-ed with
+   * the byte we are looking for. False positives are only possible in bytes after a true match, and
+   * we take the lowest match, which comes first in a little-endian word.
+   */
+  private static int tagStartsFrom(final ByteBuffer bytes, final int from, final int limit) {
+    int idx = from;
+    for (; idx + Long.BYTES <= limit; idx += Long.BYTES) {
+      final long word = bytes.getLong(idx) ^ TAG_OPEN_IN_EVERY_BYTE;
+      final long matchBits = (word - 0x0101010101010101L) & ~word & 0x8080808080808080L;
+      if (matchBits != 0) {
+        return idx + (Long.numberOfTrailingZeros(matchBits) >>> 3);
+      }
+    }
+    for (; idx < limit; ++idx) {
+      if (bytes.get(idx) == TAG_OPEN) {
+        return idx;
+      }
+    }
+    return NOT_FOUND;
   }
 
-  private static int findBytes(byte[] toSearch, byte[] needle, int startIdx) {
-    // because our needles are unlikely to overlap with regular text,
-    // using K-M-P here is not worth the trouble.
-    for (int idx = startIdx; idx < toSearch.length; ++idx) {
-      if (matches(toSearch, needle, idx)) {
+  private static int indexOf(
+      final ByteBuffer bytes, final byte needle, final int from, final int limit) {
+    for (int idx = from; idx < limit; ++idx) {
+      if (bytes.get(idx) == needle) {
         return idx;
       }
     }
     return NOT_FOUND;
   }
 
-  private static boolean matches(byte[] toMatch, byte[] pattern, int startIdx) {
-    if (startIdx + pattern.length > toMatch.length) {
-      // there's not enough room left in the string being matched
-      // to fit the pattern
+  private static boolean matches(
+      final ByteBuffer bytes, final byte[] pattern, final int startIdx, final int limit) {
+    if (startIdx + pattern.length > limit) {
+      // there's not enough room left in the buffer to fit the pattern
       return false;
     }
-    for (int i = 0; i < pattern.length; ++i) {
-      int toMatchIdx = startIdx + i;
-      if (toMatch[toMatchIdx] != pattern[i]) {
+    return matchesPrefix(bytes, pattern, startIdx, limit);
+  }
+
+  /** Whether the bytes from {@code startIdx} to the limit are a prefix of {@code pattern}. */
+  private static boolean matchesPrefix(
+      final ByteBuffer bytes, final byte[] pattern, final int startIdx, final int limit) {
+    final int toCheck = Math.min(pattern.length, limit - startIdx);
+    for (int i = 0; i < toCheck; ++i) {
+      if (bytes.get(startIdx + i) != pattern[i]) {
         return false;
       }
     }
     return true;
   }
 
+  private static String bytesAsString(
+      final ByteBuffer bytes, final int startInclusive, final int endExclusive) {
+    final byte[] ret = new byte[endExclusive - startInclusive];
+    for (int i = 0; i < ret.length; ++i) {
+      ret[i] = bytes.get(startInclusive + i);
+    }
+    return new String(ret, Charsets.UTF_8);
+  }
+
   public static void main(String[] argv) {
     // we wrap the main method in this way to
     // ensure a non-zero return value on failure
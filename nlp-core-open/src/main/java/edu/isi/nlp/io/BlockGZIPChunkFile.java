@@ -0,0 +1,75 @@
+package edu.isi.nlp.io;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A block gzip compressed file of concatenated documents (see {@link
+ * GZIPByteSink#blockGzipCompress(com.google.common.io.ByteSink)}), from which byte ranges of the
+ * uncompressed data are decoded by decompressing only the blocks which contain them. The compressed
+ * file is memory-mapped if it is under 2 GB, and its block index is built when it is opened.
+ */
+/* package-private */ final class BlockGZIPChunkFile implements ChunkFile {
+
+  private final File file;
+  private final ByteSource uncompressed;
+  private final long uncompressedSize;
+
+  private BlockGZIPChunkFile(final File file, final ByteSource uncompressed, final long size) {
+    this.file = checkNotNull(file);
+    this.uncompressed = checkNotNull(uncompressed);
+    this.uncompressedSize = size;
+  }
+
+  static BlockGZIPChunkFile open(final File file) throws IOException {
+    final ByteSource compressed;
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      final FileChannel channel = raf.getChannel();
+      if (channel.size() <= Integer.MAX_VALUE) {
+        // the mapping remains valid after the channel is closed
+        compressed =
+            MappedByteSource.wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+      } else {
+        compressed = Files.asByteSource(file);
+      }
+    } finally {
+      raf.close();
+    }
+    final BlockGZIPIndex index = BlockGZIPIndex.scan(compressed);
+    return new BlockGZIPChunkFile(
+        file, GZIPByteSource.fromBlockCompressed(compressed, index), index.uncompressedSize());
+  }
+
+  @Override
+  public String decode(final long startInclusive, final long endInclusive, final Charset charset)
+      throws IOException {
+    if (startInclusive < 0 || endInclusive < startInclusive || endInclusive >= uncompressedSize) {
+      throw new IOException(
+          "Byte range ["
+              + startInclusive
+              + ", "
+              + endInclusive
+              + "] is out of bounds for "
+              + file
+              + " of uncompressed size "
+              + uncompressedSize);
+    }
+    return uncompressed
+        .slice(startInclusive, endInclusive - startInclusive + 1)
+        .asCharSource(charset)
+        .read();
+  }
+
+  @Override
+  public String toString() {
+    return "BlockGZIPChunkFile(" + file + ")";
+  }
+}
@@ -1,51 +1,78 @@
 package edu.isi.nlp.io;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
+import com.google.common.annotations.Beta;
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import edu.isi.nlp.files.KeyValueSource;
 import edu.isi.nlp.symbols.Symbol;
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 
 /**
- * This should be merged into the newer {@link KeyValueSource} code.
+ * An {@link OriginalTextSource} which caches the texts loaded from another. The cache may be
+ * bounded either by number of documents or, since document sizes vary enormously, by the
+ * approximate number of bytes of text held. Whether a document is unavailable is cached too.
+ *
+ * <p>If a prefetch executor is provided, {@link #prefetch(Iterable)} can load upcoming documents in
+ * the background. Cache statistics are available from {@link #stats()}.
+ *
+ * <p>This should be merged into the newer {@link KeyValueSource} code.
  *
  * @author Ryan Gabbard
  */
 public final class CachingOriginalTextSource implements OriginalTextSource {
 
-  private final LoadingCache<Symbol, String> cache;
+  // approximate heap used by a cache entry apart from the characters of its text
+  private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+  private final OriginalTextSource baseSource;
+  private final LoadingCache<Symbol, Optional<String>> cache;
+  private final Optional<ListeningExecutorService> prefetchExecutor;
 
-  private CachingOriginalTextSource(final LoadingCache<Symbol, String> cache) {
+  private CachingOriginalTextSource(
+      final OriginalTextSource baseSource,
+      final LoadingCache<Symbol, Optional<String>> cache,
+      final Optional<ListeningExecutorService> prefetchExecutor) {
+    this.baseSource = checkNotNull(baseSource);
     this.cache = checkNotNull(cache);
+    this.prefetchExecutor = checkNotNull(prefetchExecutor);
   }
 
-  public static OriginalTextSource from(final OriginalTextSource baseSource, int maxToCache) {
-    return new CachingOriginalTextSource(
-        CacheBuilder.newBuilder()
-            .maximumSize(maxToCache)
-            .<Symbol, String>build(
-                new CacheLoader<Symbol, String>() {
-                  @Override
-                  public String load(final Symbol key) throws Exception {
-                    final Optional<String> baseRet = baseSource.getOriginalText(key);
-                    if (baseRet.isPresent()) {
-                      return baseRet.get();
-                    } else {
-                      return null;
-                    }
-                  }
-                }));
+  /** Caches up to {@code maxToCache} documents from {@code baseSource}. */
+  public static CachingOriginalTextSource from(
+      final OriginalTextSource baseSource, int maxToCache) {
+    return builder(baseSource).maxEntries(maxToCache).build();
+  }
+
+  @Beta
+  public static Builder builder(final OriginalTextSource baseSource) {
+    return new Builder(baseSource);
   }
 
   @Override
   public Optional<String> getOriginalText(final Symbol docID) throws IOException {
     try {
-      return Optional.fromNullable(cache.get(docID));
+      return cache.get(docID);
     } catch (final ExecutionException e) {
       if (e.getCause() instanceof IOException) {
         throw (IOException) e.getCause();
@@ -54,4 +81,192 @@ public final class CachingOriginalTextSource implements OriginalTextSource {
       }
     }
   }
+
+  /**
+   * Returns cached texts first and then fetches all the others from the wrapped source with a
+   * single call to its {@link OriginalTextSource#getOriginalTexts(Iterable)}, caching them as they
+   * are returned.
+   */
+  @Override
+  public Iterable<Map.Entry<Symbol, Optional<String>>> getOriginalTexts(
+      final Iterable<Symbol> docIDs) {
+    final ImmutableSet<Symbol> requested = ImmutableSet.copyOf(docIDs);
+    return new Iterable<Map.Entry<Symbol, Optional<String>>>() {
+      @Override
+      public Iterator<Map.Entry<Symbol, Optional<String>>> iterator() {
+        final ImmutableList.Builder<Map.Entry<Symbol, Optional<String>>> cached =
+            ImmutableList.builder();
+        final ImmutableList<Symbol> uncached = uncached(requested, cached);
+        final Iterator<Map.Entry<Symbol, Optional<String>>> fetched =
+            Iterators.transform(
+                baseSource.getOriginalTexts(uncached).iterator(),
+                new Function<
+                    Map.Entry<Symbol, Optional<String>>, Map.Entry<Symbol, Optional<String>>>() {
+                  @Override
+                  public Map.Entry<Symbol, Optional<String>> apply(
+                      final Map.Entry<Symbol, Optional<String>> entry) {
+                    cache.put(entry.getKey(), entry.getValue());
+                    return entry;
+                  }
+                });
+        return Iterators.concat(cached.build().iterator(), fetched);
+      }
+    };
+  }
+
+  /**
+   * Starts loading those of {@code docIDs} which are not already cached into the cache on the
+   * prefetch executor, so that later requests for them don't wait on the wrapped source. The
+   * documents are fetched with a single call to the wrapped source's {@link
+   * OriginalTextSource#getOriginalTexts(Iterable)}, so sources which can batch requests will do so.
+   * Prefetching more than the cache can hold will evict earlier documents, including earlier
+   * prefetched ones.
+   *
+   * <p>The returned future gives the number of documents loaded, or fails if loading does.
+   *
+   * @throws IllegalStateException if this source was built without a prefetch executor.
+   */
+  @Beta
+  public ListenableFuture<Integer> prefetch(final Iterable<Symbol> docIDs) {
+    checkState(prefetchExecutor.isPresent(), "No prefetch executor was provided");
+    final ImmutableSet<Symbol> requested = ImmutableSet.copyOf(docIDs);
+    return prefetchExecutor
+        .get()
+        .submit(
+            new Callable<Integer>() {
+              @Override
+              public Integer call() {
+                // check when we run, since things may have been loaded since the request.
+                // asMap() lookups don't count towards the hit rate
+                final ImmutableList.Builder<Symbol> toLoad = ImmutableList.builder();
+                for (final Symbol docID : requested) {
+                  if (!cache.asMap().containsKey(docID)) {
+                    toLoad.add(docID);
+                  }
+                }
+                int numLoaded = 0;
+                for (final Map.Entry<Symbol, Optional<String>> e :
+                    baseSource.getOriginalTexts(toLoad.build())) {
+                  cache.put(e.getKey(), e.getValue());
+                  ++numLoaded;
+                }
+                return numLoaded;
+              }
+            });
+  }
+
+  /**
+   * Statistics for this cache, including the hit rate, time spent loading and number of evictions.
+   * Documents which are loaded in batches or prefetched don't count towards the load statistics.
+   */
+  @Beta
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  /** The number of documents currently cached. */
+  @Beta
+  public long size() {
+    return cache.size();
+  }
+
+  private ImmutableList<Symbol> uncached(
+      final Iterable<Symbol> docIDs,
+      final ImmutableList.Builder<Map.Entry<Symbol, Optional<String>>> cachedEntries) {
+    final ImmutableList.Builder<Symbol> ret = ImmutableList.builder();
+    for (final Symbol docID : docIDs) {
+      final Optional<String> text = cache.getIfPresent(docID);
+      if (text != null) {
+        cachedEntries.add(Maps.immutableEntry(docID, text));
+      } else {
+        ret.add(docID);
+      }
+    }
+    return ret.build();
+  }
+
+  private static int approximateBytes(final Optional<String> text) {
+    final long textBytes = text.isPresent() ? 2L * text.get().length() : 0L;
+    return (int) Math.min(Integer.MAX_VALUE, ENTRY_OVERHEAD_BYTES + textBytes);
+  }
+
+  @Beta
+  public static final class Builder {
+
+    private final OriginalTextSource baseSource;
+    private Integer maxEntries = null;
+    private Long maxBytes = null;
+    private ExecutorService prefetchExecutor = null;
+
+    private Builder(final OriginalTextSource baseSource) {
+      this.baseSource = checkNotNull(baseSource);
+    }
+
+    /** Bounds the cache by number of documents. */
+    public Builder maxEntries(final int maxEntries) {
+      checkArgument(maxEntries >= 0);
+      this.maxEntries = maxEntries;
+      return this;
+    }
+
+    /**
+     * Bounds the cache by the approximate heap used by the cached texts (two bytes per character,
+     * plus a small overhead per document). Any single document which fits in the budget can be
+     * cached.
+     */
+    public Builder maxBytes(final long maxBytes) {
+      checkArgument(maxBytes >= 0);
+      this.maxBytes = maxBytes;
+      return this;
+    }
+
+    /**
+     * Enables {@link CachingOriginalTextSource#prefetch(Iterable)}, which will load documents on
+     * the given executor. The caller remains responsible for shutting it down.
+     */
+    public Builder prefetchExecutor(final ExecutorService prefetchExecutor) {
+      this.prefetchExecutor = checkNotNull(prefetchExecutor);
+      return this;
+    }
+
+    public CachingOriginalTextSource build() {
+      checkState(
+          (maxEntries == null) != (maxBytes == null),
+          "Exactly one of maxEntries and maxBytes must be specified");
+      final OriginalTextSource baseSource = this.baseSource;
+      final CacheLoader<Symbol, Optional<String>> loader =
+          new CacheLoader<Symbol, Optional<String>>() {
+            @Override
+            public Optional<String> load(final Symbol key) throws Exception {
+              return baseSource.getOriginalText(key);
+            }
+          };
+      final LoadingCache<Symbol, Optional<String>> cache;
+      if (maxEntries != null) {
+        cache = CacheBuilder.newBuilder().recordStats().maximumSize(maxEntries).build(loader);
+      } else {
+        cache =
+            CacheBuilder.newBuilder()
+                .recordStats()
+                // Guava divides the weight budget evenly between segments, so with more than one
+                // a document of over a fraction of the budget would be evicted as soon as it loaded
+                .concurrencyLevel(1)
+                .maximumWeight(maxBytes)
+                .weigher(
+                    new Weigher<Symbol, Optional<String>>() {
+                      @Override
+                      public int weigh(final Symbol key, final Optional<String> text) {
+                        return approximateBytes(text);
+                      }
+                    })
+                .build(loader);
+      }
+      return new CachingOriginalTextSource(
+          baseSource,
+          cache,
+          prefetchExecutor != null
+              ? Optional.of(MoreExecutors.listeningDecorator(prefetchExecutor))
+              : Optional.<ListeningExecutorService>absent());
+    }
+  }
 }
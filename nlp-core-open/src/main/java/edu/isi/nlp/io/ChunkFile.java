@@ -0,0 +1,13 @@
+package edu.isi.nlp.io;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/** A file of concatenated documents from which byte ranges can be decoded. */
+/* package-private */ interface ChunkFile {
+
+  /**
+   * Decodes the bytes from {@code startInclusive} to {@code endInclusive} using {@code charset}.
+   */
+  String decode(long startInclusive, long endInclusive, Charset charset) throws IOException;
+}
@@ -0,0 +1,109 @@
+package edu.isi.nlp.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A read-only memory mapping of a file of concatenated documents, from which byte ranges can be
+ * decoded without any system calls. Files over 2 GB are mapped as several overlapping windows,
+ * since a single mapping can't exceed that size. A range which doesn't fit in a single window
+ * (which requires a document longer than the overlap) is read from the file instead.
+ *
+ * <p>Mappings remain valid after the file is closed, so this holds no file descriptors and needs no
+ * closing; the mapping is released when this is garbage-collected. This is safe to use from
+ * multiple threads.
+ */
+/* package-private */ final class MappedChunkFile implements ChunkFile {
+
+  // package-private so tests can use smaller windows
+  static final long DEFAULT_WINDOW_STRIDE = 1L << 30;
+  static final long DEFAULT_WINDOW_OVERLAP = 64L * 1024 * 1024;
+
+  private final File file;
+  private final long size;
+  private final long windowStride;
+  // only duplicates of these are positioned, so they may be shared by threads
+  private final ByteBuffer[] windows;
+
+  private MappedChunkFile(
+      final File file, final long size, final long windowStride, final ByteBuffer[] windows) {
+    this.file = checkNotNull(file);
+    this.size = size;
+    this.windowStride = windowStride;
+    this.windows = checkNotNull(windows);
+  }
+
+  static MappedChunkFile map(final File file) throws IOException {
+    return map(file, DEFAULT_WINDOW_STRIDE, DEFAULT_WINDOW_OVERLAP);
+  }
+
+  static MappedChunkFile map(final File file, final long windowStride, final long windowOverlap)
+      throws IOException {
+    checkArgument(windowStride > 0 && windowOverlap >= 0);
+    checkArgument(windowStride + windowOverlap <= Integer.MAX_VALUE);
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      final FileChannel channel = raf.getChannel();
+      final long size = channel.size();
+      final ByteBuffer[] windows = new ByteBuffer[(int) Math.max(1, (size - 1) / windowStride + 1)];
+      for (int i = 0; i < windows.length; ++i) {
+        final long windowStart = i * windowStride;
+        windows[i] =
+            channel.map(
+                FileChannel.MapMode.READ_ONLY,
+                windowStart,
+                Math.min(windowStride + windowOverlap, size - windowStart));
+      }
+      return new MappedChunkFile(file, size, windowStride, windows);
+    } finally {
+      raf.close();
+    }
+  }
+
+  @Override
+  public String decode(final long startInclusive, final long endInclusive, final Charset charset)
+      throws IOException {
+    if (startInclusive < 0 || endInclusive < startInclusive || endInclusive >= size) {
+      throw new IOException(
+          "Byte range ["
+              + startInclusive
+              + ", "
+              + endInclusive
+              + "] is out of bounds for "
+              + file
+              + " of size "
+              + size);
+    }
+    final int windowIdx = (int) (startInclusive / windowStride);
+    final long windowStart = windowIdx * windowStride;
+    final ByteBuffer window = windows[windowIdx];
+    if (endInclusive - windowStart < window.capacity()) {
+      final ByteBuffer range = window.duplicate();
+      range.limit((int) (endInclusive - windowStart + 1));
+      range.position((int) (startInclusive - windowStart));
+      return charset.decode(range).toString();
+    } else {
+      return Files.asByteSource(file)
+          .slice(startInclusive, endInclusive - startInclusive + 1)
+          .asCharSource(charset)
+          .read();
+    }
+  }
+
+  File file() {
+    return file;
+  }
+
+  @Override
+  public String toString() {
+    return "MappedChunkFile(" + file + ")";
+  }
+}
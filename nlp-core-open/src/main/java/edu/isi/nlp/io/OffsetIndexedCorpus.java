@@ -1,5 +1,6 @@
 package edu.isi.nlp.io;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.base.Charsets;
@@ -7,13 +8,26 @@ import com.google.common.base.Optional;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
-import com.google.common.io.CharSource;
-import com.google.common.io.Files;
-import edu.isi.nlp.files.FileUtils;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Range;
+import com.google.common.io.ByteStreams;
 import edu.isi.nlp.files.KeyValueSource;
 import edu.isi.nlp.symbols.Symbol;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -22,38 +36,75 @@ import java.util.concurrent.ExecutionException;
  * (e.g. when it is too slow to copy all 12M files of Gigaword to the DMZ) but too slow for bulk
  * use.
  *
+ * <p>Recently used text files are kept memory-mapped and documents are decoded directly from the
+ * mappings, so looking up a document in one of them requires no system calls. Text files may also
+ * be block gzip compressed (see {@link
+ * GZIPByteSink#blockGzipCompress(com.google.common.io.ByteSink)}); offsets are then into the
+ * uncompressed text and only the blocks containing a document are decompressed to retrieve it.
+ * Index files may be in either format accepted by {@link OffsetIndices#open(File)}; those in the
+ * format of {@link MappedOffsetIndex} are also cheap to keep open.
+ *
  * <p>This should be merged into the newer {@link KeyValueSource} code.
  *
  * @author Ryan Gabbard
  */
 public final class OffsetIndexedCorpus implements OriginalTextSource {
 
+  /** The number of text files and index files which are kept open by default. */
+  public static final int DEFAULT_MAX_OPEN_FILES = 64;
+
   private final DocIDToFileMapping corpusTextMapping;
   private final DocIDToFileMapping corpusIndexMapping;
   private final LoadingCache<File, OffsetIndex> offsetIndexCache;
+  private final LoadingCache<File, ChunkFile> chunkFileCache;
 
   private OffsetIndexedCorpus(
       final DocIDToFileMapping corpusTextMapping,
       final DocIDToFileMapping corpusIndexMapping,
-      final LoadingCache<File, OffsetIndex> offsetIndexCache) {
+      final LoadingCache<File, OffsetIndex> offsetIndexCache,
+      final LoadingCache<File, ChunkFile> chunkFileCache) {
     this.corpusTextMapping = checkNotNull(corpusTextMapping);
     this.corpusIndexMapping = checkNotNull(corpusIndexMapping);
     this.offsetIndexCache = checkNotNull(offsetIndexCache);
+    this.chunkFileCache = checkNotNull(chunkFileCache);
   }
 
   public static OriginalTextSource fromTextAndOffsetFiles(
       DocIDToFileMapping corpusTextMapping, final DocIDToFileMapping corpusIndexMapping) {
+    return fromTextAndOffsetFiles(corpusTextMapping, corpusIndexMapping, DEFAULT_MAX_OPEN_FILES);
+  }
+
+  /**
+   * Like {@link #fromTextAndOffsetFiles(DocIDToFileMapping, DocIDToFileMapping)}, but keeps at most
+   * {@code maxOpenFiles} text files mapped and the same number of indices loaded.
+   */
+  public static OriginalTextSource fromTextAndOffsetFiles(
+      DocIDToFileMapping corpusTextMapping,
+      final DocIDToFileMapping corpusIndexMapping,
+      final int maxOpenFiles) {
+    checkArgument(maxOpenFiles > 0, "Must be able to keep at least one file open");
     final LoadingCache<File, OffsetIndex> indexCache =
         CacheBuilder.newBuilder()
-            .maximumSize(3)
+            .maximumSize(maxOpenFiles)
             .build(
                 new CacheLoader<File, OffsetIndex>() {
                   @Override
                   public OffsetIndex load(final File f) throws Exception {
-                    return OffsetIndices.readBinary(FileUtils.asCompressedByteSource(f));
+                    return OffsetIndices.open(f);
+                  }
+                });
+    final LoadingCache<File, ChunkFile> chunkFileCache =
+        CacheBuilder.newBuilder()
+            .maximumSize(maxOpenFiles)
+            .build(
+                new CacheLoader<File, ChunkFile>() {
+                  @Override
+                  public ChunkFile load(final File f) throws Exception {
+                    return openChunkFile(f);
                   }
                 });
-    return new OffsetIndexedCorpus(corpusTextMapping, corpusIndexMapping, indexCache);
+    return new OffsetIndexedCorpus(
+        corpusTextMapping, corpusIndexMapping, indexCache, chunkFileCache);
   }
 
   @Override
@@ -63,14 +114,16 @@ public final class OffsetIndexedCorpus implements OriginalTextSource {
       try {
         final Optional<File> indexFile = corpusIndexMapping.fileForDocID(docID);
         if (indexFile.isPresent()) {
-          final IndexedByteSource source =
-              IndexedByteSource.from(
-                  Files.asByteSource(file.get()), offsetIndexCache.get(indexFile.get()));
-          final Optional<CharSource> channelCharSource =
-              source.channelAsCharSource(docID, Charsets.UTF_8);
-
-          if (channelCharSource.isPresent()) {
-            return Optional.of(channelCharSource.get().read());
+          final Optional<Range<Long>> offsets =
+              offsetIndexCache.get(indexFile.get()).longByteOffsetsOf(docID);
+          if (offsets.isPresent()) {
+            return Optional.of(
+                chunkFileCache
+                    .get(file.get())
+                    .decode(
+                        offsets.get().lowerEndpoint(),
+                        offsets.get().upperEndpoint(),
+                        Charsets.UTF_8));
           } else {
             return Optional.absent();
           }
@@ -84,4 +137,150 @@ public final class OffsetIndexedCorpus implements OriginalTextSource {
       return Optional.absent();
     }
   }
+
+  /**
+   * Returns the requested documents grouped by the text file they are in and, within each file, in
+   * order of their position in it, so each file is read sequentially once. Each index file needed
+   * is loaded once, when iteration begins. Documents which are not available come first.
+   */
+  @Override
+  public Iterable<Map.Entry<Symbol, Optional<String>>> getOriginalTexts(
+      final Iterable<Symbol> docIDs) {
+    final ImmutableSet<Symbol> requested = ImmutableSet.copyOf(docIDs);
+    return new Iterable<Map.Entry<Symbol, Optional<String>>>() {
+      @Override
+      public Iterator<Map.Entry<Symbol, Optional<String>>> iterator() {
+        try {
+          return new BatchIterator(requested);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+  }
+
+  /**
+   * Opens a text file, which may be block gzip compressed (see {@link
+   * GZIPByteSink#blockGzipCompress(com.google.common.io.ByteSink)}).
+   */
+  private static ChunkFile openChunkFile(final File f) throws IOException {
+    final byte[] header = new byte[2];
+    final InputStream in = new FileInputStream(f);
+    try {
+      // a file shorter than the header leaves it zeroed, which isn't gzipped
+      ByteStreams.read(in, header, 0, header.length);
+    } finally {
+      in.close();
+    }
+    if (GZIPByteSource.isGzipped(header)) {
+      return BlockGZIPChunkFile.open(f);
+    } else {
+      return MappedChunkFile.map(f);
+    }
+  }
+
+  private static final class DocumentRequest {
+
+    private final Symbol docID;
+    private final long startInclusive;
+    private final long endInclusive;
+
+    private DocumentRequest(
+        final Symbol docID, final long startInclusive, final long endInclusive) {
+      this.docID = docID;
+      this.startInclusive = startInclusive;
+      this.endInclusive = endInclusive;
+    }
+  }
+
+  private static final Comparator<DocumentRequest> BY_START_OFFSET =
+      new Comparator<DocumentRequest>() {
+        @Override
+        public int compare(final DocumentRequest a, final DocumentRequest b) {
+          return Long.compare(a.startInclusive, b.startInclusive);
+        }
+      };
+
+  private final class BatchIterator extends AbstractIterator<Map.Entry<Symbol, Optional<String>>> {
+
+    private final Iterator<Symbol> unavailable;
+    private final Iterator<Map.Entry<File, Collection<DocumentRequest>>> filesToRead;
+    private Iterator<DocumentRequest> requestsInFile = Collections.emptyIterator();
+    private ChunkFile currentFile = null;
+
+    private BatchIterator(final ImmutableSet<Symbol> requested) throws IOException {
+      final ImmutableList.Builder<Symbol> unavailable = ImmutableList.builder();
+      final ListMultimap<File, Symbol> docIDsByIndexFile = ArrayListMultimap.create();
+      final Map<Symbol, File> textFiles = Maps.newHashMap();
+      for (final Symbol docID : requested) {
+        final Optional<File> textFile = corpusTextMapping.fileForDocID(docID);
+        if (textFile.isPresent()) {
+          final Optional<File> indexFile = corpusIndexMapping.fileForDocID(docID);
+          if (indexFile.isPresent()) {
+            docIDsByIndexFile.put(indexFile.get(), docID);
+            textFiles.put(docID, textFile.get());
+          } else {
+            throw new IOException("No index found for corpus chunk " + textFile);
+          }
+        } else {
+          unavailable.add(docID);
+        }
+      }
+
+      final ListMultimap<File, DocumentRequest> requestsByTextFile = ArrayListMultimap.create();
+      for (final Map.Entry<File, Collection<Symbol>> e : docIDsByIndexFile.asMap().entrySet()) {
+        final OffsetIndex index;
+        try {
+          index = offsetIndexCache.get(e.getKey());
+        } catch (ExecutionException ex) {
+          throw new IOException(ex);
+        }
+        for (final Symbol docID : e.getValue()) {
+          final Optional<Range<Long>> offsets = index.longByteOffsetsOf(docID);
+          if (offsets.isPresent()) {
+            requestsByTextFile.put(
+                textFiles.get(docID),
+                new DocumentRequest(
+                    docID, offsets.get().lowerEndpoint(), offsets.get().upperEndpoint()));
+          } else {
+            unavailable.add(docID);
+          }
+        }
+      }
+      for (final File textFile : requestsByTextFile.keySet()) {
+        Collections.sort(requestsByTextFile.get(textFile), BY_START_OFFSET);
+      }
+      this.unavailable = unavailable.build().iterator();
+      this.filesToRead = requestsByTextFile.asMap().entrySet().iterator();
+    }
+
+    @Override
+    protected Map.Entry<Symbol, Optional<String>> computeNext() {
+      if (unavailable.hasNext()) {
+        return Maps.immutableEntry(unavailable.next(), Optional.<String>absent());
+      }
+      try {
+        while (!requestsInFile.hasNext()) {
+          if (!filesToRead.hasNext()) {
+            return endOfData();
+          }
+          final Map.Entry<File, Collection<DocumentRequest>> fileRequests = filesToRead.next();
+          // use an already mapped file if there is one, but don't let a batch evict the files
+          // mapped for individual lookups
+          currentFile = chunkFileCache.getIfPresent(fileRequests.getKey());
+          if (currentFile == null) {
+            currentFile = openChunkFile(fileRequests.getKey());
+          }
+          requestsInFile = fileRequests.getValue().iterator();
+        }
+        final DocumentRequest request = requestsInFile.next();
+        return Maps.immutableEntry(
+            request.docID,
+            Optional.of(
+                currentFile.decode(request.startInclusive, request.endInclusive, Charsets.UTF_8)));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
 }
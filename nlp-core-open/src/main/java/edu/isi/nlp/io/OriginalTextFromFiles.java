@@ -45,7 +45,14 @@ public final class OriginalTextFromFiles implements OriginalTextSource {
     private Builder() {}
 
     public OriginalTextSource build() throws IOException {
-      return CachingOriginalTextSource.from(new OriginalTextFromFiles(docidMap), maxElements);
+      final CachingOriginalTextSource.Builder ret =
+          CachingOriginalTextSource.builder(new OriginalTextFromFiles(docidMap));
+      if (maxBytes != null) {
+        ret.maxBytes(maxBytes);
+      } else {
+        ret.maxEntries(maxElements);
+      }
+      return ret.build();
     }
 
     private static Builder fromDocIdMap(final DocIDToFileMapping docidToSerifXML) {
@@ -61,9 +68,20 @@ public final class OriginalTextFromFiles implements OriginalTextSource {
       return this;
     }
 
+    /**
+     * Limits the cache to approximately this many bytes of text instead of a number of documents.
+     * This is preferable when document sizes vary widely.
+     */
+    public Builder setMaxBytes(final long maxBytes) {
+      checkArgument(maxBytes >= 0);
+      this.maxBytes = maxBytes;
+      return this;
+    }
+
     private DocIDToFileMapping docidMap = null;
 
     // a reasonable default
     private int maxElements = 100;
+    private Long maxBytes = null;
   }
 }
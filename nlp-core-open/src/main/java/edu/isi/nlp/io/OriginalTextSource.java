@@ -1,9 +1,16 @@
 package edu.isi.nlp.io;
 
+import com.google.common.annotations.Beta;
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
 import edu.isi.nlp.files.KeyValueSource;
 import edu.isi.nlp.symbols.Symbol;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
 
 /**
  * Interface for something which can provide the original text for a document.
@@ -19,4 +26,34 @@ public interface OriginalTextSource {
    * returns {@link com.google.common.base.Optional#absent()}.
    */
   public Optional<String> getOriginalText(Symbol docID) throws IOException;
+
+  /**
+   * Returns the original document texts for the specified document IDs, as a lazy sequence of
+   * entries from document IDs to texts. Texts are only loaded as the result is iterated over, so
+   * this is suitable for fetching more documents than fit in memory.
+   *
+   * <p>Each distinct document ID is returned once, with absent text if it is not available. The
+   * order of the result is unspecified so that implementations may load documents in whatever order
+   * is most efficient for them. Because loading happens during iteration, I/O errors are thrown
+   * from the iterator as {@link UncheckedIOException}s.
+   *
+   * <p>The default implementation calls {@link #getOriginalText(Symbol)} for each document in the
+   * order given.
+   */
+  @Beta
+  default Iterable<Map.Entry<Symbol, Optional<String>>> getOriginalTexts(
+      final Iterable<Symbol> docIDs) {
+    return Iterables.transform(
+        ImmutableSet.copyOf(docIDs),
+        new Function<Symbol, Map.Entry<Symbol, Optional<String>>>() {
+          @Override
+          public Map.Entry<Symbol, Optional<String>> apply(final Symbol docID) {
+            try {
+              return Maps.immutableEntry(docID, getOriginalText(docID));
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          }
+        });
+  }
 }
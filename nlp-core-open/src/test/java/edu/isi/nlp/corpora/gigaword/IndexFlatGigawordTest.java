@@ -0,0 +1,66 @@
+package edu.isi.nlp.corpora.gigaword;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Range;
+import com.google.common.io.Files;
+import edu.isi.nlp.symbols.Symbol;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IndexFlatGigawordTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final String DOC_A = "<DOC id=\"A\" type=\"story\">\n<P>a < b</P>\n</DOC>";
+  // includes multibyte characters and text resembling, but not matching, the tags
+  private static final String DOC_B = "<DOC id=\"B\">\n<DOCX>caf\u00E9 \uD83E\uDDC0</DO</DOC>";
+  private static final String CHUNK = DOC_A + "\n" + DOC_B + "\n";
+
+  private static final ImmutableMap<Symbol, Range<Long>> EXPECTED =
+      ImmutableMap.of(
+          Symbol.from("A"), utf8Range(0, DOC_A),
+          Symbol.from("B"), utf8Range(DOC_A.length() + 1, DOC_B));
+
+  private static Range<Long> utf8Range(int start, String doc) {
+    return Range.closed((long) start, (long) start + doc.getBytes(Charsets.UTF_8).length - 1);
+  }
+
+  @Test
+  public void testIndexBuffer() throws IOException {
+    final Map<Symbol, Range<Long>> ret = new HashMap<>();
+    final ByteBuffer buffer = ByteBuffer.wrap(CHUNK.getBytes(Charsets.UTF_8));
+    assertEquals(buffer.limit(), IndexFlatGigaword.indexDocuments(buffer, 0, true, ret, "test"));
+    assertEquals(EXPECTED, ret);
+  }
+
+  @Test
+  public void testWindowsSplitDocuments() throws IOException {
+    final File chunk = folder.newFile("chunk");
+    Files.write(CHUNK, chunk, Charsets.UTF_8);
+    // every window size splits documents, tags or IDs at different points
+    for (int windowBytes = 60; windowBytes <= CHUNK.length() + 10; ++windowBytes) {
+      assertEquals(EXPECTED, IndexFlatGigaword.indexChunk(chunk, windowBytes));
+    }
+  }
+
+  @Test
+  public void testUnclosedDocument() {
+    final ByteBuffer buffer = ByteBuffer.wrap((DOC_A + "<DOC id=\"C\">").getBytes(Charsets.UTF_8));
+    try {
+      IndexFlatGigaword.indexDocuments(buffer, 0, true, new HashMap<Symbol, Range<Long>>(), "test");
+      fail("Unclosed documents should be rejected");
+    } catch (IOException expected) {
+      // pass
+    }
+  }
+}
@@ -0,0 +1,180 @@
+package edu.isi.nlp.io;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.CharSource;
+import com.google.common.io.Files;
+import edu.isi.nlp.strings.offsets.ByteOffset;
+import edu.isi.nlp.strings.offsets.OffsetRange;
+import edu.isi.nlp.symbols.Symbol;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Test program comparing random document lookups from an {@link OffsetIndexedCorpus} with the
+ * previous approach of slicing a fresh {@link Files#asByteSource(File)} for every lookup, and with
+ * fetching the same documents through {@link OffsetIndexedCorpus#getOriginalTexts(Iterable)}.
+ *
+ * <p>Writes a synthetic corpus to a temporary directory. Takes optional arguments giving the number
+ * of lookups (defaults to 100,000), the number of chunk files (defaults to 20), and the number of
+ * documents per chunk file (defaults to 1,000).
+ */
+public final class BenchmarkOffsetIndexedCorpus {
+
+  private static Logger log = LoggerFactory.getLogger(BenchmarkOffsetIndexedCorpus.class);
+
+  public static void main(String[] args) {
+    // We wrap the main method in this way to ensure a non-zero return value on failure
+    try {
+      trueMain(args);
+    } catch (Exception e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static void trueMain(String[] args) throws IOException {
+    final int numLookups = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    final int numChunks = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+    final int docsPerChunk = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+    final Random rng = new Random(0);
+    final File tmpDir = Files.createTempDir();
+    try {
+      final ImmutableMap.Builder<Symbol, File> textMap = ImmutableMap.builder();
+      final ImmutableMap.Builder<Symbol, File> indexMap = ImmutableMap.builder();
+      final ImmutableMap.Builder<Symbol, OffsetIndex> indicesByDocID = ImmutableMap.builder();
+      final List<Symbol> docIDs = new ArrayList<>();
+      long corpusBytes = 0;
+      for (int chunk = 0; chunk < numChunks; ++chunk) {
+        final File chunkFile = new File(tmpDir, "chunk" + chunk);
+        final File indexFile = new File(tmpDir, "chunk" + chunk + ".index");
+        final StringBuilder text = new StringBuilder();
+        final ImmutableMap.Builder<Symbol, OffsetRange<ByteOffset>> offsets =
+            ImmutableMap.builder();
+        for (int doc = 0; doc < docsPerChunk; ++doc) {
+          final Symbol docID = Symbol.from("DOC_" + chunk + "_" + doc);
+          final int start = text.length();
+          text.append("<DOC id=\"").append(docID).append("\">\n");
+          final int numWords = 200 + rng.nextInt(400);
+          for (int word = 0; word < numWords; ++word) {
+            text.append("word").append(rng.nextInt(1000)).append(' ');
+          }
+          text.append("\n</DOC>");
+          // text is all ASCII, so character offsets are byte offsets
+          offsets.put(docID, OffsetRange.byteOffsetRange(start, text.length() - 1));
+          text.append('\n');
+          docIDs.add(docID);
+          textMap.put(docID, chunkFile);
+          indexMap.put(docID, indexFile);
+        }
+        Files.write(text, chunkFile, Charsets.UTF_8);
+        corpusBytes += chunkFile.length();
+        final OffsetIndex index = OffsetIndices.forMap(offsets.build());
+        OffsetIndices.writeMappable(index, Files.asByteSink(indexFile));
+        for (final Symbol docID : index.keySet()) {
+          indicesByDocID.put(docID, index);
+        }
+      }
+      log.info(
+          "Wrote {} documents ({} MB) in {} chunk files",
+          docIDs.size(),
+          corpusBytes / (1024 * 1024),
+          numChunks);
+
+      final Symbol[] lookups = new Symbol[numLookups];
+      for (int i = 0; i < numLookups; ++i) {
+        lookups[i] = docIDs.get(rng.nextInt(docIDs.size()));
+      }
+      final Map<Symbol, File> texts = textMap.build();
+      final Map<Symbol, OffsetIndex> indices = indicesByDocID.build();
+
+      final OriginalTextSource corpus =
+          OffsetIndexedCorpus.fromTextAndOffsetFiles(
+              DocIDToFileMappings.forMap(texts), DocIDToFileMappings.forMap(indexMap.build()));
+      // warm up the JIT and the corpus's caches before timing
+      lookUpWithCorpus(corpus, lookups);
+      lookUpBySlicing(texts, indices, lookups);
+
+      lookUpBatch(corpus, lookups);
+
+      final Stopwatch stopwatch = Stopwatch.createStarted();
+      final long corpusChars = lookUpWithCorpus(corpus, lookups);
+      final long corpusMs = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+      stopwatch.reset().start();
+      final long batchChars = lookUpBatch(corpus, lookups);
+      final long batchMs = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+      stopwatch.reset().start();
+      final long slicedChars = lookUpBySlicing(texts, indices, lookups);
+      final long slicedMs = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+      if (corpusChars != slicedChars || batchChars != uniqueChars(corpus, lookups)) {
+        throw new RuntimeException("Lookup methods disagree");
+      }
+      log.info(
+          "{} random lookups: {} ms from mapped chunk files, {} ms slicing the files",
+          numLookups,
+          corpusMs,
+          slicedMs);
+      log.info(
+          "Batch lookup of the same {} distinct documents: {} ms",
+          ImmutableSet.copyOf(lookups).size(),
+          batchMs);
+    } finally {
+      for (final File f : tmpDir.listFiles()) {
+        f.delete();
+      }
+      tmpDir.delete();
+    }
+  }
+
+  private static long lookUpWithCorpus(final OriginalTextSource corpus, final Symbol[] lookups)
+      throws IOException {
+    long totalChars = 0;
+    for (final Symbol docID : lookups) {
+      totalChars += corpus.getOriginalText(docID).get().length();
+    }
+    return totalChars;
+  }
+
+  private static long lookUpBatch(final OriginalTextSource corpus, final Symbol[] lookups) {
+    long totalChars = 0;
+    for (final Map.Entry<Symbol, Optional<String>> e :
+        corpus.getOriginalTexts(Arrays.asList(lookups))) {
+      totalChars += e.getValue().get().length();
+    }
+    return totalChars;
+  }
+
+  private static long uniqueChars(final OriginalTextSource corpus, final Symbol[] lookups)
+      throws IOException {
+    long totalChars = 0;
+    for (final Symbol docID : ImmutableSet.copyOf(lookups)) {
+      totalChars += corpus.getOriginalText(docID).get().length();
+    }
+    return totalChars;
+  }
+
+  private static long lookUpBySlicing(
+      final Map<Symbol, File> texts, final Map<Symbol, OffsetIndex> indices, final Symbol[] lookups)
+      throws IOException {
+    long totalChars = 0;
+    for (final Symbol docID : lookups) {
+      final Optional<CharSource> text =
+          IndexedByteSource.from(Files.asByteSource(texts.get(docID)), indices.get(docID))
+              .channelAsCharSource(docID, Charsets.UTF_8);
+      totalChars += text.get().read().length();
+    }
+    return totalChars;
+  }
+}
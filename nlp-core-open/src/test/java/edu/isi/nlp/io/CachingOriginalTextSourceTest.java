@@ -0,0 +1,119 @@
+package edu.isi.nlp.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import edu.isi.nlp.symbols.Symbol;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class CachingOriginalTextSourceTest {
+
+  private static final Symbol BIG = Symbol.from("big");
+  private static final Symbol SMALL_1 = Symbol.from("small1");
+  private static final Symbol SMALL_2 = Symbol.from("small2");
+  private static final Symbol MISSING = Symbol.from("missing");
+
+  private static final ImmutableMap<Symbol, String> TEXTS =
+      ImmutableMap.of(BIG, Strings.repeat("x", 10000), SMALL_1, "small", SMALL_2, "tiny");
+
+  /** A source which counts how many times it is asked for a document. */
+  private static final class CountingSource implements OriginalTextSource {
+
+    final AtomicInteger loads = new AtomicInteger();
+
+    @Override
+    public Optional<String> getOriginalText(final Symbol docID) {
+      loads.incrementAndGet();
+      return Optional.fromNullable(TEXTS.get(docID));
+    }
+  }
+
+  @Test
+  public void testByteBudget() throws IOException {
+    final CountingSource base = new CountingSource();
+    // room for both small documents but not the big one as well
+    final CachingOriginalTextSource cache =
+        CachingOriginalTextSource.builder(base).maxBytes(10000).build();
+
+    assertEquals("small", cache.getOriginalText(SMALL_1).get());
+    assertEquals("tiny", cache.getOriginalText(SMALL_2).get());
+    assertEquals(TEXTS.get(BIG), cache.getOriginalText(BIG).get());
+    assertTrue(cache.stats().evictionCount() > 0);
+    assertEquals(3, base.loads.get());
+
+    // the small documents can be cached again without evicting each other
+    cache.getOriginalText(SMALL_1);
+    cache.getOriginalText(SMALL_2);
+    final int loadsBefore = base.loads.get();
+    cache.getOriginalText(SMALL_1);
+    cache.getOriginalText(SMALL_2);
+    assertEquals(loadsBefore, base.loads.get());
+  }
+
+  /** A document which uses most of the byte budget should still stay cached. */
+  @Test
+  public void testLargeDocumentWithinByteBudget() throws IOException {
+    final CountingSource base = new CountingSource();
+    // the big document weighs about 20k, more than a quarter of the budget but less than all of it
+    final CachingOriginalTextSource cache =
+        CachingOriginalTextSource.builder(base).maxBytes(30000).build();
+
+    for (int i = 0; i < 5; ++i) {
+      assertEquals(TEXTS.get(BIG), cache.getOriginalText(BIG).get());
+    }
+    assertEquals(1, base.loads.get());
+    assertEquals(0, cache.stats().evictionCount());
+    assertEquals(4, cache.stats().hitCount());
+  }
+
+  @Test
+  public void testStatsAndMissingDocuments() throws IOException {
+    final CountingSource base = new CountingSource();
+    final CachingOriginalTextSource cache = CachingOriginalTextSource.from(base, 10);
+
+    assertFalse(cache.getOriginalText(MISSING).isPresent());
+    assertFalse(cache.getOriginalText(MISSING).isPresent());
+    cache.getOriginalText(SMALL_1);
+    assertEquals(2, base.loads.get());
+    assertEquals(1, cache.stats().hitCount());
+    assertEquals(2, cache.stats().missCount());
+    assertEquals(2, cache.stats().loadSuccessCount());
+  }
+
+  @Test
+  public void testPrefetch() throws IOException, InterruptedException, ExecutionException {
+    final CountingSource base = new CountingSource();
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final CachingOriginalTextSource cache =
+          CachingOriginalTextSource.builder(base).maxEntries(10).prefetchExecutor(executor).build();
+      cache.getOriginalText(SMALL_1);
+
+      // already cached documents aren't reloaded
+      assertEquals(3, (int) cache.prefetch(ImmutableList.of(SMALL_1, SMALL_2, BIG, MISSING)).get());
+      assertEquals(4, base.loads.get());
+      assertEquals("tiny", cache.getOriginalText(SMALL_2).get());
+      assertEquals(TEXTS.get(BIG), cache.getOriginalText(BIG).get());
+      assertFalse(cache.getOriginalText(MISSING).isPresent());
+      assertEquals(4, base.loads.get());
+      assertEquals(3, cache.stats().hitCount());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testPrefetchRequiresExecutor() {
+    CachingOriginalTextSource.from(new CountingSource(), 10).prefetch(ImmutableList.of(BIG));
+  }
+}
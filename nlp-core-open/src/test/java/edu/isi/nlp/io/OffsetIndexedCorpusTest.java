@@ -0,0 +1,199 @@
+package edu.isi.nlp.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import edu.isi.nlp.files.FileUtils;
+import edu.isi.nlp.strings.offsets.ByteOffset;
+import edu.isi.nlp.strings.offsets.OffsetRange;
+import edu.isi.nlp.symbols.Symbol;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OffsetIndexedCorpusTest {
+
+  private static final String[] DOCS = {
+    "<DOC id=\"a\">first</DOC>",
+    "<DOC id=\"b\">caf\u00E9 \uD83E\uDDC0</DOC>",
+    "<DOC id=\"c\">c</DOC>"
+  };
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private File chunkFile;
+  private Map<Symbol, OffsetRange<ByteOffset>> offsets;
+
+  @Before
+  public void setUp() throws IOException {
+    chunkFile = folder.newFile("chunk");
+    final StringBuilder chunk = new StringBuilder();
+    final ImmutableMap.Builder<Symbol, OffsetRange<ByteOffset>> offsetsB = ImmutableMap.builder();
+    int bytesSoFar = 0;
+    for (int i = 0; i < DOCS.length; ++i) {
+      final int docBytes = DOCS[i].getBytes(Charsets.UTF_8).length;
+      offsetsB.put(
+          Symbol.from(String.valueOf((char) ('a' + i))),
+          OffsetRange.byteOffsetRange(bytesSoFar, bytesSoFar + docBytes - 1));
+      chunk.append(DOCS[i]).append('\n');
+      bytesSoFar += docBytes + 1;
+    }
+    offsets = offsetsB.build();
+    Files.write(chunk, chunkFile, Charsets.UTF_8);
+  }
+
+  @Test
+  public void testLookupsWithEitherIndexFormat() throws IOException {
+    final File originalIndex = new File(folder.getRoot(), "chunk.index");
+    OffsetIndices.writeBinary(
+        OffsetIndices.forMap(offsets), FileUtils.asCompressedByteSink(originalIndex));
+    final File mappableIndex = new File(folder.getRoot(), "chunk.index2");
+    OffsetIndices.writeMappable(OffsetIndices.forMap(offsets), Files.asByteSink(mappableIndex));
+
+    for (final File indexFile : new File[] {originalIndex, mappableIndex}) {
+      final ImmutableMap.Builder<Symbol, File> textMap = ImmutableMap.builder();
+      final ImmutableMap.Builder<Symbol, File> indexMap = ImmutableMap.builder();
+      for (final Symbol docID : offsets.keySet()) {
+        textMap.put(docID, chunkFile);
+        indexMap.put(docID, indexFile);
+      }
+      textMap.put(Symbol.from("unindexed"), chunkFile);
+      indexMap.put(Symbol.from("unindexed"), indexFile);
+      final OriginalTextSource corpus =
+          OffsetIndexedCorpus.fromTextAndOffsetFiles(
+              DocIDToFileMappings.forMap(textMap.build()),
+              DocIDToFileMappings.forMap(indexMap.build()),
+              1);
+
+      for (int i = 0; i < DOCS.length; ++i) {
+        assertEquals(
+            Optional.of(DOCS[i]),
+            corpus.getOriginalText(Symbol.from(String.valueOf((char) ('a' + i)))));
+      }
+      assertFalse(corpus.getOriginalText(Symbol.from("unindexed")).isPresent());
+      assertFalse(corpus.getOriginalText(Symbol.from("unknown")).isPresent());
+    }
+  }
+
+  @Test
+  public void testBatchLookups() throws IOException {
+    final File indexFile = new File(folder.getRoot(), "chunk.index");
+    OffsetIndices.writeMappable(OffsetIndices.forMap(offsets), Files.asByteSink(indexFile));
+    final ImmutableMap.Builder<Symbol, File> textMap = ImmutableMap.builder();
+    final ImmutableMap.Builder<Symbol, File> indexMap = ImmutableMap.builder();
+    final ImmutableMap.Builder<Symbol, Optional<String>> expected = ImmutableMap.builder();
+    for (int i = 0; i < DOCS.length; ++i) {
+      final Symbol docID = Symbol.from(String.valueOf((char) ('a' + i)));
+      textMap.put(docID, chunkFile);
+      indexMap.put(docID, indexFile);
+      expected.put(docID, Optional.of(DOCS[i]));
+    }
+    textMap.put(Symbol.from("unindexed"), chunkFile);
+    indexMap.put(Symbol.from("unindexed"), indexFile);
+    expected.put(Symbol.from("unindexed"), Optional.<String>absent());
+    expected.put(Symbol.from("unknown"), Optional.<String>absent());
+    final OriginalTextSource corpus =
+        OffsetIndexedCorpus.fromTextAndOffsetFiles(
+            DocIDToFileMappings.forMap(textMap.build()),
+            DocIDToFileMappings.forMap(indexMap.build()));
+    // requested out of file order and with a repeat
+    final ImmutableList<Symbol> requests =
+        ImmutableList.of(
+            Symbol.from("c"),
+            Symbol.from("unknown"),
+            Symbol.from("a"),
+            Symbol.from("unindexed"),
+            Symbol.from("c"),
+            Symbol.from("b"));
+
+    final List<Symbol> returnedOrder = new ArrayList<>();
+    final Map<Symbol, Optional<String>> returned = new HashMap<>();
+    for (final Map.Entry<Symbol, Optional<String>> e : corpus.getOriginalTexts(requests)) {
+      returnedOrder.add(e.getKey());
+      returned.put(e.getKey(), e.getValue());
+    }
+    assertEquals(expected.build(), returned);
+    assertEquals(expected.build().size(), returnedOrder.size());
+    // available documents come in file order
+    assertEquals(
+        ImmutableList.of(Symbol.from("a"), Symbol.from("b"), Symbol.from("c")),
+        returnedOrder.subList(2, 5));
+
+    // the caching wrapper returns the same texts whether or not they are cached
+    final OriginalTextSource caching = CachingOriginalTextSource.from(corpus, 10);
+    caching.getOriginalText(Symbol.from("b"));
+    for (int pass = 0; pass < 2; ++pass) {
+      final Map<Symbol, Optional<String>> cachedReturned = new HashMap<>();
+      for (final Map.Entry<Symbol, Optional<String>> e : caching.getOriginalTexts(requests)) {
+        cachedReturned.put(e.getKey(), e.getValue());
+      }
+      assertEquals(expected.build(), cachedReturned);
+    }
+  }
+
+  @Test
+  public void testBlockCompressedChunk() throws IOException {
+    final File compressedChunk = new File(folder.getRoot(), "chunk.gz");
+    Files.asByteSource(chunkFile)
+        .copyTo(GZIPByteSink.blockGzipCompress(Files.asByteSink(compressedChunk)));
+    final File indexFile = new File(folder.getRoot(), "chunk.index");
+    OffsetIndices.writeMappable(OffsetIndices.forMap(offsets), Files.asByteSink(indexFile));
+
+    final ImmutableMap.Builder<Symbol, File> textMap = ImmutableMap.builder();
+    final ImmutableMap.Builder<Symbol, File> indexMap = ImmutableMap.builder();
+    for (final Symbol docID : offsets.keySet()) {
+      textMap.put(docID, compressedChunk);
+      indexMap.put(docID, indexFile);
+    }
+    final OriginalTextSource corpus =
+        OffsetIndexedCorpus.fromTextAndOffsetFiles(
+            DocIDToFileMappings.forMap(textMap.build()),
+            DocIDToFileMappings.forMap(indexMap.build()));
+    for (int i = 0; i < DOCS.length; ++i) {
+      assertEquals(
+          Optional.of(DOCS[i]),
+          corpus.getOriginalText(Symbol.from(String.valueOf((char) ('a' + i)))));
+    }
+    int numReturned = 0;
+    for (final Map.Entry<Symbol, Optional<String>> e : corpus.getOriginalTexts(offsets.keySet())) {
+      assertEquals(DOCS[e.getKey().asString().charAt(0) - 'a'], e.getValue().get());
+      ++numReturned;
+    }
+    assertEquals(DOCS.length, numReturned);
+  }
+
+  @Test
+  public void testWindowedMapping() throws IOException {
+    // with tiny windows, some documents fall within one window and others must be read directly
+    for (long stride = 1; stride < 40; ++stride) {
+      for (long overlap = 0; overlap < 30; overlap += 7) {
+        final MappedChunkFile mapped = MappedChunkFile.map(chunkFile, stride, overlap);
+        for (int i = 0; i < DOCS.length; ++i) {
+          final OffsetRange<ByteOffset> range =
+              offsets.get(Symbol.from(String.valueOf((char) ('a' + i))));
+          assertEquals(
+              DOCS[i],
+              mapped.decode(
+                  range.startInclusive().asInt(), range.endInclusive().asInt(), Charsets.UTF_8));
+        }
+      }
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testOutOfBoundsRange() throws IOException {
+    MappedChunkFile.map(chunkFile).decode(0, chunkFile.length(), Charsets.UTF_8);
+  }
+}